@@ -0,0 +1,96 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.benchmarks;
+
+import com.github.c0urante.kafka.connect.reddit.model.RawThing;
+import com.squareup.moshi.JsonAdapter;
+import net.dean.jraw.JrawUtils;
+import net.dean.jraw.models.Comment;
+import net.dean.jraw.models.Submission;
+import okio.BufferedSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads the listings under {@code src/main/resources/fixtures}, which have the same shape as
+ * (but synthetic content unlike) the listings returned by Reddit:
+ * <ul>
+ *     <li>{@code small-comments}: 100 comments, mostly a single sentence long</li>
+ *     <li>{@code large-self-posts}: 20 text posts, each with several kilobytes of self text</li>
+ *     <li>{@code image-posts}: 40 image posts, each with a full set of preview resolutions and
+ *     variants</li>
+ * </ul>
+ */
+public final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    public static List<Submission> posts(String fixture) {
+        JsonAdapter<Submission> adapter = Submission.jsonAdapter(JrawUtils.moshi);
+        List<Submission> result = new ArrayList<>();
+        for (Map<String, Object> data : children(fixture)) {
+            result.add(adapter.fromJsonValue(data));
+        }
+        return result;
+    }
+
+    public static List<Comment> comments(String fixture) {
+        JsonAdapter<Comment> adapter = Comment.jsonAdapter(JrawUtils.moshi);
+        List<Comment> result = new ArrayList<>();
+        for (Map<String, Object> data : children(fixture)) {
+            result.add(adapter.fromJsonValue(data));
+        }
+        return result;
+    }
+
+    public static List<RawThing> raw(String fixture) {
+        JsonAdapter<Object> adapter = JrawUtils.moshi.adapter(Object.class);
+        List<RawThing> result = new ArrayList<>();
+        for (Map<String, Object> data : children(fixture)) {
+            result.add(new RawThing(
+                    (String) data.get("name"),
+                    (String) data.get("subreddit"),
+                    new Date((long) (((Number) data.get("created_utc")).doubleValue() * 1000)),
+                    adapter.toJson(data).getBytes(StandardCharsets.UTF_8)
+            ));
+        }
+        return result;
+    }
+
+    /**
+     * @return the {@code data} field of each child of the listing in the given fixture
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> children(String fixture) {
+        String resource = "/fixtures/" + fixture + ".json";
+        try (InputStream in = Fixtures.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalArgumentException("No such fixture: " + fixture);
+            }
+            BufferedSource source = Okio.buffer(Okio.source(in));
+            Map<String, Object> listing = (Map<String, Object>) JrawUtils.moshi.adapter(Object.class).fromJson(source);
+            List<Map<String, Object>> children = (List<Map<String, Object>>) ((Map<String, Object>) listing.get("data")).get("children");
+            List<Map<String, Object>> result = new ArrayList<>();
+            for (Map<String, Object> child : children) {
+                result.add((Map<String, Object>) child.get("data"));
+            }
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load fixture " + fixture, e);
+        }
+    }
+}
@@ -0,0 +1,557 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.benchmarks;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local stand-in for the parts of the Reddit API that the connector uses: OAuth tokens, the
+ * about page of a subreddit (alone or in batches through {@code /api/info}), and the listings of new posts and comments for a (multi)subreddit.
+ * <p>
+ * Every subreddit, whatever its name, receives new posts and comments at a fixed rate from the
+ * moment the server is started; nothing exists before then. Items are generated on demand from
+ * their position in the listing, so the server holds no state per item, and the time at which any
+ * item was published can be recovered from its ID with {@link #publishedAt(String)}. Listings can
+ * be paged through with {@code after}, as with Reddit.
+ * <p>
+ * Responses are delayed by a configurable latency, and if a quota is configured, carry the same
+ * rate limit headers as Reddit's responses and are rejected with a 429 once it's used up.
+ */
+public class MockRedditServer implements Closeable {
+
+    private static final int SUBREDDIT_BITS = 20;
+    private static final long COMMENT_FLAG = 1L << SUBREDDIT_BITS;
+    private static final int INDEX_SHIFT = SUBREDDIT_BITS + 1;
+
+    private static final String[] WORDS = (
+            "the of and to a in is it that for you was with on as have but be they this are not at or "
+            + "from his by an we my what about all there so if one would can out just like when up who some "
+            + "people think really know time because more get been actually other good only also even than "
+            + "kafka reddit connector stream pipeline latency throughput partition offset broker consumer"
+    ).split(" ");
+
+    private static final JsonAdapter<Object> JSON = new Moshi.Builder().build().adapter(Object.class);
+
+    private final double postsPerSecond;
+    private final double commentsPerSecond;
+    private final long latencyMs;
+    private final long latencyJitterMs;
+    private final int quota;
+    private final long quotaWindowMs;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, Integer> subredditIds;
+    private final List<String> subredditNames;
+    private final AtomicLong requests;
+    private final AtomicInteger tokens;
+    private long startMs;
+    private long windowStartMs;
+    private int windowRequests;
+
+    /**
+     * @param postsPerSecond the rate at which new posts arrive in each subreddit
+     * @param commentsPerSecond the rate at which new comments arrive in each subreddit
+     * @param latencyMs the minimum time, in milliseconds, taken to respond to each request
+     * @param latencyJitterMs the maximum additional time, in milliseconds, taken to respond to each
+     *                        request; the actual additional time is uniformly distributed
+     * @param quota the number of requests allowed in each rate limit window, or 0 to allow any
+     *              number of requests and leave out the rate limit headers
+     * @param quotaWindowSeconds the length of each rate limit window, in seconds
+     */
+    public MockRedditServer(
+            double postsPerSecond,
+            double commentsPerSecond,
+            long latencyMs,
+            long latencyJitterMs,
+            int quota,
+            int quotaWindowSeconds
+    ) throws IOException {
+        this.postsPerSecond = postsPerSecond;
+        this.commentsPerSecond = commentsPerSecond;
+        this.latencyMs = latencyMs;
+        this.latencyJitterMs = latencyJitterMs;
+        this.quota = quota;
+        this.quotaWindowMs = TimeUnit.SECONDS.toMillis(quotaWindowSeconds);
+        this.subredditIds = new ConcurrentHashMap<>();
+        this.subredditNames = Collections.synchronizedList(new ArrayList<>());
+        this.requests = new AtomicLong();
+        this.tokens = new AtomicInteger();
+
+        AtomicInteger threads = new AtomicInteger();
+        // Unbounded, so that slow responses don't hold up other requests
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread result = new Thread(runnable, "mock-reddit-" + threads.getAndIncrement());
+            result.setDaemon(true);
+            return result;
+        });
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    /**
+     * Start accepting requests. New posts and comments start arriving now.
+     */
+    public void start() {
+        startMs = System.currentTimeMillis();
+        windowStartMs = startMs;
+        server.start();
+    }
+
+    /**
+     * @return the URL of the server, to be used as the connector's {@code reddit.api.url}
+     */
+    public String url() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return the total number of requests received so far
+     */
+    public long requests() {
+        return requests.get();
+    }
+
+    /**
+     * @param id the ID (not the full name) of a post or comment returned by this server
+     * @return the time at which the post or comment was published, in milliseconds since the epoch
+     */
+    public long publishedAt(String id) {
+        long value = Long.parseLong(id, 36);
+        long index = value >>> INDEX_SHIFT;
+        double rate = (value & COMMENT_FLAG) != 0 ? commentsPerSecond : postsPerSecond;
+        return startMs + (long) (index * 1000 / rate);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requests.incrementAndGet();
+            long delay = latencyMs + (latencyJitterMs > 0 ? ThreadLocalRandom.current().nextLong(latencyJitterMs + 1) : 0);
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            if (!rateLimit(exchange)) {
+                respond(exchange, 429, error(429, "Too Many Requests"));
+                return;
+            }
+
+            String path = exchange.getRequestURI().getPath();
+            if (path.endsWith(".json")) {
+                path = path.substring(0, path.length() - ".json".length());
+            }
+            List<String> segments = new ArrayList<>(Arrays.asList(path.split("/")));
+            segments.removeIf(String::isEmpty);
+
+            if (segments.equals(Arrays.asList("api", "v1", "access_token"))) {
+                respond(exchange, 200, accessToken());
+            } else if (segments.equals(Arrays.asList("api", "info"))
+                    && parameter(exchange.getRequestURI().getRawQuery(), "sr_name") != null) {
+                String names = parameter(exchange.getRequestURI().getRawQuery(), "sr_name");
+                respond(exchange, 200, subreddits(URLDecoder.decode(names, "UTF-8").split(",")));
+            } else if (segments.size() == 3 && segments.get(0).equals("r")) {
+                String[] subreddits = segments.get(1).split("\\+");
+                String query = exchange.getRequestURI().getRawQuery();
+                String limit = parameter(query, "limit");
+                String after = parameter(query, "after");
+                switch (segments.get(2)) {
+                    case "about":
+                        respond(exchange, 200, about(subreddits[0]));
+                        break;
+                    case "new":
+                        respond(exchange, 200, listing(subreddits, false, limit != null ? Integer.parseInt(limit) : 25, after));
+                        break;
+                    case "comments":
+                        respond(exchange, 200, listing(subreddits, true, limit != null ? Integer.parseInt(limit) : 25, after));
+                        break;
+                    default:
+                        respond(exchange, 404, error(404, "Not Found"));
+                }
+            } else {
+                respond(exchange, 404, error(404, "Not Found"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Count a request against the quota and add the rate limit headers to its response.
+     * @return whether the request is within the quota
+     */
+    private boolean rateLimit(HttpExchange exchange) {
+        if (quota <= 0) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        int used;
+        long resetMs;
+        synchronized (this) {
+            if (now - windowStartMs >= quotaWindowMs) {
+                windowStartMs = now - (now - startMs) % quotaWindowMs;
+                windowRequests = 0;
+            }
+            used = ++windowRequests;
+            resetMs = windowStartMs + quotaWindowMs - now;
+        }
+        exchange.getResponseHeaders().set("X-Ratelimit-Used", Integer.toString(used));
+        exchange.getResponseHeaders().set("X-Ratelimit-Remaining", Double.toString(Math.max(0, quota - used)));
+        exchange.getResponseHeaders().set("X-Ratelimit-Reset", Long.toString(TimeUnit.MILLISECONDS.toSeconds(resetMs)));
+        return used <= quota;
+    }
+
+    private Object accessToken() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("access_token", "mock-token-" + tokens.incrementAndGet());
+        result.put("token_type", "bearer");
+        result.put("device_id", "mock");
+        result.put("expires_in", 3600);
+        result.put("scope", "*");
+        return result;
+    }
+
+    private Object about(String subreddit) {
+        int id = subredditId(subreddit);
+        String name = subredditNames.get(id);
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("display_name", name);
+        data.put("display_name_prefixed", "r/" + name);
+        data.put("name", "t5_" + Long.toString(id + 1, 36));
+        data.put("id", Long.toString(id + 1, 36));
+        data.put("title", "r/" + name);
+        data.put("public_description", "A synthetic subreddit");
+        data.put("description", "A synthetic subreddit");
+        data.put("subscribers", 100000);
+        data.put("accounts_active", 1000);
+        data.put("created", (double) TimeUnit.MILLISECONDS.toSeconds(startMs));
+        data.put("created_utc", (double) TimeUnit.MILLISECONDS.toSeconds(startMs));
+        data.put("over18", false);
+        data.put("quarantine", false);
+        data.put("subreddit_type", "public");
+        data.put("submission_type", "any");
+        data.put("lang", "en");
+        data.put("url", "/r/" + name + "/");
+        data.put("banner_img", "");
+        data.put("header_img", null);
+        data.put("icon_img", "");
+        data.put("key_color", "");
+        data.put("primary_color", "");
+        data.put("suggested_comment_sort", null);
+        data.put("user_is_banned", false);
+        data.put("user_is_contributor", false);
+        data.put("user_is_moderator", false);
+        data.put("user_is_muted", false);
+        data.put("user_is_subscriber", false);
+        return thing("t5", data);
+    }
+
+    private Object subreddits(String[] subreddits) {
+        List<Object> children = new ArrayList<>();
+        for (String subreddit : subreddits) {
+            children.add(about(subreddit));
+        }
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("modhash", null);
+        data.put("dist", children.size());
+        data.put("children", children);
+        data.put("after", null);
+        data.put("before", null);
+        return thing("Listing", data);
+    }
+
+    private Object listing(String[] subreddits, boolean comments, int limit, String after) {
+        long now = System.currentTimeMillis();
+        double rate = comments ? commentsPerSecond : postsPerSecond;
+        long available = rate > 0 ? (long) ((now - startMs) * rate / 1000) + 1 : 0;
+
+        // Every subreddit has the same rate, so the newest items across all of them are simply the
+        // newest few of each, interleaved by age (and then by the order the subreddits were given in)
+        long newest = available - 1;
+        long afterIndex = Long.MAX_VALUE;
+        int afterPosition = Integer.MAX_VALUE;
+        if (after != null) {
+            long value = Long.parseLong(after.substring(after.indexOf('_') + 1), 36);
+            afterIndex = value >>> INDEX_SHIFT;
+            int afterSubreddit = (int) (value & (COMMENT_FLAG - 1));
+            for (int position = 0; position < subreddits.length; position++) {
+                if (subredditId(subreddits[position]) == afterSubreddit) {
+                    afterPosition = position;
+                }
+            }
+            newest = Math.min(newest, afterIndex);
+        }
+        List<long[]> items = new ArrayList<>();
+        for (int position = 0; position < subreddits.length; position++) {
+            int id = subredditId(subreddits[position]);
+            for (long index = newest; index >= Math.max(0, newest - limit); index--) {
+                if (index < afterIndex || (index == afterIndex && position > afterPosition)) {
+                    items.add(new long[] {index, position, id});
+                }
+            }
+        }
+        items.sort(Comparator.<long[]>comparingLong(item -> -item[0]).thenComparingLong(item -> item[1]));
+
+        List<Object> children = new ArrayList<>();
+        String last = null;
+        for (long[] item : items.subList(0, Math.min(limit, items.size()))) {
+            String subreddit = subredditNames.get((int) item[2]);
+            String id = Long.toString(
+                    (item[0] << INDEX_SHIFT) | (comments ? COMMENT_FLAG : 0) | item[2],
+                    36
+            );
+            children.add(comments ? comment(subreddit, (int) item[2], id) : post(subreddit, (int) item[2], id));
+            last = (comments ? "t1_" : "t3_") + id;
+        }
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("modhash", null);
+        data.put("dist", children.size());
+        data.put("children", children);
+        data.put("after", children.size() == limit ? last : null);
+        data.put("before", null);
+        return thing("Listing", data);
+    }
+
+    private Object post(String subreddit, int subredditId, String id) {
+        long created = TimeUnit.MILLISECONDS.toSeconds(publishedAt(id));
+        String title = sentence(id.hashCode(), 12);
+        String selftext = sentence(id.hashCode() * 31, 80);
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("approved_at_utc", null);
+        data.put("subreddit", subreddit);
+        data.put("selftext", selftext);
+        data.put("selftext_html", "&lt;div class=\"md\"&gt;&lt;p&gt;" + selftext + "&lt;/p&gt;&lt;/div&gt;");
+        data.put("author_fullname", "t2_" + id);
+        data.put("saved", false);
+        data.put("gilded", 0);
+        data.put("clicked", false);
+        data.put("title", title);
+        data.put("link_flair_richtext", Collections.emptyList());
+        data.put("subreddit_name_prefixed", "r/" + subreddit);
+        data.put("hidden", false);
+        data.put("link_flair_css_class", null);
+        data.put("downs", 0);
+        data.put("hide_score", true);
+        data.put("name", "t3_" + id);
+        data.put("quarantine", false);
+        data.put("subreddit_type", "public");
+        data.put("ups", 1);
+        data.put("media_embed", Collections.emptyMap());
+        data.put("thumbnail_width", null);
+        data.put("thumbnail_height", null);
+        data.put("is_original_content", false);
+        data.put("user_reports", Collections.emptyList());
+        data.put("secure_media", null);
+        data.put("is_reddit_media_domain", false);
+        data.put("is_meta", false);
+        data.put("secure_media_embed", Collections.emptyMap());
+        data.put("link_flair_text", null);
+        data.put("can_mod_post", false);
+        data.put("score", 1);
+        data.put("approved_by", null);
+        data.put("thumbnail", "self");
+        data.put("edited", false);
+        data.put("author_flair_css_class", null);
+        data.put("author_flair_text", null);
+        data.put("author_flair_richtext", Collections.emptyList());
+        data.put("gildings", Collections.emptyMap());
+        data.put("is_self", true);
+        data.put("created", (double) created);
+        data.put("created_utc", (double) created);
+        data.put("domain", "self." + subreddit);
+        data.put("likes", null);
+        data.put("suggested_sort", null);
+        data.put("banned_at_utc", null);
+        data.put("view_count", null);
+        data.put("archived", false);
+        data.put("no_follow", true);
+        data.put("is_crosspostable", true);
+        data.put("pinned", false);
+        data.put("over_18", false);
+        data.put("media_only", false);
+        data.put("can_gild", true);
+        data.put("spoiler", false);
+        data.put("locked", false);
+        data.put("visited", false);
+        data.put("num_reports", null);
+        data.put("distinguished", null);
+        data.put("subreddit_id", "t5_" + Long.toString(subredditId + 1, 36));
+        data.put("removal_reason", null);
+        data.put("id", id);
+        data.put("report_reasons", null);
+        data.put("author", "user_" + id);
+        data.put("num_crossposts", 0);
+        data.put("num_comments", 0);
+        data.put("send_replies", true);
+        data.put("contest_mode", false);
+        data.put("mod_reports", Collections.emptyList());
+        data.put("permalink", "/r/" + subreddit + "/comments/" + id + "/_/");
+        data.put("stickied", false);
+        data.put("url", "https://www.reddit.com/r/" + subreddit + "/comments/" + id + "/_/");
+        data.put("subreddit_subscribers", 100000);
+        data.put("media", null);
+        data.put("is_video", false);
+        return thing("t3", data);
+    }
+
+    private Object comment(String subreddit, int subredditId, String id) {
+        long created = TimeUnit.MILLISECONDS.toSeconds(publishedAt(id));
+        String body = sentence(id.hashCode(), 24);
+        String link = Long.toString(Long.parseLong(id, 36) >>> INDEX_SHIFT, 36);
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("approved_at_utc", null);
+        data.put("edited", false);
+        data.put("banned_by", null);
+        data.put("removal_reason", null);
+        data.put("link_id", "t3_" + link);
+        data.put("likes", null);
+        data.put("replies", "");
+        data.put("user_reports", Collections.emptyList());
+        data.put("saved", false);
+        data.put("id", id);
+        data.put("banned_at_utc", null);
+        data.put("gilded", 0);
+        data.put("archived", false);
+        data.put("no_follow", true);
+        data.put("author", "user_" + id);
+        data.put("num_comments", 1);
+        data.put("can_mod_post", false);
+        data.put("created", (double) created);
+        data.put("created_utc", (double) created);
+        data.put("send_replies", true);
+        data.put("parent_id", "t3_" + link);
+        data.put("score", 1);
+        data.put("author_fullname", "t2_" + id);
+        data.put("over_18", false);
+        data.put("approved_by", null);
+        data.put("subreddit_id", "t5_" + Long.toString(subredditId + 1, 36));
+        data.put("body", body);
+        data.put("body_html", "&lt;div class=\"md\"&gt;&lt;p&gt;" + body + "&lt;/p&gt;&lt;/div&gt;");
+        data.put("link_title", sentence(link.hashCode(), 10));
+        data.put("author_flair_css_class", null);
+        data.put("author_flair_text", null);
+        data.put("author_flair_richtext", Collections.emptyList());
+        data.put("name", "t1_" + id);
+        data.put("downs", 0);
+        data.put("is_submitter", false);
+        data.put("gildings", Collections.emptyMap());
+        data.put("collapsed_reason", null);
+        data.put("distinguished", null);
+        data.put("stickied", false);
+        data.put("can_gild", true);
+        data.put("subreddit", subreddit);
+        data.put("score_hidden", false);
+        data.put("permalink", "/r/" + subreddit + "/comments/" + link + "/_/" + id + "/");
+        data.put("num_reports", null);
+        data.put("link_permalink", "https://www.reddit.com/r/" + subreddit + "/comments/" + link + "/_/");
+        data.put("report_reasons", null);
+        data.put("link_author", "user_" + link);
+        data.put("link_url", "https://www.reddit.com/r/" + subreddit + "/comments/" + link + "/_/");
+        data.put("collapsed", false);
+        data.put("subreddit_name_prefixed", "r/" + subreddit);
+        data.put("controversiality", 0);
+        data.put("locked", false);
+        data.put("mod_reports", Collections.emptyList());
+        data.put("quarantine", false);
+        data.put("subreddit_type", "public");
+        data.put("ups", 1);
+        return thing("t1", data);
+    }
+
+    private int subredditId(String subreddit) {
+        return subredditIds.computeIfAbsent(subreddit.toLowerCase(Locale.ROOT), lowercase -> {
+            synchronized (subredditNames) {
+                subredditNames.add(subreddit);
+                return subredditNames.size() - 1;
+            }
+        });
+    }
+
+    private static String sentence(int seed, int words) {
+        StringBuilder result = new StringBuilder();
+        int state = seed;
+        for (int i = 0; i < words; i++) {
+            state = state * 1103515245 + 12345;
+            if (i > 0) {
+                result.append(' ');
+            }
+            result.append(WORDS[(state >>> 16) % WORDS.length]);
+        }
+        return result.append('.').toString();
+    }
+
+    private static String parameter(String query, String name) {
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith(name + "=")) {
+                    return parameter.substring(name.length() + 1);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Object thing(String kind, Map<String, Object> data) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("kind", kind);
+        result.put("data", data);
+        return result;
+    }
+
+    private static Object error(int code, String message) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("message", message);
+        result.put("error", code);
+        return result;
+    }
+
+    private static void respond(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = JSON.toJson(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.benchmarks;
+
+import com.github.c0urante.kafka.connect.reddit.model.PostSourceRecordConverter;
+import com.github.c0urante.kafka.connect.reddit.model.RawSourceRecordConverter;
+import com.github.c0urante.kafka.connect.reddit.model.RawThing;
+import com.github.c0urante.kafka.connect.reddit.model.ValueFormat;
+import net.dean.jraw.models.Submission;
+import org.apache.kafka.connect.source.SourceRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of converting a single post into a record, cycling through the posts in a
+ * fixture listing. Each operation is one record.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PostConversionBenchmark {
+
+    @Param({"large-self-posts", "image-posts"})
+    public String fixture;
+
+    @Param({"map", "struct", "json_bytes"})
+    public String format;
+
+    private List<Submission> posts;
+    private List<RawThing> rawPosts;
+    private PostSourceRecordConverter converter;
+    private RawSourceRecordConverter rawConverter;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        ValueFormat valueFormat = ValueFormat.parse(format);
+        if (valueFormat.isRaw()) {
+            rawPosts = Fixtures.raw(fixture);
+            rawConverter = new RawSourceRecordConverter(
+                    "reddit-posts",
+                    valueFormat,
+                    PostSourceRecordConverter::sourcePartition
+            );
+        } else {
+            posts = Fixtures.posts(fixture);
+            converter = new PostSourceRecordConverter("reddit-posts", valueFormat, Collections.emptyList(), -1);
+        }
+        next = 0;
+    }
+
+    @Benchmark
+    public SourceRecord convert() {
+        if (rawConverter != null) {
+            RawThing post = rawPosts.get(next);
+            next = (next + 1) % rawPosts.size();
+            return rawConverter.convert(post);
+        }
+        Submission post = posts.get(next);
+        next = (next + 1) % posts.size();
+        return converter.convert(post);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.benchmarks;
+
+import com.github.c0urante.kafka.connect.reddit.model.CommentSourceRecordConverter;
+import com.github.c0urante.kafka.connect.reddit.model.RawSourceRecordConverter;
+import com.github.c0urante.kafka.connect.reddit.model.RawThing;
+import com.github.c0urante.kafka.connect.reddit.model.ValueFormat;
+import com.github.c0urante.kafka.connect.reddit.stream.DedupIndex;
+import net.dean.jraw.models.Comment;
+import org.apache.kafka.connect.source.SourceRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures everything a stream reader does to turn a new comment into a record: checking it
+ * against (and adding it to) the dedup index, building its source offset, and converting it. Each
+ * operation is one record, and every comment looks new, the way a busy firehose of comments does.
+ * Run with {@code -prof gc} to see how much each record allocates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RecordConstructionBenchmark {
+
+    // More than the dedup index remembers, so that recycled IDs are never seen as duplicates
+    private static final int DISTINCT_IDS = 1 << 16;
+    private static final long START_MS = 1546300800000L;
+
+    @Param({"small-comments"})
+    public String fixture;
+
+    @Param({"map", "struct", "json_bytes"})
+    public String format;
+
+    // How many comments share each second; the IDs of all of them end up in the offset
+    @Param({"1", "20"})
+    public int commentsPerSecond;
+
+    private List<Comment> comments;
+    private List<RawThing> rawComments;
+    private CommentSourceRecordConverter converter;
+    private RawSourceRecordConverter rawConverter;
+    private DedupIndex dedupIndex;
+    private String[] ids;
+    private long sequence;
+
+    @Setup
+    public void setUp() {
+        ValueFormat valueFormat = ValueFormat.parse(format);
+        if (valueFormat.isRaw()) {
+            rawComments = Fixtures.raw(fixture);
+            rawConverter = new RawSourceRecordConverter(
+                    "reddit-comments",
+                    valueFormat,
+                    CommentSourceRecordConverter::sourcePartition
+            );
+        } else {
+            comments = Fixtures.comments(fixture);
+            converter = new CommentSourceRecordConverter("reddit-comments", valueFormat, Collections.emptyList(), -1);
+        }
+        dedupIndex = new DedupIndex(Collections.emptyMap(), CommentSourceRecordConverter::sourcePartition);
+        ids = new String[DISTINCT_IDS];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = Integer.toString(i, 36);
+        }
+        sequence = 0;
+    }
+
+    @Benchmark
+    public SourceRecord construct() {
+        String id = ids[(int) (sequence % ids.length)];
+        long createdMs = START_MS + (sequence / commentsPerSecond) * 1000;
+        int next = (int) (sequence++ % (rawConverter != null ? rawComments.size() : comments.size()));
+
+        if (rawConverter != null) {
+            RawThing comment = rawComments.get(next);
+            Map<String, Object> sourceOffset = dedupIndex.offsetIfOriginal(comment.getSubreddit(), id, createdMs);
+            return rawConverter.convert(comment, sourceOffset);
+        }
+        Comment comment = comments.get(next);
+        Map<String, Object> sourceOffset = dedupIndex.offsetIfOriginal(comment.getSubreddit(), id, createdMs);
+        return converter.convert(comment, sourceOffset);
+    }
+}
@@ -0,0 +1,386 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.benchmarks;
+
+import com.github.c0urante.kafka.connect.reddit.RedditSourceConnector;
+import com.github.c0urante.kafka.connect.reddit.RedditSourceConnectorConfig;
+import com.github.c0urante.kafka.connect.reddit.RedditSourceTask;
+import org.apache.kafka.connect.connector.ConnectorContext;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.source.SourceRecord;
+import org.apache.kafka.connect.source.SourceTaskContext;
+import org.apache.kafka.connect.storage.OffsetStorageReader;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the connector against a {@link MockRedditServer} with 1, 2, ... up to a given number of
+ * tasks, and reports for each run the rate at which records were produced, the end-to-end latency
+ * of those records (from the moment they were published by the server to the moment they were
+ * returned from {@link RedditSourceTask#poll()}), and the CPU used.
+ * <p>
+ * Usage: {@code ThroughputHarness [<option>=<value> ...]}, where the options (and their defaults)
+ * are:
+ * <ul>
+ *     <li>{@code tasks} (4): the maximum number of tasks to run with</li>
+ *     <li>{@code subreddits} (20): the number of subreddits to read posts and comments from</li>
+ *     <li>{@code posts.rate} (1): new posts per second in each subreddit</li>
+ *     <li>{@code comments.rate} (5): new comments per second in each subreddit</li>
+ *     <li>{@code latency.ms} (50), {@code latency.jitter.ms} (25): the time taken by the server
+ *     to respond to each request</li>
+ *     <li>{@code quota} (0), {@code quota.window.s} (600): the server's rate limit; 0 for none</li>
+ *     <li>{@code warmup.s} (10), {@code duration.s} (30): how long to run before and while
+ *     measuring</li>
+ *     <li>{@code connector.<property>}: any connector property, such as
+ *     {@code connector.record.value.format=json_bytes}</li>
+ * </ul>
+ */
+public class ThroughputHarness {
+
+    private static final String SERVER_THREAD_PREFIX = "mock-reddit-";
+
+    private final Map<String, String> options;
+
+    public ThroughputHarness(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                System.err.printf("Usage: %s [<option>=<value> ...]%n", ThroughputHarness.class.getSimpleName());
+                System.exit(1);
+                return;
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+
+        ThroughputHarness harness = new ThroughputHarness(options);
+        System.out.printf(
+                "%5s %12s %12s %10s %10s %10s %10s %10s %12s %12s%n",
+                "tasks", "expected/s", "records/s", "p50 ms", "p95 ms", "p99 ms", "max ms",
+                "requests/s", "connector cpu", "process cpu"
+        );
+        for (int tasks = 1; tasks <= harness.intOption("tasks", 4); tasks++) {
+            Result result = harness.run(tasks);
+            System.out.printf(
+                    "%5d %12.1f %12.1f %10d %10d %10d %10d %10.1f %12.2f %12.2f%n",
+                    tasks, result.expectedRate, result.recordRate,
+                    result.latencyPercentile(0.5), result.latencyPercentile(0.95),
+                    result.latencyPercentile(0.99), result.latencyPercentile(1.0),
+                    result.requestRate, result.connectorCpu, result.processCpu
+            );
+        }
+    }
+
+    /**
+     * Run the connector against a fresh server with the given number of tasks.
+     */
+    public Result run(int maxTasks) throws Exception {
+        int subreddits = intOption("subreddits", 20);
+        double postsRate = doubleOption("posts.rate", 1);
+        double commentsRate = doubleOption("comments.rate", 5);
+        long warmupMs = TimeUnit.SECONDS.toMillis(intOption("warmup.s", 10));
+        long durationMs = TimeUnit.SECONDS.toMillis(intOption("duration.s", 30));
+
+        try (MockRedditServer server = new MockRedditServer(
+                postsRate,
+                commentsRate,
+                intOption("latency.ms", 50),
+                intOption("latency.jitter.ms", 25),
+                intOption("quota", 0),
+                intOption("quota.window.s", 600)
+        )) {
+            server.start();
+
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < subreddits; i++) {
+                names.add("sub" + i);
+            }
+            Map<String, String> props = new HashMap<>();
+            props.put(RedditSourceConnectorConfig.CONNECTOR_NAME_CONFIG, "throughput-harness");
+            props.put(RedditSourceConnectorConfig.POSTS_SUBREDDITS_CONFIG, String.join(",", names));
+            props.put(RedditSourceConnectorConfig.COMMENTS_SUBREDDITS_CONFIG, String.join(",", names));
+            props.put(RedditSourceConnectorConfig.REDDIT_API_URL_CONFIG, server.url());
+            for (Map.Entry<String, String> option : options.entrySet()) {
+                if (option.getKey().startsWith("connector.")) {
+                    props.put(option.getKey().substring("connector.".length()), option.getValue());
+                }
+            }
+
+            RedditSourceConnector connector = new RedditSourceConnector();
+            connector.initialize(new HarnessConnectorContext());
+            connector.start(props);
+
+            long measureFromMs = System.currentTimeMillis() + warmupMs;
+            long measureUntilMs = measureFromMs + durationMs;
+            List<Poller> pollers = new ArrayList<>();
+            for (Map<String, String> taskConfig : connector.taskConfigs(maxTasks)) {
+                RedditSourceTask task = new RedditSourceTask();
+                task.initialize(new HarnessTaskContext(taskConfig));
+                task.start(taskConfig);
+                Poller poller = new Poller(task, server, measureFromMs, measureUntilMs);
+                pollers.add(poller);
+                poller.start();
+            }
+
+            Thread.sleep(Math.max(0, measureFromMs - System.currentTimeMillis()));
+            long connectorCpuStart = connectorCpuNanos();
+            long processCpuStart = processCpuNanos();
+            long requestsStart = server.requests();
+            long wallStart = System.nanoTime();
+
+            Thread.sleep(Math.max(0, measureUntilMs - System.currentTimeMillis()));
+            long connectorCpu = connectorCpuNanos() - connectorCpuStart;
+            long processCpu = processCpuNanos() - processCpuStart;
+            long requests = server.requests() - requestsStart;
+            long wall = System.nanoTime() - wallStart;
+
+            for (Poller poller : pollers) {
+                poller.shutdown();
+            }
+            connector.stop();
+
+            long records = 0;
+            List<Long> latencies = new ArrayList<>();
+            for (Poller poller : pollers) {
+                records += poller.records.get();
+                synchronized (poller.latencies) {
+                    latencies.addAll(poller.latencies);
+                }
+            }
+            Collections.sort(latencies);
+            double wallSeconds = wall / 1e9;
+            return new Result(
+                    subreddits * (postsRate + commentsRate),
+                    records / (durationMs / 1000.0),
+                    latencies,
+                    requests / wallSeconds,
+                    connectorCpu / 1e9 / wallSeconds,
+                    processCpu / 1e9 / wallSeconds
+            );
+        }
+    }
+
+    private int intOption(String name, int defaultValue) {
+        String value = options.get(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    private double doubleOption(String name, double defaultValue) {
+        String value = options.get(name);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+
+    /**
+     * @return the CPU time used so far by every live thread other than the server's, in
+     * nanoseconds
+     */
+    private static long connectorCpuNanos() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Map<Long, String> names = new HashMap<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            names.put(thread.getId(), thread.getName());
+        }
+        long result = 0;
+        for (long id : threads.getAllThreadIds()) {
+            String name = names.get(id);
+            if (name != null && name.startsWith(SERVER_THREAD_PREFIX)) {
+                continue;
+            }
+            long cpu = threads.getThreadCpuTime(id);
+            if (cpu > 0) {
+                result += cpu;
+            }
+        }
+        return result;
+    }
+
+    private static long processCpuNanos() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return 0;
+    }
+
+    /**
+     * @return the ID of the post or comment in the given record value, or null if it can't be
+     * found (for example, because it was projected out)
+     */
+    private static String id(Object value) {
+        if (value instanceof Struct) {
+            Struct struct = (Struct) value;
+            return struct.schema().field("id") != null ? struct.getString("id") : null;
+        } else if (value instanceof Map) {
+            Object result = ((Map<?, ?>) value).get("id");
+            return result instanceof String ? (String) result : null;
+        }
+        String json = value instanceof byte[] ? new String((byte[]) value, StandardCharsets.UTF_8) : (String) value;
+        if (json == null) {
+            return null;
+        }
+        // Cheaper than parsing the whole thing; the server never puts anything unusual in IDs
+        int start = json.indexOf("\"id\":\"");
+        if (start < 0) {
+            return null;
+        }
+        start += "\"id\":\"".length();
+        return json.substring(start, json.indexOf('"', start));
+    }
+
+    /**
+     * The results of a single run.
+     */
+    public static class Result {
+        private final double expectedRate;
+        private final double recordRate;
+        private final List<Long> latencies;
+        private final double requestRate;
+        private final double connectorCpu;
+        private final double processCpu;
+
+        /**
+         * @param expectedRate the rate at which the server published new posts and comments
+         * @param recordRate the rate at which the tasks produced records
+         * @param latencies the end-to-end latencies of the records, in milliseconds, sorted
+         * @param requestRate the rate at which requests were made to the server
+         * @param connectorCpu the average number of cores used by threads other than the server's
+         * @param processCpu the average number of cores used by the whole process
+         */
+        public Result(
+                double expectedRate,
+                double recordRate,
+                List<Long> latencies,
+                double requestRate,
+                double connectorCpu,
+                double processCpu
+        ) {
+            this.expectedRate = expectedRate;
+            this.recordRate = recordRate;
+            this.latencies = latencies;
+            this.requestRate = requestRate;
+            this.connectorCpu = connectorCpu;
+            this.processCpu = processCpu;
+        }
+
+        public long latencyPercentile(double percentile) {
+            if (latencies.isEmpty()) {
+                return -1;
+            }
+            int index = (int) Math.ceil(percentile * latencies.size()) - 1;
+            return latencies.get(Math.max(0, Math.min(latencies.size() - 1, index)));
+        }
+    }
+
+    /**
+     * Polls a single task in a loop, as the framework would, and records the latency of every
+     * record produced during the measurement window.
+     */
+    private static class Poller extends Thread {
+        private final RedditSourceTask task;
+        private final MockRedditServer server;
+        private final long measureFromMs;
+        private final long measureUntilMs;
+        private final AtomicLong records;
+        private final List<Long> latencies;
+        private volatile boolean running;
+
+        public Poller(RedditSourceTask task, MockRedditServer server, long measureFromMs, long measureUntilMs) {
+            super("throughput-harness-poller");
+            this.task = task;
+            this.server = server;
+            this.measureFromMs = measureFromMs;
+            this.measureUntilMs = measureUntilMs;
+            this.records = new AtomicLong();
+            this.latencies = new ArrayList<>();
+            this.running = true;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                List<SourceRecord> batch = task.poll();
+                long now = System.currentTimeMillis();
+                if (batch == null || now < measureFromMs || now >= measureUntilMs) {
+                    continue;
+                }
+                records.addAndGet(batch.size());
+                synchronized (latencies) {
+                    for (SourceRecord record : batch) {
+                        String id = id(record.value());
+                        if (id != null) {
+                            latencies.add(now - server.publishedAt(id));
+                        }
+                    }
+                }
+            }
+        }
+
+        public void shutdown() throws InterruptedException {
+            running = false;
+            task.stop();
+            join();
+        }
+    }
+
+    private static class HarnessConnectorContext implements ConnectorContext {
+        @Override
+        public void requestTaskReconfiguration() {
+            // The harness never changes its set of tasks partway through a run
+        }
+
+        @Override
+        public void raiseError(Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static class HarnessTaskContext implements SourceTaskContext {
+        private final Map<String, String> configs;
+
+        public HarnessTaskContext(Map<String, String> configs) {
+            this.configs = configs;
+        }
+
+        @Override
+        public Map<String, String> configs() {
+            return configs;
+        }
+
+        @Override
+        public OffsetStorageReader offsetStorageReader() {
+            // Every run starts from scratch
+            return new OffsetStorageReader() {
+                @Override
+                public <T> Map<String, Object> offset(Map<String, T> partition) {
+                    return null;
+                }
+
+                @Override
+                public <T> Map<Map<String, T>, Map<String, Object>> offsets(Collection<Map<String, T>> partitions) {
+                    return Collections.emptyMap();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit;
+
+import com.github.c0urante.kafka.connect.reddit.stream.Reddit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Periodically measures how many new posts and comments per second arrive in each of a
+ * connector's subreddits, by looking at the creation times in the newest page of each listing.
+ * Costs one request per subreddit per listing per measurement.
+ */
+class ActivityMonitor implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ActivityMonitor.class);
+
+    private final Reddit reddit;
+    private final Runnable onMeasurement;
+    private final ScheduledExecutorService executor;
+
+    private volatile List<String> postSubreddits;
+    private volatile List<String> commentSubreddits;
+    private volatile Map<String, Double> postRates;
+    private volatile Map<String, Double> commentRates;
+
+    /**
+     * @param reddit the client to make requests with; closed when the monitor is closed
+     * @param onMeasurement invoked (from the monitor's thread) after every round of measurements
+     */
+    public ActivityMonitor(
+            Reddit reddit,
+            List<String> postSubreddits,
+            List<String> commentSubreddits,
+            Runnable onMeasurement
+    ) {
+        this.reddit = reddit;
+        this.postSubreddits = postSubreddits;
+        this.commentSubreddits = commentSubreddits;
+        this.onMeasurement = onMeasurement;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread result = new Thread(runnable, "reddit-activity-monitor");
+            result.setDaemon(true);
+            return result;
+        });
+
+        this.postRates = Collections.emptyMap();
+        this.commentRates = Collections.emptyMap();
+    }
+
+    /**
+     * Change which subreddits are measured, starting from the next round of measurements.
+     */
+    public void setSubreddits(List<String> postSubreddits, List<String> commentSubreddits) {
+        this.postSubreddits = postSubreddits;
+        this.commentSubreddits = commentSubreddits;
+    }
+
+    /**
+     * Begin measuring activity, immediately and then once every {@code intervalMs} milliseconds.
+     */
+    public void start(long intervalMs) {
+        executor.scheduleWithFixedDelay(this::measure, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the most recently measured rates of new posts, in items per second; subreddits that
+     * have never been measured successfully are absent
+     */
+    public Map<String, Double> postRates() {
+        return postRates;
+    }
+
+    /**
+     * @return the most recently measured rates of new comments, in items per second; subreddits
+     * that have never been measured successfully are absent
+     */
+    public Map<String, Double> commentRates() {
+        return commentRates;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for activity monitor to stop");
+            Thread.currentThread().interrupt();
+        }
+        reddit.close();
+    }
+
+    private void measure() {
+        postRates = measure(postSubreddits, postRates, reddit::postsPerSecond, "posts");
+        commentRates = measure(commentSubreddits, commentRates, reddit::commentsPerSecond, "comments");
+        if (Thread.currentThread().isInterrupted()) {
+            return;
+        }
+        try {
+            onMeasurement.run();
+        } catch (RuntimeException e) {
+            log.warn("Failed to act on new subreddit activity measurements", e);
+        }
+    }
+
+    private Map<String, Double> measure(
+            List<String> subreddits,
+            Map<String, Double> previous,
+            ToDoubleFunction<String> rate,
+            String thingType
+    ) {
+        Map<String, Double> result = new HashMap<>();
+        for (String subreddit : subreddits) {
+            if (Thread.currentThread().isInterrupted()) {
+                return previous;
+            }
+            try {
+                result.put(subreddit, rate.applyAsDouble(subreddit));
+            } catch (RuntimeException e) {
+                log.debug("Failed to measure rate of new {} in r/{}", thingType, subreddit, e);
+                // Keep the last measurement, if there was one
+                if (previous.containsKey(subreddit)) {
+                    result.put(subreddit, previous.get(subreddit));
+                }
+            }
+        }
+        log.debug("Measured rates of new {}: {}", thingType, result);
+        return Collections.unmodifiableMap(result);
+    }
+}
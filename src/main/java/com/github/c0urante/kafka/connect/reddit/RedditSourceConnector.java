@@ -10,41 +10,92 @@ package com.github.c0urante.kafka.connect.reddit;
 import com.github.c0urante.kafka.connect.reddit.stream.Reddit;
 import com.github.c0urante.kafka.connect.reddit.version.Version;
 import org.apache.kafka.common.config.ConfigDef;
+import org.apache.kafka.common.config.ConfigException;
 import org.apache.kafka.connect.connector.Task;
+import org.apache.kafka.connect.errors.ConnectException;
 import org.apache.kafka.connect.source.SourceConnector;
-import org.apache.kafka.connect.util.ConnectorUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.ToDoubleFunction;
 
 public class RedditSourceConnector extends SourceConnector {
 
     private static final Logger log = LoggerFactory.getLogger(RedditSourceConnector.class);
 
+    // Subreddits with no activity still cost requests to read, so never treat them as free
+    private static final double MIN_WEIGHT = 1e-3;
+
     private RedditSourceConnectorConfig config;
     private Map<String, String> configProps;
+    private volatile ActivityMonitor activityMonitor;
+    // Either from the connector's config or from the subreddits file, if there is one
+    private volatile List<String> postSubreddits;
+    private volatile List<String> commentSubreddits;
+    private volatile List<TaskAssignor.TaskAssignment> currentAssignment;
 
     @Override
     public void start(Map<String, String> props) {
         configProps = new HashMap<>(props);
         config = new RedditSourceConnectorConfig(props);
+        // Fail fast on invalid field projections instead of waiting for the tasks to do so
+        config.validateConverters();
+
+        String subredditsFile = config.getSubredditsFile();
+        if (subredditsFile == null) {
+            postSubreddits = config.getPostSubreddits();
+            commentSubreddits = config.getCommentSubreddits();
+        } else if (!config.getAllSubreddits().isEmpty()) {
+            throw new ConfigException(
+                    RedditSourceConnectorConfig.SUBREDDITS_FILE_CONFIG,
+                    subredditsFile,
+                    "Must be empty if " + RedditSourceConnectorConfig.POSTS_SUBREDDITS_CONFIG + " or "
+                            + RedditSourceConnectorConfig.COMMENTS_SUBREDDITS_CONFIG + " is set"
+            );
+        } else {
+            SubredditsFile.Contents contents;
+            try {
+                contents = SubredditsFile.read(subredditsFile);
+            } catch (IOException e) {
+                throw new ConnectException("Failed to read subreddits from " + subredditsFile, e);
+            }
+            postSubreddits = contents.postSubreddits();
+            commentSubreddits = contents.commentSubreddits();
+        }
 
-        Reddit reddit = config.createClient();
         // Subreddits can be created/deleted/made public/made private while the connector is
         // running, so we only log a warning if we can't access a subreddit here instead of raising
         // an exception
-        for (String subreddit : config.getAllSubreddits()) {
-            if (!reddit.canAccessSubreddit(subreddit)) {
+        try (Reddit reddit = config.createClient()) {
+            SubredditValidator validator = new SubredditValidator(reddit, config.getApiUrl());
+            Set<String> allSubreddits = new HashSet<>(postSubreddits);
+            allSubreddits.addAll(commentSubreddits);
+            for (String subreddit : validator.inaccessible(allSubreddits)) {
                 log.warn(
                         "Unable to access subreddit r/{}; it may not exist, or be set to private",
                         subreddit
                 );
             }
         }
+
+        long rebalanceIntervalMs = config.getTaskRebalanceIntervalMs();
+        if (rebalanceIntervalMs > 0) {
+            activityMonitor = new ActivityMonitor(
+                    config.createClient(),
+                    postSubreddits,
+                    commentSubreddits,
+                    this::maybeRequestReconfiguration
+            );
+            activityMonitor.start(rebalanceIntervalMs);
+        }
     }
 
     @Override
@@ -54,51 +105,155 @@ public class RedditSourceConnector extends SourceConnector {
 
     @Override
     public List<Map<String, String>> taskConfigs(int maxTasks) {
-        List<List<String>> partitionedPostSubreddits =
-                ConnectorUtils.groupPartitions(config.getPostSubreddits(), maxTasks);
-        List<List<String>> partitionedCommentSubreddits =
-                ConnectorUtils.groupPartitions(config.getCommentSubreddits(), maxTasks);
-        int numTasks = Math.min(config.getPostSubreddits().size() + config.getCommentSubreddits().size(), maxTasks);
+        String subredditsFile = config.getSubredditsFile();
+        // Pick up any changes made to the subreddits file since the connector was started, so that
+        // every task starts out reading the same subreddits it would have reached on its own
+        rereadSubredditsFile();
+        List<String> postSubreddits = this.postSubreddits;
+        List<String> commentSubreddits = this.commentSubreddits;
+        List<TaskAssignor.TaskAssignment> assignment = taskAssignor().assign(
+                postSubreddits,
+                commentSubreddits,
+                maxTasks
+        );
+        this.currentAssignment = assignment;
 
+        // With a subreddits file, there's always at least one task to watch it, even if it's empty
+        int numTasks = subredditsFile != null ? Math.max(1, assignment.size()) : assignment.size();
         List<Map<String, String>> result = new ArrayList<>(numTasks);
         for (int i = 0; i < numTasks; i++) {
             Map<String, String> taskConfig = new HashMap<>(configProps);
-            result.add(taskConfig);
             taskConfig.remove(RedditSourceConnectorConfig.POSTS_SUBREDDITS_CONFIG);
             taskConfig.remove(RedditSourceConnectorConfig.COMMENTS_SUBREDDITS_CONFIG);
-        }
-
-        int task = 0;
-        for (List<String> postSubreddits : partitionedPostSubreddits) {
-            if (postSubreddits.isEmpty()) {
-                continue;
+            taskConfig.put(RedditSourceConnectorConfig.TASK_ID_CONFIG, Integer.toString(i));
+            if (subredditsFile != null) {
+                taskConfig.put(RedditSourceConnectorConfig.TASK_COUNT_CONFIG, Integer.toString(numTasks));
+                taskConfig.put(
+                        RedditSourceConnectorConfig.ASSIGNED_POSTS_SUBREDDITS_CONFIG,
+                        String.join(",", postSubreddits)
+                );
+                taskConfig.put(
+                        RedditSourceConnectorConfig.ASSIGNED_COMMENTS_SUBREDDITS_CONFIG,
+                        String.join(",", commentSubreddits)
+                );
             }
-
-            result.get(task).put(
-                    RedditSourceConnectorConfig.POSTS_SUBREDDITS_CONFIG,
-                    String.join(",", postSubreddits)
-            );
-            task = (task + 1) % numTasks;
-        }
-        for (List<String> commentSubreddits : partitionedCommentSubreddits) {
-            if (commentSubreddits.isEmpty()) {
+            if (i >= assignment.size()) {
+                result.add(taskConfig);
                 continue;
             }
-
-            result.get(task).put(
-                    RedditSourceConnectorConfig.COMMENTS_SUBREDDITS_CONFIG,
-                    String.join(",", commentSubreddits)
-            );
-            task = (task + 1) % numTasks;
+            TaskAssignor.TaskAssignment task = assignment.get(i);
+            if (!task.postSubreddits().isEmpty()) {
+                taskConfig.put(
+                        RedditSourceConnectorConfig.POSTS_SUBREDDITS_CONFIG,
+                        String.join(",", task.postSubreddits())
+                );
+            }
+            if (!task.commentSubreddits().isEmpty()) {
+                taskConfig.put(
+                        RedditSourceConnectorConfig.COMMENTS_SUBREDDITS_CONFIG,
+                        String.join(",", task.commentSubreddits())
+                );
+            }
+            result.add(taskConfig);
         }
         return result;
     }
 
     @Override
     public void stop() {
+        if (activityMonitor != null) {
+            activityMonitor.close();
+            activityMonitor = null;
+        }
+        currentAssignment = null;
+        postSubreddits = null;
+        commentSubreddits = null;
         config = null;
     }
 
+    /**
+     * If there is a subreddits file, update the connector's subreddits (and those whose activity
+     * is measured) to the ones currently listed in it.
+     */
+    private void rereadSubredditsFile() {
+        RedditSourceConnectorConfig config = this.config;
+        if (config == null || config.getSubredditsFile() == null) {
+            return;
+        }
+        String subredditsFile = config.getSubredditsFile();
+        SubredditsFile.Contents contents;
+        try {
+            contents = SubredditsFile.read(subredditsFile);
+        } catch (IOException e) {
+            log.warn("Failed to read subreddits from {}; keeping the ones read before", subredditsFile, e);
+            return;
+        }
+        postSubreddits = contents.postSubreddits();
+        commentSubreddits = contents.commentSubreddits();
+        ActivityMonitor activityMonitor = this.activityMonitor;
+        if (activityMonitor != null) {
+            activityMonitor.setSubreddits(contents.postSubreddits(), contents.commentSubreddits());
+        }
+    }
+
+    /**
+     * Invoked after every round of activity measurements; requests a task reconfiguration if the
+     * busiest task has become sufficiently heavier than it would be under a fresh assignment.
+     * Subreddits added to the subreddits file since the last round are measured from the next
+     * round on.
+     */
+    private void maybeRequestReconfiguration() {
+        rereadSubredditsFile();
+        List<TaskAssignor.TaskAssignment> currentAssignment = this.currentAssignment;
+        RedditSourceConnectorConfig config = this.config;
+        List<String> postSubreddits = this.postSubreddits;
+        List<String> commentSubreddits = this.commentSubreddits;
+        if (currentAssignment == null || config == null || postSubreddits == null || commentSubreddits == null
+                || currentAssignment.size() < 2) {
+            return;
+        }
+
+        TaskAssignor taskAssignor = taskAssignor();
+        double currentMaxLoad = taskAssignor.maxLoad(currentAssignment);
+        double balancedMaxLoad = taskAssignor.maxLoad(taskAssignor.assign(
+                postSubreddits,
+                commentSubreddits,
+                currentAssignment.size()
+        ));
+        if (currentMaxLoad > balancedMaxLoad * (1 + config.getTaskRebalanceThreshold())) {
+            log.info(
+                    "Busiest task now has a load of {} items/sec, compared to {} items/sec if subreddits "
+                            + "were reassigned; requesting task reconfiguration",
+                    currentMaxLoad,
+                    balancedMaxLoad
+            );
+            context.requestTaskReconfiguration();
+        }
+    }
+
+    private TaskAssignor taskAssignor() {
+        if (activityMonitor != null
+                && !(activityMonitor.postRates().isEmpty() && activityMonitor.commentRates().isEmpty())) {
+            return new TaskAssignor(
+                    measuredWeights(activityMonitor.postRates()),
+                    measuredWeights(activityMonitor.commentRates())
+            );
+        }
+
+        Map<String, Double> configuredWeights = config.getSubredditWeights();
+        ToDoubleFunction<String> weights = subreddit -> Math.max(
+                MIN_WEIGHT,
+                configuredWeights.getOrDefault(subreddit.toLowerCase(Locale.ROOT), 1.0)
+        );
+        return new TaskAssignor(weights, weights);
+    }
+
+    private static ToDoubleFunction<String> measuredWeights(Map<String, Double> rates) {
+        // Subreddits that couldn't be measured are assumed to be of average activity
+        double averageRate = rates.values().stream().mapToDouble(Double::doubleValue).average().orElse(MIN_WEIGHT);
+        return subreddit -> Math.max(MIN_WEIGHT, rates.getOrDefault(subreddit, averageRate));
+    }
+
     @Override
     public ConfigDef config() {
         return RedditSourceConnectorConfig.CONFIG_DEF;
@@ -7,25 +7,62 @@
 
 package com.github.c0urante.kafka.connect.reddit;
 
+import com.github.c0urante.kafka.connect.reddit.metrics.TaskMetrics;
+import com.github.c0urante.kafka.connect.reddit.model.AuthorMetadata;
+import com.github.c0urante.kafka.connect.reddit.model.CommentSourceRecordConverter;
+import com.github.c0urante.kafka.connect.reddit.model.Enricher;
+import com.github.c0urante.kafka.connect.reddit.model.MetadataCache;
+import com.github.c0urante.kafka.connect.reddit.model.PostSourceRecordConverter;
+import com.github.c0urante.kafka.connect.reddit.model.RawSourceRecordConverter;
+import com.github.c0urante.kafka.connect.reddit.model.RawThing;
+import com.github.c0urante.kafka.connect.reddit.model.SubredditMetadata;
+import com.github.c0urante.kafka.connect.reddit.model.ThingFilter;
+import com.github.c0urante.kafka.connect.reddit.model.ValueFormat;
+import com.github.c0urante.kafka.connect.reddit.stream.AdaptivePollScheduler;
+import com.github.c0urante.kafka.connect.reddit.stream.ArchiveClient;
+import com.github.c0urante.kafka.connect.reddit.stream.FetchEngine;
+import com.github.c0urante.kafka.connect.reddit.stream.RecordBuffer;
 import com.github.c0urante.kafka.connect.reddit.stream.Reddit;
+import com.github.c0urante.kafka.connect.reddit.stream.RepostDetector;
+import net.dean.jraw.models.Comment;
+import net.dean.jraw.models.Submission;
+import net.dean.jraw.models.UniquelyIdentifiable;
 import net.dean.jraw.pagination.Paginator;
+import okhttp3.HttpUrl;
 import org.apache.kafka.common.config.AbstractConfig;
 import org.apache.kafka.common.config.ConfigDef;
+import org.apache.kafka.common.config.ConfigException;
 
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 
 public class RedditSourceConnectorConfig extends AbstractConfig {
 
     public static final String OAUTH_CLIENT_ID = "_7fRyo80H7qdFA";
 
+    // Not user-facing; set by the framework and the connector, respectively, in task configs
+    public static final String CONNECTOR_NAME_CONFIG = "name";
+    public static final String TASK_ID_CONFIG = "task.id";
+    // Not user-facing either; set by the connector in task configs when subreddits are read from a
+    // file, so that each task can tell which subreddits added to the file since then are its own
+    public static final String TASK_COUNT_CONFIG = "task.count";
+    public static final String ASSIGNED_POSTS_SUBREDDITS_CONFIG = "assigned.posts.subreddits";
+    public static final String ASSIGNED_COMMENTS_SUBREDDITS_CONFIG = "assigned.comments.subreddits";
+
 
     public static final String COMMENTS_SUBREDDITS_CONFIG = "comments.subreddits";
     public static final String COMMENTS_SUBREDDITS_DEFAULT = "";
@@ -43,16 +80,348 @@ public class RedditSourceConnectorConfig extends AbstractConfig {
     public static final String POSTS_TOPIC_DEFAULT = "reddit-posts";
     public static final String POSTS_TOPIC_DOC = "The name of the topic to write posts to";
 
+    public static final String SUBREDDITS_FILE_CONFIG = "subreddits.file";
+    public static final String SUBREDDITS_FILE_DEFAULT = "";
+    public static final String SUBREDDITS_FILE_DOC = "The path to a properties file that lists the subreddits to "
+            + "read, under the keys " + POSTS_SUBREDDITS_CONFIG + " and " + COMMENTS_SUBREDDITS_CONFIG + ", in place "
+            + "of those settings. The file must be present at the same path on every worker. Tasks watch it for "
+            + "changes and start or stop reading subreddits as they're added to or removed from it, without being "
+            + "restarted. If empty, subreddits are only read from the connector's config.";
+
+    public static final String SUBREDDITS_FILE_POLL_INTERVAL_MS_CONFIG = "subreddits.file.poll.interval.ms";
+    public static final String SUBREDDITS_FILE_POLL_INTERVAL_MS_DEFAULT = "30000";
+    public static final String SUBREDDITS_FILE_POLL_INTERVAL_MS_DOC = "How often, in milliseconds, tasks check the "
+            + "file given by " + SUBREDDITS_FILE_CONFIG + " for changes";
+
+
+    public static final String RECORD_VALUE_FORMAT_CONFIG = "record.value.format";
+    public static final String RECORD_VALUE_FORMAT_DEFAULT = ValueFormat.MAP.toString();
+    public static final String RECORD_VALUE_FORMAT_DOC = "The format to use for the values of post and comment "
+            + "records. If '" + ValueFormat.MAP + "', values are schemaless maps containing every field returned by "
+            + "Reddit. If '" + ValueFormat.STRUCT + "', values are structs with a fixed, versioned schema, which "
+            + "allows schema-based converters such as Avro to be used and generally results in much more compact "
+            + "serialized records. If '" + ValueFormat.JSON_STRING + "' or '" + ValueFormat.JSON_BYTES + "', values "
+            + "are the JSON returned by Reddit for each post or comment, as-is, with a string or bytes schema "
+            + "respectively; this skips deserialization of that JSON almost entirely and is the cheapest format "
+            + "to produce, but field projection and text truncation are not supported with it.";
+
+
+    public static final String POSTS_FIELDS_CONFIG = "posts.fields";
+    public static final String POSTS_FIELDS_DEFAULT = "";
+    public static final String POSTS_FIELDS_DOC = "The fields to include in the values of post records, in order. "
+            + "If empty, all fields are included. Can't be used with the '" + ValueFormat.JSON_STRING + "' and '"
+            + ValueFormat.JSON_BYTES + "' formats, which always include every field.";
+
+    public static final String COMMENTS_FIELDS_CONFIG = "comments.fields";
+    public static final String COMMENTS_FIELDS_DEFAULT = "";
+    public static final String COMMENTS_FIELDS_DOC = "The fields to include in the values of comment records, in "
+            + "order. If empty, all fields are included. Can't be used with the '" + ValueFormat.JSON_STRING + "' and '"
+            + ValueFormat.JSON_BYTES + "' formats, which always include every field.";
+
+    public static final String TEXT_MAX_LENGTH_CONFIG = "text.max.length";
+    public static final String TEXT_MAX_LENGTH_DEFAULT = "-1";
+    public static final String TEXT_MAX_LENGTH_DOC = "The maximum number of characters to include in the large "
+            + "text fields of records (the 'selftext' field of posts and the 'body' field of comments); anything "
+            + "past that is truncated. If negative, text fields are never truncated. Can't be used with the '"
+            + ValueFormat.JSON_STRING + "' and '" + ValueFormat.JSON_BYTES + "' formats, which never truncate text.";
+
+
+    private static final String FILTER_RULES_DOC = " Rules have the form '<field> <operator> <value>' and are "
+            + "separated by semicolons, such as 'over_18 == true; score < 1; title ~ (?i)giveaway'. The operators "
+            + "are '==' and '!=' (for numbers, true, false, null and strings), '<', '<=', '>' and '>=' (for numbers; "
+            + "timestamps are compared in seconds since the epoch), and '~' and '!~' (for whether a field contains a "
+            + "match for a regular expression). Anything that matches any rule is dropped before it is converted "
+            + "into a record. With the '" + ValueFormat.JSON_STRING + "' and '" + ValueFormat.JSON_BYTES + "' "
+            + "formats, any top-level field of the JSON returned by Reddit can be used; otherwise, only the fields of "
+            + "the struct schema can.";
+
+    public static final String POSTS_FILTER_CONFIG = "posts.filter";
+    public static final String POSTS_FILTER_DEFAULT = "";
+    public static final String POSTS_FILTER_DOC = "Rules for which new posts to drop instead of writing to Kafka."
+            + FILTER_RULES_DOC;
+
+    public static final String COMMENTS_FILTER_CONFIG = "comments.filter";
+    public static final String COMMENTS_FILTER_DEFAULT = "";
+    public static final String COMMENTS_FILTER_DOC = "Rules for which new comments to drop instead of writing to "
+            + "Kafka." + FILTER_RULES_DOC;
+
+    public static final String FILTER_AUTHORS_DENY_CONFIG = "filter.authors.deny";
+    public static final String FILTER_AUTHORS_DENY_DEFAULT = "";
+    public static final String FILTER_AUTHORS_DENY_DOC = "Authors (case-insensitive) whose new posts and comments "
+            + "are dropped instead of being written to Kafka, such as known bots.";
+
+    public static final String FILTER_AUTHORS_ALLOW_CONFIG = "filter.authors.allow";
+    public static final String FILTER_AUTHORS_ALLOW_DEFAULT = "";
+    public static final String FILTER_AUTHORS_ALLOW_DOC = "If not empty, the only authors (case-insensitive) whose "
+            + "new posts and comments are written to Kafka; everything else is dropped.";
+
+    public static final String POSTS_REPOSTS_CONFIG = "posts.reposts";
+    public static final String POSTS_REPOSTS_NONE = "none";
+    public static final String POSTS_REPOSTS_TAG = "tag";
+    public static final String POSTS_REPOSTS_DROP = "drop";
+    public static final String POSTS_REPOSTS_DEFAULT = POSTS_REPOSTS_NONE;
+    public static final String POSTS_REPOSTS_DOC = "What to do with new posts that link to the same URL as a post "
+            + "read recently, or that are crossposts of one. If '" + POSTS_REPOSTS_TAG + "', their records are given "
+            + "a '" + RepostDetector.HEADER + "' header with a value of true. If '" + POSTS_REPOSTS_DROP + "', they "
+            + "are dropped instead of being written to Kafka. If '" + POSTS_REPOSTS_NONE + "', reposts aren't looked "
+            + "for. URLs are compared without their scheme, any leading 'www.', fragments, UTM parameters or trailing "
+            + "slashes. Crosspost parents are only available with the '" + ValueFormat.JSON_STRING + "' and '"
+            + ValueFormat.JSON_BYTES + "' formats; with the others, only URLs are compared.";
+
+    public static final String POSTS_REPOSTS_WINDOW_MS_CONFIG = "posts.reposts.window.ms";
+    public static final String POSTS_REPOSTS_WINDOW_MS_DEFAULT = "86400000";
+    public static final String POSTS_REPOSTS_WINDOW_MS_DOC = "How long, in milliseconds, URLs and posts are "
+            + "remembered for when looking for reposts. Each is remembered for at least this long and at most twice "
+            + "as long, unless more posts are read in that time than expected, in which case they are forgotten "
+            + "sooner.";
+
+    public static final String POSTS_REPOSTS_FALSE_POSITIVE_RATE_CONFIG = "posts.reposts.false.positive.rate";
+    public static final String POSTS_REPOSTS_FALSE_POSITIVE_RATE_DEFAULT = "0.001";
+    public static final String POSTS_REPOSTS_FALSE_POSITIVE_RATE_DOC = "The probability that a post which isn't a "
+            + "repost is mistaken for one anyway. Lower rates take more memory.";
+
+    public static final String POSTS_REPOSTS_EXPECTED_POSTS_CONFIG = "posts.reposts.expected.posts";
+    public static final String POSTS_REPOSTS_EXPECTED_POSTS_DEFAULT = "100000";
+    public static final String POSTS_REPOSTS_EXPECTED_POSTS_DOC = "The number of posts each task is expected to read "
+            + "per " + POSTS_REPOSTS_WINDOW_MS_CONFIG + ", which (along with "
+            + POSTS_REPOSTS_FALSE_POSITIVE_RATE_CONFIG + ") determines the fixed amount of memory used to "
+            + "remember them. The defaults take about 700KB per task.";
+
+    public static final String COMMENTS_EXPAND_SUBREDDITS_CONFIG = "comments.expand.subreddits";
+    public static final String COMMENTS_EXPAND_SUBREDDITS_DEFAULT = "";
+    public static final String COMMENTS_EXPAND_SUBREDDITS_DOC = "A list of subreddits, out of those in "
+            + POSTS_SUBREDDITS_CONFIG + " (or in " + SUBREDDITS_FILE_CONFIG + "), to read the entire comment tree of every new post from. Comments read this "
+            + "way are written to " + COMMENTS_TOPIC_CONFIG + " in the same format as any other comments, which "
+            + "takes far fewer requests than reading every new comment in a subreddit when only some posts or "
+            + "subreddits are of interest. Subreddits shouldn't be in both this and " + COMMENTS_SUBREDDITS_CONFIG
+            + ", or their comments will be written twice.";
+
+    public static final String COMMENTS_EXPAND_DELAY_MS_CONFIG = "comments.expand.delay.ms";
+    public static final String COMMENTS_EXPAND_DELAY_MS_DEFAULT = Long.toString(60L * 60 * 1000, 10);
+    public static final String COMMENTS_EXPAND_DELAY_MS_DOC = "How long, in milliseconds, after a post was "
+            + "published to read its comment tree, for subreddits in " + COMMENTS_EXPAND_SUBREDDITS_CONFIG + ". Each "
+            + "tree is only read once, so anything posted after that is not read.";
+
+    public static final String COMMENTS_EXPAND_THREADS_CONFIG = "comments.expand.threads";
+    public static final String COMMENTS_EXPAND_THREADS_DEFAULT = "2";
+    public static final String COMMENTS_EXPAND_THREADS_DOC = "The number of comment trees that each task reads "
+            + "at once, for subreddits in " + COMMENTS_EXPAND_SUBREDDITS_CONFIG;
+
+    public static final String COMMENTS_EXPAND_MAX_REQUESTS_CONFIG = "comments.expand.max.requests";
+    public static final String COMMENTS_EXPAND_MAX_REQUESTS_DEFAULT = "50";
+    public static final String COMMENTS_EXPAND_MAX_REQUESTS_DOC = "The maximum number of requests to make to "
+            + "Reddit when reading a single comment tree, for subreddits in " + COMMENTS_EXPAND_SUBREDDITS_CONFIG
+            + ". The first request returns up to 500 comments and each one after that up to 100; anything left after "
+            + "that is skipped.";
+
+
+    public static final String UPDATES_TOPIC_CONFIG = "updates.topic";
+    public static final String UPDATES_TOPIC_DEFAULT = "";
+    public static final String UPDATES_TOPIC_DOC = "The topic to write updated posts and comments to. Every post and "
+            + "comment read from a subreddit is read again at each of the intervals in updates.schedule.ms"
+            + " after it was first read, and is written to this topic, keyed by its full name and in the same "
+            + "format as when it was first read, if its score, comment count, text, flair, or moderation status "
+            + "has changed since it was last read. If empty, posts and comments are not read again.";
+
+    public static final String UPDATES_SCHEDULE_MS_CONFIG = "updates.schedule.ms";
+    public static final String UPDATES_SCHEDULE_MS_DEFAULT = "300000,3600000,86400000";
+    public static final String UPDATES_SCHEDULE_MS_DOC = "How long, in milliseconds, after each post or comment was "
+            + "first read to read it again, in ascending order, if " + UPDATES_TOPIC_CONFIG + " is set. Items "
+            + "are read again in batches of up to 100, which may be held back for up to 30 seconds to fill up.";
+
+    public static final String UPDATES_MAX_TRACKED_CONFIG = "updates.max.tracked";
+    public static final String UPDATES_MAX_TRACKED_DEFAULT = "100000";
+    public static final String UPDATES_MAX_TRACKED_DOC = "The maximum number of posts and of comments that each "
+            + "task waits to read again at once, if " + UPDATES_TOPIC_CONFIG + " is set. Items read while this "
+            + "many are being waited on are never read again.";
+
+
+    public static final String ENRICH_SUBREDDITS_CONFIG = "enrich.subreddits";
+    public static final String ENRICH_SUBREDDITS_DEFAULT = "false";
+    public static final String ENRICH_SUBREDDITS_DOC = "Whether to add metadata about each post's or comment's "
+            + "subreddit (its subscriber count, type, NSFW flag, and creation time) to its record, as a '"
+            + SubredditMetadata.FIELD + "' field. Metadata is cached by each task, and looked up in batches of up "
+            + "to 100 subreddits at a time.";
+
+    public static final String ENRICH_AUTHORS_CONFIG = "enrich.authors";
+    public static final String ENRICH_AUTHORS_DEFAULT = "false";
+    public static final String ENRICH_AUTHORS_DOC = "Whether to add metadata about each post's or comment's "
+            + "author (their link and comment karma, and the creation time of their account) to its record, as an '"
+            + AuthorMetadata.FIELD + "' field. Metadata is cached by each task, and looked up in batches of up to "
+            + "100 users at a time. Only supported with the json_string and json_bytes value formats.";
+
+    public static final String ENRICH_CACHE_MAX_ENTRIES_CONFIG = "enrich.cache.max.entries";
+    public static final String ENRICH_CACHE_MAX_ENTRIES_DEFAULT = "10000";
+    public static final String ENRICH_CACHE_MAX_ENTRIES_DOC = "The maximum number of subreddits, and of authors, "
+            + "that each task keeps metadata for at once. Once this many are cached, the least recently used ones "
+            + "are evicted to make room for new ones.";
+
+    public static final String ENRICH_CACHE_TTL_MS_CONFIG = "enrich.cache.ttl.ms";
+    public static final String ENRICH_CACHE_TTL_MS_DEFAULT = Long.toString(60L * 60 * 1000, 10);
+    public static final String ENRICH_CACHE_TTL_MS_DOC = "How long, in milliseconds, to keep cached metadata "
+            + "about a subreddit or author before looking it up again.";
+
 
     public static final String CONSUMPTION_LIMIT_CONFIG = "consumption.limit";
     public static final String CONSUMPTION_LIMIT_DEFAULT = Integer.toString(Paginator.RECOMMENDED_MAX_LIMIT, 10);
     public static final String CONSUMPTION_LIMIT_DOC = "The maximum number of Things to consume per API call";
 
 
+    public static final String POLL_MAX_WAIT_MS_CONFIG = "poll.max.wait.ms";
+    public static final String POLL_MAX_WAIT_MS_DEFAULT = "1000";
+    public static final String POLL_MAX_WAIT_MS_DOC = "The maximum amount of time, in milliseconds, that a task "
+            + "will wait for new posts or comments to arrive before returning an empty batch to the framework";
+
+    public static final String POLL_MAX_RECORDS_CONFIG = "poll.max.records";
+    public static final String POLL_MAX_RECORDS_DEFAULT = "1000";
+    public static final String POLL_MAX_RECORDS_DOC = "The maximum number of records that a task will return "
+            + "to the framework in a single batch";
+
+    public static final String BUFFER_MAX_RECORDS_CONFIG = "buffer.max.records";
+    public static final String BUFFER_MAX_RECORDS_DEFAULT = "10000";
+    public static final String BUFFER_MAX_RECORDS_DOC = "The maximum number of records that may be buffered "
+            + "in memory for each of the posts and comments streams of a task before reading from Reddit is paused";
+
+    public static final String BUFFER_MAX_BYTES_CONFIG = "buffer.max.bytes";
+    public static final String BUFFER_MAX_BYTES_DEFAULT = Long.toString(32L * 1024 * 1024, 10);
+    public static final String BUFFER_MAX_BYTES_DOC = "The (estimated) maximum number of bytes of records that "
+            + "may be buffered in memory for each of the posts and comments streams of a task before reading from "
+            + "Reddit is paused";
+
+
+    public static final String POLL_INTERVAL_MIN_MS_CONFIG = "poll.interval.min.ms";
+    public static final String POLL_INTERVAL_MIN_MS_DEFAULT = "1000";
+    public static final String POLL_INTERVAL_MIN_MS_DOC = "The minimum amount of time, in milliseconds, to wait "
+            + "between requests for new posts or comments from the same subreddits. The actual interval adapts to "
+            + "the rate at which new posts or comments arrive.";
+
+    public static final String POLL_INTERVAL_MAX_MS_CONFIG = "poll.interval.max.ms";
+    public static final String POLL_INTERVAL_MAX_MS_DEFAULT = "60000";
+    public static final String POLL_INTERVAL_MAX_MS_DOC = "The maximum amount of time, in milliseconds, to wait "
+            + "between requests for new posts or comments from the same subreddits. The actual interval adapts to "
+            + "the rate at which new posts or comments arrive. Must be at least " + POLL_INTERVAL_MIN_MS_CONFIG + ".";
+
+
+    public static final String SUBREDDITS_PER_REQUEST_CONFIG = "subreddits.per.request";
+    public static final String SUBREDDITS_PER_REQUEST_DEFAULT = "1";
+    public static final String SUBREDDITS_PER_REQUEST_DOC = "The maximum number of subreddits to combine into "
+            + "a single multireddit when reading new posts or comments. Each multireddit is read independently and "
+            + "in parallel with the others, and every request returns at most " + CONSUMPTION_LIMIT_CONFIG
+            + " items no matter how many subreddits it covers; larger values reduce the number of requests made to "
+            + "Reddit, but make it more likely that items from busy subreddits are missed between requests. "
+            + "r/all and r/popular are always read on their own.";
+
+    public static final String CATCHUP_MAX_PAGES_CONFIG = "catchup.max.pages";
+    public static final String CATCHUP_MAX_PAGES_DEFAULT = "10";
+    public static final String CATCHUP_MAX_PAGES_DOC = "The maximum number of pages of older posts or comments "
+            + "to read from each listing when a task starts, in order to catch up on anything that was published "
+            + "while the connector wasn't running. Reading stops as soon as it reaches the items that were read "
+            + "before, and everything that was found is produced oldest-first before the task moves on to new "
+            + "posts and comments. Pages hold up to " + CONSUMPTION_LIMIT_CONFIG + " items each and are read "
+            + "from different listings in parallel, up to fetch.threads at a time; Reddit only serves "
+            + "the newest 1000 or so items of any listing, so anything older than that can't be recovered. "
+            + "If 0, tasks only read new posts and comments.";
+
+    public static final String FETCH_THREADS_CONFIG = "fetch.threads";
+    public static final String FETCH_THREADS_DEFAULT = "2";
+    public static final String FETCH_THREADS_DOC = "The number of threads each task uses to read from Reddit. "
+            + "Every subreddit is read independently and at its own pace, and these threads are shared between "
+            + "all of them, so a handful is enough to follow even hundreds of subreddits; more may help if "
+            + "requests to Reddit are slow.";
+
+
+    public static final String SUBREDDIT_WEIGHTS_CONFIG = "subreddit.weights";
+    public static final String SUBREDDIT_WEIGHTS_DEFAULT = "";
+    public static final String SUBREDDIT_WEIGHTS_DOC = "The relative activity of subreddits, as a list of "
+            + "'<subreddit>:<weight>' pairs, used to spread subreddits across tasks so that each task has a similar "
+            + "load. Subreddits that aren't listed have a weight of 1. Ignored once the activity of the connector's "
+            + "subreddits has been measured; see task.rebalance.interval.ms.";
+
+    public static final String TASK_REBALANCE_INTERVAL_MS_CONFIG = "task.rebalance.interval.ms";
+    public static final String TASK_REBALANCE_INTERVAL_MS_DEFAULT = "0";
+    public static final String TASK_REBALANCE_INTERVAL_MS_DOC = "How often, in milliseconds, to measure the rate "
+            + "of new posts and comments in each subreddit, which is then used instead of " + SUBREDDIT_WEIGHTS_CONFIG
+            + " to spread subreddits across tasks; tasks are reconfigured when the rates drift far enough apart. "
+            + "Each measurement costs one request to Reddit per subreddit per listing. If 0, activity is never "
+            + "measured.";
+
+    public static final String TASK_REBALANCE_THRESHOLD_CONFIG = "task.rebalance.threshold";
+    public static final String TASK_REBALANCE_THRESHOLD_DEFAULT = "0.25";
+    public static final String TASK_REBALANCE_THRESHOLD_DOC = "How much heavier, as a fraction, the busiest task "
+            + "must be than it would be under a fresh assignment of subreddits before tasks are reconfigured";
+
+
+    public static final String BACKFILL_START_CONFIG = "backfill.start";
+    public static final String BACKFILL_START_DEFAULT = "";
+    public static final String BACKFILL_START_DOC = "The start of a period of time, as an ISO-8601 instant such as "
+            + "'2019-01-01T00:00:00Z', to read every post and comment from before reading new ones. If empty, tasks "
+            + "only read new posts and comments. Progress through the period is tracked in source offsets, so a "
+            + "restarted task picks up where it left off; to read a period again, change it or use a different "
+            + "connector name.";
+
+    public static final String BACKFILL_END_CONFIG = "backfill.end";
+    public static final String BACKFILL_END_DEFAULT = "";
+    public static final String BACKFILL_END_DOC = "The end of the period of time to read every post and comment "
+            + "from, as an ISO-8601 instant; required if " + BACKFILL_START_CONFIG + " is set. Should not be in the "
+            + "future.";
+
+    public static final String BACKFILL_SLICE_MS_CONFIG = "backfill.slice.ms";
+    public static final String BACKFILL_SLICE_MS_DEFAULT = Long.toString(24L * 60 * 60 * 1000, 10);
+    public static final String BACKFILL_SLICE_MS_DOC = "The length, in milliseconds, of the slices that the period "
+            + "of time given by " + BACKFILL_START_CONFIG + " and " + BACKFILL_END_CONFIG + " is split into. Every "
+            + "slice of every subreddit is read independently, so shorter slices allow more of the period to be read "
+            + "in parallel, and progress to be tracked more finely, at the cost of more source partitions.";
+
+    public static final String BACKFILL_PARALLELISM_CONFIG = "backfill.parallelism";
+    public static final String BACKFILL_PARALLELISM_DEFAULT = "4";
+    public static final String BACKFILL_PARALLELISM_DOC = "The number of slices that each task reads at once for "
+            + "each of the posts and comments streams. Requests to Reddit made while reading slices count against "
+            + "the same rate limit as every other request made by the connector.";
+
+    public static final String BACKFILL_THEN_CONFIG = "backfill.then";
+    public static final String BACKFILL_THEN_TAIL = "tail";
+    public static final String BACKFILL_THEN_STOP = "stop";
+    public static final String BACKFILL_THEN_DEFAULT = BACKFILL_THEN_TAIL;
+    public static final String BACKFILL_THEN_DOC = "What tasks do once they've read every slice of the period of "
+            + "time given by " + BACKFILL_START_CONFIG + " and " + BACKFILL_END_CONFIG + ". If '" + BACKFILL_THEN_TAIL
+            + "', they go on to read new posts and comments, starting from the end of the period for subreddits that "
+            + "haven't been read before. If '" + BACKFILL_THEN_STOP + "', they stop reading altogether.";
+
+    public static final String BACKFILL_ARCHIVE_URL_CONFIG = "backfill.archive.url";
+    public static final String BACKFILL_ARCHIVE_URL_DEFAULT = "";
+    public static final String BACKFILL_ARCHIVE_URL_DOC = "The URL of a Pushshift-compatible archive of Reddit, used "
+            + "to find the posts and comments published during the period of time given by " + BACKFILL_START_CONFIG
+            + " and " + BACKFILL_END_CONFIG + ", since Reddit's own listings can't be read by time and only go back "
+            + "so far; required if they are set. Only the names of items are read from the archive; the items "
+            + "themselves are read from Reddit.";
+
+    public static final String BACKFILL_ARCHIVE_AUTH_TOKEN_CONFIG = "backfill.archive.auth.token";
+    public static final String BACKFILL_ARCHIVE_AUTH_TOKEN_DEFAULT = "";
+    public static final String BACKFILL_ARCHIVE_AUTH_TOKEN_DOC = "The token to authenticate to the archive given by "
+            + BACKFILL_ARCHIVE_URL_CONFIG + " with, sent as a bearer token in the Authorization header of every "
+            + "request. If empty, requests are sent without credentials.";
+
+    public static final String BACKFILL_PROGRESS_TOPIC_CONFIG = "backfill.progress.topic";
+    public static final String BACKFILL_PROGRESS_TOPIC_DEFAULT = "";
+    public static final String BACKFILL_PROGRESS_TOPIC_DOC = "The topic to write a progress record to for each slice "
+            + "of the backfill that is read in full without producing any records, such as a slice of a quiet "
+            + "subreddit or one whose items have all since been deleted. These records are keyed by subreddit, with "
+            + "a struct value holding the subreddit, the type of item and the start and end of the slice, and are "
+            + "what lets the slice be recorded as finished. If empty, no progress records are written, and such "
+            + "slices are read again (costing one request to the archive each) whenever a task restarts before the "
+            + "backfill is finished.";
+
+
     public static final String REDDIT_LOG_HTTP_REQUESTS_CONFIG = "reddit.log.http.requests";
     public static final String REDDIT_LOG_HTTP_REQUESTS_DEFAULT = "false";
     public static final String REDDIT_LOG_HTTP_REQUESTS_DOC = "Whether to log HTTP requests made to Reddit";
 
+    public static final String REDDIT_API_URL_CONFIG = "reddit.api.url";
+    public static final String REDDIT_API_URL_DEFAULT = "";
+    public static final String REDDIT_API_URL_DOC = "The URL (scheme, host, and port) to send every request "
+            + "to Reddit to, including requests for OAuth tokens, in place of reddit.com. Only meant for testing "
+            + "the connector against a local stand-in for the Reddit API; if empty, requests are sent to Reddit.";
+
 
     public static final ConfigDef CONFIG_DEF = new ConfigDef()
             .define(
@@ -67,6 +436,19 @@ public class RedditSourceConnectorConfig extends AbstractConfig {
                     POSTS_SUBREDDITS_DEFAULT,
                     ConfigDef.Importance.HIGH,
                     POSTS_SUBREDDITS_DOC
+            ).define(
+                    SUBREDDITS_FILE_CONFIG,
+                    ConfigDef.Type.STRING,
+                    SUBREDDITS_FILE_DEFAULT,
+                    ConfigDef.Importance.MEDIUM,
+                    SUBREDDITS_FILE_DOC
+            ).define(
+                    SUBREDDITS_FILE_POLL_INTERVAL_MS_CONFIG,
+                    ConfigDef.Type.LONG,
+                    SUBREDDITS_FILE_POLL_INTERVAL_MS_DEFAULT,
+                    ConfigDef.Range.atLeast(1000),
+                    ConfigDef.Importance.LOW,
+                    SUBREDDITS_FILE_POLL_INTERVAL_MS_DOC
             ).define(
                     CONSUMPTION_LIMIT_CONFIG,
                     ConfigDef.Type.INT,
@@ -86,12 +468,308 @@ public class RedditSourceConnectorConfig extends AbstractConfig {
                     POSTS_TOPIC_DEFAULT,
                     ConfigDef.Importance.MEDIUM,
                     POSTS_TOPIC_DOC
+            ).define(
+                    POLL_INTERVAL_MIN_MS_CONFIG,
+                    ConfigDef.Type.LONG,
+                    POLL_INTERVAL_MIN_MS_DEFAULT,
+                    ConfigDef.Range.atLeast(0),
+                    ConfigDef.Importance.LOW,
+                    POLL_INTERVAL_MIN_MS_DOC
+            ).define(
+                    POLL_INTERVAL_MAX_MS_CONFIG,
+                    ConfigDef.Type.LONG,
+                    POLL_INTERVAL_MAX_MS_DEFAULT,
+                    ConfigDef.Range.atLeast(0),
+                    ConfigDef.Importance.LOW,
+                    POLL_INTERVAL_MAX_MS_DOC
+            ).define(
+                    POLL_MAX_WAIT_MS_CONFIG,
+                    ConfigDef.Type.LONG,
+                    POLL_MAX_WAIT_MS_DEFAULT,
+                    ConfigDef.Range.atLeast(0),
+                    ConfigDef.Importance.LOW,
+                    POLL_MAX_WAIT_MS_DOC
+            ).define(
+                    POLL_MAX_RECORDS_CONFIG,
+                    ConfigDef.Type.INT,
+                    POLL_MAX_RECORDS_DEFAULT,
+                    ConfigDef.Range.atLeast(1),
+                    ConfigDef.Importance.LOW,
+                    POLL_MAX_RECORDS_DOC
+            ).define(
+                    BUFFER_MAX_RECORDS_CONFIG,
+                    ConfigDef.Type.INT,
+                    BUFFER_MAX_RECORDS_DEFAULT,
+                    ConfigDef.Range.atLeast(1),
+                    ConfigDef.Importance.LOW,
+                    BUFFER_MAX_RECORDS_DOC
+            ).define(
+                    BUFFER_MAX_BYTES_CONFIG,
+                    ConfigDef.Type.LONG,
+                    BUFFER_MAX_BYTES_DEFAULT,
+                    ConfigDef.Range.atLeast(1),
+                    ConfigDef.Importance.LOW,
+                    BUFFER_MAX_BYTES_DOC
+            ).define(
+                    RECORD_VALUE_FORMAT_CONFIG,
+                    ConfigDef.Type.STRING,
+                    RECORD_VALUE_FORMAT_DEFAULT,
+                    ConfigDef.ValidString.in(ValueFormat.names()),
+                    ConfigDef.Importance.MEDIUM,
+                    RECORD_VALUE_FORMAT_DOC
+            ).define(
+                    POSTS_FIELDS_CONFIG,
+                    ConfigDef.Type.LIST,
+                    POSTS_FIELDS_DEFAULT,
+                    ConfigDef.Importance.MEDIUM,
+                    POSTS_FIELDS_DOC
+            ).define(
+                    COMMENTS_FIELDS_CONFIG,
+                    ConfigDef.Type.LIST,
+                    COMMENTS_FIELDS_DEFAULT,
+                    ConfigDef.Importance.MEDIUM,
+                    COMMENTS_FIELDS_DOC
+            ).define(
+                    POSTS_FILTER_CONFIG,
+                    ConfigDef.Type.STRING,
+                    POSTS_FILTER_DEFAULT,
+                    ConfigDef.Importance.MEDIUM,
+                    POSTS_FILTER_DOC
+            ).define(
+                    COMMENTS_FILTER_CONFIG,
+                    ConfigDef.Type.STRING,
+                    COMMENTS_FILTER_DEFAULT,
+                    ConfigDef.Importance.MEDIUM,
+                    COMMENTS_FILTER_DOC
+            ).define(
+                    FILTER_AUTHORS_DENY_CONFIG,
+                    ConfigDef.Type.LIST,
+                    FILTER_AUTHORS_DENY_DEFAULT,
+                    ConfigDef.Importance.MEDIUM,
+                    FILTER_AUTHORS_DENY_DOC
+            ).define(
+                    FILTER_AUTHORS_ALLOW_CONFIG,
+                    ConfigDef.Type.LIST,
+                    FILTER_AUTHORS_ALLOW_DEFAULT,
+                    ConfigDef.Importance.MEDIUM,
+                    FILTER_AUTHORS_ALLOW_DOC
+            ).define(
+                    POSTS_REPOSTS_CONFIG,
+                    ConfigDef.Type.STRING,
+                    POSTS_REPOSTS_DEFAULT,
+                    ConfigDef.ValidString.in(POSTS_REPOSTS_NONE, POSTS_REPOSTS_TAG, POSTS_REPOSTS_DROP),
+                    ConfigDef.Importance.MEDIUM,
+                    POSTS_REPOSTS_DOC
+            ).define(
+                    POSTS_REPOSTS_WINDOW_MS_CONFIG,
+                    ConfigDef.Type.LONG,
+                    POSTS_REPOSTS_WINDOW_MS_DEFAULT,
+                    ConfigDef.Range.atLeast(1),
+                    ConfigDef.Importance.LOW,
+                    POSTS_REPOSTS_WINDOW_MS_DOC
+            ).define(
+                    POSTS_REPOSTS_EXPECTED_POSTS_CONFIG,
+                    ConfigDef.Type.INT,
+                    POSTS_REPOSTS_EXPECTED_POSTS_DEFAULT,
+                    ConfigDef.Range.atLeast(1),
+                    ConfigDef.Importance.LOW,
+                    POSTS_REPOSTS_EXPECTED_POSTS_DOC
+            ).define(
+                    POSTS_REPOSTS_FALSE_POSITIVE_RATE_CONFIG,
+                    ConfigDef.Type.DOUBLE,
+                    POSTS_REPOSTS_FALSE_POSITIVE_RATE_DEFAULT,
+                    ConfigDef.Range.between(0.000001, 0.5),
+                    ConfigDef.Importance.LOW,
+                    POSTS_REPOSTS_FALSE_POSITIVE_RATE_DOC
+            ).define(
+                    COMMENTS_EXPAND_SUBREDDITS_CONFIG,
+                    ConfigDef.Type.LIST,
+                    COMMENTS_EXPAND_SUBREDDITS_DEFAULT,
+                    ConfigDef.Importance.MEDIUM,
+                    COMMENTS_EXPAND_SUBREDDITS_DOC
+            ).define(
+                    COMMENTS_EXPAND_DELAY_MS_CONFIG,
+                    ConfigDef.Type.LONG,
+                    COMMENTS_EXPAND_DELAY_MS_DEFAULT,
+                    ConfigDef.Range.atLeast(0),
+                    ConfigDef.Importance.LOW,
+                    COMMENTS_EXPAND_DELAY_MS_DOC
+            ).define(
+                    COMMENTS_EXPAND_THREADS_CONFIG,
+                    ConfigDef.Type.INT,
+                    COMMENTS_EXPAND_THREADS_DEFAULT,
+                    ConfigDef.Range.atLeast(1),
+                    ConfigDef.Importance.LOW,
+                    COMMENTS_EXPAND_THREADS_DOC
+            ).define(
+                    COMMENTS_EXPAND_MAX_REQUESTS_CONFIG,
+                    ConfigDef.Type.INT,
+                    COMMENTS_EXPAND_MAX_REQUESTS_DEFAULT,
+                    ConfigDef.Range.atLeast(1),
+                    ConfigDef.Importance.LOW,
+                    COMMENTS_EXPAND_MAX_REQUESTS_DOC
+            ).define(
+                    UPDATES_TOPIC_CONFIG,
+                    ConfigDef.Type.STRING,
+                    UPDATES_TOPIC_DEFAULT,
+                    ConfigDef.Importance.MEDIUM,
+                    UPDATES_TOPIC_DOC
+            ).define(
+                    UPDATES_SCHEDULE_MS_CONFIG,
+                    ConfigDef.Type.LIST,
+                    UPDATES_SCHEDULE_MS_DEFAULT,
+                    RedditSourceConnectorConfig::validateUpdatesSchedule,
+                    ConfigDef.Importance.LOW,
+                    UPDATES_SCHEDULE_MS_DOC
+            ).define(
+                    UPDATES_MAX_TRACKED_CONFIG,
+                    ConfigDef.Type.INT,
+                    UPDATES_MAX_TRACKED_DEFAULT,
+                    ConfigDef.Range.atLeast(1),
+                    ConfigDef.Importance.LOW,
+                    UPDATES_MAX_TRACKED_DOC
+            ).define(
+                    ENRICH_SUBREDDITS_CONFIG,
+                    ConfigDef.Type.BOOLEAN,
+                    ENRICH_SUBREDDITS_DEFAULT,
+                    ConfigDef.Importance.MEDIUM,
+                    ENRICH_SUBREDDITS_DOC
+            ).define(
+                    ENRICH_AUTHORS_CONFIG,
+                    ConfigDef.Type.BOOLEAN,
+                    ENRICH_AUTHORS_DEFAULT,
+                    ConfigDef.Importance.MEDIUM,
+                    ENRICH_AUTHORS_DOC
+            ).define(
+                    ENRICH_CACHE_MAX_ENTRIES_CONFIG,
+                    ConfigDef.Type.INT,
+                    ENRICH_CACHE_MAX_ENTRIES_DEFAULT,
+                    ConfigDef.Range.atLeast(1),
+                    ConfigDef.Importance.LOW,
+                    ENRICH_CACHE_MAX_ENTRIES_DOC
+            ).define(
+                    ENRICH_CACHE_TTL_MS_CONFIG,
+                    ConfigDef.Type.LONG,
+                    ENRICH_CACHE_TTL_MS_DEFAULT,
+                    ConfigDef.Range.atLeast(0),
+                    ConfigDef.Importance.LOW,
+                    ENRICH_CACHE_TTL_MS_DOC
+            ).define(
+                    TEXT_MAX_LENGTH_CONFIG,
+                    ConfigDef.Type.INT,
+                    TEXT_MAX_LENGTH_DEFAULT,
+                    ConfigDef.Range.atLeast(-1),
+                    ConfigDef.Importance.LOW,
+                    TEXT_MAX_LENGTH_DOC
+            ).define(
+                    SUBREDDITS_PER_REQUEST_CONFIG,
+                    ConfigDef.Type.INT,
+                    SUBREDDITS_PER_REQUEST_DEFAULT,
+                    ConfigDef.Range.atLeast(1),
+                    ConfigDef.Importance.LOW,
+                    SUBREDDITS_PER_REQUEST_DOC
+            ).define(
+                    CATCHUP_MAX_PAGES_CONFIG,
+                    ConfigDef.Type.INT,
+                    CATCHUP_MAX_PAGES_DEFAULT,
+                    ConfigDef.Range.atLeast(0),
+                    ConfigDef.Importance.LOW,
+                    CATCHUP_MAX_PAGES_DOC
+            ).define(
+                    FETCH_THREADS_CONFIG,
+                    ConfigDef.Type.INT,
+                    FETCH_THREADS_DEFAULT,
+                    ConfigDef.Range.atLeast(1),
+                    ConfigDef.Importance.LOW,
+                    FETCH_THREADS_DOC
+            ).define(
+                    SUBREDDIT_WEIGHTS_CONFIG,
+                    ConfigDef.Type.LIST,
+                    SUBREDDIT_WEIGHTS_DEFAULT,
+                    RedditSourceConnectorConfig::validateSubredditWeights,
+                    ConfigDef.Importance.LOW,
+                    SUBREDDIT_WEIGHTS_DOC
+            ).define(
+                    TASK_REBALANCE_INTERVAL_MS_CONFIG,
+                    ConfigDef.Type.LONG,
+                    TASK_REBALANCE_INTERVAL_MS_DEFAULT,
+                    ConfigDef.Range.atLeast(0),
+                    ConfigDef.Importance.LOW,
+                    TASK_REBALANCE_INTERVAL_MS_DOC
+            ).define(
+                    TASK_REBALANCE_THRESHOLD_CONFIG,
+                    ConfigDef.Type.DOUBLE,
+                    TASK_REBALANCE_THRESHOLD_DEFAULT,
+                    ConfigDef.Range.atLeast(0),
+                    ConfigDef.Importance.LOW,
+                    TASK_REBALANCE_THRESHOLD_DOC
+            ).define(
+                    BACKFILL_START_CONFIG,
+                    ConfigDef.Type.STRING,
+                    BACKFILL_START_DEFAULT,
+                    RedditSourceConnectorConfig::validateInstant,
+                    ConfigDef.Importance.MEDIUM,
+                    BACKFILL_START_DOC
+            ).define(
+                    BACKFILL_END_CONFIG,
+                    ConfigDef.Type.STRING,
+                    BACKFILL_END_DEFAULT,
+                    RedditSourceConnectorConfig::validateInstant,
+                    ConfigDef.Importance.MEDIUM,
+                    BACKFILL_END_DOC
+            ).define(
+                    BACKFILL_SLICE_MS_CONFIG,
+                    ConfigDef.Type.LONG,
+                    BACKFILL_SLICE_MS_DEFAULT,
+                    ConfigDef.Range.atLeast(60_000),
+                    ConfigDef.Importance.LOW,
+                    BACKFILL_SLICE_MS_DOC
+            ).define(
+                    BACKFILL_PARALLELISM_CONFIG,
+                    ConfigDef.Type.INT,
+                    BACKFILL_PARALLELISM_DEFAULT,
+                    ConfigDef.Range.atLeast(1),
+                    ConfigDef.Importance.LOW,
+                    BACKFILL_PARALLELISM_DOC
+            ).define(
+                    BACKFILL_THEN_CONFIG,
+                    ConfigDef.Type.STRING,
+                    BACKFILL_THEN_DEFAULT,
+                    ConfigDef.ValidString.in(BACKFILL_THEN_TAIL, BACKFILL_THEN_STOP),
+                    ConfigDef.Importance.LOW,
+                    BACKFILL_THEN_DOC
+            ).define(
+                    BACKFILL_ARCHIVE_URL_CONFIG,
+                    ConfigDef.Type.STRING,
+                    BACKFILL_ARCHIVE_URL_DEFAULT,
+                    RedditSourceConnectorConfig::validateApiUrl,
+                    ConfigDef.Importance.MEDIUM,
+                    BACKFILL_ARCHIVE_URL_DOC
+            ).define(
+                    BACKFILL_ARCHIVE_AUTH_TOKEN_CONFIG,
+                    ConfigDef.Type.PASSWORD,
+                    BACKFILL_ARCHIVE_AUTH_TOKEN_DEFAULT,
+                    ConfigDef.Importance.MEDIUM,
+                    BACKFILL_ARCHIVE_AUTH_TOKEN_DOC
+            ).define(
+                    BACKFILL_PROGRESS_TOPIC_CONFIG,
+                    ConfigDef.Type.STRING,
+                    BACKFILL_PROGRESS_TOPIC_DEFAULT,
+                    ConfigDef.Importance.LOW,
+                    BACKFILL_PROGRESS_TOPIC_DOC
             ).define(
                     REDDIT_LOG_HTTP_REQUESTS_CONFIG,
                     ConfigDef.Type.BOOLEAN,
                     REDDIT_LOG_HTTP_REQUESTS_DEFAULT,
                     ConfigDef.Importance.LOW,
                     REDDIT_LOG_HTTP_REQUESTS_DOC
+            ).define(
+                    REDDIT_API_URL_CONFIG,
+                    ConfigDef.Type.STRING,
+                    REDDIT_API_URL_DEFAULT,
+                    RedditSourceConnectorConfig::validateApiUrl,
+                    ConfigDef.Importance.LOW,
+                    REDDIT_API_URL_DOC
             );
 
     private final List<String> postSubreddits;
@@ -106,13 +784,272 @@ public class RedditSourceConnectorConfig extends AbstractConfig {
         this.commentSubreddits = getList(COMMENTS_SUBREDDITS_CONFIG);
         this.postsTopic = getString(POSTS_TOPIC_CONFIG);
         this.commentsTopic = getString(COMMENTS_TOPIC_CONFIG);
+
+        if (getLong(POLL_INTERVAL_MIN_MS_CONFIG) > getLong(POLL_INTERVAL_MAX_MS_CONFIG)) {
+            throw new ConfigException(
+                    POLL_INTERVAL_MAX_MS_CONFIG,
+                    getLong(POLL_INTERVAL_MAX_MS_CONFIG),
+                    "Must be at least " + POLL_INTERVAL_MIN_MS_CONFIG
+            );
+        }
+
+        Instant backfillStart = parseInstant(getString(BACKFILL_START_CONFIG));
+        Instant backfillEnd = parseInstant(getString(BACKFILL_END_CONFIG));
+        if (backfillStart != null && backfillEnd == null) {
+            throw new ConfigException(BACKFILL_END_CONFIG, "", "Must be set if " + BACKFILL_START_CONFIG + " is set");
+        } else if (backfillStart == null && backfillEnd != null) {
+            throw new ConfigException(BACKFILL_START_CONFIG, "", "Must be set if " + BACKFILL_END_CONFIG + " is set");
+        } else if (backfillStart != null && !backfillEnd.isAfter(backfillStart)) {
+            throw new ConfigException(
+                    BACKFILL_END_CONFIG,
+                    getString(BACKFILL_END_CONFIG),
+                    "Must be after " + BACKFILL_START_CONFIG
+            );
+        }
+        if (backfillStart != null && getString(BACKFILL_ARCHIVE_URL_CONFIG).trim().isEmpty()) {
+            throw new ConfigException(
+                    BACKFILL_ARCHIVE_URL_CONFIG,
+                    "",
+                    "Must be set if " + BACKFILL_START_CONFIG + " and " + BACKFILL_END_CONFIG + " are set"
+            );
+        }
+        if (getBoolean(ENRICH_AUTHORS_CONFIG) && !getValueFormat().isRaw()) {
+            throw new ConfigException(
+                    ENRICH_AUTHORS_CONFIG,
+                    true,
+                    "Author metadata is only supported with the " + ValueFormat.JSON_STRING + " and "
+                            + ValueFormat.JSON_BYTES + " value formats"
+            );
+        }
+        if (getValueFormat().isRaw()) {
+            // Raw values are copied straight from Reddit's responses, so they can't be projected or truncated
+            for (String fieldsConfig : Arrays.asList(POSTS_FIELDS_CONFIG, COMMENTS_FIELDS_CONFIG)) {
+                if (!getList(fieldsConfig).isEmpty()) {
+                    throw new ConfigException(
+                            fieldsConfig,
+                            String.join(",", getList(fieldsConfig)),
+                            "Field projection is not supported with the " + ValueFormat.JSON_STRING + " and "
+                                    + ValueFormat.JSON_BYTES + " value formats"
+                    );
+                }
+            }
+            if (getInt(TEXT_MAX_LENGTH_CONFIG) >= 0) {
+                throw new ConfigException(
+                        TEXT_MAX_LENGTH_CONFIG,
+                        getInt(TEXT_MAX_LENGTH_CONFIG),
+                        "Text truncation is not supported with the " + ValueFormat.JSON_STRING + " and "
+                                + ValueFormat.JSON_BYTES + " value formats"
+                );
+            }
+        }
     }
 
     public Reddit createClient() {
         return new Reddit(
                 OAUTH_CLIENT_ID,
                 getInt(CONSUMPTION_LIMIT_CONFIG),
-                getBoolean(REDDIT_LOG_HTTP_REQUESTS_CONFIG)
+                getInt(SUBREDDITS_PER_REQUEST_CONFIG),
+                getInt(CATCHUP_MAX_PAGES_CONFIG),
+                new AdaptivePollScheduler(
+                        getLong(POLL_INTERVAL_MIN_MS_CONFIG),
+                        getLong(POLL_INTERVAL_MAX_MS_CONFIG),
+                        getInt(CONSUMPTION_LIMIT_CONFIG)
+                ),
+                getBoolean(REDDIT_LOG_HTTP_REQUESTS_CONFIG),
+                getApiUrl()
+        );
+    }
+
+    public FetchEngine createFetchEngine() {
+        return new FetchEngine(getInt(FETCH_THREADS_CONFIG), "reddit-source-task");
+    }
+
+    public TaskMetrics createTaskMetrics() {
+        String connector = originalsStrings().getOrDefault(CONNECTOR_NAME_CONFIG, "unknown");
+        String task = originalsStrings().getOrDefault(TASK_ID_CONFIG, "unknown");
+        return new TaskMetrics(connector, task);
+    }
+
+    public RecordBuffer createBuffer() {
+        return new RecordBuffer(
+                getInt(BUFFER_MAX_RECORDS_CONFIG),
+                getLong(BUFFER_MAX_BYTES_CONFIG)
+        );
+    }
+
+    public ArchiveClient createArchiveClient() {
+        String authToken = getPassword(BACKFILL_ARCHIVE_AUTH_TOKEN_CONFIG).value().trim();
+        return new ArchiveClient(
+                getString(BACKFILL_ARCHIVE_URL_CONFIG).trim(),
+                authToken.isEmpty() ? null : authToken
+        );
+    }
+
+    /**
+     * @return the enricher for records produced by the task, or null if no metadata should be added
+     * to them
+     */
+    public Enricher createEnricher(Reddit reddit, TaskMetrics metrics) {
+        MetadataCache<SubredditMetadata> subreddits = null;
+        if (getBoolean(ENRICH_SUBREDDITS_CONFIG)) {
+            subreddits = createMetadataCache("subreddits", reddit::subredditMetadata);
+            metrics.registerCache(
+                    "subreddits",
+                    subreddits::hits,
+                    subreddits::misses,
+                    subreddits::hitRatio,
+                    subreddits::evictions,
+                    subreddits::size
+            );
+        }
+        MetadataCache<AuthorMetadata> authors = null;
+        if (getBoolean(ENRICH_AUTHORS_CONFIG)) {
+            authors = createMetadataCache("authors", reddit::authorMetadata);
+            metrics.registerCache(
+                    "authors",
+                    authors::hits,
+                    authors::misses,
+                    authors::hitRatio,
+                    authors::evictions,
+                    authors::size
+            );
+        }
+        return subreddits != null || authors != null ? new Enricher(subreddits, authors) : null;
+    }
+
+    /**
+     * Create (and then discard) the converters and filters for posts and comments, in order to catch
+     * invalid field projections and filter rules without needing a connection to Reddit.
+     */
+    public void validateConverters() {
+        MetadataCache<SubredditMetadata> subreddits = getBoolean(ENRICH_SUBREDDITS_CONFIG)
+                ? createMetadataCache("subreddits", names -> Collections.emptyMap())
+                : null;
+        MetadataCache<AuthorMetadata> authors = getBoolean(ENRICH_AUTHORS_CONFIG)
+                ? createMetadataCache("authors", names -> Collections.emptyMap())
+                : null;
+        Enricher enricher = subreddits != null || authors != null ? new Enricher(subreddits, authors) : null;
+        createPostConverter(enricher);
+        createCommentConverter(enricher);
+        if (getValueFormat().isRaw()) {
+            createRawPostFilter();
+            createRawCommentFilter();
+        } else {
+            createPostFilter();
+            createCommentFilter();
+        }
+    }
+
+    private <V> MetadataCache<V> createMetadataCache(String name, Function<List<String>, Map<String, V>> loader) {
+        return new MetadataCache<>(
+                name,
+                getInt(ENRICH_CACHE_MAX_ENTRIES_CONFIG),
+                getLong(ENRICH_CACHE_TTL_MS_CONFIG),
+                Reddit.MAX_METADATA_NAMES,
+                loader
+        );
+    }
+
+    public PostSourceRecordConverter createPostConverter(Enricher enricher) {
+        return new PostSourceRecordConverter(
+                postsTopic,
+                getValueFormat(),
+                getList(POSTS_FIELDS_CONFIG),
+                getInt(TEXT_MAX_LENGTH_CONFIG),
+                enricher
+        );
+    }
+
+    public CommentSourceRecordConverter createCommentConverter(Enricher enricher) {
+        return new CommentSourceRecordConverter(
+                commentsTopic,
+                getValueFormat(),
+                getList(COMMENTS_FIELDS_CONFIG),
+                getInt(TEXT_MAX_LENGTH_CONFIG),
+                enricher
+        );
+    }
+
+    /**
+     * @return the filter for new posts, or null if none has been configured
+     */
+    public ThingFilter<Submission> createPostFilter() {
+        return createFilter(POSTS_FILTER_CONFIG, PostSourceRecordConverter::fieldReader);
+    }
+
+    /**
+     * @return the filter for new comments, or null if none has been configured
+     */
+    public ThingFilter<Comment> createCommentFilter() {
+        return createFilter(COMMENTS_FILTER_CONFIG, CommentSourceRecordConverter::fieldReader);
+    }
+
+    public ThingFilter<RawThing> createRawPostFilter() {
+        return createFilter(POSTS_FILTER_CONFIG, RawSourceRecordConverter::fieldReader);
+    }
+
+    public ThingFilter<RawThing> createRawCommentFilter() {
+        return createFilter(COMMENTS_FILTER_CONFIG, RawSourceRecordConverter::fieldReader);
+    }
+
+    private <Thing> ThingFilter<Thing> createFilter(
+            String rulesConfig,
+            Function<List<String>, Function<Thing, Object[]>> fieldReaders
+    ) {
+        try {
+            return ThingFilter.compile(
+                    getString(rulesConfig),
+                    getList(FILTER_AUTHORS_DENY_CONFIG),
+                    getList(FILTER_AUTHORS_ALLOW_CONFIG),
+                    fieldReaders
+            );
+        } catch (ConfigException e) {
+            throw new ConfigException(rulesConfig, getString(rulesConfig), e.getMessage());
+        }
+    }
+
+    /**
+     * @return the detector for reposts among new posts, or null if reposts shouldn't be looked for
+     */
+    public RepostDetector<Submission> createRepostDetector() {
+        return createRepostDetector(post -> new Object[] {post.getUrl(), null});
+    }
+
+    public RepostDetector<RawThing> createRawRepostDetector() {
+        return createRepostDetector(RawSourceRecordConverter.fieldReader(Arrays.asList("url", "crosspost_parent")));
+    }
+
+    private <Thing extends UniquelyIdentifiable> RepostDetector<Thing> createRepostDetector(
+            Function<Thing, Object[]> fieldReader
+    ) {
+        String action = getString(POSTS_REPOSTS_CONFIG);
+        if (POSTS_REPOSTS_NONE.equals(action)) {
+            return null;
+        }
+        return new RepostDetector<>(
+                fieldReader,
+                POSTS_REPOSTS_DROP.equals(action),
+                getInt(POSTS_REPOSTS_EXPECTED_POSTS_CONFIG),
+                getDouble(POSTS_REPOSTS_FALSE_POSITIVE_RATE_CONFIG),
+                getLong(POSTS_REPOSTS_WINDOW_MS_CONFIG)
+        );
+    }
+
+    public RawSourceRecordConverter createRawPostConverter(Enricher enricher) {
+        return new RawSourceRecordConverter(
+                postsTopic,
+                getValueFormat(),
+                PostSourceRecordConverter::sourcePartition,
+                enricher
+        );
+    }
+
+    public RawSourceRecordConverter createRawCommentConverter(Enricher enricher) {
+        return new RawSourceRecordConverter(
+                commentsTopic,
+                getValueFormat(),
+                CommentSourceRecordConverter::sourcePartition,
+                enricher
         );
     }
 
@@ -131,6 +1068,191 @@ public class RedditSourceConnectorConfig extends AbstractConfig {
         return result;
     }
 
+    /**
+     * @return the path of the file to read subreddits from, or null if they should only be read from
+     * the connector's config
+     */
+    public String getSubredditsFile() {
+        String result = getString(SUBREDDITS_FILE_CONFIG).trim();
+        return result.isEmpty() ? null : result;
+    }
+
+    public long getSubredditsFilePollIntervalMs() {
+        return getLong(SUBREDDITS_FILE_POLL_INTERVAL_MS_CONFIG);
+    }
+
+    public int getTaskId() {
+        return Integer.parseInt(originalsStrings().getOrDefault(TASK_ID_CONFIG, "0"));
+    }
+
+    public int getTaskCount() {
+        return Integer.parseInt(originalsStrings().getOrDefault(TASK_COUNT_CONFIG, "1"));
+    }
+
+    /**
+     * @return every subreddit that posts were read from, across all tasks, when the task's
+     * subreddits were assigned to it
+     */
+    public List<String> getAssignedPostSubreddits() {
+        return parseInternalList(ASSIGNED_POSTS_SUBREDDITS_CONFIG);
+    }
+
+    /**
+     * @return every subreddit that comments were read from, across all tasks, when the task's
+     * subreddits were assigned to it
+     */
+    public List<String> getAssignedCommentSubreddits() {
+        return parseInternalList(ASSIGNED_COMMENTS_SUBREDDITS_CONFIG);
+    }
+
+    private List<String> parseInternalList(String name) {
+        String value = originalsStrings().get(name);
+        if (value == null || value.trim().isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<String> result = new ArrayList<>();
+        for (String element : value.split(",")) {
+            result.add(element.trim());
+        }
+        return result;
+    }
+
+    public long getPollMaxWaitMs() {
+        return getLong(POLL_MAX_WAIT_MS_CONFIG);
+    }
+
+    public int getPollMaxRecords() {
+        return getInt(POLL_MAX_RECORDS_CONFIG);
+    }
+
+    public ValueFormat getValueFormat() {
+        return ValueFormat.parse(getString(RECORD_VALUE_FORMAT_CONFIG));
+    }
+
+    /**
+     * @return the configured weight of each subreddit listed in {@link #SUBREDDIT_WEIGHTS_CONFIG},
+     * keyed by lowercased subreddit name
+     */
+    public Map<String, Double> getSubredditWeights() {
+        return parseSubredditWeights(getList(SUBREDDIT_WEIGHTS_CONFIG));
+    }
+
+    public long getTaskRebalanceIntervalMs() {
+        return getLong(TASK_REBALANCE_INTERVAL_MS_CONFIG);
+    }
+
+    public double getTaskRebalanceThreshold() {
+        return getDouble(TASK_REBALANCE_THRESHOLD_CONFIG);
+    }
+
+    /**
+     * @return the URL to send requests to in place of reddit.com, or null if requests should be
+     * sent to Reddit
+     */
+    public String getApiUrl() {
+        String result = getString(REDDIT_API_URL_CONFIG).trim();
+        return result.isEmpty() ? null : result;
+    }
+
+    /**
+     * @return the subreddits to read the comment tree of every new post from, out of the ones
+     * posts are read from by this task; with a subreddits file, the task may start reading posts
+     * from any subreddit later on, so every subreddit in {@link #COMMENTS_EXPAND_SUBREDDITS_CONFIG}
+     * is included
+     */
+    public Set<String> getCommentsExpandSubreddits() {
+        Set<String> expand = new HashSet<>();
+        for (String subreddit : getList(COMMENTS_EXPAND_SUBREDDITS_CONFIG)) {
+            expand.add(subreddit.toLowerCase(Locale.ROOT));
+        }
+        if (getSubredditsFile() != null) {
+            return expand;
+        }
+        Set<String> result = new HashSet<>();
+        for (String subreddit : postSubreddits) {
+            if (expand.contains(subreddit.toLowerCase(Locale.ROOT))) {
+                result.add(subreddit);
+            }
+        }
+        return result;
+    }
+
+    public long getCommentsExpandDelayMs() {
+        return getLong(COMMENTS_EXPAND_DELAY_MS_CONFIG);
+    }
+
+    public int getCommentsExpandThreads() {
+        return getInt(COMMENTS_EXPAND_THREADS_CONFIG);
+    }
+
+    public int getCommentsExpandMaxRequests() {
+        return getInt(COMMENTS_EXPAND_MAX_REQUESTS_CONFIG);
+    }
+
+    /**
+     * @return the topic to write updated posts and comments to, or null if they shouldn't be read
+     * again
+     */
+    public String getUpdatesTopic() {
+        String result = getString(UPDATES_TOPIC_CONFIG).trim();
+        return result.isEmpty() ? null : result;
+    }
+
+    public List<Long> getUpdatesScheduleMs() {
+        return parseUpdatesSchedule(getList(UPDATES_SCHEDULE_MS_CONFIG));
+    }
+
+    public int getUpdatesMaxTracked() {
+        return getInt(UPDATES_MAX_TRACKED_CONFIG);
+    }
+
+    public boolean isBackfillEnabled() {
+        return parseInstant(getString(BACKFILL_START_CONFIG)) != null;
+    }
+
+    /**
+     * @return the start of the period to read every post and comment from, in milliseconds since
+     * the epoch; only meaningful if {@link #isBackfillEnabled() backfill is enabled}
+     */
+    public long getBackfillStartMs() {
+        return parseInstant(getString(BACKFILL_START_CONFIG)).toEpochMilli();
+    }
+
+    /**
+     * @return the end of the period to read every post and comment from, in milliseconds since
+     * the epoch; only meaningful if {@link #isBackfillEnabled() backfill is enabled}
+     */
+    public long getBackfillEndMs() {
+        return parseInstant(getString(BACKFILL_END_CONFIG)).toEpochMilli();
+    }
+
+    public long getBackfillSliceMs() {
+        return getLong(BACKFILL_SLICE_MS_CONFIG);
+    }
+
+    /**
+     * @return the topic to write backfill progress records to, or null if none should be written
+     */
+    public String getBackfillProgressTopic() {
+        String result = getString(BACKFILL_PROGRESS_TOPIC_CONFIG).trim();
+        return result.isEmpty() ? null : result;
+    }
+
+    public int getBackfillParallelism() {
+        return getInt(BACKFILL_PARALLELISM_CONFIG);
+    }
+
+    /**
+     * @return whether to go on to read new posts and comments once the backfill is finished
+     */
+    public boolean isTailAfterBackfill() {
+        return BACKFILL_THEN_TAIL.equals(getString(BACKFILL_THEN_CONFIG));
+    }
+
+    public int getConsumptionLimit() {
+        return getInt(CONSUMPTION_LIMIT_CONFIG);
+    }
+
     public String getPostsTopic() {
         return postsTopic;
     }
@@ -139,6 +1261,82 @@ public class RedditSourceConnectorConfig extends AbstractConfig {
         return commentsTopic;
     }
 
+    private static void validateSubredditWeights(String name, Object value) {
+        @SuppressWarnings("unchecked")
+        List<String> weights = (List<String>) value;
+        parseSubredditWeights(weights);
+    }
+
+    private static void validateUpdatesSchedule(String name, Object value) {
+        @SuppressWarnings("unchecked")
+        List<String> schedule = (List<String>) value;
+        parseUpdatesSchedule(schedule);
+    }
+
+    private static void validateApiUrl(String name, Object value) {
+        String url = ((String) value).trim();
+        if (!url.isEmpty() && HttpUrl.parse(url) == null) {
+            throw new ConfigException(name, value, "Must be empty or an HTTP or HTTPS URL");
+        }
+    }
+
+    private static void validateInstant(String name, Object value) {
+        try {
+            parseInstant((String) value);
+        } catch (DateTimeParseException e) {
+            throw new ConfigException(name, value, "Must be empty or an ISO-8601 instant such as '2019-01-01T00:00:00Z'");
+        }
+    }
+
+    private static Instant parseInstant(String instant) {
+        String trimmed = instant.trim();
+        return trimmed.isEmpty() ? null : Instant.parse(trimmed);
+    }
+
+    private static List<Long> parseUpdatesSchedule(List<String> schedule) {
+        List<Long> result = new ArrayList<>();
+        long previous = 0;
+        for (String entry : schedule) {
+            long intervalMs;
+            try {
+                intervalMs = Long.parseLong(entry.trim());
+            } catch (NumberFormatException e) {
+                throw new ConfigException(UPDATES_SCHEDULE_MS_CONFIG, entry, "Must be a number of milliseconds");
+            }
+            if (intervalMs <= previous) {
+                throw new ConfigException(
+                        UPDATES_SCHEDULE_MS_CONFIG,
+                        entry,
+                        "Intervals must be positive and in ascending order"
+                );
+            }
+            result.add(intervalMs);
+            previous = intervalMs;
+        }
+        return result;
+    }
+
+    private static Map<String, Double> parseSubredditWeights(List<String> weights) {
+        Map<String, Double> result = new HashMap<>();
+        for (String entry : weights) {
+            int separator = entry.lastIndexOf(':');
+            if (separator <= 0) {
+                throw new ConfigException(SUBREDDIT_WEIGHTS_CONFIG, entry, "Must be of the form '<subreddit>:<weight>'");
+            }
+            double weight;
+            try {
+                weight = Double.parseDouble(entry.substring(separator + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new ConfigException(SUBREDDIT_WEIGHTS_CONFIG, entry, "Weight must be a number");
+            }
+            if (!(weight >= 0) || Double.isInfinite(weight)) {
+                throw new ConfigException(SUBREDDIT_WEIGHTS_CONFIG, entry, "Weight must be finite and non-negative");
+            }
+            result.put(entry.substring(0, separator).trim().toLowerCase(Locale.ROOT), weight);
+        }
+        return result;
+    }
+
     public static void main(String[] args) throws FileNotFoundException {
         OutputStream out;
         if (args.length == 1 && !args[0].equals("-")) {
@@ -7,17 +7,30 @@
 
 package com.github.c0urante.kafka.connect.reddit;
 
+import com.github.c0urante.kafka.connect.reddit.stream.ArchiveClient;
+import com.github.c0urante.kafka.connect.reddit.stream.BackfillReader;
+import com.github.c0urante.kafka.connect.reddit.stream.CommentTreeExpander;
 import com.github.c0urante.kafka.connect.reddit.stream.CommentsStreamReader;
+import com.github.c0urante.kafka.connect.reddit.stream.DedupIndex;
 import com.github.c0urante.kafka.connect.reddit.stream.PostsStreamReader;
+import com.github.c0urante.kafka.connect.reddit.stream.FetchEngine;
+import com.github.c0urante.kafka.connect.reddit.stream.SharedRateLimiter;
+import com.github.c0urante.kafka.connect.reddit.stream.RawStreamReader;
+import com.github.c0urante.kafka.connect.reddit.stream.RecordSource;
 import com.github.c0urante.kafka.connect.reddit.stream.Reddit;
 import com.github.c0urante.kafka.connect.reddit.model.CommentSourceRecordConverter;
+import com.github.c0urante.kafka.connect.reddit.model.Enricher;
+import com.github.c0urante.kafka.connect.reddit.model.RawThing;
+import com.github.c0urante.kafka.connect.reddit.metrics.TaskMetrics;
 import com.github.c0urante.kafka.connect.reddit.model.PostSourceRecordConverter;
+import com.github.c0urante.kafka.connect.reddit.model.SourceRecordConverter;
 import com.github.c0urante.kafka.connect.reddit.stream.StreamReader;
+import com.github.c0urante.kafka.connect.reddit.stream.UpdateTracker;
 import com.github.c0urante.kafka.connect.reddit.version.Version;
 
+import net.dean.jraw.JrawUtils;
 import net.dean.jraw.models.Comment;
 import net.dean.jraw.models.Submission;
-import net.dean.jraw.pagination.Stream;
 import org.apache.kafka.connect.errors.ConnectException;
 import org.apache.kafka.connect.source.SourceRecord;
 import org.apache.kafka.connect.source.SourceTask;
@@ -27,86 +40,611 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.stream.Collectors;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
 
 public class RedditSourceTask extends SourceTask {
 
     private static final Logger log = LoggerFactory.getLogger(RedditSourceTask.class);
 
+    private static final long INIT_STOP_TIMEOUT_MS = 30_000;
+
     private AtomicReference<Throwable> error;
-    private List<StreamReader<?>> streamReaders;
+    private volatile List<RecordSource> recordSources;
+    // Only used while backfilling; started once every backfill reader has finished
+    private List<StreamReader<?>> pendingStreamReaders;
+    private AtomicInteger remainingBackfills;
+    private boolean tailAfterBackfill;
+    private volatile ArchiveClient archive;
+    private volatile Thread pollingThread;
+    private Thread initThread;
+    private volatile Reddit reddit;
+    private volatile FetchEngine fetchEngine;
+    private volatile TaskMetrics metrics;
+    private volatile SubredditsFile subredditsFile;
+    private Enricher enricher;
+    private long pollMaxWaitMs;
+    private int pollMaxRecords;
+    private int nextReader;
 
     @Override
     public void start(Map<String, String> props) {
         this.error = new AtomicReference<>();
 
+        // Invalid configs are still reported right away; everything that has to talk to Reddit or
+        // to Kafka happens in the background, so that the worker isn't held up by it and so that
+        // each stream can be polled as soon as it's ready, instead of once they all are
         RedditSourceConnectorConfig config = new RedditSourceConnectorConfig(props);
-        Reddit reddit = config.createClient();
-        Stream<Submission> postsStream = reddit.posts(config.getPostSubreddits());
-        Stream<Comment> commentsStream = reddit.comments(config.getCommentSubreddits());
+        this.pollMaxWaitMs = config.getPollMaxWaitMs();
+        this.pollMaxRecords = config.getPollMaxRecords();
+        this.nextReader = 0;
+        this.recordSources = Collections.emptyList();
+        this.initThread = new Thread(() -> initialize(config), "reddit-task-init");
+        initThread.setDaemon(true);
+        initThread.start();
+    }
 
-        Collection<Map<String, Object>> postPartitions = new HashSet<>();
-        for (String postsSubreddit : config.getPostSubreddits()) {
-            postPartitions.add(PostSourceRecordConverter.sourcePartition(postsSubreddit));
-        }
-        Collection<Map<String, Object>> commentPartitions = new HashSet<>();
-        for (String commentsSubreddit : config.getCommentSubreddits()) {
-            commentPartitions.add(CommentSourceRecordConverter.sourcePartition(commentsSubreddit));
-        }
+    private void initialize(RedditSourceConnectorConfig config) {
+        try {
+            long startMs = System.currentTimeMillis();
+            this.reddit = config.createClient();
+            this.fetchEngine = config.createFetchEngine();
+            this.metrics = config.createTaskMetrics();
+            SharedRateLimiter rateLimiter = SharedRateLimiter.forClient(RedditSourceConnectorConfig.OAUTH_CLIENT_ID);
+            metrics.registerQuota(rateLimiter::remaining, rateLimiter::secondsUntilReset);
+            this.enricher = config.createEnricher(reddit, metrics);
+
+            boolean backfill = config.isBackfillEnabled();
+            if (backfill) {
+                this.archive = config.createArchiveClient();
+                this.tailAfterBackfill = config.isTailAfterBackfill();
+                this.pendingStreamReaders = new ArrayList<>();
+            }
+
+            // Posts and comments are set up one after the other, so that posts can be read while
+            // the offsets for comments are still being looked up
+            boolean raw = config.getValueFormat().isRaw();
+            Map<Map<String, Object>, Map<String, Object>> postOffsets =
+                    offsets(
+                            config.getPostSubreddits(),
+                            PostSourceRecordConverter::sourcePartition,
+                            PostSourceRecordConverter::legacySourcePartition
+                    );
+            StreamReader<?> postsReader = raw
+                    ? rawPostsReader(config, reddit, postOffsets)
+                    : postsReader(config, reddit, postOffsets);
+            if (postsReader != null) {
+                // Comment trees are read for new posts as they arrive, whether or not the task
+                // starts by backfilling
+                Set<String> expandSubreddits = config.getCommentsExpandSubreddits();
+                if (!expandSubreddits.isEmpty()) {
+                    CommentTreeExpander<?> expander = raw
+                            ? rawCommentTreeExpander(config, expandSubreddits)
+                            : commentTreeExpander(config, expandSubreddits);
+                    expander.start();
+                    postsReader.addListener((subreddit, fullName, createdMs, record) ->
+                            expander.enqueue(subreddit, fullName, createdMs)
+                    );
+                    publish(expander);
+                }
+                // Likewise, new items are read again for updates no matter how the task starts
+                if (config.getUpdatesTopic() != null) {
+                    track(postsReader, raw
+                            ? updateTracker(
+                                    config,
+                                    "posts",
+                                    Function.identity(),
+                                    config.createRawPostConverter(enricher)
+                            )
+                            : updateTracker(
+                                    config,
+                                    "posts",
+                                    BackfillReader.decoder(Submission.jsonAdapter(JrawUtils.moshi)),
+                                    config.createPostConverter(enricher)
+                            )
+                    );
+                }
+                startStream(config, postsReader);
+            }
 
-        Map<Map<String, Object>, Map<String, Object>> postOffsets =
-                context.offsetStorageReader().offsets(postPartitions);
-        Map<Map<String, Object>, Map<String, Object>> commentOffsets =
-                context.offsetStorageReader().offsets(commentPartitions);
+            Map<Map<String, Object>, Map<String, Object>> commentOffsets =
+                    offsets(
+                            config.getCommentSubreddits(),
+                            CommentSourceRecordConverter::sourcePartition,
+                            CommentSourceRecordConverter::legacySourcePartition
+                    );
+            StreamReader<?> commentsReader = raw
+                    ? rawCommentsReader(config, reddit, commentOffsets)
+                    : commentsReader(config, reddit, commentOffsets);
+            if (commentsReader != null) {
+                if (config.getUpdatesTopic() != null) {
+                    track(commentsReader, raw
+                            ? updateTracker(
+                                    config,
+                                    "comments",
+                                    Function.identity(),
+                                    config.createRawCommentConverter(enricher)
+                            )
+                            : updateTracker(
+                                    config,
+                                    "comments",
+                                    BackfillReader.decoder(Comment.jsonAdapter(JrawUtils.moshi)),
+                                    config.createCommentConverter(enricher)
+                            )
+                    );
+                }
+                startStream(config, commentsReader);
+            }
 
-        streamReaders = new ArrayList<>();
+            if (config.getSubredditsFile() != null) {
+                SubredditValidator validator = new SubredditValidator(reddit, config.getApiUrl());
+                this.subredditsFile = new SubredditsFile(config, (posts, comments) ->
+                        onSubredditsChanged(validator, postsReader, commentsReader, posts, comments)
+                );
+                subredditsFile.start(config.getSubredditsFilePollIntervalMs());
+            }
 
-        if (postsStream != null) {
-            PostsStreamReader postsReader = new PostsStreamReader(
-                    postOffsets,
-                    postsStream,
-                    this::onError,
-                    config.getPostSubreddits(),
-                    config.getPostsTopic()
+            if (backfill) {
+                // Read the backfill period first, and only then (if at all) move on to new items
+                List<BackfillReader<?>> backfillReaders = new ArrayList<>();
+                if (!config.getPostSubreddits().isEmpty()) {
+                    backfillReaders.add(raw ? rawPostsBackfillReader(config) : postsBackfillReader(config));
+                }
+                if (!config.getCommentSubreddits().isEmpty()) {
+                    backfillReaders.add(raw ? rawCommentsBackfillReader(config) : commentsBackfillReader(config));
+                }
+                this.remainingBackfills = new AtomicInteger(backfillReaders.size());
+                for (BackfillReader<?> backfillReader : backfillReaders) {
+                    backfillReader.start(context.offsetStorageReader().offsets(backfillReader.partitions()));
+                    publish(backfillReader);
+                }
+            }
+            log.info("Task started in {} ms", System.currentTimeMillis() - startMs);
+        } catch (Throwable t) {
+            if (recordSources == null) {
+                log.debug("Task stopped before it finished starting", t);
+            } else {
+                onError(t);
+            }
+        }
+    }
+
+    /**
+     * Start and stop reading subreddits as they're added to and removed from the subreddits file,
+     * leaving every other subreddit (and everything else about the task) as it is.
+     */
+    private void onSubredditsChanged(
+            SubredditValidator validator,
+            StreamReader<?> postsReader,
+            StreamReader<?> commentsReader,
+            SubredditsFile.Change posts,
+            SubredditsFile.Change comments
+    ) {
+        Set<String> added = new HashSet<>(posts.added());
+        added.addAll(comments.added());
+        for (String subreddit : validator.inaccessible(added)) {
+            log.warn("Unable to access subreddit r/{}; it may not exist, or be set to private", subreddit);
+        }
+        if (!posts.isEmpty()) {
+            postsReader.updateSubreddits(
+                    posts.added(),
+                    posts.removed(),
+                    offsets(
+                            posts.added(),
+                            PostSourceRecordConverter::sourcePartition,
+                            PostSourceRecordConverter::legacySourcePartition
+                    )
+            );
+        }
+        if (!comments.isEmpty()) {
+            commentsReader.updateSubreddits(
+                    comments.added(),
+                    comments.removed(),
+                    offsets(
+                            comments.added(),
+                            CommentSourceRecordConverter::sourcePartition,
+                            CommentSourceRecordConverter::legacySourcePartition
+                    )
             );
-            postsReader.startReaderThread();
-            streamReaders.add(postsReader);
-        }
-        if (commentsStream != null) {
-            CommentsStreamReader commentsReader = new CommentsStreamReader(
-                    commentOffsets,
-                    commentsStream,
-                    this::onError,
-                    config.getCommentSubreddits(),
-                    config.getCommentsTopic()
+        }
+    }
+
+    /**
+     * Look up the stored offsets for some subreddits, including any that were stored under their
+     * legacy (case-sensitive) partitions; whichever offset is further along wins.
+     * @return the offsets, keyed by the subreddits' current partitions
+     */
+    private Map<Map<String, Object>, Map<String, Object>> offsets(
+            List<String> subreddits,
+            Function<String, Map<String, Object>> sourcePartition,
+            Function<String, Map<String, Object>> legacySourcePartition
+    ) {
+        if (subreddits.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Collection<Map<String, Object>> partitions = new HashSet<>();
+        for (String subreddit : subreddits) {
+            partitions.add(sourcePartition.apply(subreddit));
+            partitions.add(legacySourcePartition.apply(subreddit));
+        }
+        Map<Map<String, Object>, Map<String, Object>> stored = context.offsetStorageReader().offsets(partitions);
+        Map<Map<String, Object>, Map<String, Object>> result = new HashMap<>();
+        for (String subreddit : subreddits) {
+            Map<String, Object> partition = sourcePartition.apply(subreddit);
+            Map<String, Object> offset = DedupIndex.latest(
+                    stored.get(partition),
+                    stored.get(legacySourcePartition.apply(subreddit))
             );
-            commentsReader.startReaderThread();
-            streamReaders.add(commentsReader);
+            if (offset != null) {
+                result.put(partition, offset);
+            }
         }
+        return result;
     }
 
-    @Override
-    public List<SourceRecord> poll() {
-        if (error.get() != null) {
-            throw new ConnectException("Error occurred while reading from Reddit", error.get());
+    private void track(StreamReader<?> streamReader, UpdateTracker<?> tracker) {
+        tracker.start();
+        streamReader.addListener((subreddit, fullName, createdMs, record) ->
+                tracker.track(subreddit, fullName, record)
+        );
+        publish(tracker);
+    }
+
+    private void startStream(RedditSourceConnectorConfig config, StreamReader<?> streamReader) {
+        if (!config.isBackfillEnabled()) {
+            streamReader.start();
+            publish(streamReader);
+            return;
+        }
+        // Anything published since the end of the period is caught up on once the backfill is done
+        streamReader.startFrom(config.getBackfillEndMs());
+        synchronized (this) {
+            pendingStreamReaders.add(streamReader);
+        }
+    }
+
+    /**
+     * Make a record source that has just been started available to {@link #poll()}. If the task
+     * has been stopped in the meantime, the source is closed instead and startup is abandoned.
+     */
+    private void publish(RecordSource recordSource) {
+        synchronized (this) {
+            List<RecordSource> recordSources = this.recordSources;
+            if (recordSources != null) {
+                List<RecordSource> updated = new ArrayList<>(recordSources);
+                updated.add(recordSource);
+                this.recordSources = updated;
+                recordSource = null;
+            }
+        }
+        if (recordSource != null) {
+            recordSource.close();
+            throw new ConnectException("Task was stopped while starting");
+        }
+        wakeUpPoll();
+    }
+
+    private CommentTreeExpander<?> commentTreeExpander(RedditSourceConnectorConfig config, Set<String> subreddits) {
+        return commentTreeExpander(
+                config,
+                subreddits,
+                BackfillReader.decoder(Comment.jsonAdapter(JrawUtils.moshi)),
+                config.createCommentConverter(enricher)
+        );
+    }
+
+    private CommentTreeExpander<?> rawCommentTreeExpander(RedditSourceConnectorConfig config, Set<String> subreddits) {
+        return commentTreeExpander(
+                config,
+                subreddits,
+                Function.identity(),
+                config.createRawCommentConverter(enricher)
+        );
+    }
+
+    private <Thing> CommentTreeExpander<Thing> commentTreeExpander(
+            RedditSourceConnectorConfig config,
+            Set<String> subreddits,
+            Function<RawThing, Thing> decode,
+            SourceRecordConverter<Thing> recordConverter
+    ) {
+        return new CommentTreeExpander<>(
+                subreddits,
+                config.getCommentsExpandDelayMs(),
+                config.getCommentsExpandThreads(),
+                config.getCommentsExpandMaxRequests(),
+                reddit,
+                decode,
+                recordConverter,
+                config.createBuffer(),
+                metrics.stream("comment-trees"),
+                this::onError,
+                this::onRecords
+        );
+    }
+
+    private <Thing> UpdateTracker<Thing> updateTracker(
+            RedditSourceConnectorConfig config,
+            String thingType,
+            Function<RawThing, Thing> decode,
+            SourceRecordConverter<Thing> recordConverter
+    ) {
+        return new UpdateTracker<>(
+                thingType,
+                config.getUpdatesScheduleMs(),
+                config.getUpdatesMaxTracked(),
+                config.getUpdatesTopic(),
+                reddit,
+                decode,
+                recordConverter,
+                config.createBuffer(),
+                metrics.stream(thingType + "-updates"),
+                this::onError,
+                this::onRecords
+        );
+    }
+
+    private BackfillReader<?> postsBackfillReader(RedditSourceConnectorConfig config) {
+        return backfillReader(
+                config,
+                "posts",
+                config.getPostSubreddits(),
+                BackfillReader.decoder(Submission.jsonAdapter(JrawUtils.moshi)),
+                config.createPostConverter(enricher)
+        );
+    }
+
+    private BackfillReader<?> commentsBackfillReader(RedditSourceConnectorConfig config) {
+        return backfillReader(
+                config,
+                "comments",
+                config.getCommentSubreddits(),
+                BackfillReader.decoder(Comment.jsonAdapter(JrawUtils.moshi)),
+                config.createCommentConverter(enricher)
+        );
+    }
+
+    private BackfillReader<?> rawPostsBackfillReader(RedditSourceConnectorConfig config) {
+        return backfillReader(
+                config,
+                "posts",
+                config.getPostSubreddits(),
+                Function.identity(),
+                config.createRawPostConverter(enricher)
+        );
+    }
+
+    private BackfillReader<?> rawCommentsBackfillReader(RedditSourceConnectorConfig config) {
+        return backfillReader(
+                config,
+                "comments",
+                config.getCommentSubreddits(),
+                Function.identity(),
+                config.createRawCommentConverter(enricher)
+        );
+    }
+
+    private <Thing> BackfillReader<Thing> backfillReader(
+            RedditSourceConnectorConfig config,
+            String thingType,
+            List<String> subreddits,
+            Function<RawThing, Thing> decode,
+            SourceRecordConverter<Thing> recordConverter
+    ) {
+        return new BackfillReader<>(
+                thingType,
+                subreddits,
+                config.getBackfillStartMs(),
+                config.getBackfillEndMs(),
+                config.getBackfillSliceMs(),
+                config.getConsumptionLimit(),
+                config.getBackfillParallelism(),
+                archive,
+                reddit,
+                decode,
+                recordConverter,
+                config.getBackfillProgressTopic(),
+                config.createBuffer(),
+                metrics.stream(thingType + "-backfill"),
+                this::onError,
+                this::onRecords,
+                this::onBackfillFinished
+        );
+    }
+
+    private StreamReader<?> postsReader(
+            RedditSourceConnectorConfig config,
+            Reddit reddit,
+            Map<Map<String, Object>, Map<String, Object>> offsets
+    ) {
+        if (!needsReader(config, config.getPostSubreddits())) {
+            return null;
         }
+        PostsStreamReader result = new PostsStreamReader(
+                offsets,
+                reddit::posts,
+                fetchEngine,
+                this::onError,
+                this::onRecords,
+                config.createBuffer(),
+                metrics.stream("posts"),
+                config.getPostSubreddits(),
+                config.createPostConverter(enricher)
+        );
+        result.setFilter(config.createPostFilter());
+        result.setRepostDetector(config.createRepostDetector());
+        return result;
+    }
+
+    private StreamReader<?> commentsReader(
+            RedditSourceConnectorConfig config,
+            Reddit reddit,
+            Map<Map<String, Object>, Map<String, Object>> offsets
+    ) {
+        if (!needsReader(config, config.getCommentSubreddits())) {
+            return null;
+        }
+        CommentsStreamReader result = new CommentsStreamReader(
+                offsets,
+                reddit::comments,
+                fetchEngine,
+                this::onError,
+                this::onRecords,
+                config.createBuffer(),
+                metrics.stream("comments"),
+                config.getCommentSubreddits(),
+                config.createCommentConverter(enricher)
+        );
+        result.setFilter(config.createCommentFilter());
+        return result;
+    }
+
+    private StreamReader<?> rawPostsReader(
+            RedditSourceConnectorConfig config,
+            Reddit reddit,
+            Map<Map<String, Object>, Map<String, Object>> offsets
+    ) {
+        if (!needsReader(config, config.getPostSubreddits())) {
+            return null;
+        }
+        RawStreamReader result = new RawStreamReader(
+                offsets,
+                reddit::rawPosts,
+                fetchEngine,
+                this::onError,
+                this::onRecords,
+                config.createBuffer(),
+                metrics.stream("posts"),
+                "posts",
+                config.getPostSubreddits(),
+                config.createRawPostConverter(enricher)
+        );
+        result.setFilter(config.createRawPostFilter());
+        result.setRepostDetector(config.createRawRepostDetector());
+        return result;
+    }
 
-        if (streamReaders == null) {
-            log.warn("poll() invoked after task has been stopped; ignoring");
-            return Collections.emptyList();
+    private StreamReader<?> rawCommentsReader(
+            RedditSourceConnectorConfig config,
+            Reddit reddit,
+            Map<Map<String, Object>, Map<String, Object>> offsets
+    ) {
+        if (!needsReader(config, config.getCommentSubreddits())) {
+            return null;
         }
+        RawStreamReader result = new RawStreamReader(
+                offsets,
+                reddit::rawComments,
+                fetchEngine,
+                this::onError,
+                this::onRecords,
+                config.createBuffer(),
+                metrics.stream("comments"),
+                "comment",
+                config.getCommentSubreddits(),
+                config.createRawCommentConverter(enricher)
+        );
+        result.setFilter(config.createRawCommentFilter());
+        return result;
+    }
 
-        return streamReaders.stream().map(StreamReader::pollRecords).flatMap(List::stream).collect(Collectors.toList());
+    /**
+     * @return whether a stream reader is needed for the given subreddits; with a subreddits file,
+     * one is needed even if there's nothing to read yet, since subreddits may be added to it later
+     */
+    private static boolean needsReader(RedditSourceConnectorConfig config, List<String> subreddits) {
+        return !subreddits.isEmpty() || config.getSubredditsFile() != null;
+    }
+
+    @Override
+    public List<SourceRecord> poll() {
+        long deadline = System.currentTimeMillis() + pollMaxWaitMs;
+        while (true) {
+            if (error.get() != null) {
+                throw new ConnectException("Error occurred while reading from Reddit", error.get());
+            }
+
+            List<RecordSource> recordSources = this.recordSources;
+            if (recordSources == null) {
+                log.warn("poll() invoked after task has been stopped; ignoring");
+                return Collections.emptyList();
+            }
+
+            List<SourceRecord> result = pollRecords(recordSources);
+            long remainingMs = deadline - System.currentTimeMillis();
+            if (!result.isEmpty() || remainingMs <= 0) {
+                return result;
+            }
+
+            // Wait until one of the readers (or the task's stop() method) wakes us up, or we run
+            // out of time; publish this thread before checking for records one last time so that
+            // a wakeup can't fall in between that check and parking
+            pollingThread = Thread.currentThread();
+            if (error.get() == null && this.recordSources == recordSources && !hasRecords(recordSources)) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(remainingMs));
+            }
+            pollingThread = null;
+            if (Thread.currentThread().isInterrupted()) {
+                log.debug("Interrupted while waiting for records; returning early");
+                return Collections.emptyList();
+            }
+        }
     }
 
     @Override
     public void stop() {
-        streamReaders.forEach(StreamReader::close);
-        streamReaders = null;
+        List<RecordSource> recordSources;
+        // Don't race with the handoff from backfilling to reading new items
+        synchronized (this) {
+            recordSources = this.recordSources;
+            this.recordSources = null;
+        }
+        wakeUpPoll();
+        if (initThread != null) {
+            // Anything the task is still starting up is abandoned; wait for that to happen so that
+            // whatever it has already created can be closed below
+            initThread.interrupt();
+            try {
+                initThread.join(INIT_STOP_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (initThread.isAlive()) {
+                log.warn("Task is still starting up after {} ms; stopping anyway", INIT_STOP_TIMEOUT_MS);
+            }
+            initThread = null;
+        }
+        if (subredditsFile != null) {
+            subredditsFile.close();
+            subredditsFile = null;
+        }
+        if (recordSources != null) {
+            recordSources.forEach(RecordSource::close);
+        }
+        if (archive != null) {
+            archive.close();
+            archive = null;
+        }
+        if (fetchEngine != null) {
+            fetchEngine.close();
+            fetchEngine = null;
+        }
+        if (metrics != null) {
+            metrics.close();
+            metrics = null;
+        }
+        if (reddit != null) {
+            reddit.close();
+            reddit = null;
+        }
     }
 
     @Override
@@ -114,7 +652,72 @@ public class RedditSourceTask extends SourceTask {
         return Version.get();
     }
 
+    private List<SourceRecord> pollRecords(List<RecordSource> recordSources) {
+        List<SourceRecord> result = new ArrayList<>();
+        // Rotate the reader we start with on each poll so that a busy reader can't starve the
+        // others once the batch size limit is reached
+        int numReaders = recordSources.size();
+        for (int i = 0; i < numReaders && result.size() < pollMaxRecords; i++) {
+            RecordSource recordSource = recordSources.get((nextReader + i) % numReaders);
+            result.addAll(recordSource.pollRecords(pollMaxRecords - result.size()));
+        }
+        nextReader = numReaders > 0 ? (nextReader + 1) % numReaders : 0;
+        return result;
+    }
+
+    private static boolean hasRecords(List<RecordSource> recordSources) {
+        for (RecordSource recordSource : recordSources) {
+            if (recordSource.hasRecords()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Invoked by each backfill reader once it has read its entire period. Once all of them have,
+     * either hand off to the stream readers or just stop reading.
+     */
+    private void onBackfillFinished() {
+        if (remainingBackfills.decrementAndGet() > 0) {
+            return;
+        }
+        synchronized (this) {
+            List<RecordSource> recordSources = this.recordSources;
+            if (recordSources == null) {
+                // The task has been stopped
+                return;
+            }
+            if (!tailAfterBackfill) {
+                log.info("Finished backfilling; not reading any new posts or comments as {} is '{}'",
+                        RedditSourceConnectorConfig.BACKFILL_THEN_CONFIG, RedditSourceConnectorConfig.BACKFILL_THEN_STOP);
+                return;
+            }
+            log.info("Finished backfilling; moving on to new posts and comments");
+            List<RecordSource> updated = new ArrayList<>(recordSources);
+            for (StreamReader<?> streamReader : pendingStreamReaders) {
+                streamReader.start();
+                updated.add(streamReader);
+            }
+            pendingStreamReaders = Collections.emptyList();
+            this.recordSources = updated;
+        }
+        wakeUpPoll();
+    }
+
+    private void onRecords() {
+        wakeUpPoll();
+    }
+
     private void onError(Throwable t) {
         this.error.compareAndSet(null, t);
+        wakeUpPoll();
+    }
+
+    private void wakeUpPoll() {
+        Thread pollingThread = this.pollingThread;
+        if (pollingThread != null) {
+            LockSupport.unpark(pollingThread);
+        }
     }
 }
@@ -0,0 +1,155 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit;
+
+import com.github.c0urante.kafka.connect.reddit.model.SubredditMetadata;
+import com.github.c0urante.kafka.connect.reddit.stream.Reddit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks which of a connector's subreddits can be read. Subreddits are looked up through
+ * {@code /api/info} in batches of up to {@value Reddit#MAX_METADATA_NAMES}, several batches at a
+ * time, instead of with one {@code /about} request each.
+ * <p>
+ * Results are cached for {@value #CACHE_TTL_MS} ms and shared by every connector in the worker,
+ * since connectors are restarted (and their subreddits validated all over again) whenever they're
+ * reconfigured.
+ */
+class SubredditValidator {
+
+    private static final Logger log = LoggerFactory.getLogger(SubredditValidator.class);
+
+    private static final long CACHE_TTL_MS = 10 * 60 * 1000;
+    private static final int MAX_CONCURRENT_REQUESTS = 4;
+    private static final String PRIVATE_TYPE = "private";
+
+    // Keyed by API URL (empty for Reddit itself) and lowercased subreddit name; values are the
+    // times at which the results expire, negated for subreddits that can't be read
+    private static final ConcurrentMap<String, Long> CACHE = new ConcurrentHashMap<>();
+
+    private final Reddit reddit;
+    private final String apiUrl;
+
+    /**
+     * @param reddit the client to look up subreddits with
+     * @param apiUrl the URL the client sends requests to, or null if it sends them to Reddit
+     */
+    public SubredditValidator(Reddit reddit, String apiUrl) {
+        this.reddit = reddit;
+        this.apiUrl = apiUrl != null ? apiUrl : "";
+    }
+
+    /**
+     * @return the subreddits that don't exist or can't be read, such as private ones; subreddits
+     * that couldn't be looked up at all are logged and left out
+     */
+    public List<String> inaccessible(Collection<String> subreddits) {
+        long now = System.currentTimeMillis();
+        CACHE.values().removeIf(expiresMs -> Math.abs(expiresMs) <= now);
+
+        List<String> result = new ArrayList<>();
+        Set<String> uncached = new LinkedHashSet<>();
+        for (String subreddit : subreddits) {
+            Long cached = CACHE.get(cacheKey(subreddit));
+            if (Reddit.isAggregate(subreddit) || (cached != null && cached > 0)) {
+                continue;
+            } else if (cached != null) {
+                result.add(subreddit);
+            } else {
+                uncached.add(subreddit);
+            }
+        }
+        if (uncached.isEmpty()) {
+            return result;
+        }
+
+        List<List<String>> batches = new ArrayList<>();
+        List<String> batch = new ArrayList<>();
+        for (String subreddit : uncached) {
+            batch.add(subreddit);
+            if (batch.size() >= Reddit.MAX_METADATA_NAMES) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        log.debug("Validating {} subreddit(s) with {} request(s)", uncached.size(), batches.size());
+
+        AtomicInteger threadCount = new AtomicInteger(0);
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(MAX_CONCURRENT_REQUESTS, batches.size()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "reddit-subreddit-validator-" + threadCount.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        try {
+            List<Callable<List<String>>> lookups = new ArrayList<>();
+            for (List<String> subredditBatch : batches) {
+                lookups.add(() -> lookUp(subredditBatch));
+            }
+            List<Future<List<String>>> futures = executor.invokeAll(lookups);
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    result.addAll(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    log.warn(
+                            "Failed to validate {} subreddit(s); they will be read anyway",
+                            batches.get(i).size(),
+                            e.getCause()
+                    );
+                }
+            }
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while validating subreddits; skipping the rest");
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    private List<String> lookUp(List<String> subreddits) {
+        Map<String, SubredditMetadata> found = reddit.subredditMetadata(subreddits);
+        long expiresMs = System.currentTimeMillis() + CACHE_TTL_MS;
+        List<String> result = new ArrayList<>();
+        for (String subreddit : subreddits) {
+            SubredditMetadata metadata = found.get(subreddit.toLowerCase(Locale.ROOT));
+            boolean accessible = metadata != null && !PRIVATE_TYPE.equals(metadata.getType());
+            CACHE.put(cacheKey(subreddit), accessible ? expiresMs : -expiresMs);
+            if (!accessible) {
+                result.add(subreddit);
+            }
+        }
+        return result;
+    }
+
+    private String cacheKey(String subreddit) {
+        return apiUrl + "/" + subreddit.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,310 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the file of subreddits given by {@link RedditSourceConnectorConfig#SUBREDDITS_FILE_CONFIG}
+ * on behalf of a task, and tells the task whenever subreddits that it should read are added to or
+ * removed from it.
+ * <p>
+ * Subreddits that were in the file when the connector last assigned subreddits to tasks belong to
+ * the task they were assigned to; subreddits added since then are spread across tasks by hash.
+ * Every task applies the same rule, so each subreddit in the file is read by exactly one task,
+ * without the tasks having to be restarted or to talk to each other.
+ */
+class SubredditsFile implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(SubredditsFile.class);
+
+    private final String path;
+    private final Listener listener;
+    private final OwnedSubreddits posts;
+    private final OwnedSubreddits comments;
+    private final ScheduledExecutorService executor;
+
+    // Only accessed from the executor's thread
+    private Contents lastRead;
+
+    /**
+     * @param config the config of the task that the file is being watched for
+     * @param listener invoked (from the watcher's thread) whenever the task's subreddits change
+     */
+    public SubredditsFile(RedditSourceConnectorConfig config, Listener listener) {
+        this.path = config.getSubredditsFile();
+        this.listener = listener;
+        this.posts = new OwnedSubreddits(
+                config.getPostSubreddits(),
+                config.getAssignedPostSubreddits(),
+                config.getTaskId(),
+                config.getTaskCount()
+        );
+        this.comments = new OwnedSubreddits(
+                config.getCommentSubreddits(),
+                config.getAssignedCommentSubreddits(),
+                config.getTaskId(),
+                config.getTaskCount()
+        );
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread result = new Thread(runnable, "reddit-subreddits-file-watcher");
+            result.setDaemon(true);
+            return result;
+        });
+    }
+
+    /**
+     * @return the subreddits currently listed in the file at the given path
+     */
+    public static Contents read(String path) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return new Contents(
+                parseList(properties.getProperty(RedditSourceConnectorConfig.POSTS_SUBREDDITS_CONFIG)),
+                parseList(properties.getProperty(RedditSourceConnectorConfig.COMMENTS_SUBREDDITS_CONFIG))
+        );
+    }
+
+    /**
+     * Begin checking the file for changes, immediately (in case it has changed since the task's
+     * subreddits were assigned) and then once every {@code intervalMs} milliseconds.
+     */
+    public void start(long intervalMs) {
+        executor.scheduleWithFixedDelay(this::check, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for subreddits file watcher to stop");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void check() {
+        try {
+            checkForChanges();
+        } catch (RuntimeException e) {
+            // An exception escaping from here would silently cancel every later check
+            log.warn("Failed to check {} for changes to subreddits; will try again", path, e);
+        }
+    }
+
+    private void checkForChanges() {
+        Contents contents;
+        try {
+            contents = read(path);
+        } catch (IOException e) {
+            log.warn("Failed to read subreddits from {}; keeping the current ones", path, e);
+            return;
+        }
+        if (contents.equals(lastRead)) {
+            return;
+        }
+
+        Change postChanges = posts.diff(contents.postSubreddits);
+        Change commentChanges = comments.diff(contents.commentSubreddits);
+        if (!postChanges.isEmpty() || !commentChanges.isEmpty()) {
+            log.info("Subreddits in {} have changed; posts: {}, comments: {}", path, postChanges, commentChanges);
+            try {
+                listener.onChange(postChanges, commentChanges);
+            } catch (RuntimeException e) {
+                // Changes are safe to apply more than once, so just try again next time
+                log.warn("Failed to apply changes to subreddits from {}; will try again", path, e);
+                return;
+            }
+            posts.apply(postChanges);
+            comments.apply(commentChanges);
+        }
+        lastRead = contents;
+    }
+
+    private static List<String> parseList(String value) {
+        List<String> result = new ArrayList<>();
+        if (value == null) {
+            return result;
+        }
+        for (String element : value.split(",")) {
+            if (!element.trim().isEmpty()) {
+                result.add(element.trim());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The subreddits listed in the file.
+     */
+    public static class Contents {
+        private final List<String> postSubreddits;
+        private final List<String> commentSubreddits;
+
+        private Contents(List<String> postSubreddits, List<String> commentSubreddits) {
+            this.postSubreddits = postSubreddits;
+            this.commentSubreddits = commentSubreddits;
+        }
+
+        public List<String> postSubreddits() {
+            return postSubreddits;
+        }
+
+        public List<String> commentSubreddits() {
+            return commentSubreddits;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Contents that = (Contents) o;
+            return postSubreddits.equals(that.postSubreddits) && commentSubreddits.equals(that.commentSubreddits);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(postSubreddits, commentSubreddits);
+        }
+    }
+
+    /**
+     * The subreddits that a task should start and stop reading posts or comments from.
+     */
+    public static class Change {
+        private final List<String> added;
+        private final List<String> removed;
+
+        private Change(List<String> added, List<String> removed) {
+            this.added = added;
+            this.removed = removed;
+        }
+
+        public List<String> added() {
+            return added;
+        }
+
+        public List<String> removed() {
+            return removed;
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return "added " + added + ", removed " + removed;
+        }
+    }
+
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * @param posts the changes to the subreddits the task reads posts from
+         * @param comments the changes to the subreddits the task reads comments from
+         */
+        void onChange(Change posts, Change comments);
+    }
+
+    /**
+     * The subreddits that a task reads posts or comments from, out of those listed in the file.
+     */
+    private static class OwnedSubreddits {
+        private final Set<String> assignedToTask;
+        private final Set<String> assignedToAny;
+        private final int taskId;
+        private final int taskCount;
+        // Keyed by lowercased name
+        private final Map<String, String> current;
+
+        public OwnedSubreddits(List<String> assignedToTask, List<String> assignedToAny, int taskId, int taskCount) {
+            this.assignedToTask = new HashSet<>();
+            this.assignedToAny = new HashSet<>();
+            this.current = new LinkedHashMap<>();
+            for (String subreddit : assignedToTask) {
+                this.assignedToTask.add(key(subreddit));
+                this.current.put(key(subreddit), subreddit);
+            }
+            for (String subreddit : assignedToAny) {
+                this.assignedToAny.add(key(subreddit));
+            }
+            this.taskId = taskId;
+            this.taskCount = Math.max(1, taskCount);
+        }
+
+        public Change diff(List<String> listed) {
+            Map<String, String> wanted = new LinkedHashMap<>();
+            for (String subreddit : listed) {
+                if (owns(key(subreddit))) {
+                    wanted.putIfAbsent(key(subreddit), subreddit);
+                }
+            }
+            List<String> added = new ArrayList<>();
+            for (Map.Entry<String, String> subreddit : wanted.entrySet()) {
+                if (!current.containsKey(subreddit.getKey())) {
+                    added.add(subreddit.getValue());
+                }
+            }
+            List<String> removed = new ArrayList<>();
+            for (Map.Entry<String, String> subreddit : current.entrySet()) {
+                if (!wanted.containsKey(subreddit.getKey())) {
+                    removed.add(subreddit.getValue());
+                }
+            }
+            return new Change(added, removed);
+        }
+
+        public void apply(Change change) {
+            for (String subreddit : change.removed) {
+                current.remove(key(subreddit));
+            }
+            for (String subreddit : change.added) {
+                current.put(key(subreddit), subreddit);
+            }
+        }
+
+        private boolean owns(String key) {
+            if (assignedToAny.contains(key)) {
+                return assignedToTask.contains(key);
+            }
+            return Math.floorMod(key.hashCode(), taskCount) == taskId;
+        }
+
+        private static String key(String subreddit) {
+            return subreddit.toLowerCase(Locale.ROOT);
+        }
+    }
+}
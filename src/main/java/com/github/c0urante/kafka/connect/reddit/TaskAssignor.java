@@ -0,0 +1,142 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Assigns post and comment subreddits to tasks so that every task carries a similar load, where
+ * the load of a task is the sum of the weights (usually, the rates of new items) of the
+ * subreddits assigned to it.
+ * <p>
+ * Uses the longest-processing-time-first heuristic: the heaviest remaining subreddit is always
+ * given to the least-loaded task. This is guaranteed to come within a third of the best possible
+ * assignment, and with equal weights it degenerates to plain round-robin.
+ */
+class TaskAssignor {
+
+    private final ToDoubleFunction<String> postWeights;
+    private final ToDoubleFunction<String> commentWeights;
+
+    /**
+     * @param postWeights the weight of reading posts from each subreddit
+     * @param commentWeights the weight of reading comments from each subreddit
+     */
+    public TaskAssignor(ToDoubleFunction<String> postWeights, ToDoubleFunction<String> commentWeights) {
+        this.postWeights = postWeights;
+        this.commentWeights = commentWeights;
+    }
+
+    /**
+     * @param postSubreddits the subreddits to read posts from
+     * @param commentSubreddits the subreddits to read comments from
+     * @param maxTasks the maximum number of tasks to assign subreddits to
+     * @return the subreddits for each task; no task is left without any subreddits
+     */
+    public List<TaskAssignment> assign(List<String> postSubreddits, List<String> commentSubreddits, int maxTasks) {
+        List<WeightedStream> streams = new ArrayList<>();
+        for (String subreddit : postSubreddits) {
+            streams.add(new WeightedStream(subreddit, true, postWeights.applyAsDouble(subreddit), streams.size()));
+        }
+        for (String subreddit : commentSubreddits) {
+            streams.add(new WeightedStream(subreddit, false, commentWeights.applyAsDouble(subreddit), streams.size()));
+        }
+        // Heaviest first; fall back to the configured order so that the result is deterministic
+        streams.sort(
+                Comparator.comparingDouble((WeightedStream stream) -> -stream.weight)
+                        .thenComparingInt(stream -> stream.index)
+        );
+
+        int numTasks = Math.min(streams.size(), maxTasks);
+        List<TaskAssignment> result = new ArrayList<>(numTasks);
+        PriorityQueue<TaskAssignment> byLoad = new PriorityQueue<>(
+                Math.max(1, numTasks),
+                Comparator.comparingDouble((TaskAssignment task) -> task.load)
+                        .thenComparingInt(task -> task.index)
+        );
+        for (int i = 0; i < numTasks; i++) {
+            TaskAssignment task = new TaskAssignment(i);
+            result.add(task);
+            byLoad.add(task);
+        }
+
+        for (WeightedStream stream : streams) {
+            TaskAssignment task = byLoad.poll();
+            if (stream.posts) {
+                task.postSubreddits.add(stream.subreddit);
+            } else {
+                task.commentSubreddits.add(stream.subreddit);
+            }
+            task.load += stream.weight;
+            byLoad.add(task);
+        }
+        return result;
+    }
+
+    /**
+     * @return the load of the most heavily-loaded task in the given assignment, according to the
+     * current weights
+     */
+    public double maxLoad(List<TaskAssignment> assignment) {
+        double result = 0;
+        for (TaskAssignment task : assignment) {
+            double load = 0;
+            for (String subreddit : task.postSubreddits) {
+                load += postWeights.applyAsDouble(subreddit);
+            }
+            for (String subreddit : task.commentSubreddits) {
+                load += commentWeights.applyAsDouble(subreddit);
+            }
+            result = Math.max(result, load);
+        }
+        return result;
+    }
+
+    /**
+     * The subreddits assigned to a single task.
+     */
+    public static class TaskAssignment {
+        private final int index;
+        private final List<String> postSubreddits;
+        private final List<String> commentSubreddits;
+        private double load;
+
+        private TaskAssignment(int index) {
+            this.index = index;
+            this.postSubreddits = new ArrayList<>();
+            this.commentSubreddits = new ArrayList<>();
+            this.load = 0;
+        }
+
+        public List<String> postSubreddits() {
+            return postSubreddits;
+        }
+
+        public List<String> commentSubreddits() {
+            return commentSubreddits;
+        }
+    }
+
+    private static class WeightedStream {
+        private final String subreddit;
+        private final boolean posts;
+        private final double weight;
+        private final int index;
+
+        public WeightedStream(String subreddit, boolean posts, double weight, int index) {
+            this.subreddit = subreddit;
+            this.posts = posts;
+            this.weight = weight;
+            this.index = index;
+        }
+    }
+}
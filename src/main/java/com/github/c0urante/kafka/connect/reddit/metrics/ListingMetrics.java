@@ -0,0 +1,113 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.metrics;
+
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.Avg;
+import org.apache.kafka.common.metrics.stats.Max;
+import org.apache.kafka.common.metrics.stats.Percentile;
+import org.apache.kafka.common.metrics.stats.Percentiles;
+
+import java.util.Map;
+
+/**
+ * The metrics for a single listing (a subreddit, or a multireddit of several subreddits) read by a
+ * stream. Thread-safe.
+ */
+public class ListingMetrics {
+
+    public static final String GROUP = "reddit-listing-metrics";
+
+    // Fetches slower than this are all lumped into the highest bucket of the latency histogram
+    private static final double MAX_FETCH_LATENCY_MS = 30_000;
+    private static final int HISTOGRAM_BYTES = 4 * 1024;
+
+    private final Metrics metrics;
+    private final Sensor fetchLatency;
+    private final Sensor pageItems;
+    private final Sensor newPageItems;
+
+    ListingMetrics(TaskMetrics taskMetrics, Metrics metrics, String thingType, String listing) {
+        Map<String, String> tags = taskMetrics.tags("stream", thingType);
+        tags.put("listing", listing);
+        String prefix = StreamMetrics.prefix(tags);
+
+        this.metrics = metrics;
+        this.fetchLatency = metrics.sensor(prefix + "fetch-latency");
+        fetchLatency.add(
+                taskMetrics.metricName("fetch-latency-avg", GROUP, "The average time, in milliseconds, "
+                        + "taken to fetch a page of the listing", tags),
+                new Avg()
+        );
+        fetchLatency.add(
+                taskMetrics.metricName("fetch-latency-max", GROUP, "The maximum time, in milliseconds, "
+                        + "taken to fetch a page of the listing", tags),
+                new Max()
+        );
+        fetchLatency.add(new Percentiles(
+                HISTOGRAM_BYTES,
+                MAX_FETCH_LATENCY_MS,
+                Percentiles.BucketSizing.LINEAR,
+                percentile(taskMetrics, tags, 50),
+                percentile(taskMetrics, tags, 95),
+                percentile(taskMetrics, tags, 99)
+        ));
+
+        this.pageItems = metrics.sensor(prefix + "page-items");
+        pageItems.add(
+                taskMetrics.metricName("page-items-avg", GROUP, "The average number of items in each page "
+                        + "fetched from the listing", tags),
+                new Avg()
+        );
+
+        this.newPageItems = metrics.sensor(prefix + "new-page-items");
+        newPageItems.add(
+                taskMetrics.metricName("new-page-items-avg", GROUP, "The average number of items in each "
+                        + "page fetched from the listing that had not been seen before", tags),
+                new Avg()
+        );
+        newPageItems.add(
+                taskMetrics.metricName("new-page-items-max", GROUP, "The maximum number of items in a page "
+                        + "fetched from the listing that had not been seen before; if this is often the same as "
+                        + "the page size, items are likely being missed", tags),
+                new Max()
+        );
+    }
+
+    /**
+     * Record a fetch of a page of the listing.
+     * @param latencyMs how long the fetch took, in milliseconds
+     * @param items the number of items in the page
+     * @param newItems the number of items in the page that had not been seen before
+     */
+    public void recordFetch(long latencyMs, int items, int newItems) {
+        long now = System.currentTimeMillis();
+        fetchLatency.record(latencyMs, now);
+        pageItems.record(items, now);
+        newPageItems.record(newItems, now);
+    }
+
+    /**
+     * Remove the metrics for the listing, once it's no longer being read. Metrics for the same
+     * listing can then be created again, if it's read again later.
+     */
+    public void close() {
+        metrics.removeSensor(fetchLatency.name());
+        metrics.removeSensor(pageItems.name());
+        metrics.removeSensor(newPageItems.name());
+    }
+
+    private static Percentile percentile(TaskMetrics taskMetrics, Map<String, String> tags, int percentile) {
+        return new Percentile(
+                taskMetrics.metricName("fetch-latency-p" + percentile, GROUP, "The " + percentile
+                        + "th percentile of the time, in milliseconds, taken to fetch a page of the listing", tags),
+                percentile
+        );
+    }
+}
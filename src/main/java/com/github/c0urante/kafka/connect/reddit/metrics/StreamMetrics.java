@@ -0,0 +1,258 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.metrics;
+
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.Avg;
+import org.apache.kafka.common.metrics.stats.Max;
+import org.apache.kafka.common.metrics.stats.Meter;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The metrics for a posts or comments stream of a task, and for each subreddit read by it.
+ * <p>
+ * Listings such as r/all, comment trees and updates can turn up any number of subreddits, so
+ * only the metrics for the most recently active subreddits are kept; once there are too many,
+ * those of the subreddit that has gone the longest without activity are removed. Subreddits are
+ * matched case-insensitively, and tagged with the spelling they were first seen with.
+ * <p>
+ * Thread-safe.
+ */
+public class StreamMetrics {
+
+    public static final String GROUP = "reddit-stream-metrics";
+    public static final String SUBREDDIT_GROUP = "reddit-subreddit-metrics";
+
+    static final int MAX_SUBREDDITS = 1000;
+
+    private final TaskMetrics taskMetrics;
+    private final String thingType;
+    private final Map<String, String> tags;
+    private final Sensor records;
+    private final Sensor duplicates;
+    private final Sensor filtered;
+    private final Sensor reposts;
+    private final Sensor conversionTime;
+    // Guarded by itself
+    private final Map<String, SubredditSensors> subreddits;
+
+    StreamMetrics(TaskMetrics taskMetrics, String thingType) {
+        this.taskMetrics = taskMetrics;
+        this.thingType = thingType;
+        this.tags = taskMetrics.tags("stream", thingType);
+        this.subreddits = new LinkedHashMap<String, SubredditSensors>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SubredditSensors> eldest) {
+                if (size() <= MAX_SUBREDDITS) {
+                    return false;
+                }
+                eldest.getValue().close();
+                return true;
+            }
+        };
+
+        Metrics metrics = taskMetrics.metrics();
+        String prefix = prefix(tags);
+
+        this.records = metrics.sensor(prefix + "records");
+        records.add(new Meter(
+                taskMetrics.metricName("record-rate", GROUP, "The number of records produced per second", tags),
+                taskMetrics.metricName("record-total", GROUP, "The total number of records produced", tags)
+        ));
+
+        this.duplicates = metrics.sensor(prefix + "duplicates");
+        duplicates.add(new Meter(
+                taskMetrics.metricName("duplicate-rate", GROUP, "The number of items per second that were "
+                        + "dropped because they had already been read", tags),
+                taskMetrics.metricName("duplicate-total", GROUP, "The total number of items that were "
+                        + "dropped because they had already been read", tags)
+        ));
+
+        this.filtered = metrics.sensor(prefix + "filtered");
+        filtered.add(new Meter(
+                taskMetrics.metricName("filtered-rate", GROUP, "The number of items per second that were "
+                        + "dropped by the filter before being converted", tags),
+                taskMetrics.metricName("filtered-total", GROUP, "The total number of items that were "
+                        + "dropped by the filter before being converted", tags)
+        ));
+
+        this.reposts = metrics.sensor(prefix + "reposts");
+        reposts.add(new Meter(
+                taskMetrics.metricName("repost-rate", GROUP, "The number of posts per second that linked to "
+                        + "the same URL as, or were crossposts of, a recent post", tags),
+                taskMetrics.metricName("repost-total", GROUP, "The total number of posts that linked to the "
+                        + "same URL as, or were crossposts of, a recent post", tags)
+        ));
+
+        this.conversionTime = metrics.sensor(prefix + "conversion-time");
+        conversionTime.add(
+                taskMetrics.metricName("conversion-time-avg-ns", GROUP, "The average time, in nanoseconds, "
+                        + "taken to convert an item into a record", tags),
+                new Avg()
+        );
+        conversionTime.add(
+                taskMetrics.metricName("conversion-time-max-ns", GROUP, "The maximum time, in nanoseconds, "
+                        + "taken to convert an item into a record", tags),
+                new Max()
+        );
+    }
+
+    /**
+     * Register gauges for the stream's record buffer.
+     * @param records the number of records currently buffered
+     * @param bytes the estimated size, in bytes, of the records currently buffered
+     */
+    public void registerBuffer(DoubleSupplier records, DoubleSupplier bytes) {
+        taskMetrics.addGauge(
+                taskMetrics.metricName("buffer-records", GROUP, "The number of records waiting to be "
+                        + "returned to the framework", tags),
+                records
+        );
+        taskMetrics.addGauge(
+                taskMetrics.metricName("buffer-bytes", GROUP, "The estimated size, in bytes, of the records "
+                        + "waiting to be returned to the framework", tags),
+                bytes
+        );
+    }
+
+    /**
+     * @param listing a description of the listing, such as {@code r/aww+pics}
+     * @return the metrics for a listing read by the stream
+     */
+    public ListingMetrics listing(String listing) {
+        return new ListingMetrics(taskMetrics, taskMetrics.metrics(), thingType, listing);
+    }
+
+    /**
+     * Record that an item was converted into a record.
+     * @param subreddit the subreddit the item belongs to
+     * @param conversionNanos how long the conversion took, in nanoseconds
+     */
+    public void recordConverted(String subreddit, long conversionNanos) {
+        long now = System.currentTimeMillis();
+        subreddit(subreddit).records.record(1, now);
+        conversionTime.record(conversionNanos, now);
+    }
+
+    /**
+     * Record that an item was dropped because it had already been read.
+     * @param subreddit the subreddit the item belongs to
+     */
+    public void recordDuplicate(String subreddit) {
+        subreddit(subreddit).duplicates.record();
+    }
+
+    /**
+     * Record that an item was dropped by the filter instead of being converted into a record.
+     * @param subreddit the subreddit the item belongs to
+     */
+    public void recordFiltered(String subreddit) {
+        subreddit(subreddit).filtered.record();
+    }
+
+    /**
+     * Record that a post was found to be a repost, whether it was then tagged or dropped.
+     * @param subreddit the subreddit the post belongs to
+     */
+    public void recordRepost(String subreddit) {
+        subreddit(subreddit).reposts.record();
+    }
+
+    /**
+     * Remove the metrics for a subreddit, once it's no longer being read. Metrics for the same
+     * subreddit are created again if anything else is recorded for it.
+     * @param subreddit the subreddit
+     */
+    public void removeSubreddit(String subreddit) {
+        synchronized (subreddits) {
+            SubredditSensors sensors = subreddits.remove(key(subreddit));
+            if (sensors != null) {
+                sensors.close();
+            }
+        }
+    }
+
+    private SubredditSensors subreddit(String subreddit) {
+        // Sensors are only created and removed while holding the lock, so that the sensors for a
+        // subreddit are always removed before they're created again under the same names
+        synchronized (subreddits) {
+            return subreddits.computeIfAbsent(key(subreddit), k -> new SubredditSensors(subreddit));
+        }
+    }
+
+    private static String key(String subreddit) {
+        return subreddit.toLowerCase(Locale.ROOT);
+    }
+
+    static String prefix(Map<String, String> tags) {
+        StringBuilder result = new StringBuilder();
+        for (String value : tags.values()) {
+            result.append(value).append('.');
+        }
+        return result.toString();
+    }
+
+    private class SubredditSensors {
+        private final Sensor records;
+        private final Sensor duplicates;
+        private final Sensor filtered;
+        private final Sensor reposts;
+
+        public SubredditSensors(String subreddit) {
+            Metrics metrics = taskMetrics.metrics();
+            Map<String, String> subredditTags = taskMetrics.tags("stream", thingType);
+            subredditTags.put("subreddit", subreddit);
+            String prefix = prefix(subredditTags);
+
+            this.records = metrics.sensor(prefix + "records", StreamMetrics.this.records);
+            records.add(new Meter(
+                    taskMetrics.metricName("record-rate", SUBREDDIT_GROUP, "The number of records produced "
+                            + "per second", subredditTags),
+                    taskMetrics.metricName("record-total", SUBREDDIT_GROUP, "The total number of records "
+                            + "produced", subredditTags)
+            ));
+
+            this.duplicates = metrics.sensor(prefix + "duplicates", StreamMetrics.this.duplicates);
+            duplicates.add(new Meter(
+                    taskMetrics.metricName("duplicate-rate", SUBREDDIT_GROUP, "The number of items per second "
+                            + "that were dropped because they had already been read", subredditTags),
+                    taskMetrics.metricName("duplicate-total", SUBREDDIT_GROUP, "The total number of items that "
+                            + "were dropped because they had already been read", subredditTags)
+            ));
+
+            this.filtered = metrics.sensor(prefix + "filtered", StreamMetrics.this.filtered);
+            filtered.add(new Meter(
+                    taskMetrics.metricName("filtered-rate", SUBREDDIT_GROUP, "The number of items per second "
+                            + "that were dropped by the filter before being converted", subredditTags),
+                    taskMetrics.metricName("filtered-total", SUBREDDIT_GROUP, "The total number of items that "
+                            + "were dropped by the filter before being converted", subredditTags)
+            ));
+
+            this.reposts = metrics.sensor(prefix + "reposts", StreamMetrics.this.reposts);
+            reposts.add(new Meter(
+                    taskMetrics.metricName("repost-rate", SUBREDDIT_GROUP, "The number of posts per second "
+                            + "that linked to the same URL as, or were crossposts of, a recent post", subredditTags),
+                    taskMetrics.metricName("repost-total", SUBREDDIT_GROUP, "The total number of posts that "
+                            + "linked to the same URL as, or were crossposts of, a recent post", subredditTags)
+            ));
+        }
+
+        public void close() {
+            Metrics metrics = taskMetrics.metrics();
+            metrics.removeSensor(records.name());
+            metrics.removeSensor(duplicates.name());
+            metrics.removeSensor(filtered.name());
+            metrics.removeSensor(reposts.name());
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.metrics;
+
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.JmxReporter;
+import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.utils.Time;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The metrics for a single task, registered with JMX under the {@value #JMX_PREFIX} domain and
+ * tagged with the name of the connector and the ID of the task, so that their names stay the same
+ * across restarts.
+ * <p>
+ * Metric groups:
+ * <ul>
+ *     <li>{@value #QUOTA_GROUP}: the remaining Reddit API quota</li>
+ *     <li>{@value StreamMetrics#GROUP}: per posts/comments stream record rates, dedup drops,
+ *     conversion time, and buffer depth</li>
+ *     <li>{@value StreamMetrics#SUBREDDIT_GROUP}: per subreddit record rates and dedup drops</li>
+ *     <li>{@value ListingMetrics#GROUP}: per listing fetch latency and page sizes</li>
+ *     <li>{@value #CACHE_GROUP}: per metadata cache hits, misses, and evictions</li>
+ * </ul>
+ */
+public class TaskMetrics implements Closeable {
+
+    public static final String JMX_PREFIX = "kafka.connect.reddit";
+    public static final String QUOTA_GROUP = "reddit-quota-metrics";
+    public static final String CACHE_GROUP = "reddit-cache-metrics";
+
+    private final Metrics metrics;
+    private final Map<String, String> tags;
+
+    /**
+     * @param connector the name of the connector the task belongs to
+     * @param task the ID of the task
+     */
+    public TaskMetrics(String connector, String task) {
+        this.metrics = new Metrics(
+                new MetricConfig(),
+                Collections.singletonList(new JmxReporter(JMX_PREFIX)),
+                Time.SYSTEM
+        );
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("connector", connector);
+        tags.put("task", task);
+        this.tags = Collections.unmodifiableMap(tags);
+    }
+
+    /**
+     * Register gauges for the Reddit API quota available to the task.
+     * @param remaining the number of requests remaining in the current window
+     * @param resetSeconds the number of seconds until the current window resets
+     */
+    public void registerQuota(DoubleSupplier remaining, DoubleSupplier resetSeconds) {
+        addGauge(
+                metricName("quota-remaining", QUOTA_GROUP, "The number of requests to Reddit remaining in "
+                        + "the current rate limit window, or -1 if not yet known", tags),
+                remaining
+        );
+        addGauge(
+                metricName("quota-reset-seconds", QUOTA_GROUP, "The number of seconds until the current "
+                        + "rate limit window resets", tags),
+                resetSeconds
+        );
+    }
+
+    /**
+     * Register gauges for a cache of subreddit or author metadata.
+     * @param cache the name of the cache, such as "subreddits"
+     * @param hits the number of lookups that were served from the cache
+     * @param misses the number of lookups that had to be loaded from Reddit
+     * @param hitRatio the fraction of lookups that were served from the cache
+     * @param evictions the number of entries evicted to make room for others
+     * @param size the number of entries currently cached
+     */
+    public void registerCache(
+            String cache,
+            DoubleSupplier hits,
+            DoubleSupplier misses,
+            DoubleSupplier hitRatio,
+            DoubleSupplier evictions,
+            DoubleSupplier size
+    ) {
+        Map<String, String> cacheTags = tags("cache", cache);
+        addGauge(
+                metricName("hit-total", CACHE_GROUP, "The total number of lookups that were served from the "
+                        + "cache", cacheTags),
+                hits
+        );
+        addGauge(
+                metricName("miss-total", CACHE_GROUP, "The total number of lookups that had to be loaded from "
+                        + "Reddit", cacheTags),
+                misses
+        );
+        addGauge(
+                metricName("hit-ratio", CACHE_GROUP, "The fraction of lookups that were served from the cache",
+                        cacheTags),
+                hitRatio
+        );
+        addGauge(
+                metricName("eviction-total", CACHE_GROUP, "The total number of entries evicted from the cache "
+                        + "to make room for others", cacheTags),
+                evictions
+        );
+        addGauge(
+                metricName("size", CACHE_GROUP, "The number of entries currently cached", cacheTags),
+                size
+        );
+    }
+
+    /**
+     * @param thingType the type of Thing read by the stream; "posts" or "comments"
+     * @return the metrics for a stream of the task
+     */
+    public StreamMetrics stream(String thingType) {
+        return new StreamMetrics(this, thingType);
+    }
+
+    @Override
+    public void close() {
+        metrics.close();
+    }
+
+    Metrics metrics() {
+        return metrics;
+    }
+
+    Map<String, String> tags(String key, String value) {
+        Map<String, String> result = new LinkedHashMap<>(tags);
+        result.put(key, value);
+        return result;
+    }
+
+    MetricName metricName(String name, String group, String description, Map<String, String> tags) {
+        return metrics.metricName(name, group, description, tags);
+    }
+
+    void addGauge(MetricName name, DoubleSupplier value) {
+        metrics.addMetric(name, (config, now) -> value.getAsDouble());
+    }
+}
@@ -0,0 +1,44 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.model;
+
+import com.squareup.moshi.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Metadata about a user that can be attached to the posts and comments they've written. Only
+ * available for raw values, since the JRAW models don't include the account IDs of authors.
+ */
+public class AuthorMetadata {
+
+    public static final String FIELD = "author_metadata";
+
+    private final Long linkKarma;
+    private final Long commentKarma;
+    private final Long createdSec;
+
+    /**
+     * @param linkKarma the user's karma from posts
+     * @param commentKarma the user's karma from comments
+     * @param createdSec the creation time of the user's account, in seconds since the epoch
+     */
+    public AuthorMetadata(Long linkKarma, Long commentKarma, Long createdSec) {
+        this.linkKarma = linkKarma;
+        this.commentKarma = commentKarma;
+        this.createdSec = createdSec;
+    }
+
+    public void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("link_karma").value(linkKarma);
+        writer.name("comment_karma").value(commentKarma);
+        writer.name("created_utc").value(createdSec);
+        writer.endObject();
+    }
+}
@@ -7,15 +7,24 @@
 
 package com.github.c0urante.kafka.connect.reddit.model;
 
+import com.squareup.moshi.JsonAdapter;
 import net.dean.jraw.JrawUtils;
 import net.dean.jraw.models.Comment;
 import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.connect.data.SchemaBuilder;
-import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.data.Timestamp;
 import org.apache.kafka.connect.source.SourceRecord;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 public class CommentSourceRecordConverter implements SourceRecordConverter<Comment> {
 
@@ -23,27 +32,155 @@ public class CommentSourceRecordConverter implements SourceRecordConverter<Comme
             .field("subreddit", Schema.STRING_SCHEMA)
             .build();
 
+    // Partitions and keys are shared by every converter (and every task) in the worker. Partitions
+    // use lower-case names, so that they're the same however a subreddit is spelled in the config
+    private static final SubredditInterner SUBREDDITS = new SubredditInterner(
+            subreddit -> Collections.singletonMap("comments-subreddit", subreddit.toLowerCase(Locale.ROOT)),
+            KEY_SCHEMA
+    );
+
+    private static final JsonAdapter<Comment> JSON_ADAPTER = Comment.jsonAdapter(JrawUtils.moshi);
+
+    public static final String VALUE_SCHEMA_NAME = "com.github.c0urante.kafka.connect.reddit.Comment";
+
+    private static final List<ValueProjection.Field<Comment>> VALUE_FIELDS = Arrays.asList(
+            field("id", Schema.STRING_SCHEMA, Comment::getId),
+            field("name", Schema.STRING_SCHEMA, Comment::getFullName),
+            field("subreddit", Schema.STRING_SCHEMA, Comment::getSubreddit),
+            field("subreddit_id", Schema.OPTIONAL_STRING_SCHEMA, Comment::getSubredditFullName),
+            field("author", Schema.OPTIONAL_STRING_SCHEMA, Comment::getAuthor),
+            field("author_flair_text", Schema.OPTIONAL_STRING_SCHEMA, Comment::getAuthorFlairText),
+            field("body", Schema.OPTIONAL_STRING_SCHEMA, Comment::getBody),
+            field("parent_id", Schema.OPTIONAL_STRING_SCHEMA, Comment::getParentFullName),
+            field("link_id", Schema.OPTIONAL_STRING_SCHEMA, Comment::getSubmissionFullName),
+            field("link_title", Schema.OPTIONAL_STRING_SCHEMA, Comment::getSubmissionTitle),
+            field("link_url", Schema.OPTIONAL_STRING_SCHEMA, Comment::getUrl),
+            field("score", Schema.OPTIONAL_INT32_SCHEMA, Comment::getScore),
+            field("controversiality", Schema.OPTIONAL_INT32_SCHEMA, Comment::getControversiality),
+            field("gilded", Schema.OPTIONAL_INT32_SCHEMA, comment -> (int) comment.getGilded()),
+            field("score_hidden", Schema.OPTIONAL_BOOLEAN_SCHEMA, Comment::isScoreHidden),
+            field("stickied", Schema.OPTIONAL_BOOLEAN_SCHEMA, Comment::isStickied),
+            field("archived", Schema.OPTIONAL_BOOLEAN_SCHEMA, Comment::isArchived),
+            field("created_utc", Timestamp.SCHEMA, Comment::getCreated),
+            field("edited", Timestamp.builder().optional().build(), Comment::getEdited)
+    );
+
+    /**
+     * The fields whose lengths may be limited via the text.max.length property
+     */
+    public static final List<String> TEXT_FIELDS = Collections.singletonList("body");
+
+    public static final Schema VALUE_SCHEMA =
+            ValueProjection.all(ValueFormat.STRUCT, VALUE_SCHEMA_NAME, VALUE_FIELDS).structSchema();
+
+    /**
+     * @return a function that reads the given fields from a comment, in order, for use by a
+     * {@link ThingFilter}
+     * @throws org.apache.kafka.common.config.ConfigException if any of the fields doesn't exist
+     */
+    public static Function<Comment, Object[]> fieldReader(List<String> fields) {
+        return ValueProjection.fieldReader(VALUE_SCHEMA_NAME, VALUE_FIELDS, fields);
+    }
+
 
     private final String topic;
+    private final ValueFormat valueFormat;
+    private final ValueProjection<Comment> projection;
+    private final Enricher enricher;
 
     public CommentSourceRecordConverter(String topic) {
+        this(topic, ValueFormat.MAP, Collections.emptyList(), -1);
+    }
+
+    public CommentSourceRecordConverter(
+            String topic,
+            ValueFormat valueFormat,
+            List<String> fields,
+            int textMaxLength
+    ) {
+        this(topic, valueFormat, fields, textMaxLength, null);
+    }
+
+    /**
+     * @param enricher the source of metadata to attach to records, or null if no metadata should
+     *                 be attached
+     */
+    public CommentSourceRecordConverter(
+            String topic,
+            ValueFormat valueFormat,
+            List<String> fields,
+            int textMaxLength,
+            Enricher enricher
+    ) {
         this.topic = topic;
+        this.valueFormat = valueFormat;
+        this.enricher = enricher;
+
+        List<ValueProjection.Field<Comment>> allFields = new ArrayList<>(VALUE_FIELDS);
+        if (enricher != null && enricher.enrichesSubreddits()) {
+            allFields.add(field(
+                    SubredditMetadata.FIELD,
+                    SubredditMetadata.SCHEMA,
+                    comment -> {
+                        SubredditMetadata metadata = enricher.subreddit(comment.getSubreddit());
+                        return metadata != null ? metadata.toStruct() : null;
+                    }
+            ));
+        }
+        this.projection = new ValueProjection<>(
+                valueFormat,
+                VALUE_SCHEMA_NAME,
+                allFields,
+                fields,
+                TEXT_FIELDS,
+                textMaxLength
+        );
+    }
+
+    @Override
+    public void prepare(Collection<? extends Comment> comments) {
+        if (enricher == null) {
+            return;
+        }
+        Set<String> subreddits = new HashSet<>();
+        for (Comment comment : comments) {
+            subreddits.add(comment.getSubreddit());
+        }
+        enricher.prepare(subreddits, Collections.emptySet());
     }
 
     @Override
     public SourceRecord convert(Comment comment) {
+        return convert(comment, sourceOffset(comment));
+    }
+
+    @Override
+    public SourceRecord convert(Comment comment, Map<String, ?> sourceOffset) {
+        return convert(comment, sourcePartition(comment), sourceOffset);
+    }
+
+    @Override
+    public SourceRecord convert(Comment comment, Map<String, ?> sourcePartition, Map<String, ?> sourceOffset) {
         return new SourceRecord(
-                sourcePartition(comment),
-                sourceOffset(comment),
+                sourcePartition,
+                sourceOffset,
                 topic,
                 KEY_SCHEMA,
-                convertKey(comment),
-                null,
+                SUBREDDITS.key(comment.getSubreddit()),
+                projection.valueSchema(),
                 convertValue(comment)
         );
     }
 
     public static Map<String, Object> sourcePartition(String subreddit) {
+        return SUBREDDITS.sourcePartition(subreddit);
+    }
+
+    /**
+     * @return the source partition that offsets for the subreddit were stored under before
+     * partitions used lower-case names, when they used the subreddit's name as given
+     */
+    public static Map<String, Object> legacySourcePartition(String subreddit) {
         return Collections.singletonMap("comments-subreddit", subreddit);
     }
 
@@ -55,14 +192,28 @@ public class CommentSourceRecordConverter implements SourceRecordConverter<Comme
         return Collections.singletonMap("created", comment.getCreated().getTime());
     }
 
-    private static Struct convertKey(Comment comment) {
-        Struct result = new Struct(KEY_SCHEMA);
-        result.put("subreddit", comment.getSubreddit());
-        return result;
+    @SuppressWarnings("unchecked")
+    private Object convertValue(Comment comment) {
+        switch (valueFormat) {
+            case STRUCT:
+                return projection.toStruct(comment);
+            case MAP:
+            default:
+                Map<String, Object> value = (Map<String, Object>) JSON_ADAPTER.toJsonValue(comment);
+                if (enricher != null && enricher.enrichesSubreddits()) {
+                    SubredditMetadata metadata = enricher.subreddit(comment.getSubreddit());
+                    value.put(SubredditMetadata.FIELD, metadata != null ? metadata.toMap() : null);
+                }
+                return projection.project(value);
+        }
     }
 
-    private Object convertValue(Comment comment) {
-        return Comment.jsonAdapter(JrawUtils.moshi).toJsonValue(comment);
+    private static ValueProjection.Field<Comment> field(
+            String name,
+            Schema schema,
+            Function<Comment, Object> extractor
+    ) {
+        return new ValueProjection.Field<>(name, schema, extractor);
     }
 }
 
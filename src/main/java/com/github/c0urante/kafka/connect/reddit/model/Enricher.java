@@ -0,0 +1,80 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.model;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Looks up metadata about the subreddits and authors of posts and comments, so that it can be
+ * attached to their records. Converters {@link SourceRecordConverter#prepare(Collection) prepare}
+ * each batch of items before converting any of them, which loads everything that the batch needs
+ * with as few requests as possible; converting an item only ever reads from the caches.
+ */
+public class Enricher {
+
+    private final MetadataCache<SubredditMetadata> subreddits;
+    private final MetadataCache<AuthorMetadata> authors;
+
+    /**
+     * @param subreddits the cache of subreddit metadata, keyed by lowercased subreddit name, or
+     *                   null if subreddit metadata shouldn't be attached
+     * @param authors the cache of author metadata, keyed by account full name, or null if author
+     *                metadata shouldn't be attached
+     */
+    public Enricher(MetadataCache<SubredditMetadata> subreddits, MetadataCache<AuthorMetadata> authors) {
+        this.subreddits = subreddits;
+        this.authors = authors;
+    }
+
+    public boolean enrichesSubreddits() {
+        return subreddits != null;
+    }
+
+    public boolean enrichesAuthors() {
+        return authors != null;
+    }
+
+    /**
+     * Load the metadata for the given subreddits and authors, if it isn't already cached.
+     * @param subredditNames the names of the subreddits
+     * @param authorFullNames the full names of the authors' accounts; may contain nulls, which are
+     *                        ignored
+     */
+    public void prepare(Collection<String> subredditNames, Collection<String> authorFullNames) {
+        if (subreddits != null) {
+            Set<String> keys = new HashSet<>();
+            for (String subreddit : subredditNames) {
+                keys.add(subreddit.toLowerCase(Locale.ROOT));
+            }
+            subreddits.load(keys);
+        }
+        if (authors != null) {
+            Set<String> keys = new HashSet<>(authorFullNames);
+            keys.removeAll(Collections.singleton(null));
+            authors.load(keys);
+        }
+    }
+
+    /**
+     * @return the metadata for the subreddit, or null if it's unknown
+     */
+    public SubredditMetadata subreddit(String subreddit) {
+        return subreddits != null ? subreddits.get(subreddit.toLowerCase(Locale.ROOT)) : null;
+    }
+
+    /**
+     * @return the metadata for the author's account, or null if it's unknown
+     */
+    public AuthorMetadata author(String authorFullName) {
+        return authors != null && authorFullName != null ? authors.get(authorFullName) : null;
+    }
+}
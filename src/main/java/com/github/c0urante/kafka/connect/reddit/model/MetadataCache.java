@@ -0,0 +1,200 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.model;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * A bounded cache of metadata about subreddits or users, which is loaded from Reddit in batches.
+ * Entries expire a fixed amount of time after they were loaded, and once the cache is full, the
+ * least recently used entries are evicted to make room for new ones. Things that don't exist (or
+ * can't be seen) are cached as well, so that they aren't asked about over and over again.
+ * <p>
+ * Entries are only ever loaded through {@link #load(Collection)}; {@link #get(String)} never
+ * makes any requests, so that converting a record never waits on Reddit.
+ * <p>
+ * Thread-safe.
+ */
+public class MetadataCache<V> {
+
+    private static final Logger log = LoggerFactory.getLogger(MetadataCache.class);
+
+    private final String name;
+    private final long ttlMs;
+    private final int batchSize;
+    private final Function<List<String>, Map<String, V>> loader;
+
+    // Guarded by itself; in access order, so that the eldest entry is the least recently used one
+    private final LinkedHashMap<String, Cached<V>> entries;
+    // Held while loading, so that several threads missing the same keys at once only load them once
+    private final Object loadLock;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param name a description of the cache, such as "subreddits", for logging
+     * @param maxEntries the maximum number of entries to keep
+     * @param ttlMs how long to keep each entry for, in milliseconds
+     * @param batchSize the maximum number of keys to load at once
+     * @param loader loads the values for a batch of keys; keys that are missing from the result
+     *               are cached as having no value
+     */
+    public MetadataCache(
+            String name,
+            int maxEntries,
+            long ttlMs,
+            int batchSize,
+            Function<List<String>, Map<String, V>> loader
+    ) {
+        this.name = name;
+        this.ttlMs = ttlMs;
+        this.batchSize = batchSize;
+        this.loader = loader;
+        this.entries = new LinkedHashMap<String, Cached<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Cached<V>> eldest) {
+                if (size() <= maxEntries) {
+                    return false;
+                }
+                evictions++;
+                return true;
+            }
+        };
+        this.loadLock = new Object();
+    }
+
+    /**
+     * Make sure that the given keys are cached, loading any that aren't (or that have expired) in
+     * as few batches as possible. If loading fails, the failure is logged and the keys are left
+     * uncached, to be tried again the next time they're needed.
+     */
+    public void load(Collection<String> keys) {
+        if (missing(keys, true).isEmpty()) {
+            return;
+        }
+        synchronized (loadLock) {
+            // Another thread may have loaded some of them while this one was waiting
+            List<String> missing = new ArrayList<>(missing(keys, false));
+            for (int i = 0; i < missing.size(); i += batchSize) {
+                List<String> batch = missing.subList(i, Math.min(missing.size(), i + batchSize));
+                Map<String, V> values;
+                try {
+                    values = loader.apply(batch);
+                } catch (RuntimeException e) {
+                    log.warn(
+                            "Failed to load metadata for {} {}; records will be written without it",
+                            batch.size(),
+                            name,
+                            e
+                    );
+                    return;
+                }
+                long expiresMs = System.currentTimeMillis() + ttlMs;
+                synchronized (entries) {
+                    for (String key : batch) {
+                        entries.put(key, new Cached<>(values.get(key), expiresMs));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the cached value for the key, or null if it hasn't been loaded, has expired, or
+     * doesn't exist
+     */
+    public V get(String key) {
+        synchronized (entries) {
+            Cached<V> entry = entries.get(key);
+            return entry != null && entry.expiresMs > System.currentTimeMillis() ? entry.value : null;
+        }
+    }
+
+    public double hits() {
+        synchronized (entries) {
+            return hits;
+        }
+    }
+
+    public double misses() {
+        synchronized (entries) {
+            return misses;
+        }
+    }
+
+    /**
+     * @return the fraction of keys passed to {@link #load(Collection)} that were already cached,
+     * or 0 if nothing has been looked up yet
+     */
+    public double hitRatio() {
+        synchronized (entries) {
+            long lookups = hits + misses;
+            return lookups > 0 ? (double) hits / lookups : 0;
+        }
+    }
+
+    public double evictions() {
+        synchronized (entries) {
+            return evictions;
+        }
+    }
+
+    public double size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private Set<String> missing(Collection<String> keys, boolean count) {
+        if (keys.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> result = new LinkedHashSet<>();
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            for (String key : keys) {
+                Cached<V> entry = entries.get(key);
+                boolean hit = entry != null && entry.expiresMs > now;
+                if (!hit) {
+                    result.add(key);
+                }
+                if (count) {
+                    if (hit) {
+                        hits++;
+                    } else {
+                        misses++;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static class Cached<V> {
+        private final V value;
+        private final long expiresMs;
+
+        public Cached(V value, long expiresMs) {
+            this.value = value;
+            this.expiresMs = expiresMs;
+        }
+    }
+}
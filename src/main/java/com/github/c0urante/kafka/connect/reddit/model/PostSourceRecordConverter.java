@@ -7,15 +7,27 @@
 
 package com.github.c0urante.kafka.connect.reddit.model;
 
+import com.squareup.moshi.JsonAdapter;
 import net.dean.jraw.JrawUtils;
+import net.dean.jraw.models.EmbeddedMedia;
 import net.dean.jraw.models.Submission;
+import net.dean.jraw.models.SubmissionPreview;
 import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.connect.data.SchemaBuilder;
 import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.data.Timestamp;
 import org.apache.kafka.connect.source.SourceRecord;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 public class PostSourceRecordConverter implements SourceRecordConverter<Submission> {
 
@@ -23,27 +35,230 @@ public class PostSourceRecordConverter implements SourceRecordConverter<Submissi
             .field("subreddit", Schema.STRING_SCHEMA)
             .build();
 
+    // Partitions and keys are shared by every converter (and every task) in the worker. Partitions
+    // use lower-case names, so that they're the same however a subreddit is spelled in the config
+    private static final SubredditInterner SUBREDDITS = new SubredditInterner(
+            subreddit -> Collections.singletonMap("posts-subreddit", subreddit.toLowerCase(Locale.ROOT)),
+            KEY_SCHEMA
+    );
+
+    private static final JsonAdapter<Submission> JSON_ADAPTER = Submission.jsonAdapter(JrawUtils.moshi);
+
+    public static final Schema VARIATION_SCHEMA = SchemaBuilder.struct()
+            .name("com.github.c0urante.kafka.connect.reddit.PreviewVariation")
+            .version(1)
+            .optional()
+            .field("url", Schema.OPTIONAL_STRING_SCHEMA)
+            .field("width", Schema.OPTIONAL_INT32_SCHEMA)
+            .field("height", Schema.OPTIONAL_INT32_SCHEMA)
+            .build();
+
+    public static final Schema IMAGE_SET_SCHEMA = SchemaBuilder.struct()
+            .name("com.github.c0urante.kafka.connect.reddit.PreviewImage")
+            .version(1)
+            .field("id", Schema.OPTIONAL_STRING_SCHEMA)
+            .field("source", VARIATION_SCHEMA)
+            .field("resolutions", SchemaBuilder.array(VARIATION_SCHEMA).optional().build())
+            .build();
+
+    public static final Schema PREVIEW_SCHEMA = SchemaBuilder.struct()
+            .name("com.github.c0urante.kafka.connect.reddit.Preview")
+            .version(1)
+            .optional()
+            .field("enabled", Schema.OPTIONAL_BOOLEAN_SCHEMA)
+            .field("images", SchemaBuilder.array(IMAGE_SET_SCHEMA).optional().build())
+            .build();
+
+    public static final Schema OEMBED_SCHEMA = SchemaBuilder.struct()
+            .name("com.github.c0urante.kafka.connect.reddit.MediaOEmbed")
+            .version(1)
+            .optional()
+            .field("type", Schema.OPTIONAL_STRING_SCHEMA)
+            .field("provider_name", Schema.OPTIONAL_STRING_SCHEMA)
+            .field("provider_url", Schema.OPTIONAL_STRING_SCHEMA)
+            .field("title", Schema.OPTIONAL_STRING_SCHEMA)
+            .field("author_name", Schema.OPTIONAL_STRING_SCHEMA)
+            .field("author_url", Schema.OPTIONAL_STRING_SCHEMA)
+            .field("thumbnail_url", Schema.OPTIONAL_STRING_SCHEMA)
+            .field("thumbnail_width", Schema.OPTIONAL_INT32_SCHEMA)
+            .field("thumbnail_height", Schema.OPTIONAL_INT32_SCHEMA)
+            .field("width", Schema.OPTIONAL_INT32_SCHEMA)
+            .field("height", Schema.OPTIONAL_INT32_SCHEMA)
+            .build();
+
+    public static final Schema REDDIT_VIDEO_SCHEMA = SchemaBuilder.struct()
+            .name("com.github.c0urante.kafka.connect.reddit.MediaRedditVideo")
+            .version(1)
+            .optional()
+            .field("fallback_url", Schema.OPTIONAL_STRING_SCHEMA)
+            .field("dash_url", Schema.OPTIONAL_STRING_SCHEMA)
+            .field("hls_url", Schema.OPTIONAL_STRING_SCHEMA)
+            .field("width", Schema.OPTIONAL_INT32_SCHEMA)
+            .field("height", Schema.OPTIONAL_INT32_SCHEMA)
+            .field("duration", Schema.OPTIONAL_INT32_SCHEMA)
+            .field("is_gif", Schema.OPTIONAL_BOOLEAN_SCHEMA)
+            .build();
+
+    public static final Schema MEDIA_SCHEMA = SchemaBuilder.struct()
+            .name("com.github.c0urante.kafka.connect.reddit.Media")
+            .version(1)
+            .optional()
+            .field("type", Schema.OPTIONAL_STRING_SCHEMA)
+            .field("oembed", OEMBED_SCHEMA)
+            .field("reddit_video", REDDIT_VIDEO_SCHEMA)
+            .build();
+
+    public static final String VALUE_SCHEMA_NAME = "com.github.c0urante.kafka.connect.reddit.Post";
+
+    private static final List<ValueProjection.Field<Submission>> VALUE_FIELDS = Arrays.asList(
+            field("id", Schema.STRING_SCHEMA, Submission::getId),
+            field("name", Schema.STRING_SCHEMA, Submission::getFullName),
+            field("subreddit", Schema.STRING_SCHEMA, Submission::getSubreddit),
+            field("subreddit_id", Schema.OPTIONAL_STRING_SCHEMA, Submission::getSubredditFullName),
+            field("author", Schema.OPTIONAL_STRING_SCHEMA, Submission::getAuthor),
+            field("title", Schema.OPTIONAL_STRING_SCHEMA, Submission::getTitle),
+            field("selftext", Schema.OPTIONAL_STRING_SCHEMA, Submission::getSelfText),
+            field("url", Schema.OPTIONAL_STRING_SCHEMA, Submission::getUrl),
+            field("domain", Schema.OPTIONAL_STRING_SCHEMA, Submission::getDomain),
+            field("permalink", Schema.OPTIONAL_STRING_SCHEMA, Submission::getPermalink),
+            field("thumbnail", Schema.OPTIONAL_STRING_SCHEMA, Submission::getThumbnail),
+            field("post_hint", Schema.OPTIONAL_STRING_SCHEMA, Submission::getPostHint),
+            field("link_flair_text", Schema.OPTIONAL_STRING_SCHEMA, Submission::getLinkFlairText),
+            field("score", Schema.OPTIONAL_INT32_SCHEMA, Submission::getScore),
+            field("num_comments", Schema.OPTIONAL_INT32_SCHEMA, Submission::getCommentCount),
+            field("gilded", Schema.OPTIONAL_INT32_SCHEMA, submission -> (int) submission.getGilded()),
+            field("is_self", Schema.OPTIONAL_BOOLEAN_SCHEMA, Submission::isSelfPost),
+            field("over_18", Schema.OPTIONAL_BOOLEAN_SCHEMA, Submission::isNsfw),
+            field("spoiler", Schema.OPTIONAL_BOOLEAN_SCHEMA, Submission::isSpoiler),
+            field("locked", Schema.OPTIONAL_BOOLEAN_SCHEMA, Submission::isLocked),
+            field("stickied", Schema.OPTIONAL_BOOLEAN_SCHEMA, Submission::isStickied),
+            field("archived", Schema.OPTIONAL_BOOLEAN_SCHEMA, Submission::isArchived),
+            field("hide_score", Schema.OPTIONAL_BOOLEAN_SCHEMA, Submission::isScoreHidden),
+            field("removed", Schema.OPTIONAL_BOOLEAN_SCHEMA, Submission::isRemoved),
+            field("spam", Schema.OPTIONAL_BOOLEAN_SCHEMA, Submission::isSpam),
+            field("quarantine", Schema.OPTIONAL_BOOLEAN_SCHEMA, Submission::isQuarantine),
+            field("created_utc", Timestamp.SCHEMA, Submission::getCreated),
+            field("edited", Timestamp.builder().optional().build(), Submission::getEdited),
+            field("preview", PREVIEW_SCHEMA, submission -> convertPreview(submission.getPreview())),
+            field("media", MEDIA_SCHEMA, submission -> convertMedia(submission.getEmbeddedMedia()))
+    );
+
+    /**
+     * The fields whose lengths may be limited via the text.max.length property
+     */
+    public static final List<String> TEXT_FIELDS = Collections.singletonList("selftext");
+
+    public static final Schema VALUE_SCHEMA =
+            ValueProjection.all(ValueFormat.STRUCT, VALUE_SCHEMA_NAME, VALUE_FIELDS).structSchema();
+
+    /**
+     * @return a function that reads the given fields from a post, in order, for use by a
+     * {@link ThingFilter}
+     * @throws org.apache.kafka.common.config.ConfigException if any of the fields doesn't exist
+     */
+    public static Function<Submission, Object[]> fieldReader(List<String> fields) {
+        return ValueProjection.fieldReader(VALUE_SCHEMA_NAME, VALUE_FIELDS, fields);
+    }
+
 
     private final String topic;
+    private final ValueFormat valueFormat;
+    private final ValueProjection<Submission> projection;
+    private final Enricher enricher;
 
     public PostSourceRecordConverter(String topic) {
+        this(topic, ValueFormat.MAP, Collections.emptyList(), -1);
+    }
+
+    public PostSourceRecordConverter(
+            String topic,
+            ValueFormat valueFormat,
+            List<String> fields,
+            int textMaxLength
+    ) {
+        this(topic, valueFormat, fields, textMaxLength, null);
+    }
+
+    /**
+     * @param enricher the source of metadata to attach to records, or null if no metadata should
+     *                 be attached
+     */
+    public PostSourceRecordConverter(
+            String topic,
+            ValueFormat valueFormat,
+            List<String> fields,
+            int textMaxLength,
+            Enricher enricher
+    ) {
         this.topic = topic;
+        this.valueFormat = valueFormat;
+        this.enricher = enricher;
+
+        List<ValueProjection.Field<Submission>> allFields = new ArrayList<>(VALUE_FIELDS);
+        if (enricher != null && enricher.enrichesSubreddits()) {
+            allFields.add(field(
+                    SubredditMetadata.FIELD,
+                    SubredditMetadata.SCHEMA,
+                    submission -> {
+                        SubredditMetadata metadata = enricher.subreddit(submission.getSubreddit());
+                        return metadata != null ? metadata.toStruct() : null;
+                    }
+            ));
+        }
+        this.projection = new ValueProjection<>(
+                valueFormat,
+                VALUE_SCHEMA_NAME,
+                allFields,
+                fields,
+                TEXT_FIELDS,
+                textMaxLength
+        );
+    }
+
+    @Override
+    public void prepare(Collection<? extends Submission> submissions) {
+        if (enricher == null) {
+            return;
+        }
+        Set<String> subreddits = new HashSet<>();
+        for (Submission submission : submissions) {
+            subreddits.add(submission.getSubreddit());
+        }
+        enricher.prepare(subreddits, Collections.emptySet());
     }
 
     @Override
     public SourceRecord convert(Submission submission) {
+        return convert(submission, sourceOffset(submission));
+    }
+
+    @Override
+    public SourceRecord convert(Submission submission, Map<String, ?> sourceOffset) {
+        return convert(submission, sourcePartition(submission), sourceOffset);
+    }
+
+    @Override
+    public SourceRecord convert(Submission submission, Map<String, ?> sourcePartition, Map<String, ?> sourceOffset) {
         return new SourceRecord(
-                sourcePartition(submission),
-                sourceOffset(submission),
+                sourcePartition,
+                sourceOffset,
                 topic,
                 KEY_SCHEMA,
-                convertKey(submission),
-                null,
+                SUBREDDITS.key(submission.getSubreddit()),
+                projection.valueSchema(),
                 convertValue(submission)
         );
     }
 
     public static Map<String, Object> sourcePartition(String subreddit) {
+        return SUBREDDITS.sourcePartition(subreddit);
+    }
+
+    /**
+     * @return the source partition that offsets for the subreddit were stored under before
+     * partitions used lower-case names, when they used the subreddit's name as given
+     */
+    public static Map<String, Object> legacySourcePartition(String subreddit) {
         return Collections.singletonMap("posts-subreddit", subreddit);
     }
 
@@ -55,14 +270,117 @@ public class PostSourceRecordConverter implements SourceRecordConverter<Submissi
         return Collections.singletonMap("created", submission.getCreated().getTime());
     }
 
-    private static Struct convertKey(Submission submission) {
-        Struct result = new Struct(KEY_SCHEMA);
-        result.put("subreddit", submission.getSubreddit());
-        return result;
+    @SuppressWarnings("unchecked")
+    private Object convertValue(Submission submission) {
+        switch (valueFormat) {
+            case STRUCT:
+                return projection.toStruct(submission);
+            case MAP:
+            default:
+                Map<String, Object> value = (Map<String, Object>) JSON_ADAPTER.toJsonValue(submission);
+                if (enricher != null && enricher.enrichesSubreddits()) {
+                    SubredditMetadata metadata = enricher.subreddit(submission.getSubreddit());
+                    value.put(SubredditMetadata.FIELD, metadata != null ? metadata.toMap() : null);
+                }
+                return projection.project(value);
+        }
+    }
+
+    private static ValueProjection.Field<Submission> field(
+            String name,
+            Schema schema,
+            Function<Submission, Object> extractor
+    ) {
+        return new ValueProjection.Field<>(name, schema, extractor);
+    }
+
+    private static Struct convertPreview(SubmissionPreview preview) {
+        if (preview == null) {
+            return null;
+        }
+
+        List<Struct> images = null;
+        if (preview.getImages() != null) {
+            images = new ArrayList<>(preview.getImages().size());
+            for (SubmissionPreview.ImageSet imageSet : preview.getImages()) {
+                images.add(convertImageSet(imageSet));
+            }
+        }
+
+        return new Struct(PREVIEW_SCHEMA)
+                .put("enabled", preview.isEnabled())
+                .put("images", images);
+    }
+
+    private static Struct convertImageSet(SubmissionPreview.ImageSet imageSet) {
+        List<Struct> resolutions = null;
+        if (imageSet.getResolutions() != null) {
+            resolutions = new ArrayList<>(imageSet.getResolutions().size());
+            for (SubmissionPreview.Variation resolution : imageSet.getResolutions()) {
+                resolutions.add(convertVariation(resolution));
+            }
+        }
+
+        return new Struct(IMAGE_SET_SCHEMA)
+                .put("id", imageSet.getId())
+                .put("source", convertVariation(imageSet.getSource()))
+                .put("resolutions", resolutions);
+    }
+
+    private static Struct convertVariation(SubmissionPreview.Variation variation) {
+        if (variation == null) {
+            return null;
+        }
+
+        return new Struct(VARIATION_SCHEMA)
+                .put("url", variation.getUrl())
+                .put("width", variation.getWidth())
+                .put("height", variation.getHeight());
+    }
+
+    private static Struct convertMedia(EmbeddedMedia media) {
+        if (media == null) {
+            return null;
+        }
+
+        return new Struct(MEDIA_SCHEMA)
+                .put("type", media.getType())
+                .put("oembed", convertOEmbed(media.getOEmbed()))
+                .put("reddit_video", convertRedditVideo(media.getRedditVideo()));
     }
 
-    private static Object convertValue(Submission submission) {
-        return Submission.jsonAdapter(JrawUtils.moshi).toJsonValue(submission);
+    private static Struct convertOEmbed(EmbeddedMedia.OEmbed oEmbed) {
+        if (oEmbed == null) {
+            return null;
+        }
+
+        return new Struct(OEMBED_SCHEMA)
+                .put("type", oEmbed.getType())
+                .put("provider_name", oEmbed.getProviderName())
+                .put("provider_url", oEmbed.getProviderUrl())
+                .put("title", oEmbed.getTitle())
+                .put("author_name", oEmbed.getAuthorName())
+                .put("author_url", oEmbed.getAuthorUrl())
+                .put("thumbnail_url", oEmbed.getThumbnailUrl())
+                .put("thumbnail_width", oEmbed.getThumbnailWidth())
+                .put("thumbnail_height", oEmbed.getThumbnailHeight())
+                .put("width", oEmbed.getWidth())
+                .put("height", oEmbed.getHeight());
+    }
+
+    private static Struct convertRedditVideo(EmbeddedMedia.RedditVideo redditVideo) {
+        if (redditVideo == null) {
+            return null;
+        }
+
+        return new Struct(REDDIT_VIDEO_SCHEMA)
+                .put("fallback_url", redditVideo.getFallbackUrl())
+                .put("dash_url", redditVideo.getDashUrl())
+                .put("hls_url", redditVideo.getHlsUrl())
+                .put("width", redditVideo.getWidth())
+                .put("height", redditVideo.getHeight())
+                .put("duration", redditVideo.getDuration())
+                .put("is_gif", redditVideo.isGif());
     }
 }
 
@@ -0,0 +1,224 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.model;
+
+import com.squareup.moshi.JsonReader;
+import com.squareup.moshi.JsonWriter;
+import okio.Buffer;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.apache.kafka.connect.source.SourceRecord;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Converts posts or comments whose JSON has been kept as-is into records, with either the UTF-8
+ * encoded bytes or the string form of that JSON as their value.
+ */
+public class RawSourceRecordConverter implements SourceRecordConverter<RawThing> {
+
+    public static final Schema KEY_SCHEMA = SchemaBuilder.struct()
+            .field("subreddit", Schema.STRING_SCHEMA)
+            .build();
+
+
+    private final String topic;
+    private final ValueFormat valueFormat;
+    private final SubredditInterner subreddits;
+    private final Enricher enricher;
+
+    /**
+     * @param topic the topic to write records to
+     * @param valueFormat the format for record values; must be either
+     *                    {@link ValueFormat#JSON_BYTES} or {@link ValueFormat#JSON_STRING}
+     * @param sourcePartition the function to use to determine the source partition for a given
+     *                        subreddit; should be the same one used by the non-raw converter for
+     *                        the same kind of Thing so that offsets are preserved across formats
+     */
+    public RawSourceRecordConverter(
+            String topic,
+            ValueFormat valueFormat,
+            Function<String, Map<String, Object>> sourcePartition
+    ) {
+        this(topic, valueFormat, sourcePartition, null);
+    }
+
+    /**
+     * @param enricher the source of metadata to add to the JSON for each Thing, or null if no
+     *                 metadata should be added
+     */
+    public RawSourceRecordConverter(
+            String topic,
+            ValueFormat valueFormat,
+            Function<String, Map<String, Object>> sourcePartition,
+            Enricher enricher
+    ) {
+        if (!valueFormat.isRaw()) {
+            throw new IllegalArgumentException("Value format must be raw, but was " + valueFormat);
+        }
+        this.topic = topic;
+        this.valueFormat = valueFormat;
+        this.subreddits = new SubredditInterner(sourcePartition, KEY_SCHEMA);
+        this.enricher = enricher;
+    }
+
+    @Override
+    public SourceRecord convert(RawThing thing) {
+        return convert(thing, sourceOffset(thing));
+    }
+
+    @Override
+    public SourceRecord convert(RawThing thing, Map<String, ?> sourceOffset) {
+        return convert(thing, sourcePartition(thing.getSubreddit()), sourceOffset);
+    }
+
+    @Override
+    public SourceRecord convert(RawThing thing, Map<String, ?> sourcePartition, Map<String, ?> sourceOffset) {
+        return new SourceRecord(
+                sourcePartition,
+                sourceOffset,
+                topic,
+                KEY_SCHEMA,
+                subreddits.key(thing.getSubreddit()),
+                valueSchema(),
+                convertValue(thing)
+        );
+    }
+
+    @Override
+    public void prepare(Collection<? extends RawThing> things) {
+        if (enricher == null) {
+            return;
+        }
+        Set<String> subreddits = new HashSet<>();
+        Set<String> authors = new HashSet<>();
+        for (RawThing thing : things) {
+            subreddits.add(thing.getSubreddit());
+            authors.add(thing.getAuthorFullName());
+        }
+        enricher.prepare(subreddits, authors);
+    }
+
+    public Map<String, Object> sourcePartition(String subreddit) {
+        return subreddits.sourcePartition(subreddit);
+    }
+
+    /**
+     * @return a function that reads the given top-level fields from the JSON of a post or comment,
+     * in order, for use by a {@link ThingFilter}; strings, numbers and booleans are read as-is,
+     * and missing fields, nulls, objects and arrays are all read as null
+     */
+    public static Function<RawThing, Object[]> fieldReader(List<String> fields) {
+        JsonReader.Options options = JsonReader.Options.of(fields.toArray(new String[0]));
+        return thing -> {
+            Object[] result = new Object[fields.size()];
+            JsonReader reader = JsonReader.of(new Buffer().write(thing.getJson()));
+            try {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    int field = reader.selectName(options);
+                    if (field < 0) {
+                        reader.skipName();
+                        reader.skipValue();
+                        continue;
+                    }
+                    switch (reader.peek()) {
+                        case STRING:
+                            result[field] = reader.nextString();
+                            break;
+                        case NUMBER:
+                            result[field] = reader.nextDouble();
+                            break;
+                        case BOOLEAN:
+                            result[field] = reader.nextBoolean();
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+            } catch (IOException e) {
+                // The JSON has already been parsed once while reading it from Reddit
+                throw new ConnectException("Failed to read fields from JSON for " + thing.getFullName(), e);
+            }
+            return result;
+        };
+    }
+
+    private static Map<String, ?> sourceOffset(RawThing thing) {
+        return Collections.singletonMap("created", thing.getCreated().getTime());
+    }
+
+    private Schema valueSchema() {
+        return valueFormat == ValueFormat.JSON_STRING ? Schema.STRING_SCHEMA : Schema.BYTES_SCHEMA;
+    }
+
+    private Object convertValue(RawThing thing) {
+        byte[] json = enricher != null ? enrich(thing) : thing.getJson();
+        return valueFormat == ValueFormat.JSON_STRING
+                ? new String(json, StandardCharsets.UTF_8)
+                : json;
+    }
+
+    /**
+     * @return the JSON for the Thing, with its metadata added as the last fields of the object
+     */
+    private byte[] enrich(RawThing thing) {
+        byte[] json = thing.getJson();
+        int end = json.length - 1;
+        while (end > 0 && json[end] != '}') {
+            end--;
+        }
+        if (end <= 0) {
+            return json;
+        }
+
+        Buffer result = new Buffer();
+        result.write(json, 0, end);
+        try {
+            if (enricher.enrichesSubreddits()) {
+                result.writeUtf8(",\"" + SubredditMetadata.FIELD + "\":");
+                SubredditMetadata metadata = enricher.subreddit(thing.getSubreddit());
+                writeMetadata(result, metadata != null ? metadata::writeJson : null);
+            }
+            if (enricher.enrichesAuthors()) {
+                result.writeUtf8(",\"" + AuthorMetadata.FIELD + "\":");
+                AuthorMetadata metadata = enricher.author(thing.getAuthorFullName());
+                writeMetadata(result, metadata != null ? metadata::writeJson : null);
+            }
+        } catch (IOException e) {
+            // Writing to an in-memory buffer can't really fail
+            throw new ConnectException("Failed to add metadata to JSON for " + thing.getFullName(), e);
+        }
+        result.write(json, end, json.length - end);
+        return result.readByteArray();
+    }
+
+    private static void writeMetadata(Buffer buffer, MetadataWriter metadata) throws IOException {
+        if (metadata == null) {
+            buffer.writeUtf8("null");
+            return;
+        }
+        JsonWriter writer = JsonWriter.of(buffer);
+        writer.setSerializeNulls(true);
+        metadata.writeJson(writer);
+        writer.flush();
+    }
+
+    private interface MetadataWriter {
+        void writeJson(JsonWriter writer) throws IOException;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.model;
+
+import net.dean.jraw.models.UniquelyIdentifiable;
+
+import java.util.Date;
+
+/**
+ * A post or comment whose JSON representation, as returned by Reddit, has been kept as-is instead
+ * of being deserialized into a JRAW model. Only the fields required for partitioning, offset
+ * tracking, deduplication, and enrichment are decoded.
+ */
+public class RawThing implements UniquelyIdentifiable {
+
+    private final String fullName;
+    private final String subreddit;
+    private final Date created;
+    private final String authorFullName;
+    private final byte[] json;
+
+    public RawThing(String fullName, String subreddit, Date created, byte[] json) {
+        this(fullName, subreddit, created, null, json);
+    }
+
+    public RawThing(String fullName, String subreddit, Date created, String authorFullName, byte[] json) {
+        this.fullName = fullName;
+        this.subreddit = subreddit;
+        this.created = created;
+        this.authorFullName = authorFullName;
+        this.json = json;
+    }
+
+    @Override
+    public String getUniqueId() {
+        return fullName;
+    }
+
+    public String getFullName() {
+        return fullName;
+    }
+
+    public String getSubreddit() {
+        return subreddit;
+    }
+
+    public Date getCreated() {
+        return created;
+    }
+
+    /**
+     * @return the full name of the author's account, such as {@code t2_abc123}, or null if the
+     * author has deleted their account
+     */
+    public String getAuthorFullName() {
+        return authorFullName;
+    }
+
+    /**
+     * @return the UTF-8 encoded JSON for the {@code data} field of the Thing
+     */
+    public byte[] getJson() {
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return "RawThing{fullName=" + fullName + ", subreddit=" + subreddit + ", created=" + created + "}";
+    }
+}
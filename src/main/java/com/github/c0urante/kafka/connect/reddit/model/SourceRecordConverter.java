@@ -9,8 +9,23 @@ package com.github.c0urante.kafka.connect.reddit.model;
 
 import org.apache.kafka.connect.source.SourceRecord;
 
+import java.util.Collection;
+import java.util.Map;
+
 public interface SourceRecordConverter<Thing> {
 
     SourceRecord convert(Thing thing);
 
+    SourceRecord convert(Thing thing, Map<String, ?> sourceOffset);
+
+    SourceRecord convert(Thing thing, Map<String, ?> sourcePartition, Map<String, ?> sourceOffset);
+
+    /**
+     * Get ready to convert a batch of Things, such as by loading anything the records for them
+     * will need that isn't already at hand. Should be invoked with each batch before converting
+     * any of the Things in it; may block.
+     */
+    default void prepare(Collection<? extends Thing> things) {
+    }
+
 }
@@ -0,0 +1,81 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.model;
+
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.Struct;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Hands out the parts of a record that are the same for every post or comment from a given
+ * subreddit (its source partition and its key), creating each of them once instead of once per
+ * record. Every record from a subreddit shares the same instances, so they must never be modified.
+ * <p>
+ * Listings such as r/all can turn up any number of subreddits, so the number of subreddits kept
+ * is bounded; once it's reached, everything is dropped and created again as needed.
+ * <p>
+ * Thread-safe.
+ */
+final class SubredditInterner {
+
+    private static final int MAX_SUBREDDITS = 10000;
+
+    private final Function<String, Map<String, Object>> sourcePartition;
+    private final Schema keySchema;
+    private final ConcurrentMap<String, Interned> interned;
+
+    /**
+     * @param sourcePartition creates the source partition for a subreddit
+     * @param keySchema the schema for record keys, which must have a single "subreddit" field
+     */
+    public SubredditInterner(Function<String, Map<String, Object>> sourcePartition, Schema keySchema) {
+        this.sourcePartition = sourcePartition;
+        this.keySchema = keySchema;
+        this.interned = new ConcurrentHashMap<>();
+    }
+
+    public Map<String, Object> sourcePartition(String subreddit) {
+        return get(subreddit).sourcePartition;
+    }
+
+    public Struct key(String subreddit) {
+        return get(subreddit).key;
+    }
+
+    private Interned get(String subreddit) {
+        Interned result = interned.get(subreddit);
+        if (result != null) {
+            return result;
+        }
+        if (interned.size() >= MAX_SUBREDDITS) {
+            interned.clear();
+        }
+        return interned.computeIfAbsent(subreddit, this::intern);
+    }
+
+    private Interned intern(String subreddit) {
+        Struct key = new Struct(keySchema);
+        key.put("subreddit", subreddit);
+        key.validate();
+        return new Interned(sourcePartition.apply(subreddit), key);
+    }
+
+    private static class Interned {
+        private final Map<String, Object> sourcePartition;
+        private final Struct key;
+
+        public Interned(Map<String, Object> sourcePartition, Struct key) {
+            this.sourcePartition = sourcePartition;
+            this.key = key;
+        }
+    }
+}
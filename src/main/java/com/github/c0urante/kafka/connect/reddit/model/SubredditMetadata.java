@@ -0,0 +1,88 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.model;
+
+import com.squareup.moshi.JsonWriter;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.data.Timestamp;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Metadata about a subreddit that can be attached to the posts and comments in it.
+ */
+public class SubredditMetadata {
+
+    public static final String FIELD = "subreddit_metadata";
+
+    public static final Schema SCHEMA = SchemaBuilder.struct()
+            .name("com.github.c0urante.kafka.connect.reddit.SubredditMetadata")
+            .version(1)
+            .optional()
+            .field("subscribers", Schema.OPTIONAL_INT64_SCHEMA)
+            .field("subreddit_type", Schema.OPTIONAL_STRING_SCHEMA)
+            .field("over_18", Schema.OPTIONAL_BOOLEAN_SCHEMA)
+            .field("created_utc", Timestamp.builder().optional().build())
+            .build();
+
+    private final Long subscribers;
+    private final String type;
+    private final Boolean over18;
+    private final Long createdSec;
+
+    /**
+     * @param subscribers the number of subscribers to the subreddit
+     * @param type the type of the subreddit, such as {@code public} or {@code restricted}
+     * @param over18 whether the subreddit is marked as NSFW
+     * @param createdSec the creation time of the subreddit, in seconds since the epoch
+     */
+    public SubredditMetadata(Long subscribers, String type, Boolean over18, Long createdSec) {
+        this.subscribers = subscribers;
+        this.type = type;
+        this.over18 = over18;
+        this.createdSec = createdSec;
+    }
+
+    /**
+     * @return the type of the subreddit, such as {@code public} or {@code private}; may be null
+     */
+    public String getType() {
+        return type;
+    }
+
+    public Struct toStruct() {
+        return new Struct(SCHEMA)
+                .put("subscribers", subscribers)
+                .put("subreddit_type", type)
+                .put("over_18", over18)
+                .put("created_utc", createdSec != null ? new Date(createdSec * 1000) : null);
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("subscribers", subscribers);
+        result.put("subreddit_type", type);
+        result.put("over_18", over18);
+        result.put("created_utc", createdSec);
+        return result;
+    }
+
+    public void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("subscribers").value(subscribers);
+        writer.name("subreddit_type").value(type);
+        writer.name("over_18").value(over18);
+        writer.name("created_utc").value(createdSec);
+        writer.endObject();
+    }
+}
@@ -0,0 +1,302 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.model;
+
+import org.apache.kafka.common.config.ConfigException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Decides which posts or comments are dropped before they are converted into records. A post or
+ * comment is dropped if its author has been denied, if only some authors have been allowed and
+ * its author isn't one of them, or if it matches any of a list of rules.
+ * <p>
+ * Each rule has the form {@code <field> <operator> <value>}, where the operator is one of:
+ * <ul>
+ *     <li>{@code ==} or {@code !=}, to compare a field with a number, {@code true} or
+ *     {@code false}, {@code null}, or a string (which may be quoted)</li>
+ *     <li>{@code <}, {@code <=}, {@code >} or {@code >=}, to compare a field with a number;
+ *     timestamps such as {@code created_utc} are compared in seconds since the epoch</li>
+ *     <li>{@code ~} or {@code !~}, to check whether a field does or doesn't contain a match for
+ *     a regular expression</li>
+ * </ul>
+ * Rules, regular expressions and the fields they need are all resolved up front, so filtering a
+ * post or comment reads only the fields that some rule uses.
+ * <p>
+ * Thread-safe.
+ */
+public final class ThingFilter<Thing> {
+
+    public static final String AUTHOR_FIELD = "author";
+
+    private static final Pattern RULE = Pattern.compile("\\s*(\\w+)\\s*(==|!=|<=|>=|!~|<|>|~)\\s*(.*?)\\s*");
+
+    private final Function<Thing, Object[]> fieldReader;
+    private final List<Rule> rules;
+    // Lowercased; an empty allow list allows everyone
+    private final Set<String> deniedAuthors;
+    private final Set<String> allowedAuthors;
+    private final int authorIndex;
+
+    private ThingFilter(
+            Function<Thing, Object[]> fieldReader,
+            List<Rule> rules,
+            Set<String> deniedAuthors,
+            Set<String> allowedAuthors,
+            int authorIndex
+    ) {
+        this.fieldReader = fieldReader;
+        this.rules = rules;
+        this.deniedAuthors = deniedAuthors;
+        this.allowedAuthors = allowedAuthors;
+        this.authorIndex = authorIndex;
+    }
+
+    /**
+     * @param rules the rules to drop posts or comments by, separated by semicolons
+     * @param deniedAuthors the authors whose posts or comments are dropped
+     * @param allowedAuthors the only authors whose posts or comments are kept, or an empty
+     *                       collection if posts and comments by anyone may be kept
+     * @param fieldReaders creates a function that reads the given fields from a post or comment,
+     *                     in order; should throw a {@link ConfigException} for unknown fields
+     * @return the filter, or null if there is nothing to filter by
+     * @throws ConfigException if any of the rules is invalid
+     */
+    public static <Thing> ThingFilter<Thing> compile(
+            String rules,
+            Collection<String> deniedAuthors,
+            Collection<String> allowedAuthors,
+            Function<List<String>, Function<Thing, Object[]>> fieldReaders
+    ) {
+        Map<String, Integer> fields = new LinkedHashMap<>();
+        List<Rule> compiledRules = new ArrayList<>();
+        for (String rule : splitRules(rules)) {
+            compiledRules.add(Rule.compile(rule, fields));
+        }
+        Set<String> denied = lowercase(deniedAuthors);
+        Set<String> allowed = lowercase(allowedAuthors);
+        int authorIndex = -1;
+        if (!denied.isEmpty() || !allowed.isEmpty()) {
+            authorIndex = fields.computeIfAbsent(AUTHOR_FIELD, field -> fields.size());
+        }
+        if (compiledRules.isEmpty() && authorIndex < 0) {
+            return null;
+        }
+        return new ThingFilter<>(
+                fieldReaders.apply(new ArrayList<>(fields.keySet())),
+                compiledRules,
+                denied,
+                allowed,
+                authorIndex
+        );
+    }
+
+    /**
+     * @return whether the post or comment should be converted into a record
+     */
+    public boolean accepts(Thing thing) {
+        Object[] values = fieldReader.apply(thing);
+        if (authorIndex >= 0) {
+            Object author = values[authorIndex];
+            String key = author != null ? author.toString().toLowerCase(Locale.ROOT) : null;
+            if (key != null && deniedAuthors.contains(key)) {
+                return false;
+            }
+            if (!allowedAuthors.isEmpty() && (key == null || !allowedAuthors.contains(key))) {
+                return false;
+            }
+        }
+        for (Rule rule : rules) {
+            if (rule.matches(values[rule.field])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<String> splitRules(String rules) {
+        List<String> result = new ArrayList<>();
+        if (rules == null) {
+            return result;
+        }
+        for (String rule : rules.split(";")) {
+            if (!rule.trim().isEmpty()) {
+                result.add(rule.trim());
+            }
+        }
+        return result;
+    }
+
+    private static Set<String> lowercase(Collection<String> authors) {
+        Set<String> result = new HashSet<>();
+        for (String author : authors) {
+            if (!author.trim().isEmpty()) {
+                result.add(author.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        return result;
+    }
+
+    private enum Operator {
+        EQUAL("=="),
+        NOT_EQUAL("!="),
+        LESS("<"),
+        LESS_OR_EQUAL("<="),
+        GREATER(">"),
+        GREATER_OR_EQUAL(">="),
+        MATCHES("~"),
+        DOES_NOT_MATCH("!~");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        public boolean isOrdering() {
+            return this == LESS || this == LESS_OR_EQUAL || this == GREATER || this == GREATER_OR_EQUAL;
+        }
+
+        public static Operator of(String symbol) {
+            for (Operator operator : values()) {
+                if (operator.symbol.equals(symbol)) {
+                    return operator;
+                }
+            }
+            throw new IllegalArgumentException("Unknown operator " + symbol);
+        }
+    }
+
+    private static class Rule {
+        private final int field;
+        private final Operator operator;
+        private final String literal;
+        private final Double number;
+        private final Pattern pattern;
+
+        private Rule(int field, Operator operator, String literal, Double number, Pattern pattern) {
+            this.field = field;
+            this.operator = operator;
+            this.literal = literal;
+            this.number = number;
+            this.pattern = pattern;
+        }
+
+        public static Rule compile(String rule, Map<String, Integer> fields) {
+            Matcher matcher = RULE.matcher(rule);
+            if (!matcher.matches() || matcher.group(3).isEmpty()) {
+                throw new ConfigException(String.format(
+                        "Invalid filter rule '%s'; rules must have the form '<field> <operator> <value>'",
+                        rule
+                ));
+            }
+            String fieldName = matcher.group(1);
+            Operator operator = Operator.of(matcher.group(2));
+            String value = matcher.group(3);
+            int field = fields.computeIfAbsent(fieldName, name -> fields.size());
+
+            if (operator == Operator.MATCHES || operator == Operator.DOES_NOT_MATCH) {
+                try {
+                    return new Rule(field, operator, value, null, Pattern.compile(value));
+                } catch (PatternSyntaxException e) {
+                    throw new ConfigException(String.format(
+                            "Invalid regular expression in filter rule '%s': %s",
+                            rule,
+                            e.getDescription()
+                    ));
+                }
+            }
+            if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                value = value.substring(1, value.length() - 1);
+            }
+            Double number = parseNumber(value);
+            if (operator.isOrdering() && number == null) {
+                throw new ConfigException(String.format(
+                        "Invalid filter rule '%s'; '%s' can only be used to compare with a number",
+                        rule,
+                        operator.symbol
+                ));
+            }
+            return new Rule(field, operator, value, number, null);
+        }
+
+        public boolean matches(Object value) {
+            switch (operator) {
+                case EQUAL:
+                    return isEqual(value);
+                case NOT_EQUAL:
+                    return !isEqual(value);
+                case MATCHES:
+                    return value != null && pattern.matcher(value.toString()).find();
+                case DOES_NOT_MATCH:
+                    return value == null || !pattern.matcher(value.toString()).find();
+                default:
+                    Double actual = toNumber(value);
+                    if (actual == null) {
+                        return false;
+                    }
+                    int comparison = Double.compare(actual, number);
+                    switch (operator) {
+                        case LESS:
+                            return comparison < 0;
+                        case LESS_OR_EQUAL:
+                            return comparison <= 0;
+                        case GREATER:
+                            return comparison > 0;
+                        default:
+                            return comparison >= 0;
+                    }
+            }
+        }
+
+        private boolean isEqual(Object value) {
+            if (value == null) {
+                return "null".equals(literal);
+            }
+            if (number != null) {
+                Double actual = toNumber(value);
+                if (actual != null) {
+                    return Double.compare(actual, number) == 0;
+                }
+            }
+            if (value instanceof Boolean) {
+                return value.toString().equalsIgnoreCase(literal);
+            }
+            return value.toString().equals(literal);
+        }
+
+        private static Double toNumber(Object value) {
+            if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            } else if (value instanceof Date) {
+                return ((Date) value).getTime() / 1000.0;
+            }
+            return null;
+        }
+
+        private static Double parseNumber(String value) {
+            try {
+                return Double.valueOf(value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
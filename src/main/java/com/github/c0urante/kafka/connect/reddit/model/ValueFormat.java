@@ -0,0 +1,53 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.model;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The different shapes that the values of records produced by the connector can take.
+ */
+public enum ValueFormat {
+    /**
+     * A schemaless map, as produced by the JRAW Moshi adapters.
+     */
+    MAP,
+    /**
+     * A versioned {@link org.apache.kafka.connect.data.Struct} with a schema.
+     */
+    STRUCT,
+    /**
+     * The JSON returned by Reddit, as a string; the JRAW models are bypassed entirely.
+     */
+    JSON_STRING,
+    /**
+     * The JSON returned by Reddit, as UTF-8 encoded bytes; the JRAW models are bypassed entirely.
+     */
+    JSON_BYTES;
+
+    public static ValueFormat parse(String format) {
+        return valueOf(format.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * @return whether values in this format are read straight from the JSON returned by Reddit
+     */
+    public boolean isRaw() {
+        return this == JSON_STRING || this == JSON_BYTES;
+    }
+
+    public static String[] names() {
+        return Arrays.stream(values()).map(ValueFormat::toString).toArray(String[]::new);
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,238 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.model;
+
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.data.Struct;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The subset of fields that should be included in record values, and how to extract and
+ * (if necessary) truncate them. The schema for a projection is built once, up front, and fields
+ * that aren't included in it are never extracted from the underlying Thing.
+ */
+class ValueProjection<Thing> {
+
+    /**
+     * A single field of a struct-formatted record value.
+     */
+    static class Field<Thing> {
+        private final String name;
+        private final Schema schema;
+        private final Function<Thing, Object> extractor;
+
+        public Field(String name, Schema schema, Function<Thing, Object> extractor) {
+            this.name = name;
+            this.schema = schema;
+            this.extractor = extractor;
+        }
+    }
+
+    private final ValueFormat valueFormat;
+    private final Schema schema;
+    private final List<Field<Thing>> fields;
+    private final List<String> projectedFields;
+    private final Set<String> textFields;
+    private final int textMaxLength;
+
+    /**
+     * @param valueFormat the format that values will be converted to
+     * @param schemaName the name to use for the schema of the projection
+     * @param allFields all of the fields that a struct value may contain, in order
+     * @param projectedFields the names of the fields to include in values; if empty, all fields
+     *                        are included
+     * @param textFields the names of the (string) fields that are subject to truncation
+     * @param textMaxLength the maximum length of any text field, or a negative number if text
+     *                      fields should never be truncated
+     */
+    public ValueProjection(
+            ValueFormat valueFormat,
+            String schemaName,
+            List<Field<Thing>> allFields,
+            List<String> projectedFields,
+            Collection<String> textFields,
+            int textMaxLength
+    ) {
+        this.valueFormat = valueFormat;
+        this.projectedFields = new ArrayList<>(projectedFields);
+        this.textFields = new HashSet<>(textFields);
+        this.textMaxLength = textMaxLength;
+
+        Map<String, Field<Thing>> fieldsByName = new LinkedHashMap<>();
+        for (Field<Thing> field : allFields) {
+            fieldsByName.put(field.name, field);
+        }
+
+        this.fields = new ArrayList<>();
+        if (projectedFields.isEmpty()) {
+            this.fields.addAll(allFields);
+        } else {
+            for (String fieldName : projectedFields) {
+                Field<Thing> field = fieldsByName.get(fieldName);
+                if (field != null) {
+                    this.fields.add(field);
+                } else if (valueFormat == ValueFormat.STRUCT) {
+                    // Schemaless values contain every field returned by Reddit, so we can only
+                    // tell that a field doesn't exist when using a fixed schema
+                    throw new ConfigException(String.format(
+                            "Unknown field '%s' for %s; valid fields are %s",
+                            fieldName,
+                            schemaName,
+                            fieldsByName.keySet()
+                    ));
+                }
+            }
+        }
+
+        SchemaBuilder schemaBuilder = SchemaBuilder.struct()
+                .name(schemaName)
+                .version(1);
+        for (Field<Thing> field : fields) {
+            schemaBuilder.field(field.name, field.schema);
+        }
+        this.schema = schemaBuilder.build();
+    }
+
+    /**
+     * @return a projection that includes every field and never truncates anything
+     */
+    public static <Thing> ValueProjection<Thing> all(
+            ValueFormat valueFormat,
+            String schemaName,
+            List<Field<Thing>> allFields
+    ) {
+        return new ValueProjection<>(
+                valueFormat,
+                schemaName,
+                allFields,
+                new ArrayList<>(),
+                new ArrayList<>(),
+                -1
+        );
+    }
+
+    /**
+     * @param schemaName the name of the schema that the fields belong to, for error messages
+     * @param allFields all of the fields that may be read
+     * @param fieldNames the names of the fields to read
+     * @return a function that reads the given fields from a Thing, in order
+     * @throws ConfigException if any of the fields doesn't exist
+     */
+    public static <Thing> Function<Thing, Object[]> fieldReader(
+            String schemaName,
+            List<Field<Thing>> allFields,
+            List<String> fieldNames
+    ) {
+        List<Function<Thing, Object>> extractors = new ArrayList<>();
+        for (String fieldName : fieldNames) {
+            Field<Thing> field = null;
+            for (Field<Thing> candidate : allFields) {
+                if (candidate.name.equals(fieldName)) {
+                    field = candidate;
+                    break;
+                }
+            }
+            if (field == null) {
+                List<String> validFields = new ArrayList<>();
+                allFields.forEach(candidate -> validFields.add(candidate.name));
+                throw new ConfigException(String.format(
+                        "Unknown field '%s' for %s; valid fields are %s",
+                        fieldName,
+                        schemaName,
+                        validFields
+                ));
+            }
+            extractors.add(field.extractor);
+        }
+        return thing -> {
+            Object[] result = new Object[extractors.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = extractors.get(i).apply(thing);
+            }
+            return result;
+        };
+    }
+
+    /**
+     * @return the schema for values, or null if values are schemaless
+     */
+    public Schema valueSchema() {
+        return valueFormat == ValueFormat.STRUCT ? schema : null;
+    }
+
+    /**
+     * @return the schema that struct values would have, regardless of the configured format
+     */
+    public Schema structSchema() {
+        return schema;
+    }
+
+    public Struct toStruct(Thing thing) {
+        Struct result = new Struct(schema);
+        for (Field<Thing> field : fields) {
+            Object value = field.extractor.apply(thing);
+            if (textFields.contains(field.name)) {
+                value = truncate((String) value);
+            }
+            result.put(field.name, value);
+        }
+        return result;
+    }
+
+    /**
+     * Apply the projection to a schemaless value. Unlike {@link #toStruct(Object)}, this filters
+     * fields out of an already-converted value, so any field returned by Reddit may be projected,
+     * not just the ones that appear in the struct schema.
+     */
+    public Map<String, Object> project(Map<String, Object> value) {
+        Map<String, Object> result;
+        if (projectedFields.isEmpty()) {
+            result = value;
+        } else {
+            result = new LinkedHashMap<>();
+            for (String fieldName : projectedFields) {
+                if (value.containsKey(fieldName)) {
+                    result.put(fieldName, value.get(fieldName));
+                }
+            }
+        }
+
+        if (textMaxLength >= 0) {
+            for (String textField : textFields) {
+                Object text = result.get(textField);
+                if (text instanceof String) {
+                    result.put(textField, truncate((String) text));
+                }
+            }
+        }
+        return result;
+    }
+
+    private String truncate(String text) {
+        if (text == null || textMaxLength < 0 || text.length() <= textMaxLength) {
+            return text;
+        }
+
+        int end = textMaxLength;
+        // Don't split a surrogate pair in half
+        if (end > 0 && Character.isHighSurrogate(text.charAt(end - 1))) {
+            end--;
+        }
+        return text.substring(0, end);
+    }
+}
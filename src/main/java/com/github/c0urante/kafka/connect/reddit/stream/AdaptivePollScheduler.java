@@ -0,0 +1,154 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import net.dean.jraw.pagination.BackoffStrategy;
+
+/**
+ * Decides how often to poll each listing, and how many items to ask for when doing so, based on
+ * the rate at which new items have been observed to arrive in it.
+ * <p>
+ * Busy listings are polled as often as necessary to avoid a page filling up entirely with new
+ * items between polls (which would mean that some items were likely missed), and quiet listings
+ * are polled rarely and with small pages.
+ */
+public class AdaptivePollScheduler {
+
+    // How full we aim for each page to be with new items; leaves headroom for bursts
+    private static final double TARGET_PAGE_FILL = 0.5;
+    // How much weight to give to the most recent observation when updating the arrival rate
+    private static final double SMOOTHING = 0.3;
+    // Small pages don't save much, and a bit of slack protects quiet listings against bursts
+    private static final int MIN_PAGE_SIZE = 25;
+
+    private final long minIntervalMs;
+    private final long maxIntervalMs;
+    private final int maxPageSize;
+    private final int minPageSize;
+
+    /**
+     * @param minIntervalMs the minimum amount of time to wait between polls of a listing
+     * @param maxIntervalMs the maximum amount of time to wait between polls of a listing
+     * @param maxPageSize the maximum number of items to request from a listing at once
+     */
+    public AdaptivePollScheduler(long minIntervalMs, long maxIntervalMs, int maxPageSize) {
+        this.minIntervalMs = minIntervalMs;
+        this.maxIntervalMs = Math.max(minIntervalMs, maxIntervalMs);
+        this.maxPageSize = maxPageSize;
+        this.minPageSize = Math.min(MIN_PAGE_SIZE, maxPageSize);
+    }
+
+    /**
+     * @return a new, independent schedule for a single listing
+     */
+    public ListingSchedule newSchedule() {
+        return new ListingSchedule();
+    }
+
+    /**
+     * The schedule for a single listing. Can be handed directly to a JRAW
+     * {@link net.dean.jraw.pagination.Stream} as its {@link BackoffStrategy}, in which case only
+     * the polling interval will adapt, since JRAW fixes the page size for a stream when it's
+     * created.
+     * <p>
+     * Not thread-safe; each schedule is meant to be used by only one reader thread.
+     */
+    public class ListingSchedule implements BackoffStrategy {
+        // Estimated arrival rate, in items per millisecond; negative until the first observation
+        private double ratePerMs;
+        private long lastPollMs;
+        private long intervalMs;
+        private int pageSize;
+        private double urgency;
+
+        private ListingSchedule() {
+            this.ratePerMs = -1;
+            this.lastPollMs = -1;
+            this.intervalMs = minIntervalMs;
+            this.pageSize = maxPageSize;
+            this.urgency = 0;
+        }
+
+        @Override
+        public long delayRequest(int newItems, int totalItems) {
+            recordPoll(newItems, totalItems, System.currentTimeMillis());
+            return intervalMs;
+        }
+
+        /**
+         * Record the results of polling the listing.
+         * @param newItems how many of the items returned had not been seen before
+         * @param totalItems how many items were returned in total
+         * @param nowMs the time at which the poll completed
+         */
+        public void recordPoll(int newItems, int totalItems, long nowMs) {
+            if (lastPollMs < 0) {
+                // We can't tell how long it took for the items in the first page to arrive
+                lastPollMs = nowMs;
+                return;
+            }
+
+            long elapsedMs = Math.max(1, nowMs - lastPollMs);
+            lastPollMs = nowMs;
+
+            // The more of the page that was new, the closer we are to missing items, so the more
+            // urgently the next request for this listing should be let through
+            urgency = totalItems > 0 ? (double) newItems / totalItems : 0;
+
+            double observedRate = (double) newItems / elapsedMs;
+            if (totalItems > 0 && totalItems >= pageSize && newItems >= totalItems) {
+                // Every item in a full page was new, so there may have been more that we didn't
+                // get to see; assume the real rate is at least double what we observed
+                observedRate *= 2;
+            }
+            ratePerMs = ratePerMs < 0
+                    ? observedRate
+                    : SMOOTHING * observedRate + (1 - SMOOTHING) * ratePerMs;
+
+            intervalMs = ratePerMs > 0
+                    ? clamp((long) (TARGET_PAGE_FILL * maxPageSize / ratePerMs), minIntervalMs, maxIntervalMs)
+                    : maxIntervalMs;
+            // Ask for enough items to cover twice the expected number of arrivals in the interval
+            pageSize = (int) clamp((long) Math.ceil(2 * ratePerMs * intervalMs), minPageSize, maxPageSize);
+        }
+
+        /**
+         * @return how long to wait, in milliseconds, before polling the listing again
+         */
+        public long intervalMs() {
+            return intervalMs;
+        }
+
+        /**
+         * @return how many items to request the next time the listing is polled
+         */
+        public int pageSize() {
+            return pageSize;
+        }
+
+        /**
+         * @return how urgently the next request for the listing should be let through by the
+         * {@link SharedRateLimiter}, from 0 to 1
+         */
+        public double urgency() {
+            return urgency;
+        }
+
+        /**
+         * @return the estimated number of new items per second in the listing, or a negative
+         * number if not enough polls have been made to estimate it yet
+         */
+        public double itemsPerSecond() {
+            return ratePerMs < 0 ? ratePerMs : ratePerMs * 1000;
+        }
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
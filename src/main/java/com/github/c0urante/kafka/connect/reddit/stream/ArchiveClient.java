@@ -0,0 +1,198 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import com.github.c0urante.kafka.connect.reddit.version.Version;
+import com.squareup.moshi.JsonReader;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A client for a Pushshift-compatible archive of Reddit, used to find out which posts and comments
+ * were published to a subreddit during a given period of time. Reddit's own listings can't be
+ * queried by time, and only go back so far; the archive fills that gap, but only the IDs and
+ * creation times of items are read from it. The items themselves are then read from Reddit, so
+ * that they're as up-to-date as the ones read from the live listings.
+ * <p>
+ * Thread-safe.
+ */
+public class ArchiveClient implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ArchiveClient.class);
+
+    private static final JsonReader.Options RESPONSE_FIELDS = JsonReader.Options.of("data");
+    private static final JsonReader.Options ITEM_FIELDS = JsonReader.Options.of("id", "created_utc");
+
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long INITIAL_BACKOFF_MS = 1000;
+
+    private final HttpUrl baseUrl;
+    private final String authToken;
+    private final OkHttpClient http;
+
+    /**
+     * @param baseUrl the URL of the archive
+     * @param authToken the bearer token to authenticate to the archive with, or null to send
+     *                  requests without credentials
+     */
+    public ArchiveClient(String baseUrl, String authToken) {
+        this.authToken = authToken;
+        this.baseUrl = HttpUrl.parse(baseUrl);
+        if (this.baseUrl == null) {
+            throw new IllegalArgumentException("Invalid archive URL: " + baseUrl);
+        }
+        this.http = new OkHttpClient.Builder()
+                .connectTimeout(30, TimeUnit.SECONDS)
+                .readTimeout(60, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Find the items of a kind published to a subreddit in a period of time.
+     * @param kind the kind of item; either {@code submission} or {@code comment}
+     * @param subreddit the subreddit
+     * @param afterSec only find items created after this time, in seconds since the epoch (exclusive)
+     * @param beforeSec only find items created before this time, in seconds since the epoch
+     *                  (exclusive)
+     * @param size the maximum number of items to find
+     * @return the items, oldest-first; never null
+     * @throws InterruptedException if the calling thread is interrupted while backing off
+     */
+    public List<Item> page(String kind, String subreddit, long afterSec, long beforeSec, int size)
+            throws InterruptedException {
+        HttpUrl url = baseUrl.newBuilder()
+                .addPathSegments("reddit/search/" + kind + "/")
+                .addQueryParameter("subreddit", subreddit)
+                .addQueryParameter("after", Long.toString(afterSec))
+                .addQueryParameter("before", Long.toString(beforeSec))
+                .addQueryParameter("sort", "asc")
+                .addQueryParameter("sort_type", "created_utc")
+                .addQueryParameter("size", Integer.toString(size))
+                .addQueryParameter("fields", "id,created_utc")
+                .build();
+        Request.Builder requestBuilder = new Request.Builder()
+                .url(url)
+                .header("User-Agent", "kafka-connect-reddit/" + Version.get());
+        if (authToken != null) {
+            requestBuilder.header("Authorization", "Bearer " + authToken);
+        }
+        Request request = requestBuilder.build();
+        String prefix = "comment".equals(kind) ? "t1_" : "t3_";
+
+        long backoffMs = INITIAL_BACKOFF_MS;
+        for (int attempt = 1; ; attempt++) {
+            String failure;
+            try (Response response = http.newCall(request).execute()) {
+                ResponseBody body = response.body();
+                if (response.isSuccessful() && body != null) {
+                    return parse(body.string(), prefix);
+                }
+                failure = "HTTP " + response.code();
+                if (response.code() != 429 && response.code() < 500) {
+                    throw new ConnectException("Request to archive failed with " + failure + ": " + url);
+                }
+            } catch (IOException e) {
+                failure = e.toString();
+            }
+
+            if (attempt >= MAX_ATTEMPTS) {
+                throw new ConnectException(
+                        "Request to archive failed after " + attempt + " attempts (last failure: " + failure + "): " + url
+                );
+            }
+            log.debug("Request to archive failed with {}; retrying in {} ms: {}", failure, backoffMs, url);
+            Thread.sleep(backoffMs);
+            backoffMs *= 2;
+        }
+    }
+
+    @Override
+    public void close() {
+        http.dispatcher().executorService().shutdown();
+        http.connectionPool().evictAll();
+    }
+
+    private static List<Item> parse(String body, String prefix) throws IOException {
+        List<Item> result = new ArrayList<>();
+        JsonReader reader = JsonReader.of(new Buffer().writeUtf8(body));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.selectName(RESPONSE_FIELDS) != 0) {
+                reader.skipName();
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String id = null;
+                long createdSec = -1;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.selectName(ITEM_FIELDS)) {
+                        case 0:
+                            id = reader.nextString();
+                            break;
+                        case 1:
+                            createdSec = (long) reader.nextDouble();
+                            break;
+                        default:
+                            reader.skipName();
+                            reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                if (id != null && createdSec >= 0) {
+                    result.add(new Item(prefix + id, createdSec));
+                }
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+        return result;
+    }
+
+    /**
+     * An item found in the archive.
+     */
+    public static class Item {
+        private final String fullName;
+        private final long createdSec;
+
+        public Item(String fullName, long createdSec) {
+            this.fullName = fullName;
+            this.createdSec = createdSec;
+        }
+
+        /**
+         * @return the full name of the item, such as {@code t3_abc123}
+         */
+        public String getFullName() {
+            return fullName;
+        }
+
+        /**
+         * @return the creation time of the item, in seconds since the epoch
+         */
+        public long getCreatedSec() {
+            return createdSec;
+        }
+    }
+}
@@ -0,0 +1,523 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import com.github.c0urante.kafka.connect.reddit.metrics.StreamMetrics;
+import com.github.c0urante.kafka.connect.reddit.model.RawThing;
+import com.github.c0urante.kafka.connect.reddit.model.SourceRecordConverter;
+import com.squareup.moshi.JsonAdapter;
+import okio.Buffer;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.data.Timestamp;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.apache.kafka.connect.source.SourceRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Reads every post or comment published to a set of subreddits during a fixed period of time.
+ * <p>
+ * The period is split into slices of equal length, and each slice of each subreddit is read
+ * independently, oldest-first, with several of them in flight at once. Every slice of every
+ * subreddit has a source partition of its own, whose offset records how far into the slice
+ * reading has gotten (in the same way as {@link DedupIndex}) and whether the slice has been read
+ * in full, so that a restarted reader picks up where it left off and skips finished slices
+ * entirely.
+ * <p>
+ * Items are found with an {@link ArchiveClient} and then read from Reddit by their names, in
+ * batches of up to {@value Reddit#MAX_INFO_NAMES}. Items that have been deleted from Reddit since
+ * they were archived are skipped.
+ */
+public class BackfillReader<Thing> implements RecordSource {
+    private static final Logger log = LoggerFactory.getLogger(BackfillReader.class);
+
+    static final String SLICE_FIELD = "slice";
+    static final String DONE_FIELD = "done";
+
+    public static final Schema PROGRESS_VALUE_SCHEMA = SchemaBuilder.struct()
+            .name("com.github.c0urante.kafka.connect.reddit.BackfillProgress")
+            .version(1)
+            .field("subreddit", Schema.STRING_SCHEMA)
+            .field("type", Schema.STRING_SCHEMA)
+            .field("slice_start", Timestamp.SCHEMA)
+            .field("slice_end", Timestamp.SCHEMA)
+            .build();
+
+    private static final int MAX_PERSISTED_IDS = 100;
+    private static final long SHUTDOWN_TIMEOUT_MS = 30_000;
+
+    private final String thingType;
+    private final String archiveKind;
+    private final List<String> subreddits;
+    private final long startSec;
+    private final long endSec;
+    private final long sliceSec;
+    private final int pageSize;
+    private final int parallelism;
+    private final ArchiveClient archive;
+    private final Reddit reddit;
+    private final Function<RawThing, Thing> decode;
+    private final SourceRecordConverter<Thing> recordConverter;
+    private final String progressTopic;
+    private final RecordBuffer records;
+    private final StreamMetrics metrics;
+    private final Consumer<Throwable> onError;
+    private final Runnable onRecords;
+    private final Runnable onFinished;
+    private final String asString;
+
+    private final AtomicBoolean running;
+    private final AtomicInteger remainingSlices;
+    private ExecutorService executor;
+
+    /**
+     * @param thingType the type of Thing to read; either "posts" or "comments"
+     * @param subreddits the subreddits to read from
+     * @param startMs the start of the period to read, in milliseconds since the epoch (inclusive)
+     * @param endMs the end of the period to read, in milliseconds since the epoch (exclusive)
+     * @param sliceMs the length of each slice of the period, in milliseconds
+     * @param pageSize the number of items to request from the archive at a time
+     * @param parallelism the number of slices to read at once
+     * @param archive the archive to find items with
+     * @param reddit the client to read items from Reddit with
+     * @param decode converts the JSON for an item into the model expected by the record converter
+     * @param recordConverter converts items into records
+     * @param progressTopic the topic to write a progress record to for each slice that is read in
+     *                      full without producing a record that marks it as such, or null if no
+     *                      progress records should be written
+     * @param records the buffer to add records to
+     * @param metrics the metrics to record read items with
+     * @param onError invoked if reading fails, after which reading stops
+     * @param onRecords invoked whenever records are added to the buffer
+     * @param onFinished invoked once every slice has been read
+     */
+    public BackfillReader(
+            String thingType,
+            List<String> subreddits,
+            long startMs,
+            long endMs,
+            long sliceMs,
+            int pageSize,
+            int parallelism,
+            ArchiveClient archive,
+            Reddit reddit,
+            Function<RawThing, Thing> decode,
+            SourceRecordConverter<Thing> recordConverter,
+            String progressTopic,
+            RecordBuffer records,
+            StreamMetrics metrics,
+            Consumer<Throwable> onError,
+            Runnable onRecords,
+            Runnable onFinished
+    ) {
+        this.thingType = thingType;
+        this.archiveKind = "comments".equals(thingType) ? "comment" : "submission";
+        this.subreddits = subreddits;
+        // The archive only has second granularity
+        this.startSec = Math.floorDiv(startMs, 1000);
+        this.endSec = Math.floorDiv(endMs + 999, 1000);
+        this.sliceSec = Math.max(1, sliceMs / 1000);
+        this.pageSize = pageSize;
+        this.parallelism = parallelism;
+        this.archive = archive;
+        this.reddit = reddit;
+        this.decode = decode;
+        this.recordConverter = recordConverter;
+        this.progressTopic = progressTopic;
+        this.records = records;
+        this.metrics = metrics;
+        this.onError = onError;
+        this.onRecords = onRecords;
+        this.onFinished = onFinished;
+        this.asString = String.format(
+                "%s backfill reader (subreddits: %s, from %s to %s)",
+                thingType,
+                String.join(",", subreddits),
+                new Date(startMs),
+                new Date(endMs)
+        );
+
+        this.running = new AtomicBoolean(false);
+        this.remainingSlices = new AtomicInteger(0);
+
+        metrics.registerBuffer(records::size, records::bytes);
+    }
+
+    /**
+     * @return a decoder that reads the JSON for an item with the given adapter
+     */
+    public static <Thing> Function<RawThing, Thing> decoder(JsonAdapter<Thing> adapter) {
+        return thing -> {
+            try {
+                return adapter.fromJson(new Buffer().write(thing.getJson()));
+            } catch (IOException e) {
+                throw new ConnectException("Failed to parse item returned by Reddit", e);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return asString;
+    }
+
+    /**
+     * @return the source partitions for every slice of every subreddit read by this reader
+     */
+    public List<Map<String, Object>> partitions() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (long slice = startSec; slice < endSec; slice += sliceSec) {
+            for (String subreddit : subreddits) {
+                result.add(partition(subreddit, slice));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Begin reading every slice that hasn't already been read in full.
+     * @param storedOffsets the offsets that were stored for this reader's {@link #partitions()
+     *                      partitions} before it was started
+     */
+    public synchronized void start(Map<Map<String, Object>, Map<String, Object>> storedOffsets) {
+        if (!running.compareAndSet(false, true)) {
+            log.warn("start() invoked but {} is already running; ignoring", this);
+            return;
+        }
+
+        List<Slice> slices = new ArrayList<>();
+        int finished = 0;
+        // Go through the period oldest-first so that, across all subreddits, records are produced
+        // in roughly chronological order
+        for (long slice = startSec; slice < endSec; slice += sliceSec) {
+            for (String subreddit : subreddits) {
+                Map<String, Object> partition = partition(subreddit, slice);
+                Map<String, Object> offset = storedOffsets != null ? storedOffsets.get(partition) : null;
+                if (offset != null && Boolean.TRUE.equals(offset.get(DONE_FIELD))) {
+                    finished++;
+                    continue;
+                }
+                slices.add(new Slice(subreddit, slice, Math.min(endSec, slice + sliceSec), partition, offset));
+            }
+        }
+
+        log.info(
+                "Starting {} with {} slice(s) left to read ({} already read)",
+                this,
+                slices.size(),
+                finished
+        );
+        if (slices.isEmpty()) {
+            onFinished.run();
+            return;
+        }
+
+        remainingSlices.set(slices.size());
+        AtomicInteger threadCount = new AtomicInteger(0);
+        ThreadFactory threadFactory = runnable -> {
+            Thread result = new Thread(runnable, "reddit-" + thingType + "-backfill-" + threadCount.getAndIncrement());
+            result.setDaemon(true);
+            return result;
+        };
+        executor = Executors.newFixedThreadPool(parallelism, threadFactory);
+        for (Slice slice : slices) {
+            executor.submit(() -> run(slice));
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Stop reading, interrupting any reads that are currently in progress, and wait for the
+     * reader's threads to exit.
+     */
+    @Override
+    public synchronized void close() {
+        if (!running.compareAndSet(true, false)) {
+            log.warn("close() invoked but {} is not running; ignoring", this);
+            return;
+        }
+        log.debug("Stopping {}", this);
+        if (executor == null) {
+            return;
+        }
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                log.warn("Timed out waiting for {} threads to exit", this);
+            }
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for {} threads to exit", this);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean hasRecords() {
+        return !records.isEmpty();
+    }
+
+    @Override
+    public List<SourceRecord> pollRecords(int maxRecords) {
+        return records.drain(maxRecords);
+    }
+
+    private void run(Slice slice) {
+        try {
+            read(slice);
+        } catch (InterruptedException e) {
+            log.debug("Interrupted while reading {}; stopping", slice);
+            return;
+        } catch (Throwable t) {
+            fail(slice, t);
+            return;
+        }
+        if (!running.get()) {
+            return;
+        }
+        log.debug("Finished reading {}", slice);
+        if (remainingSlices.decrementAndGet() == 0) {
+            log.info("Finished {}", this);
+            onFinished.run();
+        }
+    }
+
+    private void read(Slice slice) throws InterruptedException {
+        long cursorSec = slice.startSec;
+        // Every item read so far that was created during the second the cursor is at; only the
+        // most recent of them are persisted in offsets, but all of them have to be skipped when
+        // paging within that second
+        Set<String> idsAtCursor = new LinkedHashSet<>();
+        if (slice.storedOffset != null && slice.storedOffset.get(DedupIndex.CREATED_FIELD) instanceof Number) {
+            cursorSec = ((Number) slice.storedOffset.get(DedupIndex.CREATED_FIELD)).longValue() / 1000;
+            idsAtCursor.addAll(DedupIndex.decodeIds(slice.storedOffset.get(DedupIndex.IDS_FIELD)));
+        }
+
+        while (running.get()) {
+            // The archive's lower bound is exclusive; start one second earlier so that items
+            // created during the same second as the last one read aren't missed
+            List<ArchiveClient.Item> page = archive.page(
+                    archiveKind,
+                    slice.subreddit,
+                    cursorSec - 1,
+                    slice.endSec,
+                    pageSize
+            );
+            boolean last = page.size() < pageSize;
+
+            List<ArchiveClient.Item> unread = new ArrayList<>();
+            for (ArchiveClient.Item item : page) {
+                if (item.getCreatedSec() > cursorSec
+                        || (item.getCreatedSec() == cursorSec && !idsAtCursor.contains(item.getFullName()))) {
+                    unread.add(item);
+                }
+            }
+            if (unread.isEmpty()) {
+                if (last) {
+                    recordProgress(slice, cursorSec, idsAtCursor);
+                    return;
+                }
+                // A full page of items that were all created during the same second, and have
+                // all been read already; the archive has no way to page past them
+                log.warn(
+                        "More than {} items were created in r/{} at {}; skipping any that weren't returned by the archive",
+                        pageSize,
+                        slice.subreddit,
+                        new Date(cursorSec * 1000)
+                );
+                cursorSec++;
+                idsAtCursor.clear();
+                continue;
+            }
+
+            Map<String, Thing> things = new HashMap<>();
+            for (Map.Entry<String, RawThing> thing : hydrate(unread).entrySet()) {
+                things.put(thing.getKey(), decode.apply(thing.getValue()));
+            }
+            recordConverter.prepare(things.values());
+            // Items that have been deleted from Reddit don't get records, so the slice is marked
+            // as done by the record for the last item that still exists
+            int lastExisting = -1;
+            for (int i = 0; i < unread.size(); i++) {
+                if (things.containsKey(unread.get(i).getFullName())) {
+                    lastExisting = i;
+                }
+            }
+            boolean added = false;
+            for (int i = 0; i < unread.size() && running.get(); i++) {
+                ArchiveClient.Item item = unread.get(i);
+                if (item.getCreatedSec() > cursorSec) {
+                    cursorSec = item.getCreatedSec();
+                    idsAtCursor.clear();
+                }
+                idsAtCursor.add(item.getFullName());
+
+                Thing thing = things.get(item.getFullName());
+                if (thing == null) {
+                    continue;
+                }
+                Map<String, Object> sourceOffset = new HashMap<>();
+                sourceOffset.put(DedupIndex.CREATED_FIELD, cursorSec * 1000);
+                sourceOffset.put(DedupIndex.IDS_FIELD, persistedIds(idsAtCursor));
+                sourceOffset.put(DONE_FIELD, last && i == lastExisting);
+
+                records.awaitCapacity();
+                long start = System.nanoTime();
+                SourceRecord record = recordConverter.convert(thing, slice.partition, sourceOffset);
+                metrics.recordConverted(slice.subreddit, System.nanoTime() - start);
+                records.add(record);
+                added = true;
+            }
+            if (added) {
+                onRecords.run();
+            }
+            if (last) {
+                if (lastExisting < 0) {
+                    recordProgress(slice, cursorSec, idsAtCursor);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Mark a slice that has been read in full, but whose last page produced no records (and so no
+     * offset saying that it was done), as done, by writing a progress record for it; otherwise,
+     * the slice would be read again whenever the task restarts before the backfill is finished.
+     */
+    private void recordProgress(Slice slice, long cursorSec, Set<String> idsAtCursor) throws InterruptedException {
+        if (progressTopic == null || !running.get()) {
+            return;
+        }
+        Map<String, Object> sourceOffset = new HashMap<>();
+        sourceOffset.put(DedupIndex.CREATED_FIELD, cursorSec * 1000);
+        sourceOffset.put(DedupIndex.IDS_FIELD, persistedIds(idsAtCursor));
+        sourceOffset.put(DONE_FIELD, true);
+
+        Struct value = new Struct(PROGRESS_VALUE_SCHEMA)
+                .put("subreddit", slice.subreddit)
+                .put("type", thingType)
+                .put("slice_start", new Date(slice.startSec * 1000))
+                .put("slice_end", new Date(slice.endSec * 1000));
+        records.awaitCapacity();
+        records.add(new SourceRecord(
+                slice.partition,
+                sourceOffset,
+                progressTopic,
+                Schema.STRING_SCHEMA,
+                slice.subreddit,
+                PROGRESS_VALUE_SCHEMA,
+                value
+        ));
+        onRecords.run();
+    }
+
+    /**
+     * Read items from Reddit by their names.
+     * @return the items that still exist, keyed by full name
+     */
+    private Map<String, RawThing> hydrate(List<ArchiveClient.Item> items) {
+        Map<String, RawThing> result = new HashMap<>();
+        for (int i = 0; i < items.size(); i += Reddit.MAX_INFO_NAMES) {
+            List<String> names = new ArrayList<>();
+            for (ArchiveClient.Item item : items.subList(i, Math.min(items.size(), i + Reddit.MAX_INFO_NAMES))) {
+                names.add(item.getFullName());
+            }
+            for (RawThing thing : info(names)) {
+                result.put(thing.getFullName(), thing);
+            }
+        }
+        return result;
+    }
+
+    private List<RawThing> info(List<String> names) {
+        return ListingCursor.withRetry(SharedRateLimiter.BACKGROUND_URGENCY, this, () -> reddit.info(names));
+    }
+
+    private void fail(Slice slice, Throwable t) {
+        if (!running.get()) {
+            log.debug(
+                    "Error while reading {}. This is expected as the reader is in the process of closing.",
+                    slice,
+                    t
+            );
+            return;
+        }
+        log.error("Error while reading {} for {}", slice, this, t);
+        onError.accept(t);
+    }
+
+    private Map<String, Object> partition(String subreddit, long sliceStartSec) {
+        Map<String, Object> result = new HashMap<>();
+        result.put(thingType + "-backfill-subreddit", subreddit);
+        result.put(SLICE_FIELD, sliceStartSec * 1000);
+        return result;
+    }
+
+    /**
+     * @param ids the IDs read at the cursor, oldest-first
+     * @return the most recent of them, in the form they're stored in offsets
+     */
+    static String persistedIds(Set<String> ids) {
+        Deque<String> result = new ArrayDeque<>(MAX_PERSISTED_IDS);
+        for (String id : ids) {
+            if (result.size() >= MAX_PERSISTED_IDS) {
+                result.removeFirst();
+            }
+            result.addLast(id);
+        }
+        return DedupIndex.encodeIds(result);
+    }
+
+    private static class Slice {
+        private final String subreddit;
+        private final long startSec;
+        private final long endSec;
+        private final Map<String, Object> partition;
+        private final Map<String, Object> storedOffset;
+
+        public Slice(
+                String subreddit,
+                long startSec,
+                long endSec,
+                Map<String, Object> partition,
+                Map<String, Object> storedOffset
+        ) {
+            this.subreddit = subreddit;
+            this.startSec = startSec;
+            this.endSec = endSec;
+            this.partition = partition;
+            this.storedOffset = storedOffset;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("r/%s from %s to %s", subreddit, new Date(startSec * 1000), new Date(endSec * 1000));
+        }
+    }
+}
@@ -0,0 +1,371 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import com.github.c0urante.kafka.connect.reddit.model.RawThing;
+import com.squareup.moshi.JsonReader;
+import com.squareup.moshi.JsonWriter;
+import okio.Buffer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Some or all of the comments on a post, as returned by Reddit either for the post's thread or
+ * for a batch of "more comments" stubs, flattened into a list.
+ * <p>
+ * The JSON for each comment keeps every field that Reddit returned for it, with numbers written
+ * exactly as Reddit wrote them, except that its replies are removed from it and included in the
+ * list alongside it instead, as if Reddit had returned the comment without any replies. Since the
+ * replies have to be cut out, each comment's JSON is re-encoded rather than copied byte-for-byte
+ * as {@link RawListingCursor} does.
+ */
+public class CommentTree {
+
+    private static final JsonReader.Options CHILD_FIELDS = JsonReader.Options.of("kind", "data");
+    private static final JsonReader.Options MORE_CHILDREN_FIELDS = JsonReader.Options.of("json");
+    private static final JsonReader.Options MORE_CHILDREN_JSON_FIELDS = JsonReader.Options.of("data");
+    private static final JsonReader.Options MORE_CHILDREN_DATA_FIELDS = JsonReader.Options.of("things");
+    private static final JsonReader.Options LISTING_FIELDS = JsonReader.Options.of("data");
+    private static final JsonReader.Options LISTING_DATA_FIELDS = JsonReader.Options.of("children");
+
+    private static final String COMMENT_KIND = "t1";
+    private static final String MORE_KIND = "more";
+
+    private final List<RawThing> comments;
+    private final List<More> more;
+
+    private CommentTree() {
+        this.comments = new ArrayList<>();
+        this.more = new ArrayList<>();
+    }
+
+    /**
+     * @return the comments in the tree, each one before any of its replies; never null
+     */
+    public List<RawThing> comments() {
+        return comments;
+    }
+
+    /**
+     * @return the stubs left in the tree for comments that weren't included in it; never null
+     */
+    public List<More> more() {
+        return more;
+    }
+
+    /**
+     * Parse the response for a post's thread, which is a listing containing the post followed by
+     * a listing of its top-level comments.
+     */
+    static CommentTree parseThread(String body) throws IOException {
+        CommentTree result = new CommentTree();
+        JsonReader reader = JsonReader.of(new Buffer().writeUtf8(body));
+        reader.beginArray();
+        // The post itself
+        reader.skipValue();
+        if (reader.hasNext()) {
+            result.parseListing(reader);
+        }
+        while (reader.hasNext()) {
+            reader.skipValue();
+        }
+        reader.endArray();
+        result.comments.removeIf(Objects::isNull);
+        return result;
+    }
+
+    /**
+     * Parse the response for {@code /api/morechildren}, which is a flat list of comments and
+     * further stubs.
+     */
+    static CommentTree parseMoreChildren(String body) throws IOException {
+        CommentTree result = new CommentTree();
+        JsonReader reader = JsonReader.of(new Buffer().writeUtf8(body));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.selectName(MORE_CHILDREN_FIELDS) != 0) {
+                reader.skipName();
+                reader.skipValue();
+                continue;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.selectName(MORE_CHILDREN_JSON_FIELDS) != 0) {
+                    reader.skipName();
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.selectName(MORE_CHILDREN_DATA_FIELDS) != 0) {
+                        reader.skipName();
+                        reader.skipValue();
+                        continue;
+                    }
+                    result.parseChildren(reader);
+                }
+                reader.endObject();
+            }
+            reader.endObject();
+        }
+        reader.endObject();
+        result.comments.removeIf(Objects::isNull);
+        return result;
+    }
+
+    private void parseListing(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+            // Comments without replies have an empty string in place of a listing
+            reader.skipValue();
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.selectName(LISTING_FIELDS) != 0) {
+                reader.skipName();
+                reader.skipValue();
+                continue;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.selectName(LISTING_DATA_FIELDS) != 0) {
+                    reader.skipName();
+                    reader.skipValue();
+                    continue;
+                }
+                parseChildren(reader);
+            }
+            reader.endObject();
+        }
+        reader.endObject();
+    }
+
+    private void parseChildren(JsonReader reader) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            parseChild(reader);
+        }
+        reader.endArray();
+    }
+
+    private void parseChild(JsonReader reader) throws IOException {
+        String kind = null;
+        Data data = null;
+        // Hold a place for the comment ahead of its replies, which are parsed along with it
+        int slot = comments.size();
+        comments.add(null);
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.selectName(CHILD_FIELDS)) {
+                case 0:
+                    kind = reader.nextString();
+                    break;
+                case 1:
+                    data = copyData(reader);
+                    break;
+                default:
+                    reader.skipName();
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (data == null) {
+            return;
+        }
+        if (COMMENT_KIND.equals(kind) && data.fullName != null && data.subreddit != null && data.created != null) {
+            comments.set(slot, new RawThing(data.fullName, data.subreddit, data.created, data.authorFullName, data.json));
+        } else if (MORE_KIND.equals(kind) && data.parentFullName != null) {
+            more.add(new More(data.parentFullName, data.children));
+        }
+    }
+
+    private Data copyData(JsonReader reader) throws IOException {
+        Data result = new Data();
+        Buffer json = new Buffer();
+        JsonWriter writer = JsonWriter.of(json);
+        writer.setSerializeNulls(true);
+
+        reader.beginObject();
+        writer.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            writer.name(name);
+            JsonReader.Token token = reader.peek();
+            if ("replies".equals(name)) {
+                parseListing(reader);
+                writer.value("");
+            } else if ("name".equals(name) && token == JsonReader.Token.STRING) {
+                result.fullName = reader.nextString();
+                writer.value(result.fullName);
+            } else if ("subreddit".equals(name) && token == JsonReader.Token.STRING) {
+                result.subreddit = reader.nextString();
+                writer.value(result.subreddit);
+            } else if ("author_fullname".equals(name) && token == JsonReader.Token.STRING) {
+                result.authorFullName = reader.nextString();
+                writer.value(result.authorFullName);
+            } else if ("parent_id".equals(name) && token == JsonReader.Token.STRING) {
+                result.parentFullName = reader.nextString();
+                writer.value(result.parentFullName);
+            } else if ("created_utc".equals(name) && token == JsonReader.Token.NUMBER) {
+                String literal = reader.nextString();
+                result.created = new Date((long) (Double.parseDouble(literal) * 1000));
+                writer.value(new JsonNumber(literal));
+            } else if ("children".equals(name) && token == JsonReader.Token.BEGIN_ARRAY) {
+                reader.beginArray();
+                writer.beginArray();
+                while (reader.hasNext()) {
+                    String child = reader.nextString();
+                    result.children.add(child);
+                    writer.value(child);
+                }
+                reader.endArray();
+                writer.endArray();
+            } else {
+                copyValue(reader, writer);
+            }
+        }
+        reader.endObject();
+        writer.endObject();
+        writer.close();
+
+        result.json = json.readByteArray();
+        return result;
+    }
+
+    private static class Data {
+        private String fullName;
+        private String subreddit;
+        private String parentFullName;
+        private Date created;
+        private String authorFullName;
+        private final List<String> children = new ArrayList<>();
+        private byte[] json;
+    }
+
+    /**
+     * A stub standing in for comments that weren't included in a tree.
+     */
+    public static class More {
+        private final String parentFullName;
+        private final List<String> children;
+
+        public More(String parentFullName, List<String> children) {
+            this.parentFullName = parentFullName;
+            this.children = Collections.unmodifiableList(children);
+        }
+
+        /**
+         * @return the full name of the post or comment that the missing comments are replies to
+         */
+        public String getParentFullName() {
+            return parentFullName;
+        }
+
+        /**
+         * @return the IDs (without a type prefix) of the missing comments, which can be read with
+         * {@code /api/morechildren}; empty if the stub is for a thread that's nested too deeply to
+         * be included, in which case the thread has to be read starting from its parent instead
+         */
+        public List<String> getChildren() {
+            return children;
+        }
+
+        public boolean isContinueThread() {
+            return children.isEmpty();
+        }
+    }
+
+    /**
+     * Copy a single value from the reader to the writer, re-encoding it along the way.
+     */
+    private static void copyValue(JsonReader reader, JsonWriter writer) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                reader.beginObject();
+                writer.beginObject();
+                while (reader.hasNext()) {
+                    writer.name(reader.nextName());
+                    copyValue(reader, writer);
+                }
+                reader.endObject();
+                writer.endObject();
+                break;
+            case BEGIN_ARRAY:
+                reader.beginArray();
+                writer.beginArray();
+                while (reader.hasNext()) {
+                    copyValue(reader, writer);
+                }
+                reader.endArray();
+                writer.endArray();
+                break;
+            case STRING:
+                writer.value(reader.nextString());
+                break;
+            case NUMBER:
+                // Preserve the original representation of the number instead of round-tripping
+                // it through a double
+                writer.value(new JsonNumber(reader.nextString()));
+                break;
+            case BOOLEAN:
+                writer.value(reader.nextBoolean());
+                break;
+            case NULL:
+                reader.<Void>nextNull();
+                writer.nullValue();
+                break;
+            default:
+                throw new IllegalStateException("Unexpected JSON token " + reader.peek() + " at " + reader.getPath());
+        }
+    }
+
+    /**
+     * A number whose string representation is exactly the literal it was read from.
+     */
+    private static class JsonNumber extends Number {
+        private static final long serialVersionUID = 1L;
+
+        private final String literal;
+
+        public JsonNumber(String literal) {
+            this.literal = literal;
+        }
+
+        @Override
+        public int intValue() {
+            return (int) doubleValue();
+        }
+
+        @Override
+        public long longValue() {
+            return (long) doubleValue();
+        }
+
+        @Override
+        public float floatValue() {
+            return (float) doubleValue();
+        }
+
+        @Override
+        public double doubleValue() {
+            return Double.parseDouble(literal);
+        }
+
+        @Override
+        public String toString() {
+            return literal;
+        }
+    }
+}
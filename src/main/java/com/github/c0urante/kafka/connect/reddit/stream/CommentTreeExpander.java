@@ -0,0 +1,327 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import com.github.c0urante.kafka.connect.reddit.metrics.StreamMetrics;
+import com.github.c0urante.kafka.connect.reddit.model.RawThing;
+import com.github.c0urante.kafka.connect.reddit.model.SourceRecordConverter;
+import org.apache.kafka.connect.source.SourceRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Reads the entire comment tree of each post it's given, some time after the post was published.
+ * <p>
+ * Each tree is read starting from the post's thread, which holds up to {@value #THREAD_LIMIT}
+ * comments; the rest of the tree is left as "more comments" stubs, which are then resolved in
+ * batches of up to {@value Reddit#MAX_MORE_CHILDREN} through {@code /api/morechildren}. Threads
+ * that are nested too deeply to be included in either are read starting from their parent
+ * comment. Compared to following the new comments in a subreddit, this costs only a handful of
+ * requests for even large threads, and only for the posts that are of interest.
+ * <p>
+ * Which posts have been expanded isn't tracked across restarts: posts waiting to be expanded when
+ * a task stops are not expanded after it's restarted.
+ */
+public class CommentTreeExpander<Thing> implements RecordSource {
+    private static final Logger log = LoggerFactory.getLogger(CommentTreeExpander.class);
+
+    static final String PARTITION_FIELD = "comment-trees-subreddit";
+    static final String POST_FIELD = "post";
+
+    // The most comments Reddit returns for a thread
+    private static final int THREAD_LIMIT = 500;
+    private static final int MAX_PENDING_POSTS = 10_000;
+    private static final long SHUTDOWN_TIMEOUT_MS = 30_000;
+
+    private final Set<String> subreddits;
+    private final long delayMs;
+    private final int threads;
+    private final int maxRequestsPerPost;
+    private final Reddit reddit;
+    private final Function<RawThing, Thing> decode;
+    private final SourceRecordConverter<Thing> recordConverter;
+    private final RecordBuffer records;
+    private final StreamMetrics metrics;
+    private final Consumer<Throwable> onError;
+    private final Runnable onRecords;
+
+    private final AtomicBoolean running;
+    private final AtomicInteger pendingPosts;
+    private final AtomicBoolean overflowing;
+    private ScheduledThreadPoolExecutor executor;
+
+    /**
+     * @param subreddits the subreddits whose posts should be expanded; posts from any other
+     *                   subreddit are ignored
+     * @param delayMs how long after a post was published to read its comments
+     * @param threads the number of posts to read the comments of at once
+     * @param maxRequestsPerPost the maximum number of requests to make for a single post's
+     *                           comments; anything left after that is skipped
+     * @param reddit the client to read comments with
+     * @param decode converts the JSON for a comment into the model expected by the record converter
+     * @param recordConverter converts comments into records
+     * @param records the buffer to add records to
+     * @param metrics the metrics to record read comments with
+     * @param onError invoked if reading fails, after which reading stops
+     * @param onRecords invoked whenever records are added to the buffer
+     */
+    public CommentTreeExpander(
+            Set<String> subreddits,
+            long delayMs,
+            int threads,
+            int maxRequestsPerPost,
+            Reddit reddit,
+            Function<RawThing, Thing> decode,
+            SourceRecordConverter<Thing> recordConverter,
+            RecordBuffer records,
+            StreamMetrics metrics,
+            Consumer<Throwable> onError,
+            Runnable onRecords
+    ) {
+        this.subreddits = new HashSet<>();
+        for (String subreddit : subreddits) {
+            this.subreddits.add(subreddit.toLowerCase(Locale.ROOT));
+        }
+        this.delayMs = delayMs;
+        this.threads = threads;
+        this.maxRequestsPerPost = maxRequestsPerPost;
+        this.reddit = reddit;
+        this.decode = decode;
+        this.recordConverter = recordConverter;
+        this.records = records;
+        this.metrics = metrics;
+        this.onError = onError;
+        this.onRecords = onRecords;
+
+        this.running = new AtomicBoolean(false);
+        this.pendingPosts = new AtomicInteger(0);
+        this.overflowing = new AtomicBoolean(false);
+
+        metrics.registerBuffer(records::size, records::bytes);
+    }
+
+    @Override
+    public String toString() {
+        return "comment tree expander (subreddits: " + String.join(",", subreddits) + ")";
+    }
+
+    public synchronized void start() {
+        if (!running.compareAndSet(false, true)) {
+            log.warn("start() invoked but {} is already running; ignoring", this);
+            return;
+        }
+        log.info("Starting {}", this);
+        AtomicInteger threadCount = new AtomicInteger(0);
+        ThreadFactory threadFactory = runnable -> {
+            Thread result = new Thread(runnable, "reddit-comment-trees-" + threadCount.getAndIncrement());
+            result.setDaemon(true);
+            return result;
+        };
+        executor = new ScheduledThreadPoolExecutor(threads, threadFactory);
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Queue a post to have its comments read, if it's from one of the subreddits being expanded.
+     * Meant to be used as a {@link StreamReader.Listener} for a posts stream.
+     * @param subreddit the subreddit the post belongs to
+     * @param postFullName the full name of the post
+     * @param createdMs the creation time of the post, in milliseconds since the epoch
+     */
+    public void enqueue(String subreddit, String postFullName, long createdMs) {
+        if (!running.get() || !subreddits.contains(subreddit.toLowerCase(Locale.ROOT))) {
+            return;
+        }
+        if (pendingPosts.incrementAndGet() > MAX_PENDING_POSTS) {
+            pendingPosts.decrementAndGet();
+            if (overflowing.compareAndSet(false, true)) {
+                log.warn(
+                        "More than {} posts are waiting to have their comments read by {}; skipping new posts "
+                                + "until some of them have been read",
+                        MAX_PENDING_POSTS,
+                        this
+                );
+            }
+            return;
+        }
+        overflowing.set(false);
+
+        long delay = Math.max(0, createdMs + delayMs - System.currentTimeMillis());
+        try {
+            executor.schedule(() -> run(subreddit, postFullName), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The expander has been closed
+            pendingPosts.decrementAndGet();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!running.compareAndSet(true, false)) {
+            log.warn("close() invoked but {} is not running; ignoring", this);
+            return;
+        }
+        log.debug("Stopping {}", this);
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                log.warn("Timed out waiting for {} threads to exit", this);
+            }
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for {} threads to exit", this);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean hasRecords() {
+        return !records.isEmpty();
+    }
+
+    @Override
+    public List<SourceRecord> pollRecords(int maxRecords) {
+        return records.drain(maxRecords);
+    }
+
+    private void run(String subreddit, String postFullName) {
+        try {
+            expand(subreddit, postFullName);
+        } catch (InterruptedException e) {
+            log.debug("Interrupted while reading comments for {}; stopping", postFullName);
+        } catch (Throwable t) {
+            if (!running.get()) {
+                log.debug(
+                        "Error while reading comments for {}. "
+                                + "This is expected as the expander is in the process of closing.",
+                        postFullName,
+                        t
+                );
+                return;
+            }
+            log.error("Error while reading comments for {}", postFullName, t);
+            onError.accept(t);
+        } finally {
+            pendingPosts.decrementAndGet();
+        }
+    }
+
+    private void expand(String subreddit, String postFullName) throws InterruptedException {
+        Map<String, ?> sourcePartition = Collections.singletonMap(PARTITION_FIELD, subreddit);
+        Map<String, ?> sourceOffset = Collections.singletonMap(POST_FIELD, postFullName);
+        Set<String> seen = new HashSet<>();
+        // IDs of comments to read through /api/morechildren
+        Deque<String> children = new ArrayDeque<>();
+        // Full names of comments whose replies have to be read as threads of their own
+        Deque<String> deepThreads = new ArrayDeque<>();
+
+        CommentTree tree = withRetry(() -> reddit.comments(postFullName, null, THREAD_LIMIT));
+        int requests = 1;
+        int read = 0;
+        while (true) {
+            read += emit(tree, sourcePartition, sourceOffset, seen, children, deepThreads);
+            if (!running.get() || (children.isEmpty() && deepThreads.isEmpty())) {
+                break;
+            }
+            if (requests >= maxRequestsPerPost) {
+                log.debug(
+                        "Stopped reading comments for {} after {} requests; {} comment(s) and {} thread(s) skipped",
+                        postFullName,
+                        requests,
+                        children.size(),
+                        deepThreads.size()
+                );
+                break;
+            }
+
+            if (!children.isEmpty()) {
+                List<String> batch = new ArrayList<>();
+                while (batch.size() < Reddit.MAX_MORE_CHILDREN && !children.isEmpty()) {
+                    batch.add(children.poll());
+                }
+                tree = withRetry(() -> reddit.moreChildren(postFullName, batch));
+            } else {
+                String parent = deepThreads.poll();
+                tree = withRetry(() -> reddit.comments(postFullName, parent, THREAD_LIMIT));
+            }
+            requests++;
+        }
+        log.trace("Read {} comment(s) for {} with {} request(s)", read, postFullName, requests);
+    }
+
+    /**
+     * Buffer records for the comments in a tree that haven't been seen yet, and queue up its
+     * stubs to be read.
+     * @return the number of records buffered
+     */
+    private int emit(
+            CommentTree tree,
+            Map<String, ?> sourcePartition,
+            Map<String, ?> sourceOffset,
+            Set<String> seen,
+            Deque<String> children,
+            Deque<String> deepThreads
+    ) throws InterruptedException {
+        List<RawThing> unseen = new ArrayList<>();
+        List<Thing> decoded = new ArrayList<>();
+        for (RawThing comment : tree.comments()) {
+            // Threads read from a parent comment include that comment again
+            if (seen.add(comment.getFullName())) {
+                unseen.add(comment);
+                decoded.add(decode.apply(comment));
+            }
+        }
+        recordConverter.prepare(decoded);
+
+        int result = 0;
+        for (int i = 0; i < unseen.size(); i++) {
+            if (!running.get()) {
+                return result;
+            }
+            records.awaitCapacity();
+            long start = System.nanoTime();
+            SourceRecord record = recordConverter.convert(decoded.get(i), sourcePartition, sourceOffset);
+            metrics.recordConverted(unseen.get(i).getSubreddit(), System.nanoTime() - start);
+            records.add(record);
+            result++;
+        }
+        for (CommentTree.More more : tree.more()) {
+            if (more.isContinueThread()) {
+                deepThreads.add(more.getParentFullName());
+            } else {
+                children.addAll(more.getChildren());
+            }
+        }
+        if (result > 0) {
+            onRecords.run();
+        }
+        return result;
+    }
+
+    private CommentTree withRetry(Supplier<CommentTree> fetch) {
+        return ListingCursor.withRetry(SharedRateLimiter.BACKGROUND_URGENCY, this, fetch);
+    }
+}
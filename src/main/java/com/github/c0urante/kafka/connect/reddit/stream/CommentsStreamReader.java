@@ -7,15 +7,16 @@
 
 package com.github.c0urante.kafka.connect.reddit.stream;
 
+import com.github.c0urante.kafka.connect.reddit.metrics.StreamMetrics;
 import com.github.c0urante.kafka.connect.reddit.model.CommentSourceRecordConverter;
 import net.dean.jraw.models.Comment;
-import net.dean.jraw.pagination.Stream;
 import org.apache.kafka.connect.source.SourceRecord;
 
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class CommentsStreamReader extends StreamReader<Comment> {
 
@@ -23,18 +24,27 @@ public class CommentsStreamReader extends StreamReader<Comment> {
 
     public CommentsStreamReader(
             Map<Map<String, Object>, Map<String, Object>> offsets,
-            Stream<Comment> stream,
+            Function<List<String>, ? extends List<? extends ListingCursor<Comment>>> cursorFactory,
+            FetchEngine fetchEngine,
             Consumer<Throwable> onError,
+            Runnable onRecords,
+            RecordBuffer records,
+            StreamMetrics metrics,
             List<String> subreddits,
-            String topic
+            CommentSourceRecordConverter recordConverter
     ) {
-        super(offsets, stream, onError, "comment", subreddits);
-        this.recordConverter = new CommentSourceRecordConverter(topic);
+        super(offsets, cursorFactory, fetchEngine, onError, onRecords, records, metrics, "comment", subreddits);
+        this.recordConverter = recordConverter;
     }
 
     @Override
-    protected SourceRecord convertThing(Comment comment) {
-        return recordConverter.convert(comment);
+    protected void prepareThings(List<Comment> comments) {
+        recordConverter.prepare(comments);
+    }
+
+    @Override
+    protected SourceRecord convertThing(Comment comment, Map<String, ?> sourceOffset) {
+        return recordConverter.convert(comment, sourceOffset);
     }
 
     @Override
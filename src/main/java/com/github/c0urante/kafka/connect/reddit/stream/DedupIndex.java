@@ -0,0 +1,302 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Tracks which Things have already been read by a stream reader, both across restarts (via the
+ * source offsets that it generates) and during the lifetime of the reader (via a bounded window
+ * of recently-seen IDs).
+ * <p>
+ * The offset for each partition contains the creation timestamp of the most recent Thing read for
+ * it (the high watermark), along with the IDs of the Things read for it that were created at that
+ * exact timestamp. Since timestamps from Reddit only have second granularity, the latter is
+ * necessary in order to avoid dropping Things created during the same second as the last one that
+ * was read before a restart.
+ * <p>
+ * Subreddit names are matched case-insensitively, since the names that subreddits are configured
+ * with don't have to be spelled the way that Reddit spells them on the Things read from them.
+ * <p>
+ * Not thread-safe; meant to be used only by the reader thread.
+ */
+public class DedupIndex {
+
+    static final String CREATED_FIELD = "created";
+    static final String IDS_FIELD = "ids";
+    // Offsets may only contain primitive values, so IDs are stored as a single delimited string;
+    // Reddit IDs never contain commas
+    private static final String IDS_DELIMITER = ",";
+
+    private static final int MAX_RECENT_IDS = 10000;
+    private static final int MAX_PARTITIONS = 10000;
+    private static final int MAX_PERSISTED_IDS = 100;
+    private static final int INITIAL_IDS_CAPACITY = 4;
+
+    private final Map<Map<String, Object>, Map<String, Object>> storedOffsets;
+    private final Function<String, Map<String, Object>> partitionForSubreddit;
+    private final Set<String> recentIds;
+    private final Map<String, PartitionIndex> partitions;
+
+    private Long defaultWatermark;
+
+    /**
+     * @param storedOffsets the offsets that were stored for the reader's partitions before it was
+     *                      started
+     * @param partitionForSubreddit the function to use to determine the source partition for a
+     *                              subreddit; only ever invoked with lower-case names
+     */
+    public DedupIndex(
+            Map<Map<String, Object>, Map<String, Object>> storedOffsets,
+            Function<String, Map<String, Object>> partitionForSubreddit
+    ) {
+        this.storedOffsets = storedOffsets != null ? new HashMap<>(storedOffsets) : new HashMap<>();
+        this.partitionForSubreddit = partitionForSubreddit;
+        this.recentIds = Collections.newSetFromMap(new LinkedHashMap<String, Boolean>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > MAX_RECENT_IDS;
+            }
+        });
+        this.partitions = new LinkedHashMap<String, PartitionIndex>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PartitionIndex> eldest) {
+                return size() > MAX_PARTITIONS;
+            }
+        };
+    }
+
+    /**
+     * Record that a Thing has been read, if it hasn't been already.
+     * @param subreddit the subreddit the Thing belongs to
+     * @param id the unique ID of the Thing
+     * @param created the creation timestamp of the Thing, in milliseconds since the epoch
+     * @return the source offset to use for the Thing, or null if it's a duplicate and should be
+     * skipped
+     */
+    public Map<String, Object> offsetIfOriginal(String subreddit, String id, long created) {
+        PartitionIndex partition = partitions.computeIfAbsent(key(subreddit), this::loadPartition);
+        if (partition.isDuplicate(id, created) || !recentIds.add(id)) {
+            return null;
+        }
+        return partition.advance(id, created);
+    }
+
+    /**
+     * Treat subreddits that have no stored offset as if everything created before the given time
+     * had already been read from them. Must be invoked before any Things are read.
+     * @param watermark the time, in milliseconds since the epoch
+     */
+    public void setDefaultWatermark(long watermark) {
+        this.defaultWatermark = watermark;
+    }
+
+    /**
+     * Add the offsets stored for subreddits that the reader started reading after it was started.
+     * Subreddits that have already been read by the reader keep the state they already have.
+     * @param storedOffsets the offsets that were stored for the subreddits' partitions
+     */
+    public void addStoredOffsets(Map<Map<String, Object>, Map<String, Object>> storedOffsets) {
+        this.storedOffsets.putAll(storedOffsets);
+    }
+
+    /**
+     * @param subreddit the subreddit
+     * @return the creation timestamp of the most recent Thing read for the subreddit, either since
+     * the reader was started or (if nothing has been read since) before it, in milliseconds since
+     * the epoch, or the default watermark (if any) if nothing has ever been read for it
+     */
+    public Long watermark(String subreddit) {
+        PartitionIndex partition = partitions.get(key(subreddit));
+        if (partition != null && partition.highWatermark != Long.MIN_VALUE) {
+            return partition.highWatermark;
+        }
+        return storedWatermark(subreddit);
+    }
+
+    /**
+     * @param subreddit the subreddit
+     * @return the creation timestamp of the most recent Thing read for the subreddit before the
+     * reader was started, in milliseconds since the epoch, or the default watermark (if any) if
+     * nothing had been read for it
+     */
+    public Long storedWatermark(String subreddit) {
+        Map<String, Object> offset = storedOffsets.get(partitionForSubreddit.apply(key(subreddit)));
+        if (offset == null || !(offset.get(CREATED_FIELD) instanceof Number)) {
+            return defaultWatermark;
+        }
+        return ((Number) offset.get(CREATED_FIELD)).longValue();
+    }
+
+    /**
+     * @param first a stored offset; may be null
+     * @param second another stored offset; may be null
+     * @return whichever of the offsets has the later high watermark, or null if neither does
+     */
+    public static Map<String, Object> latest(Map<String, Object> first, Map<String, Object> second) {
+        if (first == null || !(first.get(CREATED_FIELD) instanceof Number)) {
+            return second != null && second.get(CREATED_FIELD) instanceof Number ? second : null;
+        }
+        if (second == null || !(second.get(CREATED_FIELD) instanceof Number)) {
+            return first;
+        }
+        long firstCreated = ((Number) first.get(CREATED_FIELD)).longValue();
+        long secondCreated = ((Number) second.get(CREATED_FIELD)).longValue();
+        return secondCreated > firstCreated ? second : first;
+    }
+
+    /**
+     * @return the given IDs in the form they're stored in offsets
+     */
+    static String encodeIds(Iterable<String> ids) {
+        return String.join(IDS_DELIMITER, ids);
+    }
+
+    /**
+     * @param storedIds the IDs from a stored offset, as written by {@link #encodeIds(Iterable)};
+     *                  may be null
+     * @return the IDs, in order
+     */
+    static List<String> decodeIds(Object storedIds) {
+        List<String> result = new ArrayList<>();
+        if (!(storedIds instanceof String)) {
+            return result;
+        }
+        for (String id : ((String) storedIds).split(IDS_DELIMITER)) {
+            if (!id.isEmpty()) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    private static String key(String subreddit) {
+        return subreddit.toLowerCase(Locale.ROOT);
+    }
+
+    private PartitionIndex loadPartition(String subreddit) {
+        Long created = storedWatermark(subreddit);
+        if (created == null) {
+            return new PartitionIndex();
+        }
+
+        Map<String, Object> offset = storedOffsets.get(partitionForSubreddit.apply(subreddit));
+        return new PartitionIndex(created, decodeIds(offset != null ? offset.get(IDS_FIELD) : null));
+    }
+
+    private static class PartitionIndex {
+        // Anything created before this is assumed to have been read before the reader was started
+        private final long lowWatermark;
+        // The IDs read before the reader was started that were created exactly at the low watermark
+        private final Set<String> idsAtLowWatermark;
+
+        private long highWatermark;
+        // Only ever appended to (or replaced, when the high watermark moves), so that the offsets
+        // handed out for earlier Things can keep referring to the first few elements
+        private String[] idsAtHighWatermark;
+        private int numIdsAtHighWatermark;
+
+        public PartitionIndex() {
+            this(Long.MIN_VALUE, Collections.emptyList());
+        }
+
+        public PartitionIndex(long lowWatermark, List<String> idsAtLowWatermark) {
+            this.lowWatermark = lowWatermark;
+            this.idsAtLowWatermark = new HashSet<>(idsAtLowWatermark);
+            this.highWatermark = lowWatermark;
+            this.idsAtHighWatermark = idsAtLowWatermark.toArray(new String[0]);
+            this.numIdsAtHighWatermark = idsAtHighWatermark.length;
+        }
+
+        public boolean isDuplicate(String id, long created) {
+            return created < lowWatermark
+                    || (created == lowWatermark && idsAtLowWatermark.contains(id));
+        }
+
+        public Map<String, Object> advance(String id, long created) {
+            if (created > highWatermark) {
+                highWatermark = created;
+                idsAtHighWatermark = new String[INITIAL_IDS_CAPACITY];
+                numIdsAtHighWatermark = 0;
+            }
+            if (created == highWatermark && numIdsAtHighWatermark < MAX_PERSISTED_IDS) {
+                if (numIdsAtHighWatermark == idsAtHighWatermark.length) {
+                    // Copy instead of growing in place; earlier offsets keep the old array
+                    idsAtHighWatermark = Arrays.copyOf(
+                            idsAtHighWatermark,
+                            Math.min(MAX_PERSISTED_IDS, Math.max(INITIAL_IDS_CAPACITY, numIdsAtHighWatermark * 2))
+                    );
+                }
+                idsAtHighWatermark[numIdsAtHighWatermark++] = id;
+            }
+            return new ReadOffset(highWatermark, idsAtHighWatermark, numIdsAtHighWatermark);
+        }
+    }
+
+    /**
+     * The source offset for a Thing. Every Thing read gets one, but the framework only ever looks
+     * inside the most recent one for each partition when it commits offsets, so instead of copying
+     * the IDs at the high watermark into a new map and string for every Thing, the offset just
+     * remembers how many of them there were, and its entries are only created if they're read.
+     */
+    private static class ReadOffset extends AbstractMap<String, Object> {
+        private final long created;
+        private final String[] ids;
+        private final int numIds;
+
+        public ReadOffset(long created, String[] ids, int numIds) {
+            this.created = created;
+            this.ids = ids;
+            this.numIds = numIds;
+        }
+
+        @Override
+        public Object get(Object key) {
+            if (CREATED_FIELD.equals(key)) {
+                return created;
+            } else if (IDS_FIELD.equals(key)) {
+                return ids();
+            }
+            return null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return CREATED_FIELD.equals(key) || IDS_FIELD.equals(key);
+        }
+
+        @Override
+        public int size() {
+            return 2;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            Set<Entry<String, Object>> result = new LinkedHashSet<>();
+            result.add(new SimpleImmutableEntry<>(CREATED_FIELD, created));
+            result.add(new SimpleImmutableEntry<>(IDS_FIELD, ids()));
+            return Collections.unmodifiableSet(result);
+        }
+
+        private String ids() {
+            return encodeIds(Arrays.asList(ids).subList(0, numIds));
+        }
+    }
+}
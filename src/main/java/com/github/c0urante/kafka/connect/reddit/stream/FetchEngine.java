@@ -0,0 +1,172 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import net.dean.jraw.models.UniquelyIdentifiable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Drives any number of {@link ListingCursor listing cursors} from a small, fixed pool of threads.
+ * <p>
+ * Each cursor is polled whenever its schedule says it's due, and is then rescheduled according to
+ * that schedule; a cursor is never polled by more than one thread at a time. Since the pool hands
+ * out threads in order of when each cursor became due, a busy cursor can't starve a quiet one: at
+ * worst, it gets polled once for every time each other due cursor gets polled.
+ * <p>
+ * A cursor whose results have nowhere to go (because its sink is full) is not polled at all until
+ * there's room again; it just checks back periodically, without tying up a thread in between.
+ */
+public class FetchEngine implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(FetchEngine.class);
+
+    private static final long BACKPRESSURE_RETRY_MS = 100;
+    private static final long SHUTDOWN_TIMEOUT_MS = 30_000;
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    /**
+     * @param threads the number of threads to poll cursors with
+     * @param name the name to use for those threads
+     */
+    public FetchEngine(int threads, String name) {
+        AtomicInteger threadCount = new AtomicInteger(0);
+        ThreadFactory threadFactory = runnable -> {
+            Thread result = new Thread(runnable, name + "-fetcher-" + threadCount.getAndIncrement());
+            result.setDaemon(true);
+            return result;
+        };
+        this.executor = new ScheduledThreadPoolExecutor(threads, threadFactory);
+        executor.setRemoveOnCancelPolicy(true);
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Start polling a cursor.
+     * @param cursor the cursor to poll
+     * @param sink receives the new items from each poll of the cursor
+     * @param hasCapacity whether the sink can currently accept more items; the cursor isn't polled
+     *                    while this returns false
+     * @param onError invoked if polling the cursor fails, after which the cursor is no longer polled
+     * @return a handle that can be used to stop polling the cursor
+     */
+    public <Thing extends UniquelyIdentifiable> Registration register(
+            ListingCursor<Thing> cursor,
+            Consumer<List<Thing>> sink,
+            BooleanSupplier hasCapacity,
+            Consumer<Throwable> onError
+    ) {
+        CursorPoller<Thing> result = new CursorPoller<>(cursor, sink, hasCapacity, onError);
+        result.schedule(0);
+        return result;
+    }
+
+    /**
+     * Stop polling all cursors, interrupting any polls that are currently in progress, and wait
+     * for the pool's threads to exit.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                log.warn("Timed out waiting for fetcher threads to exit");
+            }
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for fetcher threads to exit");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A cursor that has been registered with the engine.
+     */
+    public interface Registration {
+        /**
+         * Stop polling the cursor. A poll that's already in progress is allowed to finish, but its
+         * results are discarded.
+         */
+        void cancel();
+    }
+
+    private class CursorPoller<Thing extends UniquelyIdentifiable> implements Registration, Runnable {
+        private final ListingCursor<Thing> cursor;
+        private final Consumer<List<Thing>> sink;
+        private final BooleanSupplier hasCapacity;
+        private final Consumer<Throwable> onError;
+
+        private volatile boolean cancelled;
+
+        public CursorPoller(
+                ListingCursor<Thing> cursor,
+                Consumer<List<Thing>> sink,
+                BooleanSupplier hasCapacity,
+                Consumer<Throwable> onError
+        ) {
+            this.cursor = cursor;
+            this.sink = sink;
+            this.hasCapacity = hasCapacity;
+            this.onError = onError;
+            this.cancelled = false;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            if (!hasCapacity.getAsBoolean()) {
+                schedule(BACKPRESSURE_RETRY_MS);
+                return;
+            }
+
+            try {
+                List<Thing> items = cursor.poll();
+                if (cancelled) {
+                    return;
+                }
+                if (!items.isEmpty()) {
+                    sink.accept(items);
+                }
+            } catch (Throwable t) {
+                if (cancelled || executor.isShutdown()) {
+                    log.debug("Error polling {} after it was cancelled; ignoring", cursor, t);
+                } else {
+                    onError.accept(t);
+                }
+                return;
+            }
+            schedule(cursor.nextPollDelayMs());
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private void schedule(long delayMs) {
+            try {
+                executor.schedule(this, delayMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // The engine has been closed
+                log.trace("Not rescheduling {} as the engine has been closed", cursor);
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import com.github.c0urante.kafka.connect.reddit.metrics.ListingMetrics;
+import net.dean.jraw.ApiException;
+import net.dean.jraw.models.UniquelyIdentifiable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The read position in a single listing of new posts or comments, which can be advanced one page
+ * at a time. Unlike JRAW's {@link net.dean.jraw.pagination.Stream}, a cursor never blocks between
+ * pages; it's up to the caller (usually a {@link FetchEngine}) to wait for
+ * {@link #nextPollDelayMs()} before polling it again.
+ * <p>
+ * A cursor can also be told to {@link #catchUpSince(long, Function) catch up} before it starts
+ * following the newest page, in which case it first pages backward through the listing until it
+ * reaches items that were read before, and hands out everything it found in one go. Each page
+ * starts where the previous one ended, so the pages of a single listing are fetched one at a
+ * time; it's the fetch engine that catches up on several listings at once.
+ * <p>
+ * Not thread-safe; a cursor must be polled by only one thread at a time.
+ */
+public abstract class ListingCursor<Thing extends UniquelyIdentifiable> {
+
+    private static final Logger log = LoggerFactory.getLogger(ListingCursor.class);
+
+    private static final int MIN_HISTORY_SIZE = 500;
+
+    private final String description;
+    private final List<String> subreddits;
+    private final int limit;
+    private final int maxCatchUpPages;
+    private final AdaptivePollScheduler.ListingSchedule schedule;
+    private final Map<String, Boolean> history;
+
+    private ListingMetrics metrics;
+    private CatchUp catchUp;
+    private boolean caughtUp;
+
+    /**
+     * @param description a human-readable description of the listing, for logging
+     * @param subreddits the subreddits the listing covers
+     * @param limit the maximum number of items that will be requested per page
+     * @param maxCatchUpPages the maximum number of pages to read when catching up
+     * @param schedule the schedule that determines how often to poll the listing, and how many
+     *                 items to request each time
+     */
+    protected ListingCursor(
+            String description,
+            List<String> subreddits,
+            int limit,
+            int maxCatchUpPages,
+            AdaptivePollScheduler.ListingSchedule schedule
+    ) {
+        this.description = description;
+        this.subreddits = subreddits;
+        this.limit = limit;
+        this.maxCatchUpPages = maxCatchUpPages;
+        this.schedule = schedule;
+        final int historySize = Math.max(MIN_HISTORY_SIZE, 2 * limit);
+        this.history = new LinkedHashMap<String, Boolean>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > historySize;
+            }
+        };
+    }
+
+    /**
+     * Fetch the newest items in the listing.
+     * @param limit the maximum number of items to fetch
+     * @return the items, newest-first
+     */
+    protected abstract List<Thing> fetchPage(int limit);
+
+    /**
+     * Start paging backward through the listing.
+     * @param limit the maximum number of items to fetch per page
+     * @return fetches the next page each time it's invoked, starting with the newest page and
+     * moving on to older ones; returns an empty page once the end of the listing is reached
+     */
+    protected abstract Supplier<List<Thing>> pages(int limit);
+
+    /**
+     * @return the subreddits the listing covers
+     */
+    public List<String> subreddits() {
+        return subreddits;
+    }
+
+    /**
+     * Before following the newest page of the listing, page backward through it until reaching
+     * items created before the given time, and return everything found on the way, oldest-first,
+     * from a single poll. Pages are fetched one per poll, with no delay in between. Has no effect
+     * if the cursor was created with no catch-up pages.
+     * @param sinceMs the creation time, in milliseconds since the epoch, of the newest item that
+     *                was read before
+     * @param created the creation time of an item
+     */
+    public void catchUpSince(long sinceMs, Function<Thing, Date> created) {
+        if (maxCatchUpPages <= 0) {
+            return;
+        }
+        log.debug("Catching up on {} since {}", this, new Date(sinceMs));
+        this.catchUp = new CatchUp(sinceMs, created);
+    }
+
+    /**
+     * Fetch the newest page of the listing (or, while catching up, the next older page) and
+     * return the items in it that haven't been returned by this cursor before.
+     * @return the new items, oldest-first; never null
+     */
+    public List<Thing> poll() {
+        if (catchUp != null) {
+            return pollCatchUp();
+        }
+
+        caughtUp = false;
+        long start = System.currentTimeMillis();
+        List<Thing> page = withRetry(schedule.urgency(), this, () -> fetchPage(schedule.pageSize()));
+        long end = System.currentTimeMillis();
+        List<Thing> result = new ArrayList<>();
+        // Listings are returned newest-first; walk backwards so that items are handed out
+        // oldest-first
+        for (int i = page.size() - 1; i >= 0; i--) {
+            Thing thing = page.get(i);
+            if (history.put(thing.getUniqueId(), Boolean.TRUE) == null) {
+                result.add(thing);
+            }
+        }
+        schedule.recordPoll(result.size(), page.size(), end);
+        if (metrics != null) {
+            metrics.recordFetch(end - start, page.size(), result.size());
+        }
+        return result;
+    }
+
+    private List<Thing> pollCatchUp() {
+        long start = System.currentTimeMillis();
+        List<Thing> page = withRetry(schedule.urgency(), this, catchUp.pages);
+        long end = System.currentTimeMillis();
+        if (metrics != null) {
+            metrics.recordFetch(end - start, page.size(), page.size());
+        }
+
+        boolean exhausted = page.isEmpty();
+        boolean reachedSince = !exhausted
+                && catchUp.created.apply(page.get(page.size() - 1)).getTime() < catchUp.sinceMs;
+        if (!exhausted) {
+            catchUp.backlog.add(page);
+        }
+        if (!exhausted && !reachedSince && catchUp.backlog.size() < maxCatchUpPages) {
+            return Collections.emptyList();
+        }
+
+        if (!exhausted && !reachedSince) {
+            log.warn(
+                    "Stopped catching up on {} after {} pages without reaching the last item read before {}; "
+                            + "items published in between may have been missed",
+                    this,
+                    catchUp.backlog.size(),
+                    new Date(catchUp.sinceMs)
+            );
+        }
+        // Pages are fetched newest-first, and so is each page; walk both backwards so that items
+        // are handed out oldest-first
+        List<Thing> result = new ArrayList<>();
+        for (int p = catchUp.backlog.size() - 1; p >= 0; p--) {
+            List<Thing> backlogPage = catchUp.backlog.get(p);
+            for (int i = backlogPage.size() - 1; i >= 0; i--) {
+                Thing thing = backlogPage.get(i);
+                if (history.put(thing.getUniqueId(), Boolean.TRUE) == null) {
+                    result.add(thing);
+                }
+            }
+        }
+        log.info("Caught up on {} with {} items from {} pages", this, result.size(), catchUp.backlog.size());
+        catchUp = null;
+        caughtUp = true;
+        return result;
+    }
+
+    /**
+     * @param metrics the metrics to record each poll of this cursor with
+     */
+    public void setMetrics(ListingMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return how long to wait, in milliseconds, before polling this cursor again
+     */
+    public long nextPollDelayMs() {
+        // Follow up right after catching up, since catching up on a busy listing can take a while
+        return catchUp != null || caughtUp ? 0 : schedule.intervalMs();
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+
+    /**
+     * Make a request to Reddit with the given urgency, retrying it once if it fails with a 401
+     * response. Everything that reads from Reddit goes through here.
+     * @param urgency the urgency of the request; see {@link SharedRateLimiter#withUrgency(double, Supplier)}
+     * @param source what the request is being made for, to log if it has to be retried
+     * @return the result of the request
+     */
+    static <T> T withRetry(double urgency, Object source, Supplier<T> fetch) {
+        // Fetch threads are shared, so the urgency is set for this request only
+        return SharedRateLimiter.withUrgency(urgency, () -> retryOnUnauthorized(source, fetch));
+    }
+
+    private static <T> T retryOnUnauthorized(Object source, Supplier<T> fetch) {
+        try {
+            return fetch.get();
+        } catch (ApiException e) {
+            if ("401".equals(e.getCode())) {
+                log.debug(
+                        "Encountered 401 response while reading from Reddit for {}. " +
+                                "This is likely due to a token refresh issue in the underlying Reddit client " +
+                                "library; retrying now as the token should be refreshed correctly this time.",
+                        source,
+                        e
+                );
+                return fetch.get();
+            } else {
+                throw e;
+            }
+        }
+    }
+
+    private class CatchUp {
+        private final long sinceMs;
+        private final Function<Thing, Date> created;
+        private final Supplier<List<Thing>> pages;
+        // Every page read so far, newest-first
+        private final List<List<Thing>> backlog;
+
+        public CatchUp(long sinceMs, Function<Thing, Date> created) {
+            this.sinceMs = sinceMs;
+            this.created = created;
+            this.pages = pages(limit);
+            this.backlog = new ArrayList<>();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import com.github.c0urante.kafka.connect.reddit.model.AuthorMetadata;
+import com.github.c0urante.kafka.connect.reddit.model.SubredditMetadata;
+import com.squareup.moshi.JsonReader;
+import okio.Buffer;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Parses the responses Reddit gives for batches of subreddits and users. These are only read when
+ * they aren't already cached, so unlike listings of posts and comments, they're simply read into
+ * maps instead of being streamed.
+ */
+final class MetadataParser {
+
+    private MetadataParser() {
+    }
+
+    /**
+     * Parse the response for {@code /api/info} with the {@code sr_name} parameter, which is a
+     * listing of subreddits.
+     * @return the metadata for each subreddit in the listing, keyed by lowercased name
+     */
+    static Map<String, SubredditMetadata> parseSubreddits(String body) throws IOException {
+        Map<String, SubredditMetadata> result = new HashMap<>();
+        Map<?, ?> listingData = asMap(asMap(read(body)).get("data"));
+        Object children = listingData.get("children");
+        if (!(children instanceof List)) {
+            return result;
+        }
+        for (Object child : (List<?>) children) {
+            Map<?, ?> data = asMap(asMap(child).get("data"));
+            Object name = data.get("display_name");
+            if (!(name instanceof String)) {
+                continue;
+            }
+            result.put(((String) name).toLowerCase(Locale.ROOT), new SubredditMetadata(
+                    asLong(data.get("subscribers")),
+                    data.get("subreddit_type") instanceof String ? (String) data.get("subreddit_type") : null,
+                    data.get("over18") instanceof Boolean ? (Boolean) data.get("over18") : null,
+                    asLong(data.get("created_utc"))
+            ));
+        }
+        return result;
+    }
+
+    /**
+     * Parse the response for {@code /api/user_data_by_account_ids}, which is an object with a
+     * field for each account that was found.
+     * @return the metadata for each account, keyed by the account's full name
+     */
+    static Map<String, AuthorMetadata> parseAccounts(String body) throws IOException {
+        Map<String, AuthorMetadata> result = new HashMap<>();
+        for (Map.Entry<?, ?> account : asMap(read(body)).entrySet()) {
+            Map<?, ?> data = asMap(account.getValue());
+            result.put((String) account.getKey(), new AuthorMetadata(
+                    asLong(data.get("link_karma")),
+                    asLong(data.get("comment_karma")),
+                    asLong(data.get("created_utc"))
+            ));
+        }
+        return result;
+    }
+
+    private static Object read(String body) throws IOException {
+        return JsonReader.of(new Buffer().writeUtf8(body)).readJsonValue();
+    }
+
+    private static Map<?, ?> asMap(Object value) {
+        return value instanceof Map ? (Map<?, ?>) value : new HashMap<>();
+    }
+
+    private static Long asLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : null;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import net.dean.jraw.models.Listing;
+import net.dean.jraw.models.UniquelyIdentifiable;
+import net.dean.jraw.pagination.RedditIterable;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * A cursor over a listing that's read through JRAW, which deserializes each item into one of its
+ * models.
+ */
+class PaginatorCursor<Thing extends UniquelyIdentifiable> extends ListingCursor<Thing> {
+
+    private final IntFunction<RedditIterable<Thing>> paginator;
+
+    /**
+     * @param paginator creates a paginator for the listing that requests the given number of
+     *                  items per page; JRAW fixes the page size of a paginator when it's built, so
+     *                  a new one is created for every poll in order to let the page size adapt
+     */
+    PaginatorCursor(
+            String description,
+            List<String> subreddits,
+            int limit,
+            int maxCatchUpPages,
+            AdaptivePollScheduler.ListingSchedule schedule,
+            IntFunction<RedditIterable<Thing>> paginator
+    ) {
+        super(description, subreddits, limit, maxCatchUpPages, schedule);
+        this.paginator = paginator;
+    }
+
+    @Override
+    protected List<Thing> fetchPage(int limit) {
+        return paginator.apply(limit).next();
+    }
+
+    @Override
+    protected Supplier<List<Thing>> pages(int limit) {
+        // JRAW's paginators already page backward, starting with the newest page
+        RedditIterable<Thing> pages = paginator.apply(limit);
+        return () -> {
+            Listing<Thing> current = pages.getCurrent();
+            if (current != null && current.getNextName() == null) {
+                return Collections.emptyList();
+            }
+            return pages.next();
+        };
+    }
+}
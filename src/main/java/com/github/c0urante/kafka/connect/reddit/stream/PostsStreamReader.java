@@ -7,15 +7,16 @@
 
 package com.github.c0urante.kafka.connect.reddit.stream;
 
+import com.github.c0urante.kafka.connect.reddit.metrics.StreamMetrics;
 import com.github.c0urante.kafka.connect.reddit.model.PostSourceRecordConverter;
 import net.dean.jraw.models.Submission;
-import net.dean.jraw.pagination.Stream;
 import org.apache.kafka.connect.source.SourceRecord;
 
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class PostsStreamReader extends StreamReader<Submission> {
 
@@ -23,18 +24,27 @@ public class PostsStreamReader extends StreamReader<Submission> {
 
     public PostsStreamReader(
             Map<Map<String, Object>, Map<String, Object>> offsets,
-            Stream<Submission> stream,
+            Function<List<String>, ? extends List<? extends ListingCursor<Submission>>> cursorFactory,
+            FetchEngine fetchEngine,
             Consumer<Throwable> onError,
+            Runnable onRecords,
+            RecordBuffer records,
+            StreamMetrics metrics,
             List<String> subreddits,
-            String topic
+            PostSourceRecordConverter recordConverter
     ) {
-        super(offsets, stream, onError, "posts", subreddits);
-        this.recordConverter = new PostSourceRecordConverter(topic);
+        super(offsets, cursorFactory, fetchEngine, onError, onRecords, records, metrics, "posts", subreddits);
+        this.recordConverter = recordConverter;
     }
 
     @Override
-    protected SourceRecord convertThing(Submission submission) {
-        return recordConverter.convert(submission);
+    protected void prepareThings(List<Submission> submissions) {
+        recordConverter.prepare(submissions);
+    }
+
+    @Override
+    protected SourceRecord convertThing(Submission submission, Map<String, ?> sourceOffset) {
+        return recordConverter.convert(submission, sourceOffset);
     }
 
     @Override
@@ -0,0 +1,182 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Locates values inside UTF-8 encoded JSON without decoding them, so that they can be copied out
+ * byte-for-byte. Every position is the index of the first byte of a value in the array; only as
+ * much of the document is validated as is needed to find the values asked for.
+ */
+final class RawJson {
+
+    private RawJson() {
+    }
+
+    /**
+     * @return the position of the first value in the document
+     */
+    static int root(byte[] json) throws IOException {
+        return skipWhitespace(json, 0);
+    }
+
+    /**
+     * @param object the position of an object
+     * @param name the name of the member to find; must be ASCII and contain no escaped characters
+     * @return the position of the value of the first member of the object with the given name, or
+     * -1 if there is no such member
+     */
+    static int member(byte[] json, int object, String name) throws IOException {
+        expect(json, object, '{');
+        int i = skipWhitespace(json, object + 1);
+        if (at(json, i) == '}') {
+            return -1;
+        }
+        while (true) {
+            expect(json, i, '"');
+            int nameEnd = stringEnd(json, i);
+            boolean matches = nameEquals(json, i + 1, nameEnd - 1, name);
+            i = skipWhitespace(json, nameEnd);
+            expect(json, i, ':');
+            i = skipWhitespace(json, i + 1);
+            if (matches) {
+                return i;
+            }
+            i = skipWhitespace(json, valueEnd(json, i));
+            if (at(json, i) == '}') {
+                return -1;
+            }
+            expect(json, i, ',');
+            i = skipWhitespace(json, i + 1);
+        }
+    }
+
+    /**
+     * @param array the position of an array
+     * @return the positions of the elements of the array, in order
+     */
+    static List<Integer> elements(byte[] json, int array) throws IOException {
+        expect(json, array, '[');
+        List<Integer> result = new ArrayList<>();
+        int i = skipWhitespace(json, array + 1);
+        if (at(json, i) == ']') {
+            return result;
+        }
+        while (true) {
+            result.add(i);
+            i = skipWhitespace(json, valueEnd(json, i));
+            if (at(json, i) == ']') {
+                return result;
+            }
+            expect(json, i, ',');
+            i = skipWhitespace(json, i + 1);
+        }
+    }
+
+    /**
+     * @return whether the value at the given position is an object
+     */
+    static boolean isObject(byte[] json, int value) throws IOException {
+        return at(json, value) == '{';
+    }
+
+    /**
+     * @param value the position of a value
+     * @return the position just past the end of the value
+     */
+    static int valueEnd(byte[] json, int value) throws IOException {
+        byte first = at(json, value);
+        if (first == '"') {
+            return stringEnd(json, value);
+        }
+        if (first != '{' && first != '[') {
+            // A number, boolean or null, which ends at the first structural character after it
+            int i = value;
+            while (i < json.length && !isDelimiter(json[i])) {
+                i++;
+            }
+            return i;
+        }
+        int depth = 0;
+        int i = value;
+        while (true) {
+            byte b = at(json, i);
+            if (b == '"') {
+                i = stringEnd(json, i);
+                continue;
+            }
+            if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+            i++;
+        }
+    }
+
+    private static int stringEnd(byte[] json, int string) throws IOException {
+        int i = string + 1;
+        while (true) {
+            byte b = at(json, i);
+            if (b == '"') {
+                return i + 1;
+            }
+            // Skip whatever is escaped, which may be a quote
+            i += b == '\\' ? 2 : 1;
+        }
+    }
+
+    private static boolean nameEquals(byte[] json, int start, int end, String name) {
+        if (end - start != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (json[start + i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipWhitespace(byte[] json, int position) {
+        int i = position;
+        while (i < json.length && (json[i] == ' ' || json[i] == '\n' || json[i] == '\r' || json[i] == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private static void expect(byte[] json, int position, char expected) throws IOException {
+        if (at(json, position) != expected) {
+            throw new IOException(String.format(
+                    "Expected '%s' at byte %d of JSON but found '%s'",
+                    expected,
+                    position,
+                    (char) json[position]
+            ));
+        }
+    }
+
+    private static byte at(byte[] json, int position) throws IOException {
+        if (position >= json.length) {
+            throw new EOFException("Unexpected end of JSON at byte " + position);
+        }
+        return json[position];
+    }
+}
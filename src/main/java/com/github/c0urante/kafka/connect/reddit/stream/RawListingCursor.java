@@ -0,0 +1,186 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import com.github.c0urante.kafka.connect.reddit.model.RawThing;
+import com.squareup.moshi.JsonReader;
+import net.dean.jraw.RedditClient;
+import net.dean.jraw.http.HttpRequest;
+import okio.Buffer;
+import org.apache.kafka.connect.errors.ConnectException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A cursor over a listing of new posts or comments that keeps the JSON for each item as-is instead
+ * of deserializing it into a JRAW model. The bytes of each item are copied straight out of the
+ * response, and only the handful of fields needed to track the item are decoded.
+ */
+public class RawListingCursor extends ListingCursor<RawThing> {
+
+    private static final JsonReader.Options DATA_FIELDS =
+            JsonReader.Options.of("name", "subreddit", "created_utc", "author_fullname");
+
+    private final RedditClient reddit;
+    private final String path;
+    private final String subreddits;
+
+    /**
+     * @param reddit the client to use for requests
+     * @param path the path of the listing, with a {@code {subreddit}} placeholder, such as
+     *             {@code /r/{subreddit}/new}
+     * @param subreddits the subreddits to read from, as a single multireddit
+     * @param limit the maximum number of items to request per page
+     * @param maxCatchUpPages the maximum number of pages to read when catching up
+     * @param schedule the schedule that determines how often to poll the listing, and how many
+     *                 items to request each time
+     */
+    RawListingCursor(
+            RedditClient reddit,
+            String path,
+            List<String> subreddits,
+            int limit,
+            int maxCatchUpPages,
+            AdaptivePollScheduler.ListingSchedule schedule
+    ) {
+        super(
+                path.replace("{subreddit}", String.join("+", subreddits)),
+                subreddits,
+                limit,
+                maxCatchUpPages,
+                schedule
+        );
+        this.reddit = reddit;
+        this.path = path;
+        this.subreddits = String.join("+", subreddits);
+    }
+
+    @Override
+    protected List<RawThing> fetchPage(int limit) {
+        return fetchPage(limit, null);
+    }
+
+    @Override
+    protected Supplier<List<RawThing>> pages(int limit) {
+        return new Supplier<List<RawThing>>() {
+            private String after = null;
+            private boolean exhausted = false;
+
+            @Override
+            public List<RawThing> get() {
+                if (exhausted) {
+                    return Collections.emptyList();
+                }
+                List<RawThing> result = fetchPage(limit, after);
+                if (result.isEmpty()) {
+                    exhausted = true;
+                } else {
+                    after = result.get(result.size() - 1).getFullName();
+                }
+                return result;
+            }
+        };
+    }
+
+    /**
+     * @param after the full name of the item to fetch the items after (that is, older than), or
+     *              null to fetch the newest items
+     */
+    private List<RawThing> fetchPage(int limit, String after) {
+        Map<String, String> query = new HashMap<>();
+        query.put("limit", Integer.toString(limit));
+        query.put("raw_json", "1");
+        if (after != null) {
+            query.put("after", after);
+        }
+        HttpRequest request = reddit.requestStub()
+                .path(path, subreddits)
+                .query(query)
+                .build();
+        String body = reddit.request(request).getBody();
+        try {
+            return parseListing(body);
+        } catch (IOException e) {
+            throw new ConnectException("Failed to parse listing returned by Reddit", e);
+        }
+    }
+
+    /**
+     * Parse the children of a listing, copying the bytes of each child's {@code data} field
+     * verbatim and decoding only its full name, subreddit, creation time, and author.
+     */
+    static List<RawThing> parseListing(String body) throws IOException {
+        List<RawThing> result = new ArrayList<>();
+        byte[] json = body.getBytes(StandardCharsets.UTF_8);
+        int data = RawJson.member(json, RawJson.root(json), "data");
+        if (data < 0) {
+            return result;
+        }
+        int children = RawJson.member(json, data, "children");
+        if (children < 0) {
+            return result;
+        }
+        for (int child : RawJson.elements(json, children)) {
+            int childData = RawJson.member(json, child, "data");
+            if (childData < 0 || !RawJson.isObject(json, childData)) {
+                continue;
+            }
+            RawThing thing = parseData(json, childData, RawJson.valueEnd(json, childData));
+            if (thing != null) {
+                result.add(thing);
+            }
+        }
+        return result;
+    }
+
+    private static RawThing parseData(byte[] json, int start, int end) throws IOException {
+        String fullName = null;
+        String subreddit = null;
+        Date created = null;
+        String authorFullName = null;
+
+        JsonReader reader = JsonReader.of(new Buffer().write(json, start, end - start));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            int field = reader.selectName(DATA_FIELDS);
+            if (field < 0) {
+                reader.skipName();
+                reader.skipValue();
+                continue;
+            }
+            JsonReader.Token token = reader.peek();
+            if (field == 0 && token == JsonReader.Token.STRING) {
+                fullName = reader.nextString();
+            } else if (field == 1 && token == JsonReader.Token.STRING) {
+                subreddit = reader.nextString();
+            } else if (field == 2 && token == JsonReader.Token.NUMBER) {
+                created = new Date((long) (reader.nextDouble() * 1000));
+            } else if (field == 3 && token == JsonReader.Token.STRING) {
+                authorFullName = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (fullName == null || subreddit == null || created == null) {
+            // Not a post or comment; could be a "more" stub or something else we don't care about
+            return null;
+        }
+        return new RawThing(fullName, subreddit, created, authorFullName, Arrays.copyOfRange(json, start, end));
+    }
+}
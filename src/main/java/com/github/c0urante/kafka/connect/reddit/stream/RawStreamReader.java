@@ -0,0 +1,65 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import com.github.c0urante.kafka.connect.reddit.metrics.StreamMetrics;
+import com.github.c0urante.kafka.connect.reddit.model.RawSourceRecordConverter;
+import com.github.c0urante.kafka.connect.reddit.model.RawThing;
+import org.apache.kafka.connect.source.SourceRecord;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+public class RawStreamReader extends StreamReader<RawThing> {
+
+    private final RawSourceRecordConverter recordConverter;
+
+    public RawStreamReader(
+            Map<Map<String, Object>, Map<String, Object>> offsets,
+            Function<List<String>, ? extends List<? extends ListingCursor<RawThing>>> cursorFactory,
+            FetchEngine fetchEngine,
+            Consumer<Throwable> onError,
+            Runnable onRecords,
+            RecordBuffer records,
+            StreamMetrics metrics,
+            String thingType,
+            List<String> subreddits,
+            RawSourceRecordConverter recordConverter
+    ) {
+        super(offsets, cursorFactory, fetchEngine, onError, onRecords, records, metrics, thingType, subreddits);
+        this.recordConverter = recordConverter;
+    }
+
+    @Override
+    protected void prepareThings(List<RawThing> things) {
+        recordConverter.prepare(things);
+    }
+
+    @Override
+    protected SourceRecord convertThing(RawThing thing, Map<String, ?> sourceOffset) {
+        return recordConverter.convert(thing, sourceOffset);
+    }
+
+    @Override
+    protected String subredditForThing(RawThing thing) {
+        return thing.getSubreddit();
+    }
+
+    @Override
+    protected Map<String, Object> partitionForSubreddit(String subreddit) {
+        return recordConverter.sourcePartition(subreddit);
+    }
+
+    @Override
+    protected Date dateForThing(RawThing thing) {
+        return thing.getCreated();
+    }
+}
@@ -0,0 +1,201 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import org.apache.kafka.connect.data.Field;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.source.SourceRecord;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free buffer of records shared between a stream reader, which adds records to
+ * it, and the task thread, which drains them. The buffer is bounded both by record count and by an
+ * estimate of the heap space taken up by the buffered records; once either bound is reached, the
+ * reader is expected to stop fetching data from Reddit until {@link #hasCapacity()} returns true
+ * again (or, if it has a thread of its own to spare, to block in {@link #awaitCapacity()}).
+ */
+public class RecordBuffer {
+
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final int maxRecords;
+    private final long maxBytes;
+
+    private final Queue<Entry> entries;
+    private final AtomicInteger size;
+    private final AtomicLong bytes;
+
+    private volatile Thread waitingProducer;
+
+    public RecordBuffer(int maxRecords, long maxBytes) {
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+
+        this.entries = new ConcurrentLinkedQueue<>();
+        this.size = new AtomicInteger(0);
+        this.bytes = new AtomicLong(0);
+
+        this.waitingProducer = null;
+    }
+
+    /**
+     * Add a record to the buffer. A record is always accepted, even if it causes the buffer to
+     * exceed its bounds; callers should use {@link #awaitCapacity()} beforehand in order to apply
+     * backpressure.
+     */
+    public void add(SourceRecord record) {
+        long recordBytes = estimateSize(record);
+        entries.add(new Entry(record, recordBytes));
+        bytes.addAndGet(recordBytes);
+        size.incrementAndGet();
+    }
+
+    /**
+     * Block until there is room in the buffer for at least one more record.
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public void awaitCapacity() throws InterruptedException {
+        while (isFull()) {
+            waitingProducer = Thread.currentThread();
+            // Re-check after publishing ourselves as the waiting producer in case the buffer was
+            // drained in between; otherwise, we might miss the wakeup and park for longer than
+            // necessary
+            if (isFull()) {
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+            waitingProducer = null;
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /**
+     * Remove up to {@code maxRecords} records from the buffer.
+     * @return the removed records, in the order they were added; never null
+     */
+    public List<SourceRecord> drain(int maxRecords) {
+        if (size.get() == 0) {
+            return Collections.emptyList();
+        }
+
+        List<SourceRecord> result = new ArrayList<>(Math.min(size.get(), maxRecords));
+        drainTo(result, maxRecords);
+        return result;
+    }
+
+    /**
+     * Remove up to {@code maxRecords} records from the buffer and add them to the given collection.
+     * @return the number of records that were removed
+     */
+    public int drainTo(Collection<? super SourceRecord> records, int maxRecords) {
+        int drained = 0;
+        long drainedBytes = 0;
+        Entry entry;
+        while (drained < maxRecords && (entry = entries.poll()) != null) {
+            records.add(entry.record);
+            drainedBytes += entry.bytes;
+            drained++;
+        }
+
+        if (drained > 0) {
+            bytes.addAndGet(-drainedBytes);
+            size.addAndGet(-drained);
+            Thread producer = waitingProducer;
+            if (producer != null) {
+                LockSupport.unpark(producer);
+            }
+        }
+        return drained;
+    }
+
+    public boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public long bytes() {
+        return bytes.get();
+    }
+
+    /**
+     * @return whether there is room in the buffer for at least one more record
+     */
+    public boolean hasCapacity() {
+        return !isFull();
+    }
+
+    private boolean isFull() {
+        return size.get() >= maxRecords || bytes.get() >= maxBytes;
+    }
+
+    /**
+     * Give a rough estimate of the number of bytes of heap taken up by a record's key and value.
+     * This is intentionally cheap and imprecise; it only needs to be good enough to keep the
+     * buffer from growing without bound when records are large.
+     */
+    static long estimateSize(SourceRecord record) {
+        return estimateSize(record.key()) + estimateSize(record.value());
+    }
+
+    private static long estimateSize(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof String) {
+            return 2L * ((String) value).length();
+        } else if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        } else if (value instanceof Map) {
+            long result = 0;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                result += estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+            }
+            return result;
+        } else if (value instanceof Collection) {
+            long result = 0;
+            for (Object element : (Collection<?>) value) {
+                result += estimateSize(element);
+            }
+            return result;
+        } else if (value instanceof Struct) {
+            Struct struct = (Struct) value;
+            long result = 0;
+            for (Field field : struct.schema().fields()) {
+                result += estimateSize(struct.get(field));
+            }
+            return result;
+        } else {
+            // Numbers, booleans, dates, etc.
+            return 8;
+        }
+    }
+
+    private static class Entry {
+        private final SourceRecord record;
+        private final long bytes;
+
+        public Entry(SourceRecord record, long bytes) {
+            this.record = record;
+            this.bytes = bytes;
+        }
+    }
+}
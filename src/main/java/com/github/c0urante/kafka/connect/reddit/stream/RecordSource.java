@@ -0,0 +1,36 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import org.apache.kafka.connect.source.SourceRecord;
+
+import java.io.Closeable;
+import java.util.List;
+
+/**
+ * Something that reads records in the background for the task to hand to the framework.
+ */
+public interface RecordSource extends Closeable {
+
+    /**
+     * @return whether there are any records ready to be polled
+     */
+    boolean hasRecords();
+
+    /**
+     * Remove up to {@code maxRecords} of the records that are ready to be polled.
+     * @return the records, in the order they were read; never null
+     */
+    List<SourceRecord> pollRecords(int maxRecords);
+
+    /**
+     * Stop reading records.
+     */
+    @Override
+    void close();
+}
@@ -7,23 +7,32 @@
 
 package com.github.c0urante.kafka.connect.reddit.stream;
 
+import com.github.c0urante.kafka.connect.reddit.model.AuthorMetadata;
+import com.github.c0urante.kafka.connect.reddit.model.RawThing;
+import com.github.c0urante.kafka.connect.reddit.model.SubredditMetadata;
 import com.github.c0urante.kafka.connect.reddit.version.Version;
-import net.dean.jraw.ApiException;
 import net.dean.jraw.RedditClient;
-import net.dean.jraw.http.OkHttpNetworkAdapter;
+import net.dean.jraw.http.HttpRequest;
 import net.dean.jraw.http.UserAgent;
 import net.dean.jraw.models.Comment;
 import net.dean.jraw.models.Submission;
 import net.dean.jraw.models.SubredditSort;
-import net.dean.jraw.oauth.Credentials;
-import net.dean.jraw.oauth.OAuthHelper;
-import net.dean.jraw.pagination.Stream;
 import net.dean.jraw.references.SubredditReference;
+import org.apache.kafka.connect.errors.ConnectException;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.UUID;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
-public class Reddit {
+public class Reddit implements Closeable {
 
     private static final UserAgent userAgent = new UserAgent(
             "kafka",
@@ -32,60 +41,324 @@ public class Reddit {
             "C0urante"
     );
 
-    private static final UUID DEVICE_ID = UUID.randomUUID();
+    // Listings that aggregate other subreddits, and so shouldn't be combined with anything else
+    private static final Set<String> AGGREGATE_SUBREDDITS = new HashSet<>(Arrays.asList("all", "popular"));
+
+    /**
+     * The maximum number of items that can be read with a single call to {@link #info(List)}
+     */
+    public static final int MAX_INFO_NAMES = 100;
+
+    /**
+     * The maximum number of comments that can be read with a single call to
+     * {@link #moreChildren(String, List)}
+     */
+    public static final int MAX_MORE_CHILDREN = 100;
+
+    /**
+     * The maximum number of subreddits or users that can be read with a single call to
+     * {@link #subredditMetadata(List)} or {@link #authorMetadata(List)}
+     */
+    public static final int MAX_METADATA_NAMES = 100;
 
     private final int limit;
+    private final int subredditsPerRequest;
+    private final int catchUpMaxPages;
+    private final AdaptivePollScheduler scheduler;
+    private final RedditClientRegistry.Lease lease;
     private final RedditClient reddit;
 
-    public Reddit(String oAuthClientId, int limit, boolean logHttpRequests) {
+    public Reddit(
+            String oAuthClientId,
+            int limit,
+            int subredditsPerRequest,
+            int catchUpMaxPages,
+            AdaptivePollScheduler scheduler,
+            boolean logHttpRequests,
+            String apiUrl
+    ) {
         this.limit = limit;
-        this.reddit = createClient(oAuthClientId, logHttpRequests);
+        this.subredditsPerRequest = subredditsPerRequest;
+        this.catchUpMaxPages = catchUpMaxPages;
+        this.scheduler = scheduler;
+        // The underlying client (and its token, connections, etc.) is shared with every other
+        // instance in the JVM that uses the same settings
+        this.lease = RedditClientRegistry.acquire(oAuthClientId, userAgent, logHttpRequests, apiUrl);
+        this.reddit = lease.client();
+    }
+
+    /**
+     * @return cursors over new comments for the given subreddits; see {@link #chunks(List)}
+     */
+    public List<ListingCursor<Comment>> comments(List<String> subreddits) {
+        List<ListingCursor<Comment>> result = new ArrayList<>();
+        for (List<String> chunk : chunks(subreddits)) {
+            SubredditReference multireddit = subreddits(chunk);
+            result.add(new PaginatorCursor<>(
+                    "comments from r/" + String.join("+", chunk),
+                    chunk,
+                    limit,
+                    catchUpMaxPages,
+                    scheduler.newSchedule(),
+                    pageSize -> multireddit.comments().limit(pageSize).build()
+            ));
+        }
+        return result;
+    }
+
+    /**
+     * @return cursors over new posts for the given subreddits; see {@link #chunks(List)}
+     */
+    public List<ListingCursor<Submission>> posts(List<String> subreddits) {
+        List<ListingCursor<Submission>> result = new ArrayList<>();
+        for (List<String> chunk : chunks(subreddits)) {
+            SubredditReference multireddit = subreddits(chunk);
+            result.add(new PaginatorCursor<>(
+                    "posts from r/" + String.join("+", chunk),
+                    chunk,
+                    limit,
+                    catchUpMaxPages,
+                    scheduler.newSchedule(),
+                    pageSize -> multireddit.posts().limit(pageSize).sorting(SubredditSort.NEW).build()
+            ));
+        }
+        return result;
+    }
+
+    /**
+     * @return cursors over the raw JSON for new comments for the given subreddits; see
+     * {@link #chunks(List)}
+     */
+    public List<ListingCursor<RawThing>> rawComments(List<String> subreddits) {
+        return rawCursors("/r/{subreddit}/comments", subreddits);
     }
 
-    static RedditClient createClient(String oAuthClientId, boolean logHttpRequests) {
-        RedditClient result = OAuthHelper.automatic(
-                new OkHttpNetworkAdapter(userAgent),
-                Credentials.userlessApp(oAuthClientId, DEVICE_ID)
-        );
-        result.setLogHttp(logHttpRequests);
+    /**
+     * @return cursors over the raw JSON for new posts for the given subreddits; see
+     * {@link #chunks(List)}
+     */
+    public List<ListingCursor<RawThing>> rawPosts(List<String> subreddits) {
+        return rawCursors("/r/{subreddit}/new", subreddits);
+    }
+
+    private List<ListingCursor<RawThing>> rawCursors(String path, List<String> subreddits) {
+        List<ListingCursor<RawThing>> result = new ArrayList<>();
+        for (List<String> chunk : chunks(subreddits)) {
+            result.add(new RawListingCursor(reddit, path, chunk, limit, catchUpMaxPages, scheduler.newSchedule()));
+        }
         return result;
     }
 
-    public boolean canAccessSubreddit(String subreddit) {
+    /**
+     * Read posts or comments by their full names, keeping the JSON for each as-is.
+     * @param fullNames the full names of the items, such as {@code t3_abc123}; at most
+     *                  {@link #MAX_INFO_NAMES} at a time
+     * @return the items that still exist, in no particular order; never null
+     */
+    public List<RawThing> info(List<String> fullNames) {
+        if (fullNames.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<String, String> query = new HashMap<>();
+        query.put("id", String.join(",", fullNames));
+        query.put("raw_json", "1");
+        HttpRequest request = reddit.requestStub()
+                .path("/api/info")
+                .query(query)
+                .build();
+        String body = reddit.request(request).getBody();
         try {
-            reddit.subreddit(subreddit).about();
-            return true;
-        } catch (ApiException e) {
-            return false;
+            return RawListingCursor.parseListing(body);
+        } catch (IOException e) {
+            throw new ConnectException("Failed to parse listing returned by Reddit", e);
         }
     }
 
-    public Stream<Comment> comments(List<String> subreddits) {
-        SubredditReference multireddit = subreddits(subreddits);
-        return multireddit != null ?
-                multireddit.comments().limit(limit).build().stream()
-                : null;
+    /**
+     * Read metadata about subreddits.
+     * @param subreddits the names of the subreddits; at most {@link #MAX_METADATA_NAMES} at a time
+     * @return the metadata for the subreddits that exist, keyed by lowercased name; never null
+     */
+    public Map<String, SubredditMetadata> subredditMetadata(List<String> subreddits) {
+        Map<String, String> query = new HashMap<>();
+        query.put("sr_name", String.join(",", subreddits));
+        query.put("raw_json", "1");
+        HttpRequest request = reddit.requestStub()
+                .path("/api/info")
+                .query(query)
+                .build();
+        String body = reddit.request(request).getBody();
+        try {
+            return MetadataParser.parseSubreddits(body);
+        } catch (IOException e) {
+            throw new ConnectException("Failed to parse subreddits returned by Reddit", e);
+        }
     }
 
-    public Stream<Submission> posts(List<String> subreddits) {
-        SubredditReference multireddit = subreddits(subreddits);
-        return multireddit != null ?
-                multireddit.posts().limit(limit).sorting(SubredditSort.NEW).build().stream()
-                : null;
+    /**
+     * Read metadata about the authors of posts and comments.
+     * @param accountFullNames the full names of the authors' accounts, such as {@code t2_abc123};
+     *                         at most {@link #MAX_METADATA_NAMES} at a time
+     * @return the metadata for the accounts that exist, keyed by full name; never null
+     */
+    public Map<String, AuthorMetadata> authorMetadata(List<String> accountFullNames) {
+        HttpRequest request = reddit.requestStub()
+                .path("/api/user_data_by_account_ids")
+                .query(Collections.singletonMap("ids", String.join(",", accountFullNames)))
+                .build();
+        String body = reddit.request(request).getBody();
+        try {
+            return MetadataParser.parseAccounts(body);
+        } catch (IOException e) {
+            throw new ConnectException("Failed to parse users returned by Reddit", e);
+        }
     }
 
-    private SubredditReference subreddits(List<String> subreddits) {
-        switch (subreddits.size()) {
-            case 0:
-                return null;
-            case 1:
-                return reddit.subreddit(subreddits.get(0));
-            case 2:
-                return reddit.subreddits(subreddits.get(0), subreddits.get(1));
-            default: {
-                String[] others = subreddits.subList(2, subreddits.size()).toArray(new String[0]);
-                return reddit.subreddits(subreddits.get(0), subreddits.get(1), others);
+    /**
+     * Read the comments on a post.
+     * @param postFullName the full name of the post, such as {@code t3_abc123}
+     * @param commentFullName the full name of a comment on the post to read the replies to, or
+     *                        null to read the post's top-level comments; the comment itself is
+     *                        included in the result as well
+     * @param limit the maximum number of comments to request; the rest are left as stubs
+     */
+    public CommentTree comments(String postFullName, String commentFullName, int limit) {
+        Map<String, String> query = new HashMap<>();
+        query.put("limit", Integer.toString(limit));
+        query.put("sort", "old");
+        query.put("raw_json", "1");
+        if (commentFullName != null) {
+            query.put("comment", idOf(commentFullName));
+        }
+        HttpRequest request = reddit.requestStub()
+                .path("/comments/{article}", idOf(postFullName))
+                .query(query)
+                .build();
+        String body = reddit.request(request).getBody();
+        try {
+            return CommentTree.parseThread(body);
+        } catch (IOException e) {
+            throw new ConnectException("Failed to parse comments returned by Reddit", e);
+        }
+    }
+
+    /**
+     * Read comments that were left out of a {@link CommentTree} as stubs.
+     * @param postFullName the full name of the post the comments belong to
+     * @param children the IDs of the comments, as given by {@link CommentTree.More#getChildren()};
+     *                 at most {@link #MAX_MORE_CHILDREN} at a time
+     */
+    public CommentTree moreChildren(String postFullName, List<String> children) {
+        Map<String, String> query = new HashMap<>();
+        query.put("api_type", "json");
+        query.put("link_id", postFullName);
+        query.put("children", String.join(",", children));
+        query.put("limit_children", "false");
+        query.put("raw_json", "1");
+        HttpRequest request = reddit.requestStub()
+                .path("/api/morechildren")
+                .query(query)
+                .build();
+        String body = reddit.request(request).getBody();
+        try {
+            return CommentTree.parseMoreChildren(body);
+        } catch (IOException e) {
+            throw new ConnectException("Failed to parse comments returned by Reddit", e);
+        }
+    }
+
+    /**
+     * @return the recent rate of new posts in the given subreddit, in items per second
+     */
+    public double postsPerSecond(String subreddit) {
+        return itemsPerSecond("/r/{subreddit}/new", subreddit);
+    }
+
+    /**
+     * @return the recent rate of new comments in the given subreddit, in items per second
+     */
+    public double commentsPerSecond(String subreddit) {
+        return itemsPerSecond("/r/{subreddit}/comments", subreddit);
+    }
+
+    private double itemsPerSecond(String path, String subreddit) {
+        List<RawThing> page = new RawListingCursor(
+                reddit,
+                path,
+                Collections.singletonList(subreddit),
+                limit,
+                0,
+                scheduler.newSchedule()
+        ).fetchPage(limit);
+        if (page.isEmpty()) {
+            return 0;
+        }
+        long oldest = Long.MAX_VALUE;
+        for (RawThing thing : page) {
+            oldest = Math.min(oldest, thing.getCreated().getTime());
+        }
+        // Measure up to now instead of up to the newest item, so that a subreddit that suddenly
+        // went quiet doesn't look busy
+        double elapsedSeconds = Math.max(1, (System.currentTimeMillis() - oldest) / 1000.0);
+        return page.size() / elapsedSeconds;
+    }
+
+    /**
+     * Split a list of subreddits into the groups that should be read together, each as a single
+     * multireddit with its own cursor. Since every subreddit ends up in exactly one group, the
+     * items read for any given subreddit still come from a single, ordered listing.
+     * <p>
+     * Each group gets a full page of items per request regardless of how many subreddits are in
+     * it, so smaller groups make it less likely that items are missed in busy subreddits, at the
+     * cost of more requests.
+     */
+    List<List<String>> chunks(List<String> subreddits) {
+        List<List<String>> result = new ArrayList<>();
+        List<String> chunk = new ArrayList<>();
+        for (String subreddit : subreddits) {
+            if (isAggregate(subreddit)) {
+                result.add(Collections.singletonList(subreddit));
+                continue;
             }
+            chunk.add(subreddit);
+            if (chunk.size() >= subredditsPerRequest) {
+                result.add(chunk);
+                chunk = new ArrayList<>();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            result.add(chunk);
+        }
+        return result;
+    }
+
+    /**
+     * @return whether the subreddit is a listing that aggregates other subreddits, such as r/all,
+     * rather than a subreddit of its own
+     */
+    public static boolean isAggregate(String subreddit) {
+        return AGGREGATE_SUBREDDITS.contains(subreddit.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Release this instance's reference to the underlying shared client. Cursors created from this
+     * instance should not be used afterward.
+     */
+    @Override
+    public void close() {
+        lease.close();
+    }
+
+    private static String idOf(String fullName) {
+        int separator = fullName.indexOf('_');
+        return separator >= 0 ? fullName.substring(separator + 1) : fullName;
+    }
+
+    private SubredditReference subreddits(List<String> subreddits) {
+        if (subreddits.size() == 1) {
+            return reddit.subreddit(subreddits.get(0));
         }
+        String[] others = subreddits.subList(2, subreddits.size()).toArray(new String[0]);
+        return reddit.subreddits(subreddits.get(0), subreddits.get(1), others);
     }
 }
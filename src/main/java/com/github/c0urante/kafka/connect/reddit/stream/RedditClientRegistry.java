@@ -0,0 +1,284 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import net.dean.jraw.RedditClient;
+import net.dean.jraw.http.OkHttpNetworkAdapter;
+import net.dean.jraw.http.UserAgent;
+import net.dean.jraw.oauth.AuthManager;
+import net.dean.jraw.oauth.Credentials;
+import net.dean.jraw.oauth.OAuthData;
+import net.dean.jraw.oauth.OAuthHelper;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reference-counted Reddit clients shared by every connector and task in the JVM that uses the
+ * same client settings. Sharing a client means sharing its OAuth token and its HTTP connection
+ * pool, so that starting up (or rebalancing) many tasks at once doesn't result in a burst of token
+ * requests and TLS handshakes.
+ */
+class RedditClientRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(RedditClientRegistry.class);
+
+    private static final UUID DEVICE_ID = UUID.randomUUID();
+
+    private static final int MAX_IDLE_CONNECTIONS = 16;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final long TOKEN_CHECK_INTERVAL_SECONDS = 30;
+    // Renew tokens this long before they expire, so that requests never have to do it themselves
+    private static final long TOKEN_RENEWAL_MARGIN_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final Map<Key, Entry> CLIENTS = new HashMap<>();
+
+    /**
+     * Acquire a reference to the shared client for the given settings, creating it if necessary.
+     * The returned lease must be closed when the client is no longer needed.
+     * <p>
+     * Creating a client requires a request for an OAuth token, which is made without holding the
+     * lock on the registry, so that callers that need clients for other settings aren't held up
+     * by it. Callers that need a client for the same settings while it's being created wait for
+     * it to be ready instead of creating another one.
+     * @param apiUrl the URL to send every request to in place of reddit.com; may be null
+     */
+    public static Lease acquire(
+            String oAuthClientId,
+            UserAgent userAgent,
+            boolean logHttpRequests,
+            String apiUrl
+    ) {
+        Key key = new Key(oAuthClientId, logHttpRequests, apiUrl);
+        Entry entry;
+        boolean created;
+        synchronized (CLIENTS) {
+            entry = CLIENTS.get(key);
+            created = entry == null;
+            if (created) {
+                entry = new Entry(key);
+                CLIENTS.put(key, entry);
+            }
+            entry.references++;
+        }
+
+        if (created) {
+            log.debug("Creating new shared Reddit client for OAuth client ID {}", oAuthClientId);
+            try {
+                entry.client.complete(new SharedClient(key, userAgent));
+            } catch (RuntimeException | Error e) {
+                synchronized (CLIENTS) {
+                    // Let the next caller try again instead of handing out the same failure
+                    CLIENTS.remove(key, entry);
+                }
+                entry.client.completeExceptionally(e);
+            }
+        }
+
+        try {
+            entry.client.join();
+        } catch (CompletionException e) {
+            release(entry);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ConnectException("Failed to create Reddit client", cause);
+        }
+        return new Lease(entry);
+    }
+
+    private static void release(Entry entry) {
+        synchronized (CLIENTS) {
+            if (--entry.references > 0) {
+                return;
+            }
+            CLIENTS.remove(entry.key, entry);
+        }
+        SharedClient client = entry.client.getNow(null);
+        if (client != null) {
+            log.debug("Closing shared Reddit client for OAuth client ID {}", entry.key.oAuthClientId);
+            client.close();
+        }
+    }
+
+    /**
+     * A reference to a shared client. Closing it releases the reference; once every reference to
+     * a client has been released, the client's resources are freed.
+     */
+    public static class Lease implements Closeable {
+        private final Entry entry;
+        private boolean closed;
+
+        private Lease(Entry entry) {
+            this.entry = entry;
+            this.closed = false;
+        }
+
+        public RedditClient client() {
+            return entry.client.join().client;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                release(entry);
+            }
+        }
+    }
+
+    private static class Entry {
+        private final Key key;
+        // Completed once the client has been created by whoever asked for it first
+        private final CompletableFuture<SharedClient> client;
+        // Guarded by the lock on CLIENTS
+        private int references;
+
+        public Entry(Key key) {
+            this.key = key;
+            this.client = new CompletableFuture<>();
+            this.references = 0;
+        }
+    }
+
+    private static class SharedClient {
+        private final Key key;
+        private final ConnectionPool connectionPool;
+        private final Dispatcher dispatcher;
+        private final RedditClient client;
+        private final ScheduledExecutorService tokenRenewer;
+
+        public SharedClient(Key key, UserAgent userAgent) {
+            this.key = key;
+
+            // Every client using the same OAuth client ID draws from the same quota, so they all
+            // share a single rate limiter, which learns the quota from the responses to their
+            // requests
+            SharedRateLimiter rateLimiter = SharedRateLimiter.forClient(key.oAuthClientId);
+            this.connectionPool = new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES);
+            this.dispatcher = new Dispatcher();
+            OkHttpClient.Builder httpBuilder = new OkHttpClient.Builder()
+                    .connectionPool(connectionPool)
+                    .dispatcher(dispatcher);
+            if (key.apiUrl != null) {
+                httpBuilder.addInterceptor(redirectTo(HttpUrl.parse(key.apiUrl)));
+            }
+            OkHttpClient http = httpBuilder
+                    .addInterceptor(rateLimiter.interceptor())
+                    .build();
+
+            this.client = OAuthHelper.automatic(
+                    new OkHttpNetworkAdapter(userAgent, http),
+                    Credentials.userlessApp(key.oAuthClientId, DEVICE_ID)
+            );
+            client.setRateLimiter(rateLimiter);
+            client.setLogHttp(key.logHttpRequests);
+
+            this.tokenRenewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread result = new Thread(runnable, "reddit-token-renewer-" + key.oAuthClientId);
+                result.setDaemon(true);
+                return result;
+            });
+            tokenRenewer.scheduleWithFixedDelay(
+                    this::renewTokenIfNecessary,
+                    TOKEN_CHECK_INTERVAL_SECONDS,
+                    TOKEN_CHECK_INTERVAL_SECONDS,
+                    TimeUnit.SECONDS
+            );
+        }
+
+        public void close() {
+            tokenRenewer.shutdownNow();
+            dispatcher.executorService().shutdown();
+            connectionPool.evictAll();
+        }
+
+        /**
+         * JRAW always sends requests to reddit.com (oauth.reddit.com for the API itself, and
+         * www.reddit.com for tokens); rewrite them so that they go to the given URL instead.
+         */
+        private static Interceptor redirectTo(HttpUrl apiUrl) {
+            return chain -> {
+                Request request = chain.request();
+                HttpUrl url = request.url().newBuilder()
+                        .scheme(apiUrl.scheme())
+                        .host(apiUrl.host())
+                        .port(apiUrl.port())
+                        .build();
+                return chain.proceed(request.newBuilder().url(url).build());
+            };
+        }
+
+        private void renewTokenIfNecessary() {
+            try {
+                AuthManager authManager = client.getAuthManager();
+                OAuthData current = authManager.getCurrent();
+                boolean expiringSoon = current == null
+                        || current.getExpiration().getTime() - System.currentTimeMillis() < TOKEN_RENEWAL_MARGIN_MS;
+                if ((expiringSoon || authManager.needsRenewing()) && authManager.canRenew()) {
+                    log.debug("Renewing OAuth token for shared Reddit client {}", key.oAuthClientId);
+                    authManager.renew();
+                }
+            } catch (Throwable t) {
+                // Requests will still renew the token themselves if it expires, so this isn't fatal
+                log.warn("Failed to renew OAuth token for shared Reddit client {}", key.oAuthClientId, t);
+            }
+        }
+    }
+
+    private static class Key {
+        private final String oAuthClientId;
+        private final boolean logHttpRequests;
+        private final String apiUrl;
+
+        public Key(String oAuthClientId, boolean logHttpRequests, String apiUrl) {
+            this.oAuthClientId = oAuthClientId;
+            this.logHttpRequests = logHttpRequests;
+            this.apiUrl = apiUrl;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return logHttpRequests == key.logHttpRequests
+                    && oAuthClientId.equals(key.oAuthClientId)
+                    && Objects.equals(apiUrl, key.apiUrl);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(oAuthClientId, logHttpRequests, apiUrl);
+        }
+    }
+}
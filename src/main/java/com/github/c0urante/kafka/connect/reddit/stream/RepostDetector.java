@@ -0,0 +1,135 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import net.dean.jraw.models.UniquelyIdentifiable;
+import org.apache.kafka.connect.source.SourceRecord;
+
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * Recognizes posts that link to the same URL as a recent post, or that are crossposts of one, so
+ * that they can be tagged or dropped. Recent URLs and posts are remembered in a
+ * {@link RotatingBloomFilter}, so memory use is fixed no matter how many posts are read; the cost
+ * is that, rarely, a post is mistaken for a repost of one that was never read.
+ * <p>
+ * Not thread-safe; meant to be used only while holding a stream reader's lock.
+ */
+public class RepostDetector<Thing extends UniquelyIdentifiable> {
+
+    /**
+     * The header added to the records for reposts, when they're tagged instead of dropped.
+     */
+    public static final String HEADER = "reddit.repost";
+
+    private final Function<Thing, Object[]> fieldReader;
+    private final boolean drop;
+    private final RotatingBloomFilter seen;
+
+    /**
+     * @param fieldReader reads the URL of a post and its crosspost parent (either of which may be
+     *                    null), in that order
+     * @param drop whether reposts should be dropped instead of tagged
+     * @param expectedPosts the number of posts expected to be read per window
+     * @param falsePositiveRate the desired probability of mistaking an original post for a repost
+     * @param windowMs how long URLs and posts are remembered for, at least
+     */
+    public RepostDetector(
+            Function<Thing, Object[]> fieldReader,
+            boolean drop,
+            long expectedPosts,
+            double falsePositiveRate,
+            long windowMs
+    ) {
+        this.fieldReader = fieldReader;
+        this.drop = drop;
+        // Both the URL and the full name of each post are remembered
+        this.seen = new RotatingBloomFilter(2 * expectedPosts, falsePositiveRate, windowMs, System.currentTimeMillis());
+    }
+
+    /**
+     * Check whether a post is a repost, and remember it so that later reposts of it are recognized.
+     * @param nowMs the current time, in milliseconds since the epoch
+     */
+    public boolean isRepost(Thing post, long nowMs) {
+        Object[] fields = fieldReader.apply(post);
+        String url = normalizeUrl(fields[0] != null ? fields[0].toString() : null);
+        String crosspostParent = fields[1] != null ? fields[1].toString() : null;
+
+        boolean result = (url != null && seen.mightContain(url, nowMs))
+                || (crosspostParent != null && seen.mightContain(crosspostParent, nowMs));
+        if (url != null) {
+            seen.put(url, nowMs);
+        }
+        seen.put(post.getUniqueId(), nowMs);
+        return result;
+    }
+
+    /**
+     * @return whether reposts should be dropped; if false, their records should be
+     * {@link #tag(SourceRecord) tagged} instead
+     */
+    public boolean drops() {
+        return drop;
+    }
+
+    public void tag(SourceRecord record) {
+        record.headers().addBoolean(HEADER, true);
+    }
+
+    /**
+     * Reduce a URL to the parts that identify what it links to: the scheme, any leading "www.",
+     * the fragment, UTM tracking parameters and any trailing slash are all removed, the host is
+     * lowercased, and links relative to Reddit (such as those of crossposted self posts) are made
+     * absolute.
+     * @return the normalized URL, or null if the URL is null or empty
+     */
+    static String normalizeUrl(String url) {
+        if (url == null || url.trim().isEmpty()) {
+            return null;
+        }
+        String result = url.trim().replace("&amp;", "&");
+        int fragment = result.indexOf('#');
+        if (fragment >= 0) {
+            result = result.substring(0, fragment);
+        }
+        if (result.startsWith("/")) {
+            result = "reddit.com" + result;
+        } else {
+            int scheme = result.indexOf("://");
+            if (scheme >= 0) {
+                result = result.substring(scheme + 3);
+            }
+        }
+
+        int queryStart = result.indexOf('?');
+        String query = queryStart >= 0 ? result.substring(queryStart + 1) : "";
+        String hostAndPath = queryStart >= 0 ? result.substring(0, queryStart) : result;
+        int pathStart = hostAndPath.indexOf('/');
+        String host = (pathStart >= 0 ? hostAndPath.substring(0, pathStart) : hostAndPath).toLowerCase(Locale.ROOT);
+        String path = pathStart >= 0 ? hostAndPath.substring(pathStart) : "";
+        if (host.startsWith("www.")) {
+            host = host.substring(4);
+        }
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+
+        StringBuilder normalized = new StringBuilder(host).append(path);
+        char separator = '?';
+        for (String parameter : query.split("&")) {
+            if (parameter.isEmpty() || parameter.startsWith("utm_")) {
+                continue;
+            }
+            normalized.append(separator).append(parameter);
+            separator = '&';
+        }
+        return normalized.toString();
+    }
+}
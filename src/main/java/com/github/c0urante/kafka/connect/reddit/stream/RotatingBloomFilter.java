@@ -0,0 +1,119 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import java.util.Arrays;
+
+/**
+ * A Bloom filter that forgets old keys, made up of two generations of fixed size. Keys are added
+ * to the current generation and looked up in both; once the current generation is a window old
+ * (or has had as many keys added to it as it was sized for), it becomes the previous generation
+ * and the old previous generation is cleared to become the new current one. Every key is
+ * therefore remembered for at least one window and at most two, and memory use never changes.
+ * <p>
+ * Not thread-safe.
+ */
+class RotatingBloomFilter {
+
+    private final int numBits;
+    private final int numHashes;
+    private final long expectedKeys;
+    private final long windowMs;
+
+    private long[] current;
+    private long[] previous;
+    private long currentStartMs;
+    private long currentKeys;
+
+    /**
+     * @param expectedKeys the number of keys expected to be added per window
+     * @param falsePositiveRate the desired probability that a key that was never added is
+     *                          reported as present, given that many keys
+     * @param windowMs how long each generation is added to, in milliseconds
+     * @param nowMs the current time, in milliseconds since the epoch
+     */
+    public RotatingBloomFilter(long expectedKeys, double falsePositiveRate, long windowMs, long nowMs) {
+        double bits = -expectedKeys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        this.numBits = (int) Math.max(64, Math.min(bits, Integer.MAX_VALUE - 63));
+        this.numHashes = (int) Math.max(1, Math.round((double) numBits / expectedKeys * Math.log(2)));
+        this.expectedKeys = expectedKeys;
+        this.windowMs = windowMs;
+        this.current = new long[(numBits + 63) / 64];
+        this.previous = new long[current.length];
+        this.currentStartMs = nowMs;
+        this.currentKeys = 0;
+    }
+
+    /**
+     * @return whether the key may have been added within the last one to two windows; false if it
+     * definitely hasn't been
+     */
+    public boolean mightContain(String key, long nowMs) {
+        rotateIfNeeded(nowMs);
+        long hash = hash(key);
+        return contains(current, hash) || contains(previous, hash);
+    }
+
+    public void put(String key, long nowMs) {
+        rotateIfNeeded(nowMs);
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            int bit = index(h1 + i * h2);
+            current[bit >>> 6] |= 1L << bit;
+        }
+        currentKeys++;
+    }
+
+    private void rotateIfNeeded(long nowMs) {
+        long age = nowMs - currentStartMs;
+        if (age < windowMs && currentKeys < expectedKeys) {
+            return;
+        }
+        long[] cleared = previous;
+        Arrays.fill(cleared, 0L);
+        if (age >= 2 * windowMs) {
+            // Nothing in the current generation is recent enough to remember either
+            Arrays.fill(current, 0L);
+        }
+        previous = current;
+        current = cleared;
+        currentStartMs = nowMs;
+        currentKeys = 0;
+    }
+
+    private boolean contains(long[] bits, long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            int bit = index(h1 + i * h2);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int index(int combinedHash) {
+        return (combinedHash & Integer.MAX_VALUE) % numBits;
+    }
+
+    // 64-bit FNV-1a over the characters of the key, followed by the SplitMix64 finalizer to
+    // spread its bits evenly over both halves
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+}
@@ -0,0 +1,261 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import net.dean.jraw.ratelimit.RateLimiter;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * A rate limiter shared by every Reddit client in the JVM that uses the same OAuth client ID, and
+ * which therefore draws from the same quota.
+ * <p>
+ * The quota is learned from the {@code X-Ratelimit-Remaining} and {@code X-Ratelimit-Reset}
+ * headers on Reddit's responses (see {@link #interceptor()}), and permits are handed out evenly
+ * over the remaining time in the current window instead of being used up in bursts. When several
+ * threads are waiting for a permit, the one making the most urgent request (see
+ * {@link #withUrgency(double, Supplier)}) goes first.
+ */
+public class SharedRateLimiter implements RateLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(SharedRateLimiter.class);
+
+    private static final ConcurrentMap<String, SharedRateLimiter> LIMITERS = new ConcurrentHashMap<>();
+    // Requests that don't read a listing (backfills, updates and comment trees) are never behind,
+    // so they wait for any listing that is
+    static final double BACKGROUND_URGENCY = 0.0;
+
+    private static final ThreadLocal<Double> URGENCY = ThreadLocal.withInitial(() -> BACKGROUND_URGENCY);
+
+    private static final String REMAINING_HEADER = "X-Ratelimit-Remaining";
+    private static final String RESET_HEADER = "X-Ratelimit-Reset";
+    // Upper bound on how long a waiter that isn't at the head of the queue sleeps before
+    // re-checking, in case a wakeup is missed
+    private static final long MAX_WAIT_MS = 1000;
+
+    private final String clientId;
+    private final ReentrantLock lock;
+    private final Condition changed;
+    private final PriorityQueue<Waiter> waiters;
+
+    // Negative until the quota has been learned from a response
+    private double remaining;
+    private long resetAtMs;
+    private long nextPermitAtMs;
+    private long nextWaiterSeq;
+
+    private SharedRateLimiter(String clientId) {
+        this.clientId = clientId;
+        this.lock = new ReentrantLock();
+        this.changed = lock.newCondition();
+        this.waiters = new PriorityQueue<>(
+                Comparator.comparingDouble((Waiter waiter) -> -waiter.urgency)
+                        .thenComparingLong(waiter -> waiter.seq)
+        );
+
+        this.remaining = -1;
+        this.resetAtMs = 0;
+        this.nextPermitAtMs = 0;
+        this.nextWaiterSeq = 0;
+    }
+
+    /**
+     * @return the limiter for the given OAuth client ID, creating it if necessary
+     */
+    public static SharedRateLimiter forClient(String clientId) {
+        return LIMITERS.computeIfAbsent(clientId, SharedRateLimiter::new);
+    }
+
+    /**
+     * Make requests on the current thread with the given urgency, from 0 (not behind at all) to 1
+     * (likely missing data), for as long as the given action runs. Requests with a higher urgency
+     * are given permits first. Threads are shared by many listings, so the urgency is reset once
+     * the action completes instead of carrying over to whatever the thread does next.
+     * @return the result of the action
+     */
+    public static <T> T withUrgency(double urgency, Supplier<T> action) {
+        Double previous = URGENCY.get();
+        URGENCY.set(urgency);
+        try {
+            return action.get();
+        } finally {
+            URGENCY.set(previous);
+        }
+    }
+
+    /**
+     * @return an OkHttp interceptor that updates this limiter with the quota information in every
+     * response from Reddit
+     */
+    public Interceptor interceptor() {
+        return chain -> {
+            Response response = chain.proceed(chain.request());
+            update(response.header(REMAINING_HEADER), response.header(RESET_HEADER));
+            return response;
+        };
+    }
+
+    @Override
+    public void acquire() {
+        try {
+            acquire(URGENCY.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectException("Interrupted while waiting to make a request to Reddit", e);
+        }
+    }
+
+    @Override
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            if (!waiters.isEmpty() || now < nextPermitAtMs) {
+                return false;
+            }
+            takePermit(now);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Block until a request may be made.
+     * @param urgency the urgency of the request; see {@link #withUrgency(double, Supplier)}
+     */
+    public void acquire(double urgency) throws InterruptedException {
+        lock.lock();
+        Waiter waiter = new Waiter(urgency, nextWaiterSeq++);
+        waiters.add(waiter);
+        try {
+            while (true) {
+                long now = System.currentTimeMillis();
+                if (waiters.peek() == waiter) {
+                    long waitMs = nextPermitAtMs - now;
+                    if (waitMs <= 0) {
+                        waiters.poll();
+                        takePermit(now);
+                        changed.signalAll();
+                        return;
+                    }
+                    changed.await(waitMs, TimeUnit.MILLISECONDS);
+                } else {
+                    changed.await(MAX_WAIT_MS, TimeUnit.MILLISECONDS);
+                }
+            }
+        } catch (InterruptedException e) {
+            waiters.remove(waiter);
+            changed.signalAll();
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of requests remaining in the current window, or -1 if not yet known
+     */
+    public double remaining() {
+        lock.lock();
+        try {
+            return remaining;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of seconds until the current window resets, or 0 if not yet known
+     */
+    public double secondsUntilReset() {
+        lock.lock();
+        try {
+            return Math.max(0, resetAtMs - System.currentTimeMillis()) / 1000.0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Update the known quota.
+     * @param remainingHeader the value of the {@code X-Ratelimit-Remaining} header; may be null
+     * @param resetHeader the value of the {@code X-Ratelimit-Reset} header; may be null
+     */
+    void update(String remainingHeader, String resetHeader) {
+        if (remainingHeader == null || resetHeader == null) {
+            return;
+        }
+
+        double remaining;
+        double resetSeconds;
+        try {
+            remaining = Double.parseDouble(remainingHeader.trim());
+            resetSeconds = Double.parseDouble(resetHeader.trim());
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring malformed rate limit headers for client {}: remaining={}, reset={}",
+                    clientId, remainingHeader, resetHeader);
+            return;
+        }
+
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            this.remaining = remaining;
+            this.resetAtMs = now + (long) (resetSeconds * 1000);
+            // Re-space the next permit according to the new information; this may move it either
+            // earlier or later than before
+            this.nextPermitAtMs = Math.min(nextPermitAtMs, now) + spacingMs(now);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void takePermit(long now) {
+        if (remaining > 0) {
+            // Optimistically account for this request until the response tells us the real number
+            remaining--;
+        }
+        nextPermitAtMs = now + spacingMs(now);
+    }
+
+    private long spacingMs(long now) {
+        if (remaining < 0 || now >= resetAtMs) {
+            // Either we don't know the quota yet, or the window has already reset
+            return 0;
+        }
+        long untilResetMs = resetAtMs - now;
+        if (remaining < 1) {
+            return untilResetMs;
+        }
+        return (long) (untilResetMs / remaining);
+    }
+
+    private static class Waiter {
+        private final double urgency;
+        private final long seq;
+
+        public Waiter(double urgency, long seq) {
+            this.urgency = urgency;
+            this.seq = seq;
+        }
+    }
+}
@@ -7,61 +7,96 @@
 
 package com.github.c0urante.kafka.connect.reddit.stream;
 
-import net.dean.jraw.ApiException;
+import com.github.c0urante.kafka.connect.reddit.metrics.ListingMetrics;
+import com.github.c0urante.kafka.connect.reddit.metrics.StreamMetrics;
+import com.github.c0urante.kafka.connect.reddit.model.ThingFilter;
 import net.dean.jraw.models.UniquelyIdentifiable;
-import net.dean.jraw.pagination.Stream;
 import org.apache.kafka.connect.source.SourceRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.Closeable;
-import java.io.InterruptedIOException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
-public abstract class StreamReader<Thing extends UniquelyIdentifiable> implements Runnable, Closeable {
+public abstract class StreamReader<Thing extends UniquelyIdentifiable> implements RecordSource {
     private static final Logger log = LoggerFactory.getLogger(StreamReader.class);
 
-    private final Map<Map<String, Object>, Map<String, Object>> offsets;
-    private final Stream<Thing> stream;
+    private final DedupIndex dedupIndex;
+    private final Function<List<String>, ? extends List<? extends ListingCursor<Thing>>> cursorFactory;
+    private final FetchEngine fetchEngine;
     private final Consumer<Throwable> onError;
-    private final String asString;
+    private final Runnable onRecords;
+    private final String thingType;
 
     private final AtomicBoolean running;
-    private final List<SourceRecord> records;
+    private final RecordBuffer records;
+    private final StreamMetrics metrics;
+    // Guarded by this reader; the registrations and metrics of the cursors are only present while
+    // the reader is running
+    private final List<ListingCursor<Thing>> cursors;
+    private final Set<String> subreddits;
+    private final Map<ListingCursor<Thing>, FetchEngine.Registration> registrations;
+    private final Map<ListingCursor<Thing>, ListingMetrics> listingMetrics;
+    private final List<Listener> listeners;
 
-    private Thread readerThread;
+    private volatile ThingFilter<Thing> filter;
+    // Guarded by the dedup index, like everything else that depends on the order items are read in
+    private RepostDetector<Thing> repostDetector;
+    private volatile String asString;
 
-    protected abstract SourceRecord convertThing(Thing thing);
+    protected abstract void prepareThings(List<Thing> things);
+    protected abstract SourceRecord convertThing(Thing thing, Map<String, ?> sourceOffset);
     protected abstract String subredditForThing(Thing thing);
     protected abstract Map<String, Object> partitionForSubreddit(String subreddit);
     protected abstract Date dateForThing(Thing thing);
 
+    /**
+     * @param cursorFactory creates the cursors to read the given subreddits with; invoked once for
+     *                      the reader's initial subreddits, and again whenever its subreddits are
+     *                      {@link #updateSubreddits(Collection, Collection, Map) updated}
+     */
     public StreamReader(
             Map<Map<String, Object>, Map<String, Object>> offsets,
-            Stream<Thing> stream,
+            Function<List<String>, ? extends List<? extends ListingCursor<Thing>>> cursorFactory,
+            FetchEngine fetchEngine,
             Consumer<Throwable> onError,
+            Runnable onRecords,
+            RecordBuffer records,
+            StreamMetrics metrics,
             String thingType,
             List<String> subreddits
     ) {
-        this.offsets = offsets;
-        this.stream = stream;
+        this.dedupIndex = new DedupIndex(offsets, this::partitionForSubreddit);
+        this.cursorFactory = cursorFactory;
+        this.fetchEngine = fetchEngine;
         this.onError = onError;
-        this.asString = String.format(
-                "%s stream reader (subreddits: %s)",
-                thingType,
-                String.join(",", subreddits)
-        );
+        this.onRecords = onRecords;
+        this.records = records;
+        this.metrics = metrics;
+        this.thingType = thingType;
 
-        this.running = new AtomicBoolean(true);
-        this.records = new ArrayList<>();
+        this.running = new AtomicBoolean(false);
+        this.cursors = new ArrayList<>(cursorFactory.apply(subreddits));
+        this.subreddits = new LinkedHashSet<>(subreddits);
+        this.registrations = new HashMap<>();
+        this.listingMetrics = new HashMap<>();
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.asString = describe();
 
-        this.readerThread = null;
+        metrics.registerBuffer(records::size, records::bytes);
     }
 
     @Override
@@ -69,108 +104,302 @@ public abstract class StreamReader<Thing extends UniquelyIdentifiable> implement
         return asString;
     }
 
-    @Override
-    public void run() {
-        log.info("Started thread for {}", this);
-        while (running.get()) {
-            try {
-                Thing nextThing = retrieveNextThing();
-                if (isOriginalThing(nextThing)) {
-                    SourceRecord record = convertThing(nextThing);
-                    synchronized (records) {
-                        records.add(record);
-                    }
-                }
-            } catch (Throwable t) {
-                // The Reddit client library used here is written in Kotlin, which doesn't have
-                // checked exceptions. So even though the call to stream::next in retrieveNextThing
-                // may throw an InterruptedException or an InterruptedIOException, the Java compiler
-                // won't let us try to catch that exception type. As a result, we settle for this
-                // instanceof hack.
-                if (!running.get() &&
-                    (t instanceof InterruptedException || t instanceof InterruptedIOException)
-                ) {
-                    log.debug(
-                        "Interrupted while reading from {}. "
-                            + "This is expected as the reader is in the process of closing.",
-                        this,
-                        t
-                    );
-                } else {
-                    log.error("Error while reading from {}", this, t);
-                    onError.accept(t);
+    /**
+     * Read subreddits that have never been read before starting from the given time, instead of
+     * from their newest items; anything created before then is skipped. Must be invoked before
+     * {@link #start()}.
+     * @param sinceMs the time, in milliseconds since the epoch
+     */
+    public void startFrom(long sinceMs) {
+        dedupIndex.setDefaultWatermark(sinceMs);
+    }
+
+    /**
+     * Drop items that the given filter doesn't accept instead of converting them into records.
+     * Dropped items still count as read, so they aren't filtered again. Must be invoked before
+     * {@link #start()}.
+     * @param filter the filter, or null if every item should be converted
+     */
+    public void setFilter(ThingFilter<Thing> filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Tag or drop items that the given detector recognizes as reposts. Only items that make it
+     * through the {@link #setFilter(ThingFilter) filter} are checked, and remembered for later
+     * checks. Must be invoked before {@link #start()}.
+     * @param repostDetector the detector, or null if reposts shouldn't be looked for
+     */
+    public void setRepostDetector(RepostDetector<Thing> repostDetector) {
+        synchronized (dedupIndex) {
+            this.repostDetector = repostDetector;
+        }
+    }
+
+    /**
+     * Be notified of every item read by this reader that hadn't been read before, right after its
+     * record is buffered. Listeners are invoked from the threads that read from Reddit, and so
+     * should return quickly.
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Begin reading from each of this reader's cursors.
+     */
+    public synchronized void start() {
+        if (!running.compareAndSet(false, true)) {
+            log.warn("start() invoked but {} is already running; ignoring", this);
+            return;
+        }
+        log.info("Starting {} with {} cursor(s)", this, cursors.size());
+        cursors.forEach(this::activate);
+    }
+
+    /**
+     * Start or stop reading some subreddits, without interrupting the rest. Only the cursors that
+     * read removed subreddits are replaced (by ones that read the rest of their subreddits), and
+     * added subreddits get cursors of their own; every other cursor keeps reading undisturbed, and
+     * what has already been read from each subreddit is remembered, so nothing is read twice. May
+     * be invoked whether or not the reader is running.
+     * @param added the subreddits to start reading; ones that are already being read are ignored
+     * @param removed the subreddits to stop reading; ones that aren't being read are ignored
+     * @param addedOffsets the offsets stored for the added subreddits' partitions, so that
+     *                     anything published since they were last read can be caught up on
+     */
+    public synchronized void updateSubreddits(
+            Collection<String> added,
+            Collection<String> removed,
+            Map<Map<String, Object>, Map<String, Object>> addedOffsets
+    ) {
+        Set<String> removedKeys = new HashSet<>();
+        for (String subreddit : removed) {
+            removedKeys.add(subreddit.toLowerCase(Locale.ROOT));
+        }
+        Set<String> currentKeys = new HashSet<>();
+        for (String subreddit : subreddits) {
+            currentKeys.add(subreddit.toLowerCase(Locale.ROOT));
+        }
+
+        // Subreddits that shared a cursor with a removed one have to be regrouped
+        List<String> regrouped = new ArrayList<>();
+        int replaced = 0;
+        for (Iterator<ListingCursor<Thing>> iterator = cursors.iterator(); iterator.hasNext(); ) {
+            ListingCursor<Thing> cursor = iterator.next();
+            if (!containsAny(removedKeys, cursor.subreddits())) {
+                continue;
+            }
+            deactivate(cursor);
+            iterator.remove();
+            replaced++;
+            for (String subreddit : cursor.subreddits()) {
+                if (!removedKeys.contains(subreddit.toLowerCase(Locale.ROOT))) {
+                    regrouped.add(subreddit);
                 }
-                break;
             }
         }
+        subreddits.removeIf(subreddit -> removedKeys.contains(subreddit.toLowerCase(Locale.ROOT)));
+        for (String subreddit : removed) {
+            if (currentKeys.contains(subreddit.toLowerCase(Locale.ROOT))) {
+                metrics.removeSubreddit(subreddit);
+            }
+        }
+        for (String subreddit : added) {
+            String key = subreddit.toLowerCase(Locale.ROOT);
+            if (!removedKeys.contains(key) && currentKeys.add(key)) {
+                regrouped.add(subreddit);
+                subreddits.add(subreddit);
+            }
+        }
+
+        synchronized (dedupIndex) {
+            dedupIndex.addStoredOffsets(addedOffsets);
+        }
+        List<? extends ListingCursor<Thing>> created = regrouped.isEmpty()
+                ? new ArrayList<>()
+                : cursorFactory.apply(regrouped);
+        for (ListingCursor<Thing> cursor : created) {
+            cursors.add(cursor);
+            if (running.get()) {
+                activate(cursor);
+            }
+        }
+        asString = describe();
+        log.info(
+                "Updated subreddits for {}: replaced {} cursor(s) with {}, leaving {} untouched",
+                this,
+                replaced,
+                created.size(),
+                cursors.size() - created.size()
+        );
     }
 
     @Override
-    public void close() {
-        this.running.set(false);
-
-        if (readerThread == null) {
-            log.warn("close() invoked but reader thread already halted; ignoring");
+    public synchronized void close() {
+        if (!running.compareAndSet(true, false)) {
+            log.warn("close() invoked but {} is not running; ignoring", this);
             return;
         }
+        log.debug("Stopping {}", this);
+        registrations.values().forEach(FetchEngine.Registration::cancel);
+        registrations.clear();
+        listingMetrics.clear();
+    }
 
-        log.debug("Interrupting thread {}", readerThread);
-        readerThread.interrupt();
+    private void activate(ListingCursor<Thing> cursor) {
+        ListingMetrics cursorMetrics = metrics.listing(cursor.toString());
+        cursor.setMetrics(cursorMetrics);
+        listingMetrics.put(cursor, cursorMetrics);
+        // Catch up on anything published since the last time any of the cursor's subreddits were
+        // read; subreddits that have never been read before start from the newest items, unless
+        // told otherwise. Listings like r/all have no watermark of their own (what's read from
+        // them is tracked per subreddit), and the oldest watermark of every subreddit they've
+        // turned up would send them paging back through their entire history, so they never
+        // catch up
+        Long since = null;
+        synchronized (dedupIndex) {
+            for (String subreddit : cursor.subreddits()) {
+                if (Reddit.isAggregate(subreddit)) {
+                    continue;
+                }
+                Long watermark = dedupIndex.watermark(subreddit);
+                if (watermark != null) {
+                    since = since != null ? Math.min(since, watermark) : watermark;
+                }
+            }
+        }
+        if (since != null) {
+            cursor.catchUpSince(since, this::dateForThing);
+        }
+        registrations.put(cursor, fetchEngine.register(cursor, this::accept, records::hasCapacity, this::fail));
+    }
 
-        log.debug("Attempting to join thread {}", readerThread);
-        try {
-            readerThread.join();
-        } catch (InterruptedException e) {
-            log.warn("Interrupted while attempting to join thread {}", readerThread);
+    private void deactivate(ListingCursor<Thing> cursor) {
+        FetchEngine.Registration registration = registrations.remove(cursor);
+        if (registration != null) {
+            registration.cancel();
+        }
+        ListingMetrics cursorMetrics = listingMetrics.remove(cursor);
+        if (cursorMetrics != null) {
+            cursorMetrics.close();
         }
+    }
 
-        readerThread = null;
+    private String describe() {
+        return String.format("%s stream reader (subreddits: %s)", thingType, String.join(",", subreddits));
     }
 
-    public void startReaderThread() {
-        readerThread = new Thread(this);
-        readerThread.setDaemon(true);
-        readerThread.setName(toString());
-        readerThread.start();
+    private static boolean containsAny(Set<String> keys, Collection<String> subreddits) {
+        for (String subreddit : subreddits) {
+            if (keys.contains(subreddit.toLowerCase(Locale.ROOT))) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    private Thing retrieveNextThing() {
-        try {
-            return stream.next();
-        } catch (ApiException e) {
-            if ("401".equals(e.getCode())) {
-                log.debug(
-                        "Encountered 401 response while reading from {}. " +
-                                "This is likely due to a token refresh issue in the underlying Reddit client " +
-                                "library; retrying now as the token should be refreshed correctly this time.",
-                        this,
-                        e
-                );
-                return stream.next();
-            } else {
-                throw e;
+    /**
+     * Convert and buffer any items from a page of a listing that haven't already been read.
+     * Invoked by the fetch engine, potentially from several threads at once (one per cursor).
+     */
+    private void accept(List<Thing> things) {
+        // Like preparation, filtering is done before taking the lock; only what's kept is prepared
+        ThingFilter<Thing> filter = this.filter;
+        boolean[] kept = null;
+        List<Thing> toPrepare = things;
+        if (filter != null) {
+            kept = new boolean[things.size()];
+            toPrepare = new ArrayList<>(things.size());
+            for (int i = 0; i < kept.length; i++) {
+                kept[i] = filter.accepts(things.get(i));
+                if (kept[i]) {
+                    toPrepare.add(things.get(i));
+                }
             }
         }
+        // Done before taking the lock, since it may have to wait on Reddit
+        prepareThings(toPrepare);
+        boolean added = false;
+        // The dedup index isn't thread-safe, and only one page should be added to the buffer at a
+        // time so that records for the same partition stay in order
+        synchronized (dedupIndex) {
+            for (int i = 0; i < things.size(); i++) {
+                Thing thing = things.get(i);
+                String subreddit = subredditForThing(thing);
+                String id = thing.getUniqueId();
+                long createdMs = dateForThing(thing).getTime();
+                // Filtered items still go through the dedup index, so that offsets move past them
+                Map<String, Object> sourceOffset = dedupIndex.offsetIfOriginal(subreddit, id, createdMs);
+                if (sourceOffset == null) {
+                    metrics.recordDuplicate(subreddit);
+                    continue;
+                }
+                if (kept != null && !kept[i]) {
+                    metrics.recordFiltered(subreddit);
+                    continue;
+                }
+                boolean repost = repostDetector != null && repostDetector.isRepost(thing, System.currentTimeMillis());
+                if (repost) {
+                    metrics.recordRepost(subreddit);
+                    if (repostDetector.drops()) {
+                        continue;
+                    }
+                }
+                long start = System.nanoTime();
+                SourceRecord record = convertThing(thing, sourceOffset);
+                metrics.recordConverted(subreddit, System.nanoTime() - start);
+                if (repost) {
+                    repostDetector.tag(record);
+                }
+                records.add(record);
+                added = true;
+                for (Listener listener : listeners) {
+                    listener.onItem(subreddit, id, createdMs, record);
+                }
+            }
+        }
+        if (added) {
+            onRecords.run();
+        }
+    }
+
+    private void fail(Throwable t) {
+        if (!running.get()) {
+            log.debug(
+                    "Error while reading from {}. "
+                            + "This is expected as the reader is in the process of closing.",
+                    this,
+                    t
+            );
+            return;
+        }
+        log.error("Error while reading from {}", this, t);
+        onError.accept(t);
     }
 
-    private boolean isOriginalThing(Thing thing) {
-        String subreddit = subredditForThing(thing);
-        Map<String, Object> partition = partitionForSubreddit(subreddit);
-        Map<String, Object> offset = offsets.get(partition);
-        Long mostRecentThingTimestamp = offset != null ? (Long) offset.get("created") : null;
-        return mostRecentThingTimestamp == null || mostRecentThingTimestamp < dateForThing(thing).getTime();
+    @Override
+    public boolean hasRecords() {
+        return !records.isEmpty();
     }
 
     public List<SourceRecord> pollRecords() {
-        List<SourceRecord> result;
-        synchronized (records) {
-            if (records.isEmpty()) {
-                result = Collections.emptyList();
-            } else {
-                result = new ArrayList<>(records);
-                records.clear();
-            }
-        }
-        return result;
+        return pollRecords(Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<SourceRecord> pollRecords(int maxRecords) {
+        return records.drain(maxRecords);
+    }
+
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * @param subreddit the subreddit the item belongs to
+         * @param fullName the full name of the item, such as {@code t3_abc123}
+         * @param createdMs the creation time of the item, in milliseconds since the epoch
+         * @param record the record the item was converted into
+         */
+        void onItem(String subreddit, String fullName, long createdMs, SourceRecord record);
     }
 }
@@ -0,0 +1,408 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import com.github.c0urante.kafka.connect.reddit.metrics.StreamMetrics;
+import com.github.c0urante.kafka.connect.reddit.model.RawThing;
+import com.github.c0urante.kafka.connect.reddit.model.SourceRecordConverter;
+import com.squareup.moshi.JsonReader;
+import okio.Buffer;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.source.SourceRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Re-reads posts or comments at fixed intervals after they were first read, and produces a record
+ * for each one whose score, comment count, text, or moderation status has changed since it was
+ * last read.
+ * <p>
+ * Tracked items wait in one queue per interval. Since every item enters each queue in the order it
+ * was first read, each queue stays sorted by when its items are due, and only the heads of the
+ * queues ever need to be looked at. Due items are re-read in batches of up to
+ * {@value Reddit#MAX_INFO_NAMES} through {@code /api/info}; a batch is held back for up to
+ * {@value #LINGER_MS} ms while it fills up, so that a steady trickle of items costs about one
+ * request per {@value Reddit#MAX_INFO_NAMES} items per interval.
+ * <p>
+ * Tracking isn't persisted; items read before a task was restarted are no longer tracked after.
+ */
+public class UpdateTracker<Thing> implements RecordSource {
+    private static final Logger log = LoggerFactory.getLogger(UpdateTracker.class);
+
+    static final String REFRESHED_FIELD = "refreshed";
+
+    // The fields that make up an item's fingerprint; a change to any other field isn't reported
+    static final List<String> TRACKED_FIELDS = Collections.unmodifiableList(Arrays.asList(
+            "score", "num_comments", "gilded", "edited", "title", "selftext", "body", "author",
+            "link_flair_text", "over_18", "spoiler", "locked", "stickied", "archived", "removed",
+            "spam", "removed_by_category", "distinguished"
+    ));
+    private static final JsonReader.Options TRACKED_FIELD_OPTIONS =
+            JsonReader.Options.of(TRACKED_FIELDS.toArray(new String[0]));
+
+    private static final long TICK_MS = 1000;
+    private static final long LINGER_MS = 30_000;
+    private static final long SHUTDOWN_TIMEOUT_MS = 30_000;
+
+    private final String thingType;
+    private final long[] scheduleMs;
+    private final int maxTracked;
+    private final String topic;
+    private final Reddit reddit;
+    private final Function<RawThing, Thing> decode;
+    private final SourceRecordConverter<Thing> recordConverter;
+    private final RecordBuffer records;
+    private final StreamMetrics metrics;
+    private final Consumer<Throwable> onError;
+    private final Runnable onRecords;
+
+    // One queue per interval, each ordered by when its items are due; guarded by itself
+    private final List<Deque<Tracked>> stages;
+    private final AtomicBoolean running;
+    private int tracked;
+    private boolean overflowing;
+    private ScheduledThreadPoolExecutor executor;
+
+    /**
+     * @param thingType the type of Thing tracked; either "posts" or "comments"
+     * @param scheduleMs how long after each item was first read to re-read it, in milliseconds,
+     *                   in ascending order
+     * @param maxTracked the maximum number of items to track at once; any more are ignored
+     * @param topic the topic to write records for changed items to
+     * @param reddit the client to re-read items with
+     * @param decode converts the JSON for an item into the model expected by the record converter
+     * @param recordConverter converts items into records, in the same way as when they were first
+     *                        read
+     * @param records the buffer to add records to
+     * @param metrics the metrics to record changed items with
+     * @param onError invoked if reading fails, after which reading stops
+     * @param onRecords invoked whenever records are added to the buffer
+     */
+    public UpdateTracker(
+            String thingType,
+            List<Long> scheduleMs,
+            int maxTracked,
+            String topic,
+            Reddit reddit,
+            Function<RawThing, Thing> decode,
+            SourceRecordConverter<Thing> recordConverter,
+            RecordBuffer records,
+            StreamMetrics metrics,
+            Consumer<Throwable> onError,
+            Runnable onRecords
+    ) {
+        this.thingType = thingType;
+        this.scheduleMs = scheduleMs.stream().mapToLong(Long::longValue).toArray();
+        this.maxTracked = maxTracked;
+        this.topic = topic;
+        this.reddit = reddit;
+        this.decode = decode;
+        this.recordConverter = recordConverter;
+        this.records = records;
+        this.metrics = metrics;
+        this.onError = onError;
+        this.onRecords = onRecords;
+
+        this.stages = new ArrayList<>();
+        for (int i = 0; i < this.scheduleMs.length; i++) {
+            stages.add(new ArrayDeque<>());
+        }
+        this.running = new AtomicBoolean(false);
+        this.tracked = 0;
+        this.overflowing = false;
+
+        metrics.registerBuffer(records::size, records::bytes);
+    }
+
+    @Override
+    public String toString() {
+        return thingType + " update tracker";
+    }
+
+    public synchronized void start() {
+        if (!running.compareAndSet(false, true)) {
+            log.warn("start() invoked but {} is already running; ignoring", this);
+            return;
+        }
+        log.info("Starting {} with schedule {} ms", this, Arrays.toString(scheduleMs));
+        executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread result = new Thread(runnable, "reddit-" + thingType + "-updates");
+            result.setDaemon(true);
+            return result;
+        });
+        executor.scheduleWithFixedDelay(this::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Start tracking an item. Meant to be used as a {@link StreamReader.Listener}.
+     * @param subreddit the subreddit the item belongs to
+     * @param fullName the full name of the item
+     * @param record the record the item was first converted into
+     */
+    public void track(String subreddit, String fullName, SourceRecord record) {
+        if (!running.get() || scheduleMs.length == 0) {
+            return;
+        }
+        Tracked item = new Tracked(subreddit, fullName, System.currentTimeMillis(), fingerprint(record.value()));
+        synchronized (stages) {
+            if (tracked >= maxTracked) {
+                if (!overflowing) {
+                    overflowing = true;
+                    log.warn("{} is already tracking {} items; ignoring new items until some of them are done", this, tracked);
+                }
+                return;
+            }
+            overflowing = false;
+            tracked++;
+            stages.get(0).add(item);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!running.compareAndSet(true, false)) {
+            log.warn("close() invoked but {} is not running; ignoring", this);
+            return;
+        }
+        log.debug("Stopping {}", this);
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                log.warn("Timed out waiting for {} thread to exit", this);
+            }
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for {} thread to exit", this);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean hasRecords() {
+        return !records.isEmpty();
+    }
+
+    @Override
+    public List<SourceRecord> pollRecords(int maxRecords) {
+        return records.drain(maxRecords);
+    }
+
+    private void tick() {
+        try {
+            List<Tracked> batch;
+            while (running.get() && !(batch = takeDue(System.currentTimeMillis())).isEmpty()) {
+                refresh(batch);
+            }
+        } catch (InterruptedException e) {
+            log.debug("Interrupted while refreshing {}; stopping", this);
+        } catch (Throwable t) {
+            if (!running.get()) {
+                log.debug(
+                        "Error while refreshing {}. This is expected as the tracker is in the process of closing.",
+                        this,
+                        t
+                );
+                return;
+            }
+            log.error("Error while refreshing {}", this, t);
+            onError.accept(t);
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @return the next batch of items that are due to be re-read, or an empty list if there are
+     * too few of them to be worth a request yet
+     */
+    private List<Tracked> takeDue(long now) {
+        synchronized (stages) {
+            int due = 0;
+            long oldestDue = Long.MAX_VALUE;
+            for (int stage = 0; stage < stages.size(); stage++) {
+                for (Tracked item : stages.get(stage)) {
+                    long dueMs = item.firstReadMs + scheduleMs[stage];
+                    if (dueMs > now || due >= Reddit.MAX_INFO_NAMES) {
+                        break;
+                    }
+                    due++;
+                    oldestDue = Math.min(oldestDue, dueMs);
+                }
+            }
+            if (due == 0 || (due < Reddit.MAX_INFO_NAMES && now - oldestDue < LINGER_MS)) {
+                return Collections.emptyList();
+            }
+
+            List<Tracked> result = new ArrayList<>();
+            for (int stage = 0; stage < stages.size() && result.size() < Reddit.MAX_INFO_NAMES; stage++) {
+                Deque<Tracked> queue = stages.get(stage);
+                while (result.size() < Reddit.MAX_INFO_NAMES
+                        && !queue.isEmpty()
+                        && queue.peek().firstReadMs + scheduleMs[stage] <= now) {
+                    Tracked item = queue.poll();
+                    item.stage = stage;
+                    result.add(item);
+                }
+            }
+            return result;
+        }
+    }
+
+    private void refresh(List<Tracked> batch) throws InterruptedException {
+        List<String> names = new ArrayList<>();
+        for (Tracked item : batch) {
+            names.add(item.fullName);
+        }
+        Map<String, Thing> things = new HashMap<>();
+        for (RawThing thing : info(names)) {
+            things.put(thing.getFullName(), decode.apply(thing));
+        }
+        recordConverter.prepare(things.values());
+
+        long now = System.currentTimeMillis();
+        int changed = 0;
+        List<Tracked> next = new ArrayList<>();
+        for (Tracked item : batch) {
+            Thing thing = things.get(item.fullName);
+            if (thing != null) {
+                Map<String, ?> sourcePartition = Collections.singletonMap(
+                        thingType + "-updates-subreddit",
+                        item.subreddit
+                );
+                Map<String, ?> sourceOffset = Collections.singletonMap(REFRESHED_FIELD, now);
+                long start = System.nanoTime();
+                SourceRecord record = recordConverter.convert(thing, sourcePartition, sourceOffset);
+                int fingerprint = fingerprint(record.value());
+                if (fingerprint != item.fingerprint) {
+                    item.fingerprint = fingerprint;
+                    records.awaitCapacity();
+                    records.add(new SourceRecord(
+                            sourcePartition,
+                            sourceOffset,
+                            topic,
+                            Schema.STRING_SCHEMA,
+                            item.fullName,
+                            record.valueSchema(),
+                            record.value()
+                    ));
+                    metrics.recordConverted(item.subreddit, System.nanoTime() - start);
+                    changed++;
+                }
+            }
+            if (thing != null && item.stage + 1 < scheduleMs.length) {
+                next.add(item);
+            }
+        }
+
+        synchronized (stages) {
+            tracked -= batch.size() - next.size();
+            for (Tracked item : next) {
+                stages.get(item.stage + 1).add(item);
+            }
+        }
+        log.trace("Refreshed {} item(s) for {}; {} changed", batch.size(), this, changed);
+        if (changed > 0) {
+            onRecords.run();
+        }
+    }
+
+    private List<RawThing> info(List<String> names) {
+        return ListingCursor.withRetry(SharedRateLimiter.BACKGROUND_URGENCY, this, () -> reddit.info(names));
+    }
+
+    /**
+     * Hash the {@link #TRACKED_FIELDS tracked fields} of a record value, in whichever format it's
+     * in. Fields that have been left out of the value are ignored.
+     */
+    static int fingerprint(Object value) {
+        Object[] fields = new Object[TRACKED_FIELDS.size()];
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = map.get(TRACKED_FIELDS.get(i));
+            }
+        } else if (value instanceof Struct) {
+            Struct struct = (Struct) value;
+            for (int i = 0; i < fields.length; i++) {
+                if (struct.schema().field(TRACKED_FIELDS.get(i)) != null) {
+                    fields[i] = struct.get(TRACKED_FIELDS.get(i));
+                }
+            }
+        } else if (value instanceof byte[]) {
+            readJsonFields(new Buffer().write((byte[]) value), fields);
+        } else if (value instanceof String) {
+            readJsonFields(new Buffer().writeString((String) value, StandardCharsets.UTF_8), fields);
+        }
+        return Arrays.hashCode(fields);
+    }
+
+    private static void readJsonFields(Buffer json, Object[] fields) {
+        try {
+            JsonReader reader = JsonReader.of(json);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                int field = reader.selectName(TRACKED_FIELD_OPTIONS);
+                if (field < 0) {
+                    reader.skipName();
+                    reader.skipValue();
+                    continue;
+                }
+                switch (reader.peek()) {
+                    case STRING:
+                    case NUMBER:
+                        fields[field] = reader.nextString();
+                        break;
+                    case BOOLEAN:
+                        fields[field] = reader.nextBoolean();
+                        break;
+                    default:
+                        // Nulls, and the occasional object (such as the "edited" field, which
+                        // is either false or a timestamp), are hashed by their JSON instead
+                        fields[field] = Objects.toString(reader.readJsonValue());
+                }
+            }
+            reader.endObject();
+        } catch (IOException e) {
+            // Values are produced by the connector itself, so this really shouldn't happen; at
+            // worst, an update is reported that didn't need to be
+            log.debug("Failed to read fields from JSON value", e);
+        }
+    }
+
+    private static class Tracked {
+        private final String subreddit;
+        private final String fullName;
+        private final long firstReadMs;
+        private int fingerprint;
+        // Only meaningful while the item is being refreshed
+        private int stage;
+
+        public Tracked(String subreddit, String fullName, long firstReadMs, int fingerprint) {
+            this.subreddit = subreddit;
+            this.fullName = fullName;
+            this.firstReadMs = firstReadMs;
+            this.fingerprint = fingerprint;
+        }
+    }
+}
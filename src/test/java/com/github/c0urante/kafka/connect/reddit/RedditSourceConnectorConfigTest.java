@@ -0,0 +1,93 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit;
+
+import org.apache.kafka.common.config.ConfigException;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.github.c0urante.kafka.connect.reddit.RedditSourceConnectorConfig.BACKFILL_ARCHIVE_URL_CONFIG;
+import static com.github.c0urante.kafka.connect.reddit.RedditSourceConnectorConfig.BACKFILL_END_CONFIG;
+import static com.github.c0urante.kafka.connect.reddit.RedditSourceConnectorConfig.BACKFILL_START_CONFIG;
+import static com.github.c0urante.kafka.connect.reddit.RedditSourceConnectorConfig.COMMENTS_FIELDS_CONFIG;
+import static com.github.c0urante.kafka.connect.reddit.RedditSourceConnectorConfig.POLL_INTERVAL_MAX_MS_CONFIG;
+import static com.github.c0urante.kafka.connect.reddit.RedditSourceConnectorConfig.POLL_INTERVAL_MIN_MS_CONFIG;
+import static com.github.c0urante.kafka.connect.reddit.RedditSourceConnectorConfig.POSTS_FIELDS_CONFIG;
+import static com.github.c0urante.kafka.connect.reddit.RedditSourceConnectorConfig.RECORD_VALUE_FORMAT_CONFIG;
+import static com.github.c0urante.kafka.connect.reddit.RedditSourceConnectorConfig.TEXT_MAX_LENGTH_CONFIG;
+
+public class RedditSourceConnectorConfigTest {
+
+    @Test
+    public void testProjectionAllowedWithStructuredFormats() {
+        Map<String, String> props = new HashMap<>();
+        props.put(RECORD_VALUE_FORMAT_CONFIG, "struct");
+        props.put(POSTS_FIELDS_CONFIG, "name,title");
+        props.put(TEXT_MAX_LENGTH_CONFIG, "100");
+        new RedditSourceConnectorConfig(props);
+    }
+
+    @Test(expected = ConfigException.class)
+    public void testPostFieldsRejectedWithRawFormats() {
+        Map<String, String> props = new HashMap<>();
+        props.put(RECORD_VALUE_FORMAT_CONFIG, "json_bytes");
+        props.put(POSTS_FIELDS_CONFIG, "name,title");
+        new RedditSourceConnectorConfig(props);
+    }
+
+    @Test(expected = ConfigException.class)
+    public void testCommentFieldsRejectedWithRawFormats() {
+        Map<String, String> props = new HashMap<>();
+        props.put(RECORD_VALUE_FORMAT_CONFIG, "json_string");
+        props.put(COMMENTS_FIELDS_CONFIG, "body");
+        new RedditSourceConnectorConfig(props);
+    }
+
+    @Test(expected = ConfigException.class)
+    public void testTextMaxLengthRejectedWithRawFormats() {
+        Map<String, String> props = new HashMap<>();
+        props.put(RECORD_VALUE_FORMAT_CONFIG, "json_string");
+        props.put(TEXT_MAX_LENGTH_CONFIG, "100");
+        new RedditSourceConnectorConfig(props);
+    }
+
+    @Test(expected = ConfigException.class)
+    public void testBackfillRequiresArchiveUrl() {
+        Map<String, String> props = new HashMap<>();
+        props.put(BACKFILL_START_CONFIG, "2019-01-01T00:00:00Z");
+        props.put(BACKFILL_END_CONFIG, "2019-01-02T00:00:00Z");
+        new RedditSourceConnectorConfig(props);
+    }
+
+    @Test
+    public void testBackfillWithArchiveUrl() {
+        Map<String, String> props = new HashMap<>();
+        props.put(BACKFILL_START_CONFIG, "2019-01-01T00:00:00Z");
+        props.put(BACKFILL_END_CONFIG, "2019-01-02T00:00:00Z");
+        props.put(BACKFILL_ARCHIVE_URL_CONFIG, "https://archive.example.com");
+        new RedditSourceConnectorConfig(props);
+    }
+
+    @Test(expected = ConfigException.class)
+    public void testInvertedPollIntervalsRejected() {
+        Map<String, String> props = new HashMap<>();
+        props.put(POLL_INTERVAL_MIN_MS_CONFIG, "5000");
+        props.put(POLL_INTERVAL_MAX_MS_CONFIG, "1000");
+        new RedditSourceConnectorConfig(props);
+    }
+
+    @Test
+    public void testEqualPollIntervalsAccepted() {
+        Map<String, String> props = new HashMap<>();
+        props.put(POLL_INTERVAL_MIN_MS_CONFIG, "5000");
+        props.put(POLL_INTERVAL_MAX_MS_CONFIG, "5000");
+        new RedditSourceConnectorConfig(props);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class SubredditsFileTest {
+
+    private static final long TIMEOUT_MS = 10_000;
+
+    private Path file;
+    private final List<SubredditsFile> watchers = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("subreddits", ".properties");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        watchers.forEach(SubredditsFile::close);
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testAddedSubredditsAreOwnedByExactlyOneTask() throws Exception {
+        List<String> assigned = Arrays.asList("aww", "pics");
+        List<String> added = Arrays.asList("AskReddit", "news", "funny", "gaming", "movies", "science");
+        List<String> listed = new ArrayList<>(assigned);
+        listed.addAll(added);
+        write("posts.subreddits=" + String.join(",", listed));
+
+        // aww was assigned to task 0 and pics to task 1, regardless of how they hash
+        BlockingQueue<SubredditsFile.Change> task0 = watch(0, 2, "aww", assigned);
+        BlockingQueue<SubredditsFile.Change> task1 = watch(1, 2, "pics", assigned);
+        SubredditsFile.Change changes0 = task0.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        SubredditsFile.Change changes1 = task1.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertNotNull(changes0);
+        assertNotNull(changes1);
+
+        for (String subreddit : added) {
+            int owner = Math.floorMod(subreddit.toLowerCase(Locale.ROOT).hashCode(), 2);
+            assertEquals(subreddit, owner == 0, changes0.added().contains(subreddit));
+            assertEquals(subreddit, owner == 1, changes1.added().contains(subreddit));
+        }
+        Set<String> all = new HashSet<>(changes0.added());
+        all.addAll(changes1.added());
+        assertEquals(new HashSet<>(added), all);
+        assertTrue(changes0.removed().isEmpty());
+        assertTrue(changes1.removed().isEmpty());
+    }
+
+    @Test
+    public void testRemovedSubredditsAreDropped() throws Exception {
+        write("posts.subreddits=pics");
+
+        BlockingQueue<SubredditsFile.Change> changes = watch(0, 1, "aww,pics", Arrays.asList("aww", "pics"));
+        SubredditsFile.Change change = changes.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertNotNull(change);
+        assertEquals(Arrays.asList("aww"), change.removed());
+        assertTrue(change.added().isEmpty());
+    }
+
+    @Test
+    public void testWatchingContinuesAfterUnexpectedErrors() throws Exception {
+        // A malformed escape makes Properties.load throw an IllegalArgumentException
+        write("posts.subreddits=\\uZZZZ");
+
+        BlockingQueue<SubredditsFile.Change> changes = watch(0, 1, "", Arrays.asList());
+        Thread.sleep(200);
+        write("posts.subreddits=aww");
+        SubredditsFile.Change change = changes.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertNotNull(change);
+        assertEquals(Arrays.asList("aww"), change.added());
+    }
+
+    private BlockingQueue<SubredditsFile.Change> watch(
+            int taskId,
+            int taskCount,
+            String taskSubreddits,
+            List<String> assigned
+    ) {
+        Map<String, String> props = new HashMap<>();
+        props.put(RedditSourceConnectorConfig.SUBREDDITS_FILE_CONFIG, file.toString());
+        props.put(RedditSourceConnectorConfig.POSTS_SUBREDDITS_CONFIG, taskSubreddits);
+        props.put(RedditSourceConnectorConfig.TASK_ID_CONFIG, Integer.toString(taskId));
+        props.put(RedditSourceConnectorConfig.TASK_COUNT_CONFIG, Integer.toString(taskCount));
+        props.put(RedditSourceConnectorConfig.ASSIGNED_POSTS_SUBREDDITS_CONFIG, String.join(",", assigned));
+
+        BlockingQueue<SubredditsFile.Change> result = new LinkedBlockingQueue<>();
+        SubredditsFile watcher = new SubredditsFile(
+                new RedditSourceConnectorConfig(props),
+                (posts, comments) -> result.add(posts)
+        );
+        watchers.add(watcher);
+        watcher.start(50);
+        return result;
+    }
+
+    private void write(String contents) throws IOException {
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+    }
+}
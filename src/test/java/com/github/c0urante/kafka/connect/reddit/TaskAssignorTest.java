@@ -0,0 +1,79 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+import static org.junit.Assert.assertEquals;
+
+public class TaskAssignorTest {
+
+    private static final ToDoubleFunction<String> EQUAL = subreddit -> 1.0;
+
+    @Test
+    public void testHeaviestSubredditGoesToLeastLoadedTask() {
+        Map<String, Double> weights = new HashMap<>();
+        weights.put("a", 10.0);
+        weights.put("b", 6.0);
+        weights.put("c", 5.0);
+        weights.put("d", 4.0);
+        weights.put("e", 1.0);
+        TaskAssignor assignor = new TaskAssignor(weights::get, EQUAL);
+
+        List<TaskAssignor.TaskAssignment> assignment = assignor.assign(
+                Arrays.asList("e", "d", "c", "b", "a"),
+                Collections.emptyList(),
+                2
+        );
+        assertEquals(2, assignment.size());
+        assertEquals(Arrays.asList("a", "d"), assignment.get(0).postSubreddits());
+        assertEquals(Arrays.asList("b", "c", "e"), assignment.get(1).postSubreddits());
+        assertEquals(14.0, assignor.maxLoad(assignment), 0.0);
+    }
+
+    @Test
+    public void testEqualWeightsAreAssignedRoundRobin() {
+        TaskAssignor assignor = new TaskAssignor(EQUAL, EQUAL);
+        List<TaskAssignor.TaskAssignment> assignment = assignor.assign(
+                Arrays.asList("a", "b", "c", "d"),
+                Collections.emptyList(),
+                2
+        );
+        assertEquals(Arrays.asList("a", "c"), assignment.get(0).postSubreddits());
+        assertEquals(Arrays.asList("b", "d"), assignment.get(1).postSubreddits());
+    }
+
+    @Test
+    public void testPostsAndCommentsAreBalancedTogether() {
+        TaskAssignor assignor = new TaskAssignor(subreddit -> 3.0, subreddit -> 2.0);
+        List<TaskAssignor.TaskAssignment> assignment = assignor.assign(
+                Collections.singletonList("pics"),
+                Arrays.asList("pics", "aww"),
+                2
+        );
+        assertEquals(Collections.singletonList("pics"), assignment.get(0).postSubreddits());
+        assertEquals(Collections.emptyList(), assignment.get(0).commentSubreddits());
+        assertEquals(Collections.emptyList(), assignment.get(1).postSubreddits());
+        assertEquals(Arrays.asList("pics", "aww"), assignment.get(1).commentSubreddits());
+        assertEquals(4.0, assignor.maxLoad(assignment), 0.0);
+    }
+
+    @Test
+    public void testNoTaskIsLeftEmpty() {
+        TaskAssignor assignor = new TaskAssignor(EQUAL, EQUAL);
+        assertEquals(2, assignor.assign(Arrays.asList("a", "b"), Collections.emptyList(), 5).size());
+        assertEquals(0, assignor.assign(Collections.emptyList(), Collections.emptyList(), 5).size());
+    }
+}
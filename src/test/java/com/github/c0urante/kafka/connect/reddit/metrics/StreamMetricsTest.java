@@ -0,0 +1,74 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.metrics;
+
+import org.apache.kafka.common.MetricName;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StreamMetricsTest {
+
+    private TaskMetrics taskMetrics;
+    private StreamMetrics metrics;
+
+    @Before
+    public void setUp() {
+        taskMetrics = new TaskMetrics("reddit", "0");
+        metrics = taskMetrics.stream("posts");
+    }
+
+    @After
+    public void tearDown() {
+        taskMetrics.close();
+    }
+
+    @Test
+    public void testSubredditMetricsAreBounded() {
+        metrics.recordConverted("aww", 1);
+        for (int i = 0; i < StreamMetrics.MAX_SUBREDDITS; i++) {
+            metrics.recordConverted("subreddit" + i, 1);
+            if (i % 100 == 0) {
+                // Keep the first subreddit active, so that it's never the one evicted
+                metrics.recordDuplicate("aww");
+            }
+        }
+
+        Set<String> subreddits = subredditsWithMetrics();
+        assertEquals(StreamMetrics.MAX_SUBREDDITS, subreddits.size());
+        assertTrue(subreddits.contains("aww"));
+        assertFalse(subreddits.contains("subreddit0"));
+    }
+
+    @Test
+    public void testRemovedSubredditMetricsCanBeCreatedAgain() {
+        metrics.recordConverted("AskReddit", 1);
+        metrics.removeSubreddit("askreddit");
+        assertFalse(subredditsWithMetrics().contains("AskReddit"));
+
+        metrics.recordFiltered("AskReddit");
+        assertTrue(subredditsWithMetrics().contains("AskReddit"));
+    }
+
+    private Set<String> subredditsWithMetrics() {
+        Set<String> result = new HashSet<>();
+        for (MetricName name : taskMetrics.metrics().metrics().keySet()) {
+            if (StreamMetrics.SUBREDDIT_GROUP.equals(name.group())) {
+                result.add(name.tags().get("subreddit"));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.model;
+
+import org.apache.kafka.common.config.ConfigException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ThingFilterTest {
+
+    private final List<List<String>> requestedFields = new ArrayList<>();
+
+    @Test
+    public void testNothingToFilterBy() {
+        assertNull(compile("", Collections.emptyList(), Collections.emptyList()));
+        assertNull(compile(" ; ", Collections.emptyList(), Collections.emptyList()));
+        assertNull(compile(null, Collections.emptyList(), Collections.emptyList()));
+    }
+
+    @Test
+    public void testOnlyFieldsUsedByRulesAreRead() {
+        compile("score < 1; over_18 == true; score > 100", Collections.singletonList("bot"), Collections.emptyList());
+        assertEquals(Collections.singletonList(Arrays.asList("score", "over_18", "author")), requestedFields);
+    }
+
+    @Test
+    public void testEqualityRules() {
+        ThingFilter<Map<String, Object>> filter = compile(
+                "over_18 == true; distinguished != null; link_flair_text == \"Meta\"",
+                Collections.emptyList(),
+                Collections.emptyList()
+        );
+        assertTrue(filter.accepts(thing("over_18", false, "distinguished", null, "link_flair_text", "Pics")));
+        assertFalse(filter.accepts(thing("over_18", true, "distinguished", null, "link_flair_text", "Pics")));
+        assertFalse(filter.accepts(thing("over_18", false, "distinguished", "moderator", "link_flair_text", "Pics")));
+        assertFalse(filter.accepts(thing("over_18", false, "distinguished", null, "link_flair_text", "Meta")));
+    }
+
+    @Test
+    public void testNumericRules() {
+        ThingFilter<Map<String, Object>> filter = compile(
+                "score < 1; num_comments >= 1000; created_utc <= 1546300800",
+                Collections.emptyList(),
+                Collections.emptyList()
+        );
+        Date recent = new Date(1546300801000L);
+        assertTrue(filter.accepts(thing("score", 1, "num_comments", 999, "created_utc", recent)));
+        assertFalse(filter.accepts(thing("score", 0, "num_comments", 999, "created_utc", recent)));
+        assertFalse(filter.accepts(thing("score", 1, "num_comments", 1000, "created_utc", recent)));
+        assertFalse(filter.accepts(thing("score", 1, "num_comments", 999, "created_utc", new Date(1546300800000L))));
+        // Fields that aren't numbers never match an ordering rule
+        assertTrue(filter.accepts(thing("score", "high", "num_comments", null, "created_utc", recent)));
+    }
+
+    @Test
+    public void testRegexRules() {
+        ThingFilter<Map<String, Object>> filter = compile(
+                "title ~ (?i)giveaway; domain !~ ^(i\\.)?imgur\\.com$",
+                Collections.emptyList(),
+                Collections.emptyList()
+        );
+        assertTrue(filter.accepts(thing("title", "My cat", "domain", "i.imgur.com")));
+        assertFalse(filter.accepts(thing("title", "Huge GIVEAWAY today", "domain", "imgur.com")));
+        assertFalse(filter.accepts(thing("title", "My cat", "domain", "example.com")));
+        assertFalse(filter.accepts(thing("title", "My cat", "domain", null)));
+    }
+
+    @Test
+    public void testAuthorLists() {
+        ThingFilter<Map<String, Object>> denied = compile(
+                "",
+                Arrays.asList("AutoModerator", " "),
+                Collections.emptyList()
+        );
+        assertFalse(denied.accepts(thing("author", "automoderator")));
+        assertTrue(denied.accepts(thing("author", "someone")));
+        assertTrue(denied.accepts(thing("author", null)));
+
+        ThingFilter<Map<String, Object>> allowed = compile(
+                "",
+                Collections.emptyList(),
+                Collections.singletonList("spez")
+        );
+        assertTrue(allowed.accepts(thing("author", "Spez")));
+        assertFalse(allowed.accepts(thing("author", "someone")));
+        assertFalse(allowed.accepts(thing("author", null)));
+    }
+
+    @Test(expected = ConfigException.class)
+    public void testMissingValueIsRejected() {
+        compile("score <", Collections.emptyList(), Collections.emptyList());
+    }
+
+    @Test(expected = ConfigException.class)
+    public void testMissingOperatorIsRejected() {
+        compile("score 5", Collections.emptyList(), Collections.emptyList());
+    }
+
+    @Test(expected = ConfigException.class)
+    public void testOrderingWithNonNumberIsRejected() {
+        compile("title > abc", Collections.emptyList(), Collections.emptyList());
+    }
+
+    @Test(expected = ConfigException.class)
+    public void testInvalidRegexIsRejected() {
+        compile("title ~ (unclosed", Collections.emptyList(), Collections.emptyList());
+    }
+
+    private ThingFilter<Map<String, Object>> compile(
+            String rules,
+            Collection<String> deniedAuthors,
+            Collection<String> allowedAuthors
+    ) {
+        return ThingFilter.compile(rules, deniedAuthors, allowedAuthors, fields -> {
+            requestedFields.add(fields);
+            return thing -> fields.stream().map(thing::get).toArray();
+        });
+    }
+
+    private static Map<String, Object> thing(Object... fieldsAndValues) {
+        Map<String, Object> result = new HashMap<>();
+        for (int i = 0; i < fieldsAndValues.length; i += 2) {
+            result.put((String) fieldsAndValues[i], fieldsAndValues[i + 1]);
+        }
+        return result;
+    }
+}
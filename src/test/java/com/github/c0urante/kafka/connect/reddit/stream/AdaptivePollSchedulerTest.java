@@ -0,0 +1,47 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptivePollSchedulerTest {
+
+    private final AdaptivePollScheduler scheduler = new AdaptivePollScheduler(1000, 60000, 100);
+
+    @Test
+    public void testUrgencyIsTrackedPerSchedule() {
+        AdaptivePollScheduler.ListingSchedule busy = scheduler.newSchedule();
+        AdaptivePollScheduler.ListingSchedule quiet = scheduler.newSchedule();
+        busy.recordPoll(0, 0, 0);
+        quiet.recordPoll(0, 0, 0);
+
+        busy.recordPoll(100, 100, 1000);
+        quiet.recordPoll(1, 100, 1000);
+
+        assertEquals(1.0, busy.urgency(), 0.0);
+        assertEquals(0.01, quiet.urgency(), 1e-9);
+    }
+
+    @Test
+    public void testBusyListingsArePolledMoreOften() {
+        AdaptivePollScheduler.ListingSchedule busy = scheduler.newSchedule();
+        AdaptivePollScheduler.ListingSchedule quiet = scheduler.newSchedule();
+        busy.recordPoll(0, 0, 0);
+        quiet.recordPoll(0, 0, 0);
+
+        busy.recordPoll(100, 100, 10000);
+        quiet.recordPoll(0, 100, 10000);
+
+        assertTrue(busy.intervalMs() < quiet.intervalMs());
+        assertEquals(60000, quiet.intervalMs());
+        assertEquals(25, quiet.pageSize());
+    }
+}
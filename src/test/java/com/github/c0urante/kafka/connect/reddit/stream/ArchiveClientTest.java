@@ -0,0 +1,77 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ArchiveClientTest {
+
+    private static final String RESPONSE = "{\"data\": [{\"id\": \"abc\", \"created_utc\": 1546300800}]}";
+
+    private HttpServer server;
+    private final AtomicReference<String> authorization = new AtomicReference<>();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            authorization.set(exchange.getRequestHeaders().getFirst("Authorization"));
+            byte[] body = RESPONSE.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testAuthTokenIsSentAsBearerToken() throws InterruptedException {
+        ArchiveClient client = new ArchiveClient(url(), "secret");
+        try {
+            List<ArchiveClient.Item> items = client.page("submission", "aww", 0, 1546387200, 100);
+            assertEquals(1, items.size());
+            assertEquals("Bearer secret", authorization.get());
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void testNoCredentialsWithoutAuthToken() throws InterruptedException {
+        ArchiveClient client = new ArchiveClient(url(), null);
+        try {
+            client.page("comment", "aww", 0, 1546387200, 100);
+            assertNull(authorization.get());
+        } finally {
+            client.close();
+        }
+    }
+
+    private String url() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+}
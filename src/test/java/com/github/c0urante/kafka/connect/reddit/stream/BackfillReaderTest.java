@@ -0,0 +1,51 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import org.apache.kafka.connect.storage.OffsetUtils;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class BackfillReaderTest {
+
+    @Test
+    public void testPersistedIdsKeepsMostRecent() {
+        Set<String> ids = new LinkedHashSet<>();
+        for (int i = 0; i < 150; i++) {
+            ids.add("t1_" + i);
+        }
+
+        List<String> persisted = DedupIndex.decodeIds(BackfillReader.persistedIds(ids));
+        assertEquals(100, persisted.size());
+        assertEquals("t1_50", persisted.get(0));
+        assertEquals("t1_149", persisted.get(99));
+    }
+
+    @Test
+    public void testPersistedIdsKeepsEverythingBelowLimit() {
+        Set<String> ids = new LinkedHashSet<>(Arrays.asList("t1_a", "t1_b"));
+        assertEquals(Arrays.asList("t1_a", "t1_b"), DedupIndex.decodeIds(BackfillReader.persistedIds(ids)));
+    }
+
+    @Test
+    public void testOffsetPassesFrameworkValidation() {
+        Map<String, Object> offset = new HashMap<>();
+        offset.put(DedupIndex.CREATED_FIELD, 1546300800000L);
+        offset.put(DedupIndex.IDS_FIELD, BackfillReader.persistedIds(new LinkedHashSet<>(Arrays.asList("t1_a", "t1_b"))));
+        offset.put(BackfillReader.DONE_FIELD, true);
+        OffsetUtils.validateFormat(offset);
+    }
+}
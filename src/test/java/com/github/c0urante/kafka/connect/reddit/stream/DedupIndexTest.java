@@ -0,0 +1,137 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import org.apache.kafka.connect.data.SchemaAndValue;
+import org.apache.kafka.connect.json.JsonConverter;
+import org.apache.kafka.connect.storage.OffsetUtils;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class DedupIndexTest {
+
+    private static final Function<String, Map<String, Object>> PARTITION =
+            subreddit -> Collections.singletonMap("posts-subreddit", subreddit);
+
+    @Test
+    public void testDuplicatesAreSkipped() {
+        DedupIndex index = new DedupIndex(Collections.emptyMap(), PARTITION);
+        assertNotNull(index.offsetIfOriginal("aww", "t3_a", 1000));
+        assertNull(index.offsetIfOriginal("aww", "t3_a", 1000));
+        assertNotNull(index.offsetIfOriginal("aww", "t3_b", 1000));
+    }
+
+    @Test
+    public void testOffsetContainsIdsAtHighWatermark() {
+        DedupIndex index = new DedupIndex(Collections.emptyMap(), PARTITION);
+        index.offsetIfOriginal("aww", "t3_a", 1000);
+        index.offsetIfOriginal("aww", "t3_b", 2000);
+        Map<String, Object> offset = index.offsetIfOriginal("aww", "t3_c", 2000);
+
+        assertEquals(2000L, offset.get(DedupIndex.CREATED_FIELD));
+        assertEquals("t3_b,t3_c", offset.get(DedupIndex.IDS_FIELD));
+        assertEquals(Arrays.asList("t3_b", "t3_c"), DedupIndex.decodeIds(offset.get(DedupIndex.IDS_FIELD)));
+    }
+
+    @Test
+    public void testEarlierOffsetsAreUnaffectedByLaterItems() {
+        DedupIndex index = new DedupIndex(Collections.emptyMap(), PARTITION);
+        Map<String, Object> first = index.offsetIfOriginal("aww", "t3_a", 1000);
+        index.offsetIfOriginal("aww", "t3_b", 1000);
+        index.offsetIfOriginal("aww", "t3_c", 2000);
+
+        assertEquals(1000L, first.get(DedupIndex.CREATED_FIELD));
+        assertEquals("t3_a", first.get(DedupIndex.IDS_FIELD));
+    }
+
+    @Test
+    public void testOffsetSurvivesFrameworkValidationAndSerialization() {
+        DedupIndex index = new DedupIndex(Collections.emptyMap(), PARTITION);
+        index.offsetIfOriginal("aww", "t3_a", 1000);
+        index.offsetIfOriginal("aww", "t3_b", 2000);
+        Map<String, Object> offset = index.offsetIfOriginal("aww", "t3_c", 2000);
+
+        // The same checks and conversion that the framework applies before committing an offset
+        OffsetUtils.validateFormat(PARTITION.apply("aww"));
+        OffsetUtils.validateFormat(offset);
+        JsonConverter converter = new JsonConverter();
+        converter.configure(Collections.singletonMap("schemas.enable", "false"), false);
+        byte[] serialized = converter.fromConnectData("", null, offset);
+        SchemaAndValue deserialized = converter.toConnectData("", serialized);
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> storedOffset = (Map<String, Object>) deserialized.value();
+        Map<Map<String, Object>, Map<String, Object>> storedOffsets = new HashMap<>();
+        storedOffsets.put(PARTITION.apply("aww"), storedOffset);
+
+        DedupIndex restarted = new DedupIndex(storedOffsets, PARTITION);
+        assertEquals(Long.valueOf(2000), restarted.storedWatermark("aww"));
+        assertNull(restarted.offsetIfOriginal("aww", "t3_a", 1000));
+        assertNull(restarted.offsetIfOriginal("aww", "t3_b", 2000));
+        assertNull(restarted.offsetIfOriginal("aww", "t3_c", 2000));
+        Map<String, Object> next = restarted.offsetIfOriginal("aww", "t3_d", 2000);
+        assertNotNull(next);
+        assertEquals(Arrays.asList("t3_b", "t3_c", "t3_d"), DedupIndex.decodeIds(next.get(DedupIndex.IDS_FIELD)));
+    }
+
+    @Test
+    public void testDefaultWatermarkAppliesOnlyWithoutStoredOffset() {
+        Map<Map<String, Object>, Map<String, Object>> storedOffsets = new HashMap<>();
+        storedOffsets.put(PARTITION.apply("pics"), Collections.singletonMap(DedupIndex.CREATED_FIELD, 500L));
+        DedupIndex index = new DedupIndex(storedOffsets, PARTITION);
+        index.setDefaultWatermark(5000);
+
+        assertNull(index.offsetIfOriginal("aww", "t3_a", 4000));
+        assertNotNull(index.offsetIfOriginal("aww", "t3_b", 6000));
+        assertNotNull(index.offsetIfOriginal("pics", "t3_c", 1000));
+        assertEquals(Long.valueOf(6000), index.watermark("aww"));
+    }
+
+    @Test
+    public void testSubredditsAreMatchedCaseInsensitively() {
+        Map<Map<String, Object>, Map<String, Object>> storedOffsets = new HashMap<>();
+        storedOffsets.put(PARTITION.apply("askreddit"), Collections.singletonMap(DedupIndex.CREATED_FIELD, 5000L));
+        DedupIndex index = new DedupIndex(storedOffsets, PARTITION);
+
+        // Configured as "askreddit", but Reddit spells it "AskReddit" on what's read from it
+        assertEquals(Long.valueOf(5000), index.watermark("askreddit"));
+        assertNull(index.offsetIfOriginal("AskReddit", "t1_a", 4000));
+        assertNotNull(index.offsetIfOriginal("AskReddit", "t1_b", 6000));
+        assertEquals(Long.valueOf(6000), index.watermark("askreddit"));
+        assertEquals(Long.valueOf(5000), index.storedWatermark("ASKREDDIT"));
+    }
+
+    @Test
+    public void testLatestPrefersLaterWatermark() {
+        Map<String, Object> earlier = Collections.singletonMap(DedupIndex.CREATED_FIELD, 1000L);
+        Map<String, Object> later = Collections.singletonMap(DedupIndex.CREATED_FIELD, 2000L);
+        Map<String, Object> malformed = Collections.singletonMap(DedupIndex.CREATED_FIELD, "soon");
+
+        assertEquals(later, DedupIndex.latest(earlier, later));
+        assertEquals(later, DedupIndex.latest(later, earlier));
+        assertEquals(earlier, DedupIndex.latest(null, earlier));
+        assertEquals(earlier, DedupIndex.latest(earlier, malformed));
+        assertNull(DedupIndex.latest(malformed, null));
+    }
+
+    @Test
+    public void testDecodeIdsIgnoresMissingAndMalformedValues() {
+        assertEquals(Collections.emptyList(), DedupIndex.decodeIds(null));
+        assertEquals(Collections.emptyList(), DedupIndex.decodeIds(""));
+        assertEquals(Collections.emptyList(), DedupIndex.decodeIds(42L));
+    }
+}
@@ -0,0 +1,67 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import com.github.c0urante.kafka.connect.reddit.model.RawThing;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RawListingCursorTest {
+
+    private static final String POST = "{\"name\": \"t3_abc\", \"title\": \"A \\\"quoted\\\" {title]\", "
+            + "\"score\": 1.50, \"created_utc\": 1546300800.0, \"subreddit\": \"aww\", "
+            + "\"author_fullname\": \"t2_xyz\", \"media\": null, \"edited\": false, "
+            + "\"preview\": {\"images\": [{\"id\": \"x\"}, []]}, \"emoji\": \"é中\"}";
+
+    @Test
+    public void testItemsAreCopiedByteForByte() throws IOException {
+        String body = "{\"kind\": \"Listing\", \"data\": {\"after\": \"t3_abc\", \"children\": [\n"
+                + "  {\"kind\": \"t3\", \"data\": " + POST + "}\n"
+                + "], \"before\": null}}";
+
+        List<RawThing> things = RawListingCursor.parseListing(body);
+        assertEquals(1, things.size());
+        RawThing thing = things.get(0);
+        assertEquals("t3_abc", thing.getFullName());
+        assertEquals("aww", thing.getSubreddit());
+        assertEquals(1546300800000L, thing.getCreated().getTime());
+        assertEquals("t2_xyz", thing.getAuthorFullName());
+        assertEquals(POST, new String(thing.getJson(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testChildrenThatAreNotPostsOrCommentsAreSkipped() throws IOException {
+        String body = "{\"data\":{\"children\":["
+                + "{\"kind\":\"more\",\"data\":{\"name\":\"t1_more\",\"children\":[\"a\",\"b\"]}},"
+                + "{\"kind\":\"t1\",\"data\":{\"name\":\"t1_a\",\"subreddit\":\"pics\",\"created_utc\":1}}"
+                + "]}}";
+
+        List<RawThing> things = RawListingCursor.parseListing(body);
+        assertEquals(1, things.size());
+        assertEquals("t1_a", things.get(0).getFullName());
+        assertNull(things.get(0).getAuthorFullName());
+    }
+
+    @Test
+    public void testEmptyListings() throws IOException {
+        assertTrue(RawListingCursor.parseListing("{\"data\":{\"children\":[]}}").isEmpty());
+        assertTrue(RawListingCursor.parseListing("{\"kind\":\"Listing\"}").isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedListingIsRejected() throws IOException {
+        RawListingCursor.parseListing("{\"data\":{\"children\":[{\"data\":{\"name\":\"t3_a\"");
+    }
+}
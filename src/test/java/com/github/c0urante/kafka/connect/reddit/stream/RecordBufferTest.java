@@ -0,0 +1,108 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.source.SourceRecord;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RecordBufferTest {
+
+    @Test
+    public void testDrainPreservesOrderAndLimit() {
+        RecordBuffer buffer = new RecordBuffer(100, Long.MAX_VALUE);
+        for (int i = 0; i < 5; i++) {
+            buffer.add(record("value" + i));
+        }
+
+        List<SourceRecord> first = buffer.drain(3);
+        assertEquals(3, first.size());
+        assertEquals("value0", first.get(0).value());
+        assertEquals("value2", first.get(2).value());
+        assertEquals(2, buffer.size());
+
+        List<SourceRecord> rest = new ArrayList<>();
+        assertEquals(2, buffer.drainTo(rest, 10));
+        assertEquals("value3", rest.get(0).value());
+        assertTrue(buffer.isEmpty());
+        assertEquals(0, buffer.bytes());
+        assertEquals(Collections.emptyList(), buffer.drain(10));
+    }
+
+    @Test
+    public void testBoundedByRecordCount() {
+        RecordBuffer buffer = new RecordBuffer(2, Long.MAX_VALUE);
+        buffer.add(record("a"));
+        assertTrue(buffer.hasCapacity());
+        buffer.add(record("b"));
+        assertFalse(buffer.hasCapacity());
+        buffer.drain(1);
+        assertTrue(buffer.hasCapacity());
+    }
+
+    @Test
+    public void testBoundedByEstimatedBytes() {
+        RecordBuffer buffer = new RecordBuffer(100, 20);
+        buffer.add(record("0123456789"));
+        assertEquals(20, buffer.bytes());
+        assertFalse(buffer.hasCapacity());
+        buffer.drain(1);
+        assertTrue(buffer.hasCapacity());
+    }
+
+    @Test
+    public void testEstimatedSize() {
+        assertEquals(2 * 5, RecordBuffer.estimateSize(record("hello")));
+        assertEquals(4, RecordBuffer.estimateSize(
+                new SourceRecord(null, null, "topic", Schema.BYTES_SCHEMA, new byte[4])
+        ));
+        assertEquals(2 * 3 + 8, RecordBuffer.estimateSize(
+                new SourceRecord(null, null, "topic", null, Collections.singletonMap("key", 42L))
+        ));
+    }
+
+    @Test
+    public void testAwaitCapacityBlocksUntilDrained() throws Exception {
+        RecordBuffer buffer = new RecordBuffer(1, Long.MAX_VALUE);
+        buffer.add(record("a"));
+
+        CountDownLatch unblocked = new CountDownLatch(1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread producer = new Thread(() -> {
+            try {
+                buffer.awaitCapacity();
+                unblocked.countDown();
+            } catch (Throwable t) {
+                error.set(t);
+            }
+        });
+        producer.start();
+        assertFalse(unblocked.await(200, TimeUnit.MILLISECONDS));
+
+        buffer.drain(1);
+        assertTrue(unblocked.await(10, TimeUnit.SECONDS));
+        producer.join();
+        assertNull(error.get());
+    }
+
+    private static SourceRecord record(String value) {
+        return new SourceRecord(null, null, "topic", Schema.STRING_SCHEMA, value);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import net.dean.jraw.models.UniquelyIdentifiable;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RepostDetectorTest {
+
+    @Test
+    public void testNormalizeUrl() {
+        assertEquals("example.com/a/b", RepostDetector.normalizeUrl("https://www.Example.COM/a/b/"));
+        assertEquals("example.com/a/b", RepostDetector.normalizeUrl("http://example.com/a/b#comments"));
+        assertEquals(
+                "example.com/watch?v=1&t=2",
+                RepostDetector.normalizeUrl("https://example.com/watch?utm_source=x&v=1&amp;utm_medium=y&t=2")
+        );
+        assertEquals("example.com", RepostDetector.normalizeUrl("https://example.com/?utm_campaign=z"));
+        assertEquals("reddit.com/r/aww/comments/abc", RepostDetector.normalizeUrl("/r/aww/comments/abc/"));
+        // Paths and queries are case-sensitive
+        assertEquals("example.com/A?Q=1", RepostDetector.normalizeUrl("  HTTPS://EXAMPLE.COM/A?Q=1  "));
+        assertNull(RepostDetector.normalizeUrl(null));
+        assertNull(RepostDetector.normalizeUrl(" "));
+    }
+
+    @Test
+    public void testRepostsOfUrlsAndCrosspostsAreRecognized() {
+        Map<String, String[]> posts = new HashMap<>();
+        posts.put("t3_a", new String[] {"https://example.com/cat", null});
+        posts.put("t3_b", new String[] {"https://www.example.com/cat/?utm_source=reddit", null});
+        posts.put("t3_c", new String[] {"https://example.com/dog", null});
+        posts.put("t3_d", new String[] {"/r/pics/comments/d/", "t3_c"});
+        posts.put("t3_e", new String[] {null, null});
+        RepostDetector<Post> detector = new RepostDetector<>(
+                post -> posts.get(post.getUniqueId()),
+                false,
+                1000,
+                0.001,
+                60_000
+        );
+
+        assertFalse(detector.isRepost(new Post("t3_a"), 0));
+        assertTrue(detector.isRepost(new Post("t3_b"), 1));
+        assertFalse(detector.isRepost(new Post("t3_c"), 2));
+        assertTrue(detector.isRepost(new Post("t3_d"), 3));
+        assertFalse(detector.isRepost(new Post("t3_e"), 4));
+        assertFalse(detector.drops());
+    }
+
+    private static class Post implements UniquelyIdentifiable {
+        private final String fullName;
+
+        public Post(String fullName) {
+            this.fullName = fullName;
+        }
+
+        @Override
+        public String getUniqueId() {
+            return fullName;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RotatingBloomFilterTest {
+
+    private static final long WINDOW_MS = 1000;
+
+    @Test
+    public void testKeysAreRememberedForAtLeastOneWindow() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(1000, 0.001, WINDOW_MS, 0);
+        filter.put("a", 0);
+        assertTrue(filter.mightContain("a", 0));
+        assertTrue(filter.mightContain("a", WINDOW_MS - 1));
+        // Rotated once: "a" is now in the previous generation
+        assertTrue(filter.mightContain("a", WINDOW_MS));
+        assertFalse(filter.mightContain("b", WINDOW_MS));
+    }
+
+    @Test
+    public void testKeysAreForgottenAfterTwoWindows() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(1000, 0.001, WINDOW_MS, 0);
+        filter.put("a", 0);
+        assertTrue(filter.mightContain("a", WINDOW_MS));
+        assertFalse(filter.mightContain("a", 2 * WINDOW_MS));
+    }
+
+    @Test
+    public void testEverythingIsForgottenAfterLongIdle() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(1000, 0.001, WINDOW_MS, 0);
+        filter.put("a", 0);
+        assertFalse(filter.mightContain("a", 5 * WINDOW_MS));
+    }
+
+    @Test
+    public void testRotatesEarlyOnceFull() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(10, 0.01, WINDOW_MS, 0);
+        filter.put("first", 0);
+        for (int i = 0; i < 20; i++) {
+            filter.put("key" + i, 1);
+        }
+        // Two count-triggered rotations have happened within a single window
+        assertFalse(filter.mightContain("first", 1));
+        assertTrue(filter.mightContain("key19", 1));
+    }
+
+    @Test
+    public void testFalsePositiveRateIsRoughlyAsConfigured() {
+        int keys = 10_000;
+        RotatingBloomFilter filter = new RotatingBloomFilter(keys, 0.01, Long.MAX_VALUE / 4, 0);
+        for (int i = 0; i < keys - 1; i++) {
+            filter.put("https://example.com/post/" + i, 0);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < keys; i++) {
+            if (filter.mightContain("https://example.org/other/" + i, 0)) {
+                falsePositives++;
+            }
+        }
+        for (int i = 0; i < keys - 1; i++) {
+            assertTrue(filter.mightContain("https://example.com/post/" + i, 0));
+        }
+        assertTrue("false positives: " + falsePositives, falsePositives < keys * 0.02);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+     Copyright © 2018 - 2019 Chris Egerton <fearthecellos@gmail.com>
+     This work is free. You can redistribute it and/or modify it under the
+     terms of the Do What The Fuck You Want To Public License, Version 2,
+     as published by Sam Hocevar. See the LICENSE file for more details.
+*/
+
+package com.github.c0urante.kafka.connect.reddit.stream;
+
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.data.Struct;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class UpdateTrackerTest {
+
+    @Test
+    public void testMapFingerprintIgnoresUntrackedFields() {
+        Map<String, Object> original = post(10, "hello");
+        Map<String, Object> untracked = post(10, "hello");
+        untracked.put("thumbnail", "changed");
+        Map<String, Object> rescored = post(11, "hello");
+        Map<String, Object> edited = post(10, "goodbye");
+
+        int fingerprint = UpdateTracker.fingerprint(original);
+        assertEquals(fingerprint, UpdateTracker.fingerprint(untracked));
+        assertNotEquals(fingerprint, UpdateTracker.fingerprint(rescored));
+        assertNotEquals(fingerprint, UpdateTracker.fingerprint(edited));
+    }
+
+    @Test
+    public void testStructFingerprint() {
+        Schema schema = SchemaBuilder.struct()
+                .field("score", Schema.INT32_SCHEMA)
+                .field("url", Schema.STRING_SCHEMA)
+                .build();
+        Struct original = new Struct(schema).put("score", 1).put("url", "https://example.com/a");
+        Struct moved = new Struct(schema).put("score", 1).put("url", "https://example.com/b");
+        Struct rescored = new Struct(schema).put("score", 2).put("url", "https://example.com/a");
+
+        assertEquals(UpdateTracker.fingerprint(original), UpdateTracker.fingerprint(moved));
+        assertNotEquals(UpdateTracker.fingerprint(original), UpdateTracker.fingerprint(rescored));
+    }
+
+    @Test
+    public void testJsonFingerprint() {
+        String original = "{\"name\": \"t3_a\", \"score\": 10, \"edited\": false, \"media\": {\"x\": 1}}";
+        String reformatted = "{\"media\":{\"x\":2},\"edited\":false,\"score\":10,\"name\":\"t3_a\"}";
+        String edited = "{\"name\": \"t3_a\", \"score\": 10, \"edited\": 1546300800.0, \"media\": {\"x\": 1}}";
+
+        int fingerprint = UpdateTracker.fingerprint(original);
+        assertEquals(fingerprint, UpdateTracker.fingerprint(reformatted));
+        assertEquals(fingerprint, UpdateTracker.fingerprint(original.getBytes(StandardCharsets.UTF_8)));
+        assertNotEquals(fingerprint, UpdateTracker.fingerprint(edited));
+    }
+
+    @Test
+    public void testMalformedJsonDoesNotThrow() {
+        UpdateTracker.fingerprint("{\"score\": ");
+        UpdateTracker.fingerprint("not json");
+    }
+
+    private static Map<String, Object> post(int score, String selftext) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("name", "t3_a");
+        result.put("score", score);
+        result.put("selftext", selftext);
+        return result;
+    }
+}